@@ -0,0 +1,54 @@
+package com.ai.agent.advisor;
+
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.BaseAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import reactor.core.publisher.Flux;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * 按就绪状态启用的 Advisor
+ * 依赖尚未就绪时（如知识库还在后台导入）直接跳过被包装的 Advisor，请求按无 RAG 模式继续
+ */
+public class ReadinessGatedAdvisor implements CallAdvisor, StreamAdvisor {
+
+    private final BaseAdvisor delegate;
+
+    private final BooleanSupplier ready;
+
+    public ReadinessGatedAdvisor(BaseAdvisor delegate, BooleanSupplier ready) {
+        this.delegate = delegate;
+        this.ready = ready;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain chain) {
+        if (ready.getAsBoolean()) {
+            return delegate.adviseCall(chatClientRequest, chain);
+        }
+        return chain.nextCall(chatClientRequest);
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain chain) {
+        if (ready.getAsBoolean()) {
+            return delegate.adviseStream(chatClientRequest, chain);
+        }
+        return chain.nextStream(chatClientRequest);
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public int getOrder() {
+        return delegate.getOrder();
+    }
+}
@@ -0,0 +1,208 @@
+package com.ai.agent.agent;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Jsoup;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * ReAct 消息上下文管理器（按 token 预算控制提示词大小）
+ * <p>
+ * 每次思考前整理消息列表：
+ * 1. 只保留一条 nextStepPrompt，放在列表末尾
+ * 2. 超出 token 预算时，从最早的工具响应开始压缩（HTML 转纯文本并截断）
+ * 3. 仍然超出时，用占位符替换较早的工具响应内容（保留调用与响应的对应关系）
+ * 4. 最后才截断最新一次的工具响应
+ */
+@Slf4j
+public class AgentContextManager {
+
+    /**
+     * 默认的提示词 token 预算
+     */
+    public static final int DEFAULT_TOKEN_BUDGET = 12000;
+
+    /**
+     * 默认压缩后每个工具响应保留的字符数
+     */
+    public static final int DEFAULT_COMPRESSED_RESPONSE_CHARS = 500;
+
+    // jtokkit 编码表加载较重，所有实例共用一个
+    private static final TokenCountEstimator TOKEN_COUNT_ESTIMATOR = new JTokkitTokenCountEstimator();
+
+    private final int tokenBudget;
+
+    private final int compressedResponseChars;
+
+    // 每条消息的 token 数缓存（消息不可变，按对象身份缓存）
+    private final Map<Message, Integer> tokenCache = new IdentityHashMap<>();
+
+    public AgentContextManager() {
+        this(DEFAULT_TOKEN_BUDGET, DEFAULT_COMPRESSED_RESPONSE_CHARS);
+    }
+
+    public AgentContextManager(int tokenBudget, int compressedResponseChars) {
+        this.tokenBudget = tokenBudget;
+        this.compressedResponseChars = compressedResponseChars;
+    }
+
+    /**
+     * 整理消息列表，使提示词不超过 token 预算
+     *
+     * @param messages       当前消息列表
+     * @param systemPrompt   系统提示词（计入预算）
+     * @param nextStepPrompt 下一步提示词（只保留一条，放在末尾）
+     * @param stepNumber     当前步骤，用于日志
+     * @return 整理后的消息列表
+     */
+    public List<Message> prepare(List<Message> messages, String systemPrompt, String nextStepPrompt, int stepNumber) {
+        List<Message> prepared = new ArrayList<>(messages.size() + 1);
+        String trimmedNextStepPrompt = StrUtil.trim(nextStepPrompt);
+        for (Message message : messages) {
+            if (isNextStepPrompt(message, trimmedNextStepPrompt)) {
+                continue;
+            }
+            prepared.add(message);
+        }
+        if (StrUtil.isNotBlank(nextStepPrompt)) {
+            prepared.add(new UserMessage(nextStepPrompt));
+        }
+
+        int fixedTokens = StrUtil.isBlank(systemPrompt) ? 0 : TOKEN_COUNT_ESTIMATOR.estimate(systemPrompt);
+        int before = fixedTokens + countTokens(prepared);
+        int total = before;
+        if (total > tokenBudget) {
+            int latestToolIndex = lastToolResponseIndex(prepared);
+            // 1、压缩较早的工具响应
+            for (int i = 0; i < latestToolIndex && total > tokenBudget; i++) {
+                total += replaceToolResponses(prepared, i, this::compress);
+            }
+            // 2、用占位符替换较早的工具响应
+            for (int i = 0; i < latestToolIndex && total > tokenBudget; i++) {
+                total += replaceToolResponses(prepared, i, AgentContextManager::evict);
+            }
+            // 3、截断最新的工具响应，使其放入剩余预算
+            if (latestToolIndex >= 0 && total > tokenBudget) {
+                int overflowChars = (total - tokenBudget) * 2;
+                total += replaceToolResponses(prepared, latestToolIndex, data -> {
+                    String text = toPlainText(data);
+                    return StrUtil.subPre(text, Math.max(compressedResponseChars, text.length() - overflowChars)) + "...[已截断]";
+                });
+            }
+        }
+        if (total != before) {
+            log.info("第 {} 步提示词 token 数：{}（压缩前 {}，预算 {}）", stepNumber, total, before, tokenBudget);
+        } else {
+            log.info("第 {} 步提示词 token 数：{}（预算 {}）", stepNumber, total, tokenBudget);
+        }
+        return prepared;
+    }
+
+    private boolean isNextStepPrompt(Message message, String trimmedNextStepPrompt) {
+        return trimmedNextStepPrompt != null
+                && message instanceof UserMessage
+                && trimmedNextStepPrompt.equals(StrUtil.trim(message.getText()));
+    }
+
+    private static int lastToolResponseIndex(List<Message> messages) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i) instanceof ToolResponseMessage) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 替换指定位置工具响应的内容
+     *
+     * @return token 数的变化量
+     */
+    private int replaceToolResponses(List<Message> messages, int index, UnaryOperator<String> rewriter) {
+        if (!(messages.get(index) instanceof ToolResponseMessage toolMessage)) {
+            return 0;
+        }
+        List<ToolResponseMessage.ToolResponse> rewritten = new ArrayList<>(toolMessage.getResponses().size());
+        boolean changed = false;
+        for (ToolResponseMessage.ToolResponse response : toolMessage.getResponses()) {
+            String data = response.responseData();
+            String newData = data == null ? null : rewriter.apply(data);
+            if (newData != null && newData.length() < data.length()) {
+                rewritten.add(new ToolResponseMessage.ToolResponse(response.id(), response.name(), newData));
+                changed = true;
+            } else {
+                rewritten.add(response);
+            }
+        }
+        if (!changed) {
+            return 0;
+        }
+        int before = countTokens(toolMessage);
+        ToolResponseMessage replacement = new ToolResponseMessage(rewritten, toolMessage.getMetadata());
+        messages.set(index, replacement);
+        return countTokens(replacement) - before;
+    }
+
+    private String compress(String data) {
+        String text = toPlainText(data);
+        return text.length() > compressedResponseChars
+                ? text.substring(0, compressedResponseChars) + "...[已压缩]"
+                : text;
+    }
+
+    private static String evict(String data) {
+        return data.startsWith("[已省略") ? data : "[已省略，原始长度 " + data.length() + " 字符]";
+    }
+
+    /**
+     * 网页抓取结果是完整 HTML，转为纯文本后再截断
+     */
+    private static String toPlainText(String data) {
+        if (data.contains("<html") || data.contains("<!DOCTYPE") || data.contains("<body")) {
+            return Jsoup.parse(data).text();
+        }
+        return data;
+    }
+
+    private int countTokens(List<Message> messages) {
+        int total = 0;
+        for (Message message : messages) {
+            total += countTokens(message);
+        }
+        return total;
+    }
+
+    private int countTokens(Message message) {
+        return tokenCache.computeIfAbsent(message, m -> TOKEN_COUNT_ESTIMATOR.estimate(textOf(m)));
+    }
+
+    private static String textOf(Message message) {
+        StringBuilder text = new StringBuilder(StrUtil.nullToEmpty(message.getText()));
+        if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                text.append(toolCall.name()).append(toolCall.arguments());
+            }
+        }
+        if (message instanceof ToolResponseMessage toolMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolMessage.getResponses()) {
+                text.append(response.name()).append(StrUtil.nullToEmpty(response.responseData()));
+            }
+        }
+        return text.toString();
+    }
+
+    public int getTokenBudget() {
+        return tokenBudget;
+    }
+}
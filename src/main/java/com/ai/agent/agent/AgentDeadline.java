@@ -0,0 +1,134 @@
+package com.ai.agent.agent;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 单次运行的截止时间
+ * <p>
+ * 由 {@link AgentLatencyBudget#start()} 创建。每一步开始时确定单步截止时间（不晚于整次运行的截止时间），
+ * 单次模型调用和工具调用的超时时间取配置上限与剩余时间中的较小值；
+ * 剩余时间不足预留的总结时间时，运行应跳过剩余步骤直接总结。
+ */
+@Slf4j
+public class AgentDeadline {
+
+    // 任何调用至少给这么长时间，避免预算用尽后的总结调用立即超时
+    private static final long MIN_CALL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final AgentLatencyBudget budget;
+
+    private final long startedAt;
+
+    private final long runDeadline;
+
+    private long stepStartedAt;
+
+    private long stepDeadline;
+
+    private boolean finished;
+
+    AgentDeadline(AgentLatencyBudget budget, long startedAt) {
+        this.budget = budget;
+        this.startedAt = startedAt;
+        this.runDeadline = startedAt + budget.getRunBudget().toNanos();
+        this.stepDeadline = runDeadline;
+    }
+
+    /**
+     * 开始新的一步
+     */
+    public synchronized void startStep() {
+        stepStartedAt = System.nanoTime();
+        stepDeadline = Math.min(runDeadline, stepStartedAt + budget.getStepBudget().toNanos());
+    }
+
+    /**
+     * 结束当前步，超出单步预算时计入统计
+     */
+    public synchronized void finishStep(int stepNumber) {
+        long elapsed = System.nanoTime() - stepStartedAt;
+        if (elapsed > budget.getStepBudget().toNanos()) {
+            budget.recordStepOverrun();
+            log.warn("第 {} 步耗时 {}ms，超出单步预算 {}s", stepNumber,
+                    TimeUnit.NANOSECONDS.toMillis(elapsed), budget.getStepBudget().toSeconds());
+        }
+        stepDeadline = runDeadline;
+    }
+
+    /**
+     * 剩余时间不足预留的总结时间，应直接总结并结束
+     */
+    public boolean shouldWrapUp() {
+        return remainingNanos(runDeadline) < budget.getWrapUpReserve().toNanos();
+    }
+
+    /**
+     * 记录一次因预算将尽而提前总结
+     */
+    public void recordWrapUp(int stepNumber) {
+        budget.recordWrapUp();
+        log.warn("第 {} 步前剩余时间 {}ms，不足预留的总结时间，跳过剩余步骤直接总结",
+                stepNumber, TimeUnit.NANOSECONDS.toMillis(remainingNanos(runDeadline)));
+    }
+
+    /**
+     * 本次模型调用的超时时间
+     */
+    public Duration llmCallTimeout() {
+        return callTimeout(budget.getLlmCallTimeout());
+    }
+
+    /**
+     * 本次工具调用的超时时间
+     */
+    public Duration toolCallTimeout() {
+        return callTimeout(budget.getToolCallTimeout());
+    }
+
+    private synchronized Duration callTimeout(Duration limit) {
+        long nanos = Math.min(limit.toNanos(), remainingNanos(stepDeadline));
+        return Duration.ofNanos(Math.max(MIN_CALL_NANOS, nanos));
+    }
+
+    /**
+     * 为模型流设置总超时：超时后以 TimeoutException 结束并计入统计
+     *
+     * @param flux    模型流
+     * @param timeout 整个流（而不是相邻两个元素之间）的超时时间
+     */
+    public <T> Flux<T> bound(Flux<T> flux, Duration timeout) {
+        long callDeadline = System.nanoTime() + timeout.toNanos();
+        return flux
+                .timeout(Mono.delay(timeout),
+                        item -> Mono.delay(Duration.ofNanos(remainingNanos(callDeadline))))
+                .doOnError(TimeoutException.class, e -> {
+                    budget.recordLlmTimeout();
+                    log.warn("模型调用超过 {}ms 未完成，已取消", timeout.toMillis());
+                });
+    }
+
+    /**
+     * 结束本次运行的计时（重复调用只记录一次）
+     */
+    public synchronized void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        budget.recordRun(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+    }
+
+    public long getRemainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(remainingNanos(runDeadline));
+    }
+
+    private static long remainingNanos(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+}
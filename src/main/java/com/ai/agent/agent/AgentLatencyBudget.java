@@ -0,0 +1,121 @@
+package com.ai.agent.agent;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Agent 延迟预算
+ * <p>
+ * 定义整次运行、单步、单次模型调用、单次工具调用的时间上限，为每次运行创建 {@link AgentDeadline}，
+ * 并统计预算超支情况（提前总结、模型调用超时、单步超时、整次运行超时）。
+ */
+@Component
+public class AgentLatencyBudget {
+
+    private final Duration runBudget;
+
+    private final Duration stepBudget;
+
+    private final Duration llmCallTimeout;
+
+    private final Duration toolCallTimeout;
+
+    private final Duration wrapUpReserve;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong totalRunMillis = new AtomicLong();
+    private final AtomicLong maxRunMillis = new AtomicLong();
+    private final AtomicLong runOverruns = new AtomicLong();
+    private final AtomicLong stepOverruns = new AtomicLong();
+    private final AtomicLong llmTimeouts = new AtomicLong();
+    private final AtomicLong wrapUps = new AtomicLong();
+
+    public AgentLatencyBudget(@Value("${agent.deadline.run-budget:240s}") Duration runBudget,
+                              @Value("${agent.deadline.step-budget:90s}") Duration stepBudget,
+                              @Value("${agent.deadline.llm-call-timeout:60s}") Duration llmCallTimeout,
+                              @Value("${agent.deadline.tool-call-timeout:45s}") Duration toolCallTimeout,
+                              @Value("${agent.deadline.wrap-up-reserve:30s}") Duration wrapUpReserve) {
+        if (wrapUpReserve.compareTo(runBudget) >= 0) {
+            throw new IllegalArgumentException("wrapUpReserve must be shorter than runBudget");
+        }
+        this.runBudget = runBudget;
+        this.stepBudget = stepBudget;
+        this.llmCallTimeout = llmCallTimeout;
+        this.toolCallTimeout = toolCallTimeout;
+        this.wrapUpReserve = wrapUpReserve;
+    }
+
+    /**
+     * 开始一次运行的计时
+     */
+    public AgentDeadline start() {
+        return new AgentDeadline(this, System.nanoTime());
+    }
+
+    void recordRun(long elapsedMillis) {
+        runs.incrementAndGet();
+        totalRunMillis.addAndGet(elapsedMillis);
+        maxRunMillis.accumulateAndGet(elapsedMillis, Math::max);
+        if (elapsedMillis > runBudget.toMillis()) {
+            runOverruns.incrementAndGet();
+        }
+    }
+
+    void recordStepOverrun() {
+        stepOverruns.incrementAndGet();
+    }
+
+    void recordLlmTimeout() {
+        llmTimeouts.incrementAndGet();
+    }
+
+    void recordWrapUp() {
+        wrapUps.incrementAndGet();
+    }
+
+    public Duration getRunBudget() {
+        return runBudget;
+    }
+
+    public Duration getStepBudget() {
+        return stepBudget;
+    }
+
+    public Duration getLlmCallTimeout() {
+        return llmCallTimeout;
+    }
+
+    public Duration getToolCallTimeout() {
+        return toolCallTimeout;
+    }
+
+    public Duration getWrapUpReserve() {
+        return wrapUpReserve;
+    }
+
+    /**
+     * 延迟预算统计
+     *
+     * @param runBudgetSeconds 整次运行预算
+     * @param runs             累计结束的运行数
+     * @param avgRunMillis     平均运行耗时
+     * @param maxRunMillis     最大运行耗时
+     * @param runOverruns      超出整次运行预算的运行数
+     * @param stepOverruns     超出单步预算的步数
+     * @param llmTimeouts      模型调用超时次数
+     * @param wrapUps          因预算将尽而提前总结的运行数
+     */
+    public record Stats(long runBudgetSeconds, long runs, long avgRunMillis, long maxRunMillis,
+                        long runOverruns, long stepOverruns, long llmTimeouts, long wrapUps) {
+    }
+
+    public Stats getStats() {
+        long finished = runs.get();
+        return new Stats(runBudget.toSeconds(), finished,
+                finished == 0 ? 0 : totalRunMillis.get() / finished, maxRunMillis.get(),
+                runOverruns.get(), stepOverruns.get(), llmTimeouts.get(), wrapUps.get());
+    }
+}
@@ -0,0 +1,81 @@
+package com.ai.agent.agent;
+
+import com.ai.agent.agent.model.PolishMode;
+import com.ai.agent.llm.ModelRouter;
+import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import lombok.Builder;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 不可变的 Agent 原型
+ * <p>
+ * 启动时构建一次，包含所有请求共享且不会变化的部分：ChatClient、冻结的工具表、
+ * 已带上工具定义的模型选项、工具执行器和提示词。每次请求只需基于原型创建轻量的 {@link ToolCallAgent}。
+ *
+ * @param name                    Agent 名称
+ * @param systemPrompt            系统提示词
+ * @param nextStepPrompt          下一步提示词
+ * @param maxSteps                最大步数
+ * @param chatClient              共享的 ChatClient
+ * @param polishChatClient        润色工具结果使用的 ChatClient（相同输入复用缓存的响应）
+ * @param summaryChatClient       生成最终总结使用的 ChatClient（相同输入复用缓存的响应）
+ * @param tools                   冻结的工具数组
+ * @param toolsByName             按名称索引的工具表
+ * @param chatOptions             禁用内置工具执行、已带上全部工具的模型选项
+ * @param toolExecutor            共享的并行工具执行器
+ * @param runScheduler            运行调度器
+ * @param latencyBudget           延迟预算
+ * @param modelRouter             模型路由
+ * @param polishMode              工具结果润色模式
+ * @param contextTokenBudget      每次思考的提示词 token 预算
+ * @param compressedResponseChars 压缩后每个工具响应保留的字符数
+ * @param resultMergeChars        最终结果小片段合并的字符数，不大于 0 时不合并
+ */
+@Builder
+public record AgentPrototype(String name,
+                             String systemPrompt,
+                             String nextStepPrompt,
+                             int maxSteps,
+                             ChatClient chatClient,
+                             ChatClient polishChatClient,
+                             ChatClient summaryChatClient,
+                             ToolCallback[] tools,
+                             Map<String, ToolCallback> toolsByName,
+                             ChatOptions chatOptions,
+                             ParallelToolExecutor toolExecutor,
+                             AgentRunScheduler runScheduler,
+                             AgentLatencyBudget latencyBudget,
+                             ModelRouter modelRouter,
+                             PolishMode polishMode,
+                             int contextTokenBudget,
+                             int compressedResponseChars,
+                             int resultMergeChars) {
+
+    /**
+     * 按名称索引工具（保持注册顺序）
+     */
+    public static Map<String, ToolCallback> indexTools(ToolCallback[] tools) {
+        Map<String, ToolCallback> toolsByName = new LinkedHashMap<>();
+        for (ToolCallback tool : tools) {
+            toolsByName.put(tool.getToolDefinition().name(), tool);
+        }
+        return Collections.unmodifiableMap(toolsByName);
+    }
+
+    /**
+     * 构建禁用 Spring AI 内置工具执行、并带上全部工具的模型选项
+     */
+    public static ChatOptions toolCallingOptions(ToolCallback[] tools) {
+        return DashScopeChatOptions.builder()
+                .withInternalToolExecutionEnabled(false)
+                .withToolCallbacks(List.of(tools))
+                .build();
+    }
+}
@@ -0,0 +1,285 @@
+package com.ai.agent.agent;
+
+import com.ai.agent.agent.model.AgentRunPriority;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Agent 运行调度器（带准入控制）
+ * <p>
+ * 使用独立的线程池执行 Agent 运行，避免阻塞式的 LLM / HTTP 调用占满公共 ForkJoinPool。
+ * 限制最大并发运行数和等待队列长度，队列按优先级排序（交互式优先于批处理，同优先级先进先出），
+ * 队列已满时拒绝提交，由调用方快速返回"繁忙"。
+ * <p>
+ * 并发数由运行槽位控制：有空闲槽位时取出队首的运行启动，运行结束时释放槽位并启动下一个。
+ * 阻塞式运行（{@link #submit}）启动时交给线程池执行；响应式运行（{@link #submitReactive}）启动时只是放行其事件流，
+ * 运行期间不占用线程池的线程。两种运行共用同一组槽位和等待队列，合计不超过并发上限。
+ */
+@Component
+@Slf4j
+public class AgentRunScheduler {
+
+    private final int maxConcurrentRuns;
+
+    private final int maxQueueSize;
+
+    // 阻塞式运行的执行线程（运行数受槽位限制，不会超过线程数）
+    private final ThreadPoolExecutor executor;
+
+    // 等待槽位的运行，按优先级、提交顺序排序；启动运行和释放槽位时持有该队列的锁
+    private final PriorityBlockingQueue<PendingRun> pending = new PriorityBlockingQueue<>();
+
+    // 已提交但未结束的运行数（等待中 + 运行中）
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong savedLlmCalls = new AtomicLong();
+    private final AtomicLong savedMillis = new AtomicLong();
+
+    public AgentRunScheduler(@Value("${agent.scheduler.max-concurrent-runs:8}") int maxConcurrentRuns,
+                             @Value("${agent.scheduler.max-queue-size:32}") int maxQueueSize) {
+        if (maxConcurrentRuns < 1 || maxQueueSize < 0) {
+            throw new IllegalArgumentException("maxConcurrentRuns must be at least 1 and maxQueueSize must not be negative");
+        }
+        this.maxConcurrentRuns = maxConcurrentRuns;
+        this.maxQueueSize = maxQueueSize;
+        this.executor = new ThreadPoolExecutor(maxConcurrentRuns, maxConcurrentRuns,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                Thread.ofPlatform().name("agent-run-", 0).daemon(true).factory());
+    }
+
+    /**
+     * 提交一次 Agent 运行
+     *
+     * @param priority 运行优先级
+     * @param task     运行任务
+     * @return 是否被接受；并发数和等待队列都已满时返回 false
+     */
+    public boolean submit(AgentRunPriority priority, Runnable task) {
+        if (!admit()) {
+            return false;
+        }
+        enqueue(new PendingRun(priority, sequence.getAndIncrement(), System.nanoTime(), run ->
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        release(run);
+                    }
+                })));
+        return true;
+    }
+
+    /**
+     * 提交一次响应式 Agent 运行，排队、准入控制和优先级与 {@link #submit} 相同
+     * <p>
+     * 获得运行槽位后才在 boundedElastic 上订阅 run 返回的事件流（创建智能体等阻塞的准备工作可以放在 run 中），
+     * 事件流完成、出错或被取消时释放槽位。等待槽位和运行期间都不占用线程池的线程；排队期间取消订阅时直接移出队列。
+     *
+     * @param priority 运行优先级
+     * @param run      运行的事件流
+     * @return 事件流；并发数和等待队列都已满时以 {@link RejectedExecutionException} 结束
+     */
+    public <T> Flux<T> submitReactive(AgentRunPriority priority, Supplier<Flux<T>> run) {
+        return Flux.defer(() -> {
+            if (!admit()) {
+                return Flux.error(new RejectedExecutionException("Agent 调度队列已满"));
+            }
+            Sinks.Empty<Void> admitted = Sinks.empty();
+            PendingRun pendingRun = new PendingRun(priority, sequence.getAndIncrement(), System.nanoTime(),
+                    started -> admitted.tryEmitEmpty());
+            enqueue(pendingRun);
+            return admitted.asMono()
+                    .publishOn(Schedulers.boundedElastic())
+                    .thenMany(Flux.defer(run))
+                    .doFinally(signal -> {
+                        if (pending.remove(pendingRun)) {
+                            // 还在排队，没有占用槽位
+                            inFlight.decrementAndGet();
+                            completed.incrementAndGet();
+                        } else {
+                            release(pendingRun);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 准入控制：等待中 + 运行中的数量不能超过并发上限 + 队列上限
+     */
+    private boolean admit() {
+        int capacity = maxConcurrentRuns + maxQueueSize;
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= capacity) {
+                rejected.incrementAndGet();
+                log.warn("Agent 调度队列已满（运行中 {}，等待中 {}），拒绝新的运行", running.get(), getQueueDepth());
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        submitted.incrementAndGet();
+        return true;
+    }
+
+    private void enqueue(PendingRun run) {
+        pending.add(run);
+        dispatch();
+    }
+
+    /**
+     * 释放运行占用的槽位并启动下一个等待中的运行（同一运行只释放一次）
+     */
+    private void release(PendingRun run) {
+        if (!run.released.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (pending) {
+            running.decrementAndGet();
+        }
+        inFlight.decrementAndGet();
+        completed.incrementAndGet();
+        dispatch();
+    }
+
+    /**
+     * 有空闲槽位时按优先级启动等待中的运行；启动动作在锁外执行
+     */
+    private void dispatch() {
+        List<PendingRun> toStart = new ArrayList<>();
+        synchronized (pending) {
+            while (running.get() < maxConcurrentRuns) {
+                PendingRun next = pending.poll();
+                if (next == null) {
+                    break;
+                }
+                running.incrementAndGet();
+                toStart.add(next);
+            }
+        }
+        for (PendingRun run : toStart) {
+            long waitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - run.enqueuedAt);
+            totalWaitMillis.addAndGet(waitMillis);
+            maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+            try {
+                run.starter.accept(run);
+            } catch (RejectedExecutionException e) {
+                // 调度器已关闭
+                release(run);
+            }
+        }
+    }
+
+    /**
+     * 线程池中正在执行阻塞式运行的线程数
+     */
+    int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * 记录一次因客户端断开而取消的运行
+     *
+     * @param savedLlmCalls 估算节省的模型调用次数
+     * @param savedMillis   估算节省的运行时间
+     */
+    public void recordCancellation(long savedLlmCalls, long savedMillis) {
+        this.cancelled.incrementAndGet();
+        this.savedLlmCalls.addAndGet(savedLlmCalls);
+        this.savedMillis.addAndGet(savedMillis);
+    }
+
+    /**
+     * 当前等待队列深度
+     */
+    public int getQueueDepth() {
+        return Math.max(0, inFlight.get() - running.get());
+    }
+
+    /**
+     * 调度统计
+     *
+     * @param maxConcurrentRuns 最大并发运行数
+     * @param maxQueueSize      等待队列上限
+     * @param running           运行中的数量
+     * @param queued            等待中的数量
+     * @param submitted         累计接受的运行数
+     * @param rejected          累计拒绝的运行数
+     * @param completed         累计结束的运行数
+     * @param avgWaitMillis     平均排队等待时间
+     * @param maxWaitMillis     最大排队等待时间
+     * @param cancelled         累计取消的运行数
+     * @param savedLlmCalls     取消累计节省的模型调用次数（估算）
+     * @param savedSeconds      取消累计节省的运行时间（估算）
+     */
+    public record Stats(int maxConcurrentRuns, int maxQueueSize, int running, int queued,
+                        long submitted, long rejected, long completed,
+                        long avgWaitMillis, long maxWaitMillis,
+                        long cancelled, long savedLlmCalls, long savedSeconds) {
+    }
+
+    public Stats getStats() {
+        long started = completed.get() + running.get();
+        return new Stats(maxConcurrentRuns, maxQueueSize, running.get(), getQueueDepth(),
+                submitted.get(), rejected.get(), completed.get(),
+                started == 0 ? 0 : totalWaitMillis.get() / started, maxWaitMillis.get(),
+                cancelled.get(), savedLlmCalls.get(), savedMillis.get() / 1000);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 等待槽位的运行，按优先级、提交顺序排序
+     */
+    private static final class PendingRun implements Comparable<PendingRun> {
+
+        private final AgentRunPriority priority;
+        private final long sequence;
+        private final long enqueuedAt;
+        // 获得槽位后启动运行
+        private final Consumer<PendingRun> starter;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private PendingRun(AgentRunPriority priority, long sequence, long enqueuedAt, Consumer<PendingRun> starter) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.enqueuedAt = enqueuedAt;
+            this.starter = starter;
+        }
+
+        @Override
+        public int compareTo(PendingRun other) {
+            int byPriority = Integer.compare(priority.ordinal(), other.priority.ordinal());
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
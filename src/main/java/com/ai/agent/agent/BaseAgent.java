@@ -1,6 +1,7 @@
 package com.ai.agent.agent;
 
 import cn.hutool.core.util.StrUtil;
+import com.ai.agent.agent.model.AgentRunPriority;
 import com.ai.agent.agent.model.AgentState;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
@@ -13,6 +14,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 抽象基础代理类，用于管理代理状态和执行流程。
@@ -44,6 +49,39 @@ public abstract class BaseAgent {
     // Memory 记忆（需要自主维护会话上下文）
     private List<Message> messageList = new ArrayList<>();
 
+    // 运行调度器（流式运行时使用，限制并发运行数和等待队列）
+    private AgentRunScheduler runScheduler;
+    private AgentRunPriority runPriority = AgentRunPriority.INTERACTIVE;
+
+    // 最终结果的流式输出器（仅流式运行时存在，子类在生成最终结果时直接写入 token）
+    private FinalResultStreamer resultStreamer;
+
+    // 当前流式运行的 SSE 发送器（仅流式运行时存在）
+    private SseEmitter sseEmitter;
+
+    // SSE 事件编码器（复用缓冲区，单次遍历转义）
+    private final SseEventEncoder eventEncoder = new SseEventEncoder();
+
+    // 最终结果小片段合并的字符数，不大于 0 时不合并
+    private int resultMergeChars;
+
+    // 延迟预算（流式运行时按预算为每次运行设置截止时间）
+    private AgentLatencyBudget latencyBudget;
+
+    // 本次运行的截止时间（仅流式运行且配置了延迟预算时存在）
+    private AgentDeadline deadline;
+
+    // 取消标记（客户端断开、超时时设置，循环在每一步前检查）
+    private volatile boolean cancelled;
+
+    // 执行本次运行的线程，取消时中断其阻塞调用
+    private Thread runThread;
+
+    // SSE 心跳，用于尽早发现客户端断开（写入失败即取消）
+    private static final ScheduledExecutorService HEARTBEAT_EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("agent-heartbeat").daemon(true).factory());
+    private static final long HEARTBEAT_INTERVAL_SECONDS = 5;
+
     /**
      * 运行代理
      *
@@ -101,7 +139,7 @@ public abstract class BaseAgent {
         // 创建一个超时时间较长的 SseEmitter
         SseEmitter sseEmitter = new SseEmitter(300000L); // 5 分钟超时
         // 使用线程异步处理，避免阻塞主线程
-        CompletableFuture.runAsync(() -> {
+        Runnable agentRun = () -> {
             // 1、基础校验
             try {
                 if (this.state != AgentState.IDLE) {
@@ -117,16 +155,41 @@ public abstract class BaseAgent {
             } catch (Exception e) {
                 sseEmitter.completeWithError(e);
             }
+            // 排队期间客户端已断开，直接释放调度槽位
+            if (cancelled) {
+                log.info("客户端已断开，跳过排队中的运行");
+                state = AgentState.CANCELLED;
+                if (runScheduler != null) {
+                    runScheduler.recordCancellation(maxSteps + 1L, 0);
+                }
+                return;
+            }
             // 2、执行，更改状态
             this.state = AgentState.RUNNING;
+            bindRunThread(Thread.currentThread());
+            ScheduledFuture<?> heartbeat = HEARTBEAT_EXECUTOR.scheduleAtFixedRate(
+                    () -> sendHeartbeat(sseEmitter), HEARTBEAT_INTERVAL_SECONDS, HEARTBEAT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+            long runStartedAt = System.nanoTime();
+            this.deadline = latencyBudget != null ? latencyBudget.start() : null;
+            this.sseEmitter = sseEmitter;
+            this.resultStreamer = new FinalResultStreamer(sseEmitter, eventEncoder, resultMergeChars);
             // 记录消息上下文
             messageList.add(new UserMessage(userPrompt));
             // 保存结果列表
             List<String> results = new ArrayList<>();
+            boolean wrappedUp = false;
             try {
-                // 执行循环
-                for (int i = 0; i < maxSteps && state != AgentState.FINISHED; i++) {
+                // 执行循环（取消后不再执行剩余步骤）
+                for (int i = 0; i < maxSteps && state != AgentState.FINISHED && !cancelled; i++) {
                     int stepNumber = i + 1;
+                    // 剩余时间不足以再执行一步并总结，直接进入总结
+                    if (deadline != null && deadline.shouldWrapUp()) {
+                        deadline.recordWrapUp(stepNumber);
+                        wrappedUp = true;
+                        state = AgentState.FINISHED;
+                        sseEmitter.send(eventEncoder.terminate("接近运行时间上限，直接总结已有结果"));
+                        break;
+                    }
                     currentStep = stepNumber;
                     log.info("Executing step {}/{}", stepNumber, maxSteps);
 
@@ -145,44 +208,53 @@ public abstract class BaseAgent {
                     }
 
                     // 单步执行
+                    if (deadline != null) {
+                        deadline.startStep();
+                    }
                     String stepResult = step();
+                    if (deadline != null) {
+                        deadline.finishStep(stepNumber);
+                    }
                     String result = "Step " + stepNumber + ": " + stepResult;
                     results.add(result);
 
-                    // 检查状态，如果已经 FINISHED，跳出循环，不再发送消息
-                    if (state == AgentState.FINISHED) {
+                    // 检查状态，如果已经 FINISHED 或已取消，跳出循环，不再发送消息
+                    if (state == AgentState.FINISHED || cancelled) {
                         break;
                     }
 
                     // 输出当前每一步的结果到 SSE（JSON格式）
-                    String jsonMessage = String.format("{\"type\":\"thinking\",\"step\":%d,\"content\":\"%s\"}",
-                        stepNumber, escapeJson(stepResult));
-                    sseEmitter.send(jsonMessage);
+                    sseEmitter.send(eventEncoder.thinking(stepNumber, stepResult));
+                }
+                if (cancelled) {
+                    recordCancellation(runStartedAt);
+                    sseEmitter.complete();
+                    return;
                 }
                 // 检查是否超出步骤限制
-                if (currentStep >= maxSteps) {
+                if (currentStep >= maxSteps && !wrappedUp) {
                     state = AgentState.FINISHED;
                     results.add("Terminated: Reached max steps (" + maxSteps + ")");
-                    String terminateMessage = String.format("{\"type\":\"terminate\",\"reason\":\"达到最大步骤（%d）\"}", maxSteps);
-                    sseEmitter.send(terminateMessage);
+                    sseEmitter.send(eventEncoder.terminate("达到最大步骤（" + maxSteps + "）"));
                 }
-                // 发送最终结果（流式）
+                // 发送最终结果（子类生成最终结果时会把模型的 token 直接流式写入 resultStreamer）
                 String finalResultMessage = getFinalResult();
-                if (StrUtil.isNotBlank(finalResultMessage)) {
-                    // 发送开始标记
-                    sseEmitter.send("{\"type\":\"result_start\"}");
-
-                    // 流式输出最终结果
+                if (!resultStreamer.isStarted()) {
+                    // 最终结果没有经过流式生成（如直接取历史消息），一次性发送
                     streamFinalResult(finalResultMessage, sseEmitter);
-
-                    // 发送结束标记
-                    sseEmitter.send("{\"type\":\"result_end\"}");
                 }
+                resultStreamer.end();
                 // 发送流结束标记（前端依赖这个标记来判断流是否结束）
                 sseEmitter.send("[DONE]");
                 // 正常完成
                 sseEmitter.complete();
             } catch (Exception e) {
+                if (cancelled) {
+                    // 取消导致的中断或写入失败，客户端已经不在，无需回复
+                    recordCancellation(runStartedAt);
+                    sseEmitter.complete();
+                    return;
+                }
                 state = AgentState.ERROR;
                 log.error("error executing agent", e);
                 try {
@@ -193,28 +265,124 @@ public abstract class BaseAgent {
                     sseEmitter.completeWithError(ex);
                 }
             } finally {
+                heartbeat.cancel(false);
+                if (deadline != null) {
+                    deadline.finish();
+                }
+                bindRunThread(null);
                 // 3、清理资源
                 this.cleanup();
             }
-        });
+        };
+        if (runScheduler == null) {
+            // 未配置调度器时沿用公共线程池
+            CompletableFuture.runAsync(agentRun);
+        } else if (!runScheduler.submit(runPriority, agentRun)) {
+            // 队列已满，快速返回繁忙
+            sendBusy(sseEmitter);
+        }
 
         // 设置超时回调
         sseEmitter.onTimeout(() -> {
-            this.state = AgentState.ERROR;
-            this.cleanup();
             log.warn("SSE connection timeout");
+            cancel("SSE 连接超时");
         });
-        // 设置完成回调
+        // 设置错误回调
+        sseEmitter.onError(e -> cancel("SSE 连接异常：" + e.getMessage()));
+        // 设置完成回调（正常结束时状态已不是运行中，不会触发取消）
         sseEmitter.onCompletion(() -> {
-            if (this.state == AgentState.RUNNING) {
-                this.state = AgentState.FINISHED;
-            }
-            this.cleanup();
+            cancel("客户端已断开");
             log.info("SSE connection completed");
         });
         return sseEmitter;
     }
 
+    /**
+     * 取消本次运行：设置取消标记并中断正在执行的阻塞调用
+     * <p>
+     * 只对排队中或运行中的运行生效，剩余步骤会被跳过，资源清理仍由运行线程完成。
+     *
+     * @param reason 取消原因
+     */
+    public void cancel(String reason) {
+        synchronized (this) {
+            if (cancelled || (state != AgentState.IDLE && state != AgentState.RUNNING)) {
+                return;
+            }
+            cancelled = true;
+            if (runThread != null) {
+                runThread.interrupt();
+            }
+        }
+        log.info("取消 Agent 运行：{}，当前第 {}/{} 步", reason, currentStep, maxSteps);
+    }
+
+    private synchronized void bindRunThread(Thread thread) {
+        this.runThread = thread;
+        if (thread == null) {
+            // 清除可能残留的中断标记，避免影响调度线程池中的下一次运行
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * 记录取消节省的资源：剩余步骤的模型调用次数，以及按已执行步骤平均耗时估算的时间
+     */
+    private void recordCancellation(long runStartedAt) {
+        state = AgentState.CANCELLED;
+        int executedSteps = Math.max(1, currentStep);
+        int remainingSteps = Math.max(0, maxSteps - currentStep);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - runStartedAt);
+        // 剩余的每一步至少一次思考调用，另加最终总结调用
+        long savedLlmCalls = remainingSteps + 1L;
+        long savedMillis = elapsedMillis / executedSteps * remainingSteps;
+        log.info("Agent 运行已取消，执行了 {} 步，约节省 {} 次模型调用、{} 秒", currentStep, savedLlmCalls, savedMillis / 1000);
+        if (runScheduler != null) {
+            runScheduler.recordCancellation(savedLlmCalls, savedMillis);
+        }
+    }
+
+    /**
+     * 发送 SSE 心跳注释（前端会忽略），写入失败说明客户端已断开
+     */
+    private void sendHeartbeat(SseEmitter sseEmitter) {
+        try {
+            sseEmitter.send(SseEmitter.event().comment("heartbeat"));
+        } catch (Exception e) {
+            cancel("客户端已断开（心跳失败）");
+        }
+    }
+
+    /**
+     * 调度队列已满时，通知客户端稍后重试
+     */
+    private void sendBusy(SseEmitter sseEmitter) {
+        try {
+            sseEmitter.send(eventEncoder.busy("当前请求过多，请稍后重试"));
+            sseEmitter.send("[DONE]");
+            sseEmitter.complete();
+        } catch (IOException e) {
+            sseEmitter.completeWithError(e);
+        }
+    }
+
+    /**
+     * 补发某一步的思考内容（如异步润色完成后），前端按步骤号替换该步内容
+     * <p>
+     * 只在流式运行且仍在运行中时发送，运行结束后的补发直接丢弃。
+     */
+    protected void emitThinking(int stepNumber, String content) {
+        SseEmitter emitter = this.sseEmitter;
+        if (emitter == null || state != AgentState.RUNNING || StrUtil.isBlank(content)) {
+            return;
+        }
+        try {
+            emitter.send(eventEncoder.thinking(stepNumber, content));
+        } catch (Exception e) {
+            log.debug("补发第 {} 步思考内容失败: {}", stepNumber, e.getMessage());
+        }
+    }
+
     /**
      * 定义单个步骤
      *
@@ -246,7 +414,7 @@ public abstract class BaseAgent {
     }
 
     /**
-     * 流式输出最终结果
+     * 输出已生成完毕的最终结果
      *
      * @param content 要输出的内容
      * @param sseEmitter SSE发送器
@@ -255,41 +423,8 @@ public abstract class BaseAgent {
         if (StrUtil.isBlank(content)) {
             return;
         }
-
-        // 按字符逐个发送，模拟打字效果
-        // 为了性能，每次发送多个字符
-        int chunkSize = 3; // 每次发送3个字符
-        for (int i = 0; i < content.length(); i += chunkSize) {
-            int end = Math.min(i + chunkSize, content.length());
-            String chunk = content.substring(i, end);
-            String resultJson = String.format("{\"type\":\"result_chunk\",\"content\":\"%s\"}",
-                escapeJson(chunk));
-            sseEmitter.send(resultJson);
-
-            // 添加小延迟，让打字效果更自然
-            try {
-                Thread.sleep(20); // 20ms 延迟
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            }
-        }
-    }
-
-    /**
-     * 转义JSON字符串中的特殊字符
-     */
-    private String escapeJson(String str) {
-        if (str == null) {
-            return "";
-        }
-        return str.replace("\\", "\\\\")
-                  .replace("\"", "\\\"")
-                  .replace("\n", "\\n")
-                  .replace("\r", "\\r")
-                  .replace("\t", "\\t")
-                  .replace("\b", "\\b")
-                  .replace("\f", "\\f");
+        // 内容已经完整，直接作为一个片段发送，不再模拟打字延迟
+        resultStreamer.append(content);
     }
 
     /**
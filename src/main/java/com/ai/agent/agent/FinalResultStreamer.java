@@ -0,0 +1,151 @@
+package com.ai.agent.agent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 最终结果流式输出器
+ * <p>
+ * 将模型实时生成的 token 直接写成 result_start / result_chunk / result_end 事件，
+ * 并统计首 token 延迟（从最后一次模型调用开始、从运行开始分别计算）。
+ * 已输出的内容后来被确认不是最终结果时（思考时文字之后才出现工具调用），用 {@link #retract()} 撤回。
+ * <p>
+ * 配置了合并字符数时，首个片段立即发送，之后的小片段先攒起来，达到合并字符数再合成一帧发送，减少 SSE 帧数。
+ */
+@Slf4j
+public class FinalResultStreamer {
+
+    private final SseEmitter sseEmitter;
+
+    private final SseEventEncoder encoder;
+
+    // 小片段合并的字符数阈值，不大于 0 时每个片段单独发送
+    private final int mergeChars;
+
+    // 尚未发送的合并片段
+    private final StringBuilder pending = new StringBuilder();
+
+    private final long runStartedAt = System.nanoTime();
+
+    private long callStartedAt = runStartedAt;
+
+    private boolean started;
+
+    private boolean ended;
+
+    private int chunkCount;
+
+    private int charCount;
+
+    private int frameCount;
+
+    public FinalResultStreamer(SseEmitter sseEmitter) {
+        this(sseEmitter, new SseEventEncoder(), 0);
+    }
+
+    public FinalResultStreamer(SseEmitter sseEmitter, SseEventEncoder encoder, int mergeChars) {
+        this.sseEmitter = sseEmitter;
+        this.encoder = encoder;
+        this.mergeChars = mergeChars;
+    }
+
+    /**
+     * 标记一次可能产生最终结果的模型调用开始，用于计算首 token 延迟
+     */
+    public void beginCall() {
+        this.callStartedAt = System.nanoTime();
+    }
+
+    /**
+     * 发送开始标记（重复调用只发送一次）
+     */
+    public void start() throws IOException {
+        if (started) {
+            return;
+        }
+        started = true;
+        sseEmitter.send(encoder.resultStart());
+    }
+
+    /**
+     * 发送一个结果片段
+     */
+    public void append(String chunk) throws IOException {
+        if (chunk == null || chunk.isEmpty()) {
+            return;
+        }
+        start();
+        if (chunkCount == 0) {
+            long now = System.nanoTime();
+            log.info("最终结果首 token 延迟：{}ms（自模型调用开始），{}ms（自运行开始）",
+                    TimeUnit.NANOSECONDS.toMillis(now - callStartedAt),
+                    TimeUnit.NANOSECONDS.toMillis(now - runStartedAt));
+        }
+        chunkCount++;
+        charCount += chunk.length();
+        if (mergeChars <= 0 || chunkCount == 1) {
+            // 首个片段不等待合并，保证首 token 延迟
+            sendChunk(chunk);
+            return;
+        }
+        pending.append(chunk);
+        if (pending.length() >= mergeChars) {
+            flush();
+        }
+    }
+
+    /**
+     * 发送已合并但尚未发送的片段
+     */
+    public void flush() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        sendChunk(pending);
+        pending.setLength(0);
+    }
+
+    private void sendChunk(CharSequence chunk) throws IOException {
+        frameCount++;
+        sseEmitter.send(encoder.resultChunk(chunk));
+    }
+
+    /**
+     * 撤回已输出的结果：发送 result_retract 事件，前端丢弃已显示的结果片段；
+     * 之后的最终结果重新从 result_start 开始，首 token 延迟也重新统计
+     *
+     * @return 是否有内容被撤回
+     */
+    public boolean retract() throws IOException {
+        if (!started || ended) {
+            return false;
+        }
+        pending.setLength(0);
+        started = false;
+        chunkCount = 0;
+        charCount = 0;
+        sseEmitter.send(encoder.resultRetract());
+        return true;
+    }
+
+    /**
+     * 发送结束标记（只有开始过才发送）
+     */
+    public void end() throws IOException {
+        if (!started || ended) {
+            return;
+        }
+        flush();
+        ended = true;
+        sseEmitter.send(encoder.resultEnd());
+        log.info("最终结果流式输出完成，共 {} 个片段（{} 帧），{} 个字符，总耗时 {}ms",
+                chunkCount, frameCount, charCount, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - runStartedAt));
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+}
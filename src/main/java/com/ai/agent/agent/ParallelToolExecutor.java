@@ -0,0 +1,303 @@
+package com.ai.agent.agent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.execution.DefaultToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 并行工具执行器
+ * <p>
+ * 替代 ToolCallingManager 的串行执行：同一步中模型返回的多个工具调用在虚拟线程上并发执行，
+ * 通过信号量限制单步并发数，并为每次调用设置超时（从该调用获得许可、真正开始执行时计时）。
+ * 返回的 ToolResponseMessage 严格保持原始调用顺序，保证对话历史确定。
+ * <p>
+ * 只有白名单中的工具（只读、相互独立，如搜索、抓取网页、读文件）并发执行；其他工具可能有副作用
+ * （写文件、执行命令、下载资源），作为屏障按原始顺序单独执行：等前面的调用全部结束后才开始，结束后才提交后面的调用。
+ */
+@Slf4j
+public class ParallelToolExecutor {
+
+    /**
+     * 默认单步最大并发数
+     */
+    public static final int DEFAULT_MAX_CONCURRENCY = 4;
+
+    /**
+     * 默认单次工具调用超时时间
+     */
+    public static final Duration DEFAULT_CALL_TIMEOUT = Duration.ofSeconds(60);
+
+    /**
+     * 默认可以并发执行的工具（只读、调用之间没有依赖）
+     */
+    public static final Set<String> DEFAULT_PARALLEL_SAFE_TOOLS = Set.of(
+            "searchWeb", "scrapeWebPage", "readFile", "readMarkdown");
+
+    // 所有工具调用共用的虚拟线程执行器（每个任务一个虚拟线程，无需池化）
+    private static final ExecutorService TOOL_EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("agent-tool-", 0).factory());
+
+    private final int maxConcurrency;
+
+    private final Duration callTimeout;
+
+    private final Set<String> parallelSafeTools;
+
+    private final ToolExecutionExceptionProcessor exceptionProcessor = DefaultToolExecutionExceptionProcessor.builder().build();
+
+    // 累计统计：并行实际耗时 vs 串行基线耗时（各工具耗时之和）
+    private final AtomicLong totalSteps = new AtomicLong();
+    private final AtomicLong totalWallMillis = new AtomicLong();
+    private final AtomicLong totalSequentialMillis = new AtomicLong();
+
+    public ParallelToolExecutor() {
+        this(DEFAULT_MAX_CONCURRENCY, DEFAULT_CALL_TIMEOUT, DEFAULT_PARALLEL_SAFE_TOOLS);
+    }
+
+    /**
+     * @param maxConcurrency    单步最大并发数
+     * @param callTimeout       单次工具调用超时时间
+     * @param parallelSafeTools 可以并发执行的工具名，其余工具按顺序单独执行
+     */
+    public ParallelToolExecutor(int maxConcurrency, Duration callTimeout, Set<String> parallelSafeTools) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.callTimeout = callTimeout;
+        this.parallelSafeTools = Set.copyOf(parallelSafeTools);
+    }
+
+    /**
+     * 执行一步中的全部工具调用
+     *
+     * @param prompt       当前的上下文（作为对话历史的前缀）
+     * @param chatResponse 包含工具调用的模型响应
+     * @param toolsByName  按名称索引的可用工具
+     * @return 工具执行结果，conversationHistory 包含助手消息和按调用顺序排列的工具响应
+     */
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse, Map<String, ToolCallback> toolsByName) {
+        return executeToolCalls(prompt, chatResponse, toolsByName, callTimeout);
+    }
+
+    /**
+     * 执行一步中的全部工具调用，使用指定的单次调用超时时间（由运行的剩余时间推导）
+     *
+     * @param prompt       当前的上下文（作为对话历史的前缀）
+     * @param chatResponse 包含工具调用的模型响应
+     * @param toolsByName  按名称索引的可用工具
+     * @param callTimeout  单次工具调用超时时间
+     * @return 工具执行结果，conversationHistory 包含助手消息和按调用顺序排列的工具响应
+     */
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse, Map<String, ToolCallback> toolsByName,
+                                                Duration callTimeout) {
+        Generation generation = chatResponse.getResults().stream()
+                .filter(g -> !g.getOutput().getToolCalls().isEmpty())
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No tool call requested by the chat model"));
+        AssistantMessage assistantMessage = generation.getOutput();
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+
+        // 1、先解析全部工具，存在未知工具时不提交任何调用
+        List<ToolCallback> toolCallbacks = new ArrayList<>(toolCalls.size());
+        boolean returnDirect = true;
+        for (AssistantMessage.ToolCall toolCall : toolCalls) {
+            ToolCallback toolCallback = toolsByName.get(toolCall.name());
+            if (toolCallback == null) {
+                throw new IllegalStateException("No ToolCallback found for tool name: " + toolCall.name());
+            }
+            toolCallbacks.add(toolCallback);
+            returnDirect = returnDirect && toolCallback.getToolMetadata().returnDirect();
+        }
+
+        // 2、提交工具调用，信号量限制并发数，每次调用从获得许可时开始计时；
+        //    不在白名单中的调用等前面的调用全部结束后单独执行，结束后才继续提交
+        Semaphore permits = new Semaphore(maxConcurrency);
+        long[] elapsedMillis = new long[toolCalls.size()];
+        List<Future<String>> futures = new ArrayList<>(toolCalls.size());
+        long stepStart = System.nanoTime();
+        boolean interrupted = false;
+        for (int i = 0; i < toolCalls.size() && !interrupted; i++) {
+            AssistantMessage.ToolCall toolCall = toolCalls.get(i);
+            boolean parallelSafe = parallelSafeTools.contains(toolCall.name());
+            if (!parallelSafe && !awaitAll(futures)) {
+                interrupted = true;
+                break;
+            }
+            ToolCallback toolCallback = toolCallbacks.get(i);
+            int index = i;
+            futures.add(TOOL_EXECUTOR.submit(() -> {
+                permits.acquire();
+                long start = System.nanoTime();
+                try {
+                    return callWithTimeout(toolCallback, toolCall, callTimeout);
+                } finally {
+                    elapsedMillis[index] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    permits.release();
+                }
+            }));
+            interrupted = !parallelSafe && !awaitAll(futures);
+        }
+
+        // 3、按原始顺序收集结果，保证对话历史确定（每个任务自身有超时，排队不会无限等待）；
+        //    被中断时未提交的调用直接返回中断信息
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(toolCalls.size());
+        for (int i = 0; i < toolCalls.size(); i++) {
+            AssistantMessage.ToolCall toolCall = toolCalls.get(i);
+            String result = i < futures.size()
+                    ? awaitResult(toolCall, futures.get(i), futures)
+                    : "Error: tool " + toolCall.name() + " was interrupted";
+            responses.add(new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(), result));
+        }
+        long stepMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stepStart);
+        report(toolCalls, elapsedMillis, stepMillis);
+
+        List<Message> conversationHistory = new ArrayList<>(prompt.copy().getInstructions());
+        conversationHistory.add(assistantMessage);
+        conversationHistory.add(new ToolResponseMessage(responses, Map.of()));
+        return ToolExecutionResult.builder()
+                .conversationHistory(conversationHistory)
+                .returnDirect(returnDirect)
+                .build();
+    }
+
+    private String callTool(ToolCallback toolCallback, AssistantMessage.ToolCall toolCall) {
+        try {
+            return toolCallback.call(toolCall.arguments());
+        } catch (ToolExecutionException e) {
+            return exceptionProcessor.process(e);
+        }
+    }
+
+    /**
+     * 在当前线程（已持有许可）中执行一次工具调用，超过 callTimeout 则取消并返回错误信息
+     */
+    private String callWithTimeout(ToolCallback toolCallback, AssistantMessage.ToolCall toolCall,
+                                   Duration callTimeout) throws Exception {
+        Future<String> call = TOOL_EXECUTOR.submit(() -> callTool(toolCallback, toolCall));
+        try {
+            return call.get(callTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            call.cancel(true);
+            log.warn("工具 {} 执行超时（{} 秒），已取消", toolCall.name(), callTimeout.toSeconds());
+            return "Error: tool " + toolCall.name() + " timed out after " + callTimeout.toSeconds() + " seconds";
+        } catch (InterruptedException e) {
+            call.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 等待已提交的调用全部结束（屏障）
+     *
+     * @return 当前线程被中断时返回 false，此时已取消全部调用并保留中断标记
+     */
+    private static boolean awaitAll(List<Future<String>> futures) {
+        for (Future<String> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException | CancellationException e) {
+                // 失败在收集结果时处理
+            }
+        }
+        return true;
+    }
+
+    private String awaitResult(AssistantMessage.ToolCall toolCall, Future<String> future, List<Future<String>> futures) {
+        try {
+            return future.get();
+        } catch (InterruptedException | CancellationException e) {
+            // 当前线程被中断，取消本步中尚未完成的调用
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            return "Error: tool " + toolCall.name() + " was interrupted";
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            log.warn("工具 {} 执行失败: {}", toolCall.name(), cause.getMessage());
+            return "Error executing tool " + toolCall.name() + ": " + cause.getMessage();
+        }
+    }
+
+    /**
+     * 输出每个工具的耗时，并与串行基线（各工具耗时之和）比较
+     */
+    private void report(List<AssistantMessage.ToolCall> toolCalls, long[] elapsedMillis, long stepMillis) {
+        long sequentialMillis = 0;
+        StringBuilder detail = new StringBuilder();
+        for (int i = 0; i < toolCalls.size(); i++) {
+            sequentialMillis += elapsedMillis[i];
+            detail.append(toolCalls.get(i).name()).append('=').append(elapsedMillis[i]).append("ms ");
+        }
+        totalSteps.incrementAndGet();
+        totalWallMillis.addAndGet(stepMillis);
+        totalSequentialMillis.addAndGet(sequentialMillis);
+        log.info("并行执行 {} 个工具，实际耗时 {}ms，串行基线 {}ms，各工具耗时：{}",
+                toolCalls.size(), stepMillis, sequentialMillis, detail.toString().trim());
+    }
+
+    /**
+     * 累计执行统计
+     *
+     * @param steps            执行过工具的步数
+     * @param wallMillis       并行执行的实际总耗时
+     * @param sequentialMillis 串行执行的基线总耗时
+     */
+    public record Stats(long steps, long wallMillis, long sequentialMillis) {
+
+        public long savedMillis() {
+            return sequentialMillis - wallMillis;
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(totalSteps.get(), totalWallMillis.get(), totalSequentialMillis.get());
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public Duration getCallTimeout() {
+        return callTimeout;
+    }
+
+    public Set<String> getParallelSafeTools() {
+        return parallelSafeTools;
+    }
+}
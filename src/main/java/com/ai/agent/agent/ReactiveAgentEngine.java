@@ -0,0 +1,334 @@
+package com.ai.agent.agent;
+
+import cn.hutool.core.util.StrUtil;
+import com.ai.agent.agent.model.AgentEvent;
+import com.ai.agent.agent.model.AgentState;
+import com.ai.agent.llm.ModelRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 响应式 Agent 引擎（与 {@link BaseAgent#runStream} 并存）
+ * <p>
+ * 把 ReAct 循环组合成一个 {@code Flux<AgentEvent>}：思考通过 ChatClient.stream() 非阻塞完成，
+ * 工具调用放到 boundedElastic 调度器执行，事件按订阅方的请求速度产出（背压一直传到模型流）。
+ * 等待模型响应期间不占用任何线程，客户端断开时取消订阅即可中止模型流和后续步骤。
+ * <p>
+ * 状态（消息列表、当前步骤、思考结果）仍保存在 {@link ToolCallAgent} 中，行动和最终总结复用其逻辑；
+ * 暂不支持 ASYNC_LLM 润色的补发，思考内容始终使用模板描述。
+ */
+@Slf4j
+public class ReactiveAgentEngine {
+
+    private final ToolCallAgent agent;
+
+    // 是否已经开始运行（校验失败时不清理资源，与阻塞引擎一致）
+    private boolean running;
+
+    // 最终结果是否已经开始输出（引擎实例只服务一次运行，信号串行到达，无需同步）
+    private boolean resultStarted;
+
+    public ReactiveAgentEngine(ToolCallAgent agent) {
+        this.agent = agent;
+    }
+
+    /**
+     * 运行代理，返回事件流
+     *
+     * @param userPrompt 用户提示词
+     * @return 事件流，事件内容和顺序与 SseEmitter 方式一致
+     */
+    public Flux<AgentEvent> run(String userPrompt) {
+        return Flux.defer(() -> {
+                    // 1、基础校验
+                    if (agent.getState() != AgentState.IDLE) {
+                        return Flux.just(AgentEvent.error("错误：无法从状态运行代理：" + agent.getState()));
+                    }
+                    if (StrUtil.isBlank(userPrompt)) {
+                        return Flux.just(AgentEvent.error("错误：不能使用空提示词运行代理"));
+                    }
+                    // 2、执行，更改状态
+                    agent.setState(AgentState.RUNNING);
+                    running = true;
+                    if (agent.getLatencyBudget() != null) {
+                        agent.setDeadline(agent.getLatencyBudget().start());
+                    }
+                    agent.getMessageList().add(new UserMessage(userPrompt));
+                    return step(1);
+                })
+                .onErrorResume(e -> {
+                    agent.setState(AgentState.ERROR);
+                    log.error("error executing reactive agent", e);
+                    return Flux.just(AgentEvent.error("执行错误：" + e.getMessage()), AgentEvent.done());
+                })
+                .doOnCancel(() -> {
+                    agent.cancel("客户端已断开");
+                    agent.setState(AgentState.CANCELLED);
+                    log.info("响应式 Agent 运行已取消，执行了 {} 步", agent.getCurrentStep());
+                })
+                // 3、清理资源
+                .doFinally(signal -> {
+                    if (agent.getDeadline() != null) {
+                        agent.getDeadline().finish();
+                    }
+                    if (running) {
+                        agent.cleanup();
+                    }
+                });
+    }
+
+    /**
+     * 执行一步：流式思考，需要行动时执行工具并继续下一步，否则输出最终结果
+     */
+    private Flux<AgentEvent> step(int stepNumber) {
+        if (agent.isCancelled()) {
+            return Flux.empty();
+        }
+        AgentDeadline deadline = agent.getDeadline();
+        if (deadline != null && deadline.shouldWrapUp()) {
+            // 剩余时间不足以再执行一步并总结，直接进入总结
+            deadline.recordWrapUp(stepNumber);
+            agent.setState(AgentState.FINISHED);
+            return Flux.just(AgentEvent.terminate("接近运行时间上限，直接总结已有结果"))
+                    .concatWith(Flux.defer(this::finalResult));
+        }
+        if (deadline != null) {
+            deadline.startStep();
+        }
+        int maxSteps = agent.getMaxSteps();
+        agent.setCurrentStep(stepNumber);
+        log.info("Executing step {}/{}", stepNumber, maxSteps);
+        if (stepNumber == maxSteps - 1) {
+            agent.getMessageList().add(new UserMessage(String.format(
+                    "【重要警告】你现在在第 %d 步，只剩下 1 步了！下一步（第 %d 步）必须是最后一步。" +
+                    "如果你还没有完成任务，请立即：\n" +
+                    "1. 停止继续收集信息\n" +
+                    "2. 基于已有信息总结结果\n" +
+                    "3. 在下一步使用 terminate 工具返回最终答案\n" +
+                    "如果已经完成任务，请立即使用 terminate 工具。",
+                    stepNumber, maxSteps)));
+        }
+        // 首步先按复杂度路由，寒暄和简单问题不走大模型
+        ModelRouter.Route route = agent.routeFirstStep();
+        if (route != ModelRouter.Route.LARGE) {
+            return routedAnswer(stepNumber, route);
+        }
+        return think(stepNumber);
+    }
+
+    /**
+     * 流式调用大模型思考
+     */
+    private Flux<AgentEvent> think(int stepNumber) {
+        agent.setMessageList(agent.getContextManager().prepare(
+                agent.getMessageList(), agent.getSystemPrompt(), agent.getNextStepPrompt(), stepNumber));
+        Prompt prompt = new Prompt(agent.getMessageList(), agent.getChatOptions());
+        ThinkState thinkState = new ThinkState(stepNumber);
+        return withDeadline(agent.getChatClient().prompt(prompt)
+                .system(agent.getSystemPrompt())
+                .stream()
+                .chatResponse())
+                .concatMapIterable(thinkState::accept)
+                .onErrorResume(e -> {
+                    if (agent.isCancelled() || resultStarted) {
+                        return Flux.error(e);
+                    }
+                    // 与阻塞引擎一致：思考失败记入对话历史，继续下一步
+                    log.error(agent.getName() + "的思考过程遇到了问题：" + e.getMessage());
+                    agent.getMessageList().add(new AssistantMessage("处理时遇到了错误：" + e.getMessage()));
+                    thinkState.failed = true;
+                    return Flux.empty();
+                })
+                .concatWith(Flux.defer(() -> afterThink(stepNumber, thinkState)));
+    }
+
+    private Flux<AgentEvent> afterThink(int stepNumber, ThinkState thinkState) {
+        if (thinkState.failed) {
+            return Flux.just(AgentEvent.thinking(stepNumber, "思考完成")).concatWith(nextStep(stepNumber));
+        }
+        String text = thinkState.text.toString();
+        log.info(agent.getName() + "的思考：" + text);
+        AssistantMessage assistantMessage = new AssistantMessage(text, Map.of(), thinkState.toolCalls);
+        if (thinkState.toolCalls.isEmpty()) {
+            // 没有工具调用，回答就是最终结果
+            agent.getMessageList().add(assistantMessage);
+            agent.setThinkResult(text);
+            agent.setState(AgentState.FINISHED);
+            return Flux.fromIterable(thinkState.drain()).concatWith(Flux.defer(this::finalResult));
+        }
+        log.info(agent.getName() + "选择了 " + thinkState.toolCalls.size() + " 个工具来使用");
+        agent.setToolCallChatResponse(new ChatResponse(List.of(new Generation(assistantMessage))));
+        // 工具调用是阻塞的，放到 boundedElastic 上执行
+        return Mono.fromCallable(agent::act)
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> Mono.just("步骤执行失败：" + e.getMessage()))
+                .flatMapMany(summary -> {
+                    if (agent.getState() == AgentState.FINISHED) {
+                        return finalResult();
+                    }
+                    return Flux.just(AgentEvent.thinking(stepNumber, summary)).concatWith(nextStep(stepNumber));
+                });
+    }
+
+    /**
+     * 用固定回复或本地模型直接回答；尚未输出任何内容时失败，改用大模型执行这一步
+     */
+    private Flux<AgentEvent> routedAnswer(int stepNumber, ModelRouter.Route route) {
+        long start = System.nanoTime();
+        StringBuilder answer = new StringBuilder();
+        return resultChunks(withDeadline(agent.routedAnswer(route)).doOnNext(answer::append))
+                .onErrorResume(e -> {
+                    if (agent.isCancelled()) {
+                        return Flux.error(e);
+                    }
+                    if (!resultStarted) {
+                        log.warn("路由到 {} 的回答失败，改用大模型: {}", route, e.getMessage());
+                        return think(stepNumber);
+                    }
+                    log.warn("路由到 {} 的回答中断: {}", route, e.getMessage());
+                    return Flux.empty();
+                })
+                .concatWith(Flux.defer(() -> {
+                    // 回退到大模型时，后续步骤已经结束了运行
+                    if (agent.getState() != AgentState.RUNNING) {
+                        return Flux.empty();
+                    }
+                    agent.finishRoutedAnswer(route, answer.toString(), start);
+                    return finalResult();
+                }));
+    }
+
+    private Flux<AgentEvent> nextStep(int stepNumber) {
+        return Flux.defer(() -> {
+            if (agent.getDeadline() != null) {
+                agent.getDeadline().finishStep(stepNumber);
+            }
+            if (stepNumber < agent.getMaxSteps()) {
+                return step(stepNumber + 1);
+            }
+            agent.setState(AgentState.FINISHED);
+            return Flux.just(AgentEvent.terminate("达到最大步骤（" + agent.getMaxSteps() + "）"))
+                    .concatWith(Flux.defer(this::finalResult));
+        });
+    }
+
+    /**
+     * 输出最终结果：思考时已经流式输出的直接结束，否则直接给出结果或流式生成总结
+     */
+    private Flux<AgentEvent> finalResult() {
+        if (agent.isCancelled()) {
+            return Flux.empty();
+        }
+        Flux<AgentEvent> result;
+        if (resultStarted) {
+            result = Flux.empty();
+        } else {
+            String directResult = agent.directFinalResult();
+            if (directResult != null) {
+                result = StrUtil.isBlank(directResult) ? Flux.empty() : resultChunks(Flux.just(directResult));
+            } else {
+                result = resultChunks(withDeadline(agent.summaryRequest().stream().content()))
+                        .onErrorResume(e -> {
+                            log.warn("生成最终总结失败: " + e.getMessage());
+                            String fallback = agent.lastAssistantResult();
+                            return StrUtil.isBlank(fallback) ? Flux.empty() : resultChunks(Flux.just(fallback));
+                        });
+            }
+        }
+        return result.concatWith(Flux.defer(() -> resultStarted
+                        ? Flux.just(AgentEvent.resultEnd(), AgentEvent.done())
+                        : Flux.just(AgentEvent.done())));
+    }
+
+    private <T> Flux<T> withDeadline(Flux<T> flux) {
+        AgentDeadline deadline = agent.getDeadline();
+        return deadline != null ? deadline.bound(flux, deadline.llmCallTimeout()) : flux;
+    }
+
+    private Flux<AgentEvent> resultChunks(Flux<String> chunks) {
+        return chunks.filter(StrUtil::isNotEmpty)
+                .concatMapIterable(chunk -> {
+                    List<AgentEvent> events = new ArrayList<>(2);
+                    if (!resultStarted) {
+                        resultStarted = true;
+                        events.add(AgentEvent.resultStart());
+                    }
+                    events.add(AgentEvent.resultChunk(chunk));
+                    return events;
+                });
+    }
+
+    /**
+     * 一次流式思考的聚合状态
+     * <p>
+     * 与阻塞引擎相同：文本先暂存，超过暂存长度仍未出现工具调用时作为最终回答开始输出；
+     * 之后才出现工具调用时撤回已输出的结果，这段说明文字改作这一步的思考内容。
+     */
+    private final class ThinkState {
+
+        private final int stepNumber;
+
+        private final StringBuilder text = new StringBuilder();
+
+        private final List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>();
+
+        private int flushed;
+
+        private boolean failed;
+
+        private ThinkState(int stepNumber) {
+            this.stepNumber = stepNumber;
+        }
+
+        private List<AgentEvent> accept(ChatResponse chunk) {
+            if (chunk == null || chunk.getResult() == null || chunk.getResult().getOutput() == null) {
+                return List.of();
+            }
+            AssistantMessage output = chunk.getResult().getOutput();
+            boolean toolCallSeen = !toolCalls.isEmpty();
+            if (output.hasToolCalls()) {
+                toolCalls.addAll(output.getToolCalls());
+            }
+            if (StrUtil.isNotEmpty(output.getText())) {
+                text.append(output.getText());
+            }
+            if (toolCalls.isEmpty()) {
+                return text.length() > ToolCallAgent.RESULT_HOLD_BACK_CHARS ? drain() : List.of();
+            }
+            if (!toolCallSeen && flushed > 0 && resultStarted) {
+                resultStarted = false;
+                return List.of(AgentEvent.resultRetract(), AgentEvent.thinking(stepNumber, text.toString()));
+            }
+            return List.of();
+        }
+
+        /**
+         * 取出尚未输出的文本片段（只在没有工具调用时调用）
+         */
+        private List<AgentEvent> drain() {
+            if (flushed >= text.length()) {
+                return List.of();
+            }
+            String chunk = text.substring(flushed);
+            flushed = text.length();
+            List<AgentEvent> events = new ArrayList<>(2);
+            if (!resultStarted) {
+                resultStarted = true;
+                events.add(AgentEvent.resultStart());
+            }
+            events.add(AgentEvent.resultChunk(chunk));
+            return events;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.ai.agent.agent;
+
+import com.ai.agent.agent.model.AgentEvent;
+
+/**
+ * SSE 事件编码器
+ * <p>
+ * 把 thinking / terminate / result_start / result_chunk / result_retract / result_end / busy 事件编码为 JSON 字符串。
+ * 内容在一次遍历中直接转义写入复用的缓冲区，每个事件只产生最终的一个字符串，
+ * 替代原来 String.format 加多次 String.replace 的拼接方式。
+ * <p>
+ * 转义规则：引号、反斜杠和所有控制字符（U+0000 ~ U+001F）按 JSON 规范转义；
+ * 成对的代理字符（emoji 等非 BMP 字符）原样输出，孤立的代理字符输出为 \\uXXXX，保证结果总是合法的 JSON。
+ * <p>
+ * 一次运行共用一个实例，主循环和异步润色线程都会写入，编码方法加锁。
+ */
+public class SseEventEncoder {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // 缓冲区超过该大小后不再复用，避免一次大结果长期占用内存
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+
+    private StringBuilder buffer = new StringBuilder(256);
+
+    /**
+     * 编码响应式引擎输出的事件
+     */
+    public String encode(AgentEvent event) {
+        return switch (event.type()) {
+            case THINKING -> thinking(event.step(), event.content());
+            case TERMINATE -> terminate(event.content());
+            case RESULT_START -> resultStart();
+            case RESULT_CHUNK -> resultChunk(event.content());
+            case RESULT_RETRACT -> resultRetract();
+            case RESULT_END -> resultEnd();
+            case BUSY -> busy(event.content());
+            case ERROR -> event.content();
+            case DONE -> "[DONE]";
+        };
+    }
+
+    public synchronized String thinking(int stepNumber, String content) {
+        StringBuilder out = begin();
+        out.append("{\"type\":\"thinking\",\"step\":").append(stepNumber).append(",\"content\":\"");
+        escape(content, out);
+        out.append("\"}");
+        return finish(out);
+    }
+
+    public synchronized String terminate(String reason) {
+        StringBuilder out = begin();
+        out.append("{\"type\":\"terminate\",\"reason\":\"");
+        escape(reason, out);
+        out.append("\"}");
+        return finish(out);
+    }
+
+    public synchronized String busy(String reason) {
+        StringBuilder out = begin();
+        out.append("{\"type\":\"busy\",\"reason\":\"");
+        escape(reason, out);
+        out.append("\"}");
+        return finish(out);
+    }
+
+    public String resultStart() {
+        return "{\"type\":\"result_start\"}";
+    }
+
+    public synchronized String resultChunk(CharSequence content) {
+        StringBuilder out = begin();
+        out.append("{\"type\":\"result_chunk\",\"content\":\"");
+        escape(content, out);
+        out.append("\"}");
+        return finish(out);
+    }
+
+    public String resultRetract() {
+        return "{\"type\":\"result_retract\"}";
+    }
+
+    public String resultEnd() {
+        return "{\"type\":\"result_end\"}";
+    }
+
+    private StringBuilder begin() {
+        buffer.setLength(0);
+        return buffer;
+    }
+
+    private String finish(StringBuilder out) {
+        String event = out.toString();
+        if (out.capacity() > MAX_RETAINED_CAPACITY) {
+            buffer = new StringBuilder(256);
+        }
+        return event;
+    }
+
+    /**
+     * 单次遍历转义 JSON 字符串内容，连续的无需转义字符整段追加
+     *
+     * @param value 原始内容（null 视为空字符串）
+     * @param out   输出缓冲区
+     */
+    static void escape(CharSequence value, StringBuilder out) {
+        if (value == null) {
+            return;
+        }
+        int length = value.length();
+        int runStart = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String replacement;
+            if (c == '"') {
+                replacement = "\\\"";
+            } else if (c == '\\') {
+                replacement = "\\\\";
+            } else if (c < 0x20) {
+                replacement = switch (c) {
+                    case '\n' -> "\\n";
+                    case '\r' -> "\\r";
+                    case '\t' -> "\\t";
+                    case '\b' -> "\\b";
+                    case '\f' -> "\\f";
+                    default -> null;
+                };
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    // 完整的代理对，原样保留
+                    i++;
+                    continue;
+                }
+                replacement = null;
+            } else {
+                continue;
+            }
+            out.append(value, runStart, i);
+            if (replacement != null) {
+                out.append(replacement);
+            } else {
+                appendUnicodeEscape(c, out);
+            }
+            runStart = i + 1;
+        }
+        out.append(value, runStart, length);
+    }
+
+    private static void appendUnicodeEscape(char c, StringBuilder out) {
+        out.append("\\u")
+                .append(HEX[(c >> 12) & 0xF])
+                .append(HEX[(c >> 8) & 0xF])
+                .append(HEX[(c >> 4) & 0xF])
+                .append(HEX[c & 0xF]);
+    }
+}
@@ -2,24 +2,33 @@ package com.ai.agent.agent;
 
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.util.StrUtil;
-import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
 import com.ai.agent.agent.model.AgentState;
+import com.ai.agent.agent.model.PolishMode;
+import com.ai.agent.llm.ModelRouter;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.ToolResponseMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.model.tool.ToolExecutionResult;
 import org.springframework.ai.tool.ToolCallback;
+import reactor.core.publisher.Flux;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -33,26 +42,75 @@ public class ToolCallAgent extends ReActAgent {
     // 可用的工具
     private final ToolCallback[] availableTools;
 
+    // 按名称索引的工具表
+    private final Map<String, ToolCallback> toolsByName;
+
     // 保存工具调用信息的响应结果（要调用那些工具）
     private ChatResponse toolCallChatResponse;
 
     // 保存思考结果（当不需要调用工具时，直接返回 AI 的回答）
     private String thinkResult;
 
-    // 工具调用管理者
-    private final ToolCallingManager toolCallingManager;
+    // 流式思考时暂存的字符数，超过后仍无工具调用即按最终回答开始输出
+    static final int RESULT_HOLD_BACK_CHARS = 64;
+
+    // 路由到本地模型时携带的最近消息数
+    private static final int LOCAL_HISTORY_MESSAGES = 6;
+
+    // 异步润色使用的虚拟线程执行器
+    private static final ExecutorService POLISH_EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("agent-polish-", 0).factory());
+
+    // 工具结果润色模式（默认模板描述，不额外调用大模型）
+    private PolishMode polishMode = PolishMode.TEMPLATE;
+
+    // 上下文管理器（控制每次思考的提示词 token 数）
+    private AgentContextManager contextManager = new AgentContextManager();
 
-    // 禁用 Spring AI 内置的工具调用机制，自己维护选项和消息上下文
+    // 工具执行器（同一步中的多个工具调用并行执行）
+    private ParallelToolExecutor toolExecutor;
+
+    // 润色和总结使用的 ChatClient（带响应缓存）
+    private ChatClient polishChatClient;
+
+    private ChatClient summaryChatClient;
+
+    // 模型路由（首步按复杂度把寒暄、简单问题分流到固定回复或本地模型）
+    private ModelRouter modelRouter;
+
+    // 禁用 Spring AI 内置的工具调用机制，自己维护选项和消息上下文（选项中已带上全部工具）
     private final ChatOptions chatOptions;
 
     public ToolCallAgent(ToolCallback[] availableTools) {
         super();
         this.availableTools = availableTools;
-        this.toolCallingManager = ToolCallingManager.builder().build();
-        // 禁用 Spring AI 内置的工具调用机制，自己维护选项和消息上下文
-        this.chatOptions = DashScopeChatOptions.builder()
-                .withInternalToolExecutionEnabled(false)
-                .build();
+        this.toolsByName = AgentPrototype.indexTools(availableTools);
+        this.toolExecutor = new ParallelToolExecutor();
+        this.chatOptions = AgentPrototype.toolCallingOptions(availableTools);
+    }
+
+    /**
+     * 基于原型创建 Agent，只创建本次运行的状态，共享的部分直接复用
+     */
+    public ToolCallAgent(AgentPrototype prototype) {
+        super();
+        this.availableTools = prototype.tools();
+        this.toolsByName = prototype.toolsByName();
+        this.toolExecutor = prototype.toolExecutor();
+        this.chatOptions = prototype.chatOptions();
+        this.polishMode = prototype.polishMode();
+        this.contextManager = new AgentContextManager(prototype.contextTokenBudget(), prototype.compressedResponseChars());
+        setName(prototype.name());
+        setSystemPrompt(prototype.systemPrompt());
+        setNextStepPrompt(prototype.nextStepPrompt());
+        setMaxSteps(prototype.maxSteps());
+        setChatClient(prototype.chatClient());
+        setRunScheduler(prototype.runScheduler());
+        setResultMergeChars(prototype.resultMergeChars());
+        setLatencyBudget(prototype.latencyBudget());
+        this.modelRouter = prototype.modelRouter();
+        this.polishChatClient = prototype.polishChatClient();
+        this.summaryChatClient = prototype.summaryChatClient();
     }
 
     /**
@@ -83,20 +141,24 @@ public class ToolCallAgent extends ReActAgent {
      */
     @Override
     public boolean think() {
-        // 1、校验提示词，拼接用户提示词
-        if (StrUtil.isNotBlank(getNextStepPrompt())) {
-            UserMessage userMessage = new UserMessage(getNextStepPrompt());
-            getMessageList().add(userMessage);
+        // 首步先按复杂度路由，寒暄和简单问题不走大模型
+        ModelRouter.Route route = routeFirstStep();
+        if (route != ModelRouter.Route.LARGE && answerRouted(route)) {
+            return false;
         }
+        // 1、整理上下文：只保留一条 nextStepPrompt，并按 token 预算压缩较早的工具响应
+        setMessageList(contextManager.prepare(getMessageList(), getSystemPrompt(), getNextStepPrompt(), getCurrentStep()));
         // 2、调用 AI 大模型，获取工具调用结果
         List<Message> messageList = getMessageList();
         Prompt prompt = new Prompt(messageList, this.chatOptions);
         try {
-            ChatResponse chatResponse = getChatClient().prompt(prompt)
-                    .system(getSystemPrompt())
-                    .toolCallbacks(availableTools)
-                    .call()
-                    .chatResponse();
+            // 工具已经在 chatOptions 中，无需每次调用再传入
+            ChatClient.ChatClientRequestSpec requestSpec = getChatClient().prompt(prompt)
+                    .system(getSystemPrompt());
+            // 流式运行时，没有工具调用的回答就是最终结果，边生成边输出
+            ChatResponse chatResponse = getResultStreamer() != null
+                    ? streamThink(requestSpec)
+                    : requestSpec.call().chatResponse();
             // 记录响应，用于等下 Act
             this.toolCallChatResponse = chatResponse;
             // 3、解析工具调用结果，获取要调用的工具
@@ -128,12 +190,142 @@ public class ToolCallAgent extends ReActAgent {
                 return true;
             }
         } catch (Exception e) {
+            if (isCancelled()) {
+                // 运行已取消，中断导致的异常不记入对话历史
+                return false;
+            }
             log.error(getName() + "的思考过程遇到了问题：" + e.getMessage());
+            retractPartialResult();
             getMessageList().add(new AssistantMessage("处理时遇到了错误：" + e.getMessage()));
             return false;
         }
     }
 
+    /**
+     * 模型流中途失败时撤回已输出的部分回答，之后的总结或错误信息重新从 result_start 开始
+     */
+    private void retractPartialResult() {
+        FinalResultStreamer streamer = getResultStreamer();
+        if (streamer == null || !streamer.isStarted()) {
+            return;
+        }
+        try {
+            streamer.retract();
+        } catch (IOException e) {
+            log.warn("撤回未完成的结果失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 首步的路由结果（没有路由器或不是首步时总是大模型）
+     */
+    ModelRouter.Route routeFirstStep() {
+        if (modelRouter == null || getCurrentStep() != 1) {
+            return ModelRouter.Route.LARGE;
+        }
+        return modelRouter.route(latestUserPrompt(), hasConversationHistory());
+    }
+
+    /**
+     * 本次运行之前是否已有对话（加载的历史中包含助手的回复）
+     */
+    private boolean hasConversationHistory() {
+        for (Message message : getMessageList()) {
+            if (message instanceof AssistantMessage) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 用固定回复或本地模型直接回答，失败时返回 false 交给大模型
+     */
+    private boolean answerRouted(ModelRouter.Route route) {
+        long start = System.nanoTime();
+        FinalResultStreamer streamer = getResultStreamer();
+        StringBuilder answer = new StringBuilder();
+        try {
+            if (streamer != null) {
+                streamer.beginCall();
+            }
+            for (String token : withDeadline(routedAnswer(route)).toIterable()) {
+                if (streamer != null) {
+                    streamer.append(token);
+                }
+                answer.append(token);
+            }
+        } catch (Exception e) {
+            if (isCancelled()) {
+                return true;
+            }
+            if (streamer == null || !streamer.isStarted()) {
+                log.warn("路由到 {} 的回答失败，改用大模型: {}", route, e.getMessage());
+                return false;
+            }
+            // 已经输出了部分回答，无法再换模型，以已输出的内容作为结果
+            log.warn("路由到 {} 的回答中断: {}", route, e.getMessage());
+        }
+        finishRoutedAnswer(route, answer.toString(), start);
+        return true;
+    }
+
+    /**
+     * 路由后的回答内容流
+     */
+    Flux<String> routedAnswer(ModelRouter.Route route) {
+        if (route == ModelRouter.Route.CANNED) {
+            return Flux.just(modelRouter.cannedReply(latestUserPrompt()));
+        }
+        // 本地模型只带最近几轮纯文本对话，不带工具定义和工具调用记录
+        List<Message> history = new ArrayList<>();
+        String nextStepPrompt = StrUtil.trim(getNextStepPrompt());
+        for (Message message : getMessageList()) {
+            if (message instanceof UserMessage && !StrUtil.trim(message.getText()).equals(nextStepPrompt)
+                    || message instanceof AssistantMessage assistantMessage && !assistantMessage.hasToolCalls()
+                    && StrUtil.isNotBlank(assistantMessage.getText())) {
+                history.add(message);
+            }
+        }
+        List<Message> recent = history.subList(Math.max(0, history.size() - LOCAL_HISTORY_MESSAGES), history.size());
+        return modelRouter.getLocalChatClient()
+                .prompt(new Prompt(new ArrayList<>(recent)))
+                .system(ModelRouter.LOCAL_SYSTEM_PROMPT)
+                .stream()
+                .content();
+    }
+
+    /**
+     * 记录路由后的回答，结束运行，并统计节省的大模型 token 数
+     */
+    void finishRoutedAnswer(ModelRouter.Route route, String answer, long startNanos) {
+        getMessageList().add(new AssistantMessage(answer));
+        this.thinkResult = answer;
+        setState(AgentState.FINISHED);
+        // 走大模型时每次都要携带系统提示词、下一步提示词和全部工具定义
+        long savedTokens = modelRouter.estimateToolSchemaTokens(availableTools)
+                + modelRouter.estimateTokens(getSystemPrompt())
+                + modelRouter.estimateTokens(getNextStepPrompt())
+                + modelRouter.estimateTokens(latestUserPrompt())
+                + (route == ModelRouter.Route.CANNED ? modelRouter.estimateTokens(answer) : 0);
+        modelRouter.record(route, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), savedTokens);
+    }
+
+    /**
+     * 最近一条用户输入（跳过 nextStepPrompt）
+     */
+    private String latestUserPrompt() {
+        String nextStepPrompt = StrUtil.trim(getNextStepPrompt());
+        List<Message> messages = getMessageList();
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i) instanceof UserMessage userMessage
+                    && !StrUtil.trim(userMessage.getText()).equals(nextStepPrompt)) {
+                return userMessage.getText();
+            }
+        }
+        return "";
+    }
+
     /**
      * 执行工具调用并处理结果
      *
@@ -144,9 +336,12 @@ public class ToolCallAgent extends ReActAgent {
         if (!toolCallChatResponse.hasToolCalls()) {
             return "没有工具需要调用";
         }
-        // 调用工具
+        // 调用工具（同一步中的多个工具并行执行，结果保持调用顺序）
         Prompt prompt = new Prompt(getMessageList(), this.chatOptions);
-        ToolExecutionResult toolExecutionResult = toolCallingManager.executeToolCalls(prompt, toolCallChatResponse);
+        AgentDeadline deadline = getDeadline();
+        ToolExecutionResult toolExecutionResult = deadline != null
+                ? toolExecutor.executeToolCalls(prompt, toolCallChatResponse, toolsByName, deadline.toolCallTimeout())
+                : toolExecutor.executeToolCalls(prompt, toolCallChatResponse, toolsByName);
         // 记录消息上下文，conversationHistory 已经包含了助手消息和工具调用返回的结果
         setMessageList(toolExecutionResult.conversationHistory());
         ToolResponseMessage toolResponseMessage = (ToolResponseMessage) CollUtil.getLast(toolExecutionResult.conversationHistory());
@@ -163,11 +358,17 @@ public class ToolCallAgent extends ReActAgent {
         // 收集工具执行结果
         List<ToolResponseMessage.ToolResponse> responses = toolResponseMessage.getResponses();
 
-        // 使用 AI 润色工具执行结果，生成人类可读的描述
-        String polishedResult = polishToolResults(responses);
+        // 先用模板生成描述，润色不阻塞 ReAct 循环
+        String summary = ToolResultSummarizer.summarize(responses);
+        if (polishMode == PolishMode.ASYNC_LLM) {
+            // 异步调用 AI 润色，与下一步思考并行，完成后按步骤号补发
+            int stepNumber = getCurrentStep();
+            CompletableFuture.supplyAsync(() -> polishToolResults(responses), POLISH_EXECUTOR)
+                    .thenAccept(polished -> emitThinking(stepNumber, polished));
+        }
 
-        log.info(polishedResult);
-        return polishedResult;
+        log.info(summary);
+        return summary;
     }
 
     /**
@@ -176,6 +377,32 @@ public class ToolCallAgent extends ReActAgent {
      */
     @Override
     protected String getFinalResult() {
+        String directResult = directFinalResult();
+        if (directResult != null) {
+            return directResult;
+        }
+
+        // 让 AI 基于对话历史生成总结（包含文件链接）
+        try {
+            ChatClient.ChatClientRequestSpec requestSpec = summaryRequest();
+            String summary = getResultStreamer() != null
+                    ? streamSummary(requestSpec)
+                    : requestSpec.call().content();
+
+            return summary != null ? summary : "";
+        } catch (Exception e) {
+            log.warn("生成最终总结失败: " + e.getMessage());
+            // 失败时尝试返回父类的结果
+            return super.getFinalResult();
+        }
+    }
+
+    /**
+     * 不需要调用模型总结时的最终结果
+     *
+     * @return 可以直接返回的结果；需要 AI 生成总结时返回 null
+     */
+    String directFinalResult() {
         // 首先尝试获取 AI 的直接回答（thinkResult）
         if (thinkResult != null && !thinkResult.isEmpty()) {
             return thinkResult;
@@ -185,14 +412,71 @@ public class ToolCallAgent extends ReActAgent {
         String parentResult = super.getFinalResult();
 
         // 检查是否调用过工具（通过检查是否有 ToolResponseMessage）
-        boolean hasToolCalls = false;
-        StringBuilder fileLinks = new StringBuilder();
-        List<Message> messages = getMessageList();
+        boolean hasToolCalls = getMessageList().stream().anyMatch(message -> message instanceof ToolResponseMessage);
+
+        // 如果没有调用过工具，且有有效的直接回答，直接返回
+        if (!hasToolCalls && parentResult != null && !parentResult.isEmpty()) {
+            return parentResult;
+        }
+
+        // 如果有有效的回答且没有文件链接需要处理，直接返回
+        if (parentResult != null && parentResult.length() > 50 && collectFileLinks().isEmpty()) {
+            return parentResult;
+        }
 
-        for (Message message : messages) {
-            if (message instanceof ToolResponseMessage) {
-                hasToolCalls = true;
-                ToolResponseMessage toolResponseMessage = (ToolResponseMessage) message;
+        // 只有在调用了工具的情况下，才让 AI 生成总结
+        if (!hasToolCalls) {
+            return parentResult != null ? parentResult : "";
+        }
+        return null;
+    }
+
+    /**
+     * 总结失败时的兜底结果：最后一条助手消息
+     */
+    String lastAssistantResult() {
+        return super.getFinalResult();
+    }
+
+    /**
+     * 构建生成最终总结的请求（包含本次任务生成/下载的文件链接）
+     */
+    ChatClient.ChatClientRequestSpec summaryRequest() {
+        String fileLinks = collectFileLinks();
+        String fileLinksInfo = !fileLinks.isEmpty()
+            ? "\n\n【重要】以下是本次任务中生成/下载的文件信息，必须在回答中包含这些链接：\n" + fileLinks
+            : "";
+
+        String summaryPrompt = String.format("""
+                请基于以上的对话和工具调用结果，生成一个完整的最终回答给用户。
+
+                要求：
+                1. 总结已经收集到的所有有用信息
+                2. 如果生成了文件或下载了资源，【必须】在回答中包含完整的预览链接和下载链接
+                3. 链接格式示例：[预览文件](/api/file/preview?fileName=xxx) | [下载文件](/api/file/download?fileName=xxx)
+                4. 给出有价值的建议或结论
+                5. 使用清晰的格式（可以使用 Markdown）
+                6. 包含风险提示（如果涉及投资建议）
+                %s
+                请直接给出回答，不要说"根据以上信息"之类的开头。
+                """, fileLinksInfo);
+
+        List<Message> messagesWithSummaryRequest = new ArrayList<>(getMessageList());
+        messagesWithSummaryRequest.add(new UserMessage(summaryPrompt));
+
+        Prompt prompt = new Prompt(messagesWithSummaryRequest);
+        ChatClient client = summaryChatClient != null ? summaryChatClient : getChatClient();
+        return client.prompt(prompt)
+                .system(getSystemPrompt());
+    }
+
+    /**
+     * 收集工具结果中与文件相关的内容（写入、下载、生成的文件链接）
+     */
+    private String collectFileLinks() {
+        StringBuilder fileLinks = new StringBuilder();
+        for (Message message : getMessageList()) {
+            if (message instanceof ToolResponseMessage toolResponseMessage) {
                 for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
                     String toolName = response.name();
                     String toolResult = response.responseData();
@@ -209,64 +493,82 @@ public class ToolCallAgent extends ReActAgent {
                 }
             }
         }
+        return fileLinks.toString();
+    }
 
-        // 如果没有调用过工具，且有有效的直接回答，直接返回
-        if (!hasToolCalls && parentResult != null && !parentResult.isEmpty()) {
-            return parentResult;
+    /**
+     * 流式调用模型进行思考
+     * <p>
+     * 文本 token 先暂存，超过 {@link #RESULT_HOLD_BACK_CHARS} 个字符仍未出现工具调用时，按最终回答开始实时输出。
+     * 工具调用可能出现在任意长度的说明文字之后：已经开始输出后才出现工具调用时，撤回已输出的结果
+     * （{@link FinalResultStreamer#retract()}），这段说明文字改作这一步的思考内容发送。
+     *
+     * @return 聚合后的完整响应（包含全部文本和工具调用）
+     */
+    private ChatResponse streamThink(ChatClient.ChatClientRequestSpec requestSpec) throws IOException {
+        FinalResultStreamer streamer = getResultStreamer();
+        streamer.beginCall();
+        StringBuilder text = new StringBuilder();
+        List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>();
+        int flushed = 0;
+        for (ChatResponse chunk : withDeadline(requestSpec.stream().chatResponse()).toIterable()) {
+            if (chunk == null || chunk.getResult() == null || chunk.getResult().getOutput() == null) {
+                continue;
+            }
+            AssistantMessage output = chunk.getResult().getOutput();
+            boolean toolCallSeen = !toolCalls.isEmpty();
+            if (output.hasToolCalls()) {
+                toolCalls.addAll(output.getToolCalls());
+            }
+            if (StrUtil.isNotEmpty(output.getText())) {
+                text.append(output.getText());
+            }
+            if (toolCalls.isEmpty()) {
+                if (text.length() > RESULT_HOLD_BACK_CHARS && flushed < text.length()) {
+                    streamer.append(text.substring(flushed));
+                    flushed = text.length();
+                }
+            } else if (!toolCallSeen && flushed > 0 && streamer.retract()) {
+                emitThinking(getCurrentStep(), text.toString());
+            }
         }
-
-        // 如果有有效的回答且没有文件链接需要处理，直接返回
-        if (parentResult != null && parentResult.length() > 50 && fileLinks.length() == 0) {
-            return parentResult;
+        // 整个回答都不超过暂存长度且没有工具调用时，在结束后一次输出
+        if (toolCalls.isEmpty() && flushed < text.length()) {
+            streamer.append(text.substring(flushed));
         }
+        AssistantMessage assistantMessage = new AssistantMessage(text.toString(), Map.of(), toolCalls);
+        return new ChatResponse(List.of(new Generation(assistantMessage)));
+    }
 
-        // 只有在调用了工具的情况下，才让 AI 生成总结
-        if (!hasToolCalls) {
-            return parentResult != null ? parentResult : "";
+    /**
+     * 流式生成总结，token 实时输出给客户端
+     *
+     * @return 完整的总结内容
+     */
+    private String streamSummary(ChatClient.ChatClientRequestSpec requestSpec) throws IOException {
+        FinalResultStreamer streamer = getResultStreamer();
+        streamer.beginCall();
+        StringBuilder summary = new StringBuilder();
+        for (String token : withDeadline(requestSpec.stream().content()).toIterable()) {
+            streamer.append(token);
+            summary.append(token);
         }
+        return summary.toString();
+    }
 
-        // 让 AI 基于对话历史生成总结（包含文件链接）
-        try {
-            String fileLinksInfo = fileLinks.length() > 0
-                ? "\n\n【重要】以下是本次任务中生成/下载的文件信息，必须在回答中包含这些链接：\n" + fileLinks.toString()
-                : "";
-
-            String summaryPrompt = String.format("""
-                    请基于以上的对话和工具调用结果，生成一个完整的最终回答给用户。
-
-                    要求：
-                    1. 总结已经收集到的所有有用信息
-                    2. 如果生成了文件或下载了资源，【必须】在回答中包含完整的预览链接和下载链接
-                    3. 链接格式示例：[预览文件](/api/file/preview?fileName=xxx) | [下载文件](/api/file/download?fileName=xxx)
-                    4. 给出有价值的建议或结论
-                    5. 使用清晰的格式（可以使用 Markdown）
-                    6. 包含风险提示（如果涉及投资建议）
-                    %s
-                    请直接给出回答，不要说"根据以上信息"之类的开头。
-                    """, fileLinksInfo);
-
-            List<Message> messagesWithSummaryRequest = new ArrayList<>(getMessageList());
-            messagesWithSummaryRequest.add(new UserMessage(summaryPrompt));
-
-            Prompt prompt = new Prompt(messagesWithSummaryRequest);
-            String summary = getChatClient().prompt(prompt)
-                    .system(getSystemPrompt())
-                    .call()
-                    .content();
-
-            return summary != null ? summary : "";
-        } catch (Exception e) {
-            log.warn("生成最终总结失败: " + e.getMessage());
-            // 失败时尝试返回父类的结果
-            return super.getFinalResult();
-        }
+    /**
+     * 按本次运行的剩余时间限制模型流的总时长
+     */
+    private <T> Flux<T> withDeadline(Flux<T> flux) {
+        AgentDeadline deadline = getDeadline();
+        return deadline != null ? deadline.bound(flux, deadline.llmCallTimeout()) : flux;
     }
 
     /**
-     * 使用 AI 润色工具执行结果，生成人类可读的描述
+     * 使用 AI 润色工具执行结果，生成人类可读的描述（仅 ASYNC_LLM 模式下在后台调用）
      *
      * @param responses 工具响应列表
-     * @return 润色后的结果描述
+     * @return 润色后的结果描述，失败时返回 null
      */
     private String polishToolResults(List<ToolResponseMessage.ToolResponse> responses) {
         if (responses.isEmpty()) {
@@ -305,18 +607,17 @@ public class ToolCallAgent extends ReActAgent {
                 """, summary.toString());
 
         try {
-            String polished = getChatClient().prompt()
+            ChatClient client = polishChatClient != null ? polishChatClient : getChatClient();
+            String polished = client.prompt()
                     .user(polishPrompt)
                     .call()
                     .content();
 
-            return polished != null ? polished.trim() : summary.toString();
+            return polished != null ? polished.trim() : null;
         } catch (Exception e) {
-            log.warn("AI 润色失败，返回原始摘要: " + e.getMessage());
-            // 如果 AI 润色失败，返回简化的原始摘要
-            return responses.stream()
-                    .map(response -> String.format("✓ 使用了 %s 工具", response.name()))
-                    .collect(Collectors.joining("\n"));
+            // 润色失败时保留已输出的模板描述
+            log.warn("AI 润色失败，保留模板描述: " + e.getMessage());
+            return null;
         }
     }
 }
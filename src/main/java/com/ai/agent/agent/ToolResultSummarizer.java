@@ -0,0 +1,108 @@
+package com.ai.agent.agent;
+
+import cn.hutool.core.util.ReUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.ai.agent.tools.ToolFailures;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsoup.Jsoup;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 工具执行结果的模板摘要器
+ * <p>
+ * 按工具类型从结果中提取关键信息（搜索条数、文件大小、文件链接等），
+ * 确定性地生成一句人类可读的描述，无需调用大模型。
+ */
+public final class ToolResultSummarizer {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private ToolResultSummarizer() {
+    }
+
+    /**
+     * 生成一步中所有工具结果的描述，每个工具一行
+     */
+    public static String summarize(List<ToolResponseMessage.ToolResponse> responses) {
+        if (responses.isEmpty()) {
+            return "未执行任何工具";
+        }
+        return responses.stream()
+                .map(response -> summarize(response.name(), response.responseData()))
+                .collect(Collectors.joining("\n"));
+    }
+
+    /**
+     * 生成单个工具结果的描述
+     */
+    public static String summarize(String toolName, String data) {
+        String result = unwrapJsonString(StrUtil.nullToEmpty(data).trim());
+        String failure = ToolFailures.failureLine(result);
+        if (failure != null) {
+            return String.format("我调用 %s 工具时遇到问题：%s", toolName, StrUtil.subPre(failure, 100));
+        }
+        return switch (toolName) {
+            case "searchWeb" -> String.format("我搜索了网络，获取到 %d 条相关结果", countSearchHits(result));
+            case "scrapeWebPage" -> {
+                String title = Jsoup.parse(result).title();
+                yield StrUtil.isNotBlank(title)
+                        ? String.format("我读取了网页《%s》的内容", title.trim())
+                        : "我读取了网页的内容";
+            }
+            case "downloadResource" -> {
+                String size = ReUtil.get("File size: (\\d+) bytes", result, 1);
+                String url = ReUtil.get("Download URL: (\\S+)", result, 1);
+                yield String.format("我下载了文件（%s），[下载文件](%s)",
+                        size != null ? formatSize(Long.parseLong(size)) : "大小未知", StrUtil.nullToEmpty(url));
+            }
+            case "generateMarkdown" -> {
+                String previewUrl = ReUtil.get("Preview URL: (\\S+)", result, 1);
+                String downloadUrl = ReUtil.get("Download URL: (\\S+)", result, 1);
+                yield String.format("我生成了 Markdown 报告：[预览文件](%s) | [下载文件](%s)",
+                        StrUtil.nullToEmpty(previewUrl), StrUtil.nullToEmpty(downloadUrl));
+            }
+            case "writeFile" -> String.format("我写入了文件，[下载文件](%s)",
+                    StrUtil.nullToEmpty(ReUtil.get("Download URL: (\\S+)", result, 1)));
+            case "readFile", "readMarkdown" -> String.format("我读取了文件内容（%d 个字符）", result.length());
+            case "executeTerminalCommand" -> String.format("我执行了终端命令，输出 %d 行", result.lines().count());
+            default -> String.format("✓ 使用了 %s 工具", toolName);
+        };
+    }
+
+    /**
+     * 方法工具的字符串返回值会被序列化为 JSON 字符串，这里还原为原始文本
+     */
+    private static String unwrapJsonString(String result) {
+        if (result.length() < 2 || !result.startsWith("\"") || !result.endsWith("\"")) {
+            return result;
+        }
+        try {
+            return OBJECT_MAPPER.readValue(result, String.class);
+        } catch (Exception e) {
+            return result;
+        }
+    }
+
+    private static int countSearchHits(String result) {
+        // searchWeb 返回以逗号拼接的 JSON 对象
+        try {
+            return JSONUtil.parseArray("[" + result + "]").size();
+        } catch (Exception e) {
+            return StrUtil.count(result, "\"title\"");
+        }
+    }
+
+    private static String formatSize(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
+}
@@ -0,0 +1,71 @@
+package com.ai.agent.agent.model;
+
+/**
+ * Agent 运行事件（响应式引擎输出，编码后与 SseEmitter 方式发送的内容完全一致）
+ *
+ * @param type    事件类型
+ * @param step    步骤号（仅 thinking 事件）
+ * @param content 事件内容：思考内容、结果片段、终止原因、繁忙原因或错误信息
+ */
+public record AgentEvent(Type type, int step, String content) {
+
+    public enum Type {
+        THINKING,
+        TERMINATE,
+        RESULT_START,
+        RESULT_CHUNK,
+        /**
+         * 撤回已输出的结果片段（其实是工具调用前的说明文字）
+         */
+        RESULT_RETRACT,
+        RESULT_END,
+        /**
+         * 调度队列已满，稍后重试
+         */
+        BUSY,
+        /**
+         * 纯文本错误信息（沿用原有格式，不是 JSON）
+         */
+        ERROR,
+        /**
+         * 流结束标记 [DONE]
+         */
+        DONE
+    }
+
+    public static AgentEvent thinking(int step, String content) {
+        return new AgentEvent(Type.THINKING, step, content);
+    }
+
+    public static AgentEvent terminate(String reason) {
+        return new AgentEvent(Type.TERMINATE, 0, reason);
+    }
+
+    public static AgentEvent resultStart() {
+        return new AgentEvent(Type.RESULT_START, 0, null);
+    }
+
+    public static AgentEvent resultChunk(String content) {
+        return new AgentEvent(Type.RESULT_CHUNK, 0, content);
+    }
+
+    public static AgentEvent resultRetract() {
+        return new AgentEvent(Type.RESULT_RETRACT, 0, null);
+    }
+
+    public static AgentEvent resultEnd() {
+        return new AgentEvent(Type.RESULT_END, 0, null);
+    }
+
+    public static AgentEvent busy(String reason) {
+        return new AgentEvent(Type.BUSY, 0, reason);
+    }
+
+    public static AgentEvent error(String message) {
+        return new AgentEvent(Type.ERROR, 0, message);
+    }
+
+    public static AgentEvent done() {
+        return new AgentEvent(Type.DONE, 0, null);
+    }
+}
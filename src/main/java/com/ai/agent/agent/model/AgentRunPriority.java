@@ -0,0 +1,16 @@
+package com.ai.agent.agent.model;
+
+/**
+ * Agent 运行优先级，调度器优先执行优先级高的运行
+ */
+public enum AgentRunPriority {
+    /**
+     * 交互式运行（如 /financial/agent 的用户请求），优先调度
+     */
+    INTERACTIVE,
+
+    /**
+     * 批处理运行（如 /financial/agent?priority=BATCH 的后台任务），在交互式运行之后调度
+     */
+    BATCH
+}
@@ -22,5 +22,10 @@ public enum AgentState {
     /**
      * 错误状态
      */
-    ERROR
+    ERROR,
+
+    /**
+     * 已取消状态（客户端断开或超时）
+     */
+    CANCELLED
 }
@@ -0,0 +1,16 @@
+package com.ai.agent.agent.model;
+
+/**
+ * 工具执行结果的润色模式
+ */
+public enum PolishMode {
+    /**
+     * 按工具模板确定性生成描述，不调用大模型
+     */
+    TEMPLATE,
+
+    /**
+     * 先输出模板描述，同时异步调用大模型润色，与下一步思考并行，完成后补发
+     */
+    ASYNC_LLM
+}
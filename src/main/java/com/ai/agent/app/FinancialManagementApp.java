@@ -1,30 +1,53 @@
 package com.ai.agent.app;
 
+import cn.hutool.core.util.StrUtil;
 import com.ai.agent.advisor.LoggerAdvisor;
+import com.ai.agent.advisor.ReadinessGatedAdvisor;
+import com.ai.agent.agent.AgentLatencyBudget;
+import com.ai.agent.agent.AgentPrototype;
+import com.ai.agent.agent.AgentRunScheduler;
+import com.ai.agent.agent.ParallelToolExecutor;
 import com.ai.agent.agent.ToolCallAgent;
-import com.ai.agent.chatmemory.FileBasedChatMemory;
+import com.ai.agent.agent.model.PolishMode;
+import com.ai.agent.chatmemory.AsyncChatMemoryWriter;
+import com.ai.agent.chatmemory.ConversationSummarizer;
+import com.ai.agent.chatmemory.MessageCompactionPipeline;
+import com.ai.agent.chatmemory.MessageCompactionRules;
+import com.ai.agent.chatmemory.WriteBackChatMemory;
+import com.ai.agent.config.ToolExecutorProperties;
+import com.ai.agent.llm.LlmResponseCache;
+import com.ai.agent.llm.ModelRouter;
+import com.ai.agent.llm.HedgingChatModel;
+import com.ai.agent.llm.SemanticResponseCache;
+import com.ai.agent.rag.KnowledgeBaseIngestor;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
 import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
 import org.springframework.ai.chat.memory.MessageWindowChatMemory;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
-import org.springframework.ai.chat.messages.ToolResponseMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.tool.ToolCallbackProvider;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * AI 理财管理智能体（合并了对话记忆、RAG、工具调用、MCP服务和ReAct模式）
@@ -37,8 +60,21 @@ public class FinancialManagementApp {
     private final ChatModel chatModel;
     private final ToolCallback[] allTools;
 
-    // 智能体对话记忆存储（基于文件持久化）
-    private final FileBasedChatMemory agentMemory = new FileBasedChatMemory("./agent-memory");
+    // 按复杂度把寒暄、简单问题分流到固定回复或本地模型
+    private final ModelRouter modelRouter;
+
+    // 本地小模型客户端（与大模型共享对话记忆，由 callLocalChat 读写）
+    private final ChatClient localChatClient;
+
+    private final ChatMemory chatMemory;
+
+    // 首轮问题的语义响应缓存
+    private final SemanticResponseCache semanticCache;
+
+    private static final String CHAT_CACHE_NAMESPACE = "chat";
+
+    // 缓存命中时流式输出的片段长度
+    private static final int CACHED_CHUNK_CHARS = 16;
 
     private static final String SYSTEM_PROMPT = """
             你是一个专业的AI理财管理助手。你的能力包括：
@@ -60,52 +96,261 @@ public class FinancialManagementApp {
             在回答时，请保持专业、客观，并注意风险提示。投资有风险，建议仅供参考。
             """;
 
+    private static final String AGENT_SYSTEM_PROMPT = """
+            你是一个专业的AI理财管理智能体，具备以下能力：
+
+            核心能力：
+            1. 理财知识问答 - 基于专业理财知识库回答用户问题
+            2. 网络搜索 (searchWeb) - 搜索最新的财经资讯和市场动态
+            3. 网页内容提取 (scrapeWebPage) - 从金融网站提取详细内容
+            4. 文件操作 (readFile/writeFile) - 读写理财报告和分析文档
+            5. 资源下载 (downloadResource) - 下载金融研究报告
+            6. 终端命令 (executeTerminalCommand) - 执行系统命令
+            7. Markdown报告 (generateMarkdown/readMarkdown) - 生成专业理财报告
+            8. 任务终止 (doTerminate) - 完成任务后结束对话
+
+            【最重要原则 - 如何处理用户消息】：
+            1. 如果用户提出了具体问题或需求（如投资建议、股票推荐、理财规划、市场分析等），
+               你必须【直接回答问题或执行任务】，不要先打招呼或自我介绍！
+            2. 只有当用户发送的是纯粹的简单问候（如只说"你好"、"Hi"、"Hello"、"在吗"且没有其他内容）时，
+               才简短打招呼并询问需求。
+            3. 【关键】判断用户意图的方法：
+               - "你好" → 简单问候，打招呼
+               - "你好，我想投资" → 有具体需求，直接帮助投资
+               - "我有5000元想投资" → 有具体需求，直接给建议
+               - "推荐几只股票" → 有具体需求，直接推荐
+
+            其他重要原则：
+            1. 只有当用户明确提出具体问题或需求时，才使用知识库和工具
+            2. 如果知识库没有相关信息，使用搜索工具获取最新资讯
+            3. 高效完成任务，减少不必要的步骤
+            4. 始终包含风险提示
+
+            工具使用指南：
+            - 简单问候 (你好、Hi) → 直接回答
+            - 基础理财知识 (预算、储蓄、投资基础) → 使用知识库回答
+            - 需要最新市场信息 → 使用 searchWeb
+            - 生成报告 → 使用文件工具
+            - 下载文件 → 先用 scrapeWebPage 提取直接下载链接，再用 downloadResource
+            - 复杂分析任务 → 组合使用多个工具
+
+            【下载文件注意事项】：
+            - downloadResource 只能下载直接文件链接（如 .pdf、.xlsx、.zip）
+            - 如果URL是网页，需要先用 scrapeWebPage 提取真实下载链接
+            - 收到 "URL points to an HTML page" 错误时，说明需要提取链接
+
+            【重要】最终结果返回规则：
+            1. 无论任务成功还是失败，必须返回最终结果给用户
+            2. 如果生成了文件或下载了文件，必须在最终结果中包含下载链接
+            3. 如果任务失败，必须说明失败原因和已完成的部分
+            4. 你最多只有6步来完成任务，如果接近步数限制仍未完成，必须：
+               - 总结已完成的工作
+               - 说明未能完成的原因
+               - 给出部分结果或建议
+            5. 使用 terminate 工具时，必须提供完整的最终答案
+
+            如果无法完成任务：
+            - 明确告知用户无法完成
+            - 解释缺少哪些能力
+            - 建议替代方案
+
+            记住：投资有风险，建议仅供参考。
+            """;
+
+    private static final String AGENT_NEXT_STEP_PROMPT = """
+            根据用户需求，主动选择最合适的工具或工具组合。
+            对于复杂任务，可以分解问题并逐步使用不同工具解决。
+            每次使用工具后，评估是否已有足够信息回答用户问题。
+
+            【严格步数限制】你最多只有6步，必须严格遵守以下规划：
+            - 第1-3步：收集核心信息（不要过度探索）
+            - 第4步：处理和生成内容（如生成报告）
+            - 第5步：【最后机会】检查是否完成，如果完成必须调用 terminate，如果未完成则快速总结已有信息
+            - 第6步：【强制结束】系统会强制结束，必须在第5步就调用 terminate
+
+            【关键原则 - 避免超时】
+            1. 简单任务（问答、咨询）：第1-2步就应该调用 terminate
+            2. 中等任务（搜索+分析）：不超过3步，第4步必须 terminate
+            3. 复杂任务（生成报告）：第4步生成，第5步必须 terminate
+            4. 【禁止】在第6步才调用 terminate - 必须在第5步或之前完成
+
+            【必须遵守】
+            1. 如果信息足够，立即提供完整答案并使用 terminate 工具
+            2. 如果生成了文件，最终结果必须包含下载链接
+            3. 【关键】第4步后必须评估：如果接近完成，下一步必须 terminate
+            4. 使用 terminate 工具时，reason 参数必须包含：
+               - 任务完成情况总结
+               - 生成的文件链接（如有）
+               - 关键信息或建议
+            5. 不要浪费步骤在不必要的探索上
+            6. 理财建议中包含风险提示
+            """;
+
     /**
      * 初始化 ChatClient
      */
-    public FinancialManagementApp(ChatModel dashscopeChatModel, ToolCallback[] allTools) {
-        this.chatModel = dashscopeChatModel;
+    public FinancialManagementApp(ChatModel hedgedChatModel, ToolCallback[] allTools, ModelRouter modelRouter,
+                                  SemanticResponseCache semanticCache, ChatMemoryRepository chatMemoryRepository) {
+        this.chatModel = hedgedChatModel;
         this.allTools = allTools;
+        this.modelRouter = modelRouter;
+        this.semanticCache = semanticCache;
 
-        // 初始化基于内存的对话记忆
-        MessageWindowChatMemory chatMemory = MessageWindowChatMemory.builder()
-                .chatMemoryRepository(new InMemoryChatMemoryRepository())
+        // 初始化对话记忆（存储由 agent.chat-memory.store 决定：内存或数据库）
+        chatMemory = MessageWindowChatMemory.builder()
+                .chatMemoryRepository(chatMemoryRepository)
                 .maxMessages(20)
                 .build();
-        chatClient = ChatClient.builder(dashscopeChatModel)
+        chatClient = ChatClient.builder(hedgedChatModel)
                 .defaultSystem(SYSTEM_PROMPT)
                 .defaultAdvisors(
                         MessageChatMemoryAdvisor.builder(chatMemory).build(),
                         new LoggerAdvisor()
                 )
                 .build();
+        // 本地模型不挂对话记忆 advisor，由 callLocalChat 在成功后写入对话记忆
+        localChatClient = ChatClient.builder(modelRouter.getLocalChatModel())
+                .defaultSystem(ModelRouter.LOCAL_SYSTEM_PROMPT)
+                .defaultAdvisors(new LoggerAdvisor())
+                .build();
     }
 
     /**
      * AI 基础对话（支持多轮对话记忆）
+     * <p>
+     * 寒暄直接使用固定回复，简单问题交给本地模型，其余交给大模型；本地模型失败时回退到大模型。
+     * 首轮问题先查语义缓存（含个人信息的问题除外），命中时直接返回相近问题的回答，主模型的回答写入缓存。
      */
     public String doChat(String message, String chatId) {
-        ChatResponse chatResponse = chatClient
+        long start = System.nanoTime();
+        boolean firstTurn = isFirstTurn(chatId);
+        ModelRouter.Route route = modelRouter.route(message, chatId != null && !firstTurn);
+        String content = null;
+        SemanticResponseCache.Lookup lookup = null;
+        if (route != ModelRouter.Route.CANNED && firstTurn) {
+            lookup = semanticCache.lookup(CHAT_CACHE_NAMESPACE, message);
+            if (lookup.hit() != null) {
+                content = (String) lookup.hit().answer();
+                chatMemory.add(chatId, List.of(new UserMessage(message), new AssistantMessage(content)));
+                log.info("content (semantic cache): {}", content);
+                return content;
+            }
+        }
+        if (route == ModelRouter.Route.CANNED) {
+            content = modelRouter.cannedReply(message);
+            // 固定回复也记入对话记忆，保持多轮对话连贯
+            chatMemory.add(chatId, List.of(new UserMessage(message), new AssistantMessage(content)));
+        } else if (route == ModelRouter.Route.LOCAL) {
+            try {
+                content = callLocalChat(message, chatId);
+            } catch (Exception e) {
+                log.warn("本地模型回答失败，改用大模型: {}", e.getMessage());
+                route = ModelRouter.Route.LARGE;
+            }
+        }
+        if (route == ModelRouter.Route.LARGE) {
+            ChatResponse chatResponse = callChat(chatClient, message, chatId);
+            content = chatResponse.getResult().getOutput().getText();
+            // 只缓存主模型的回答：本地模型的回答不写入，对冲时备用小模型先返回的回答也不写入
+            if (lookup != null) {
+                semanticCache.put(lookup, HedgingChatModel.isHedgeWin(chatResponse) ? null : content);
+            }
+        }
+        long savedTokens = route == ModelRouter.Route.LARGE ? 0
+                : modelRouter.estimateTokens(SYSTEM_PROMPT) + modelRouter.estimateTokens(message)
+                + modelRouter.estimateTokens(content);
+        modelRouter.record(route, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), savedTokens);
+        log.info("content: {}", content);
+        return content;
+    }
+
+    /**
+     * 本地模型回答：不经过对话记忆 advisor，手动带上历史，成功后才写入问题和回答。
+     * 失败时对话记忆保持不变，回退到大模型时不会重复写入用户问题。
+     */
+    private String callLocalChat(String message, String chatId) {
+        List<Message> messages = new ArrayList<>();
+        if (chatId != null) {
+            messages.addAll(chatMemory.get(chatId));
+        }
+        messages.add(new UserMessage(message));
+        String content = localChatClient
+                .prompt(new Prompt(messages))
+                .call()
+                .content();
+        if (chatId != null) {
+            chatMemory.add(chatId, List.of(new UserMessage(message), new AssistantMessage(content)));
+        }
+        return content;
+    }
+
+    private ChatResponse callChat(ChatClient client, String message, String chatId) {
+        return client
                 .prompt()
                 .user(message)
                 .advisors(spec -> spec.param(ChatMemory.CONVERSATION_ID, chatId))
                 .call()
                 .chatResponse();
-        String content = chatResponse.getResult().getOutput().getText();
-        log.info("content: {}", content);
-        return content;
+    }
+
+    /**
+     * 是否为会话的首轮问题（只有首轮问题不依赖上下文，可以使用语义缓存）
+     */
+    private boolean isFirstTurn(String chatId) {
+        return chatId != null && chatMemory.get(chatId).isEmpty();
     }
 
     /**
      * AI 基础对话（支持多轮对话记忆，SSE 流式传输）
+     * <p>
+     * 首轮问题命中语义缓存时，把缓存的回答切成小片段输出。
      */
     public Flux<String> doChatByStream(String message, String chatId) {
+        if (!isFirstTurn(chatId)) {
+            return streamChat(message, chatId);
+        }
+        // 向量化是阻塞调用，放到 boundedElastic 上执行
+        return Mono.fromCallable(() -> semanticCache.lookup(CHAT_CACHE_NAMESPACE, message))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(lookup -> {
+                    if (lookup.hit() != null) {
+                        String content = (String) lookup.hit().answer();
+                        chatMemory.add(chatId, List.of(new UserMessage(message), new AssistantMessage(content)));
+                        return Flux.fromArray(StrUtil.cut(content, CACHED_CHUNK_CHARS));
+                    }
+                    StringBuilder content = new StringBuilder();
+                    AtomicBoolean hedgeWin = new AtomicBoolean();
+                    return streamChatResponses(message, chatId)
+                            .doOnNext(chunk -> {
+                                if (HedgingChatModel.isHedgeWin(chunk)) {
+                                    hedgeWin.set(true);
+                                }
+                            })
+                            .mapNotNull(FinancialManagementApp::chunkText)
+                            .doOnNext(content::append)
+                            // 备用小模型胜出的回答不缓存
+                            .doOnComplete(() -> semanticCache.put(lookup, hedgeWin.get() ? null : content.toString()));
+                });
+    }
+
+    private Flux<String> streamChat(String message, String chatId) {
+        return streamChatResponses(message, chatId).mapNotNull(FinancialManagementApp::chunkText);
+    }
+
+    private Flux<ChatResponse> streamChatResponses(String message, String chatId) {
         return chatClient
                 .prompt()
                 .user(message)
                 .advisors(spec -> spec.param(ChatMemory.CONVERSATION_ID, chatId))
                 .stream()
-                .content();
+                .chatResponse();
+    }
+
+    private static String chunkText(ChatResponse chunk) {
+        if (chunk == null || chunk.getResult() == null || chunk.getResult().getOutput() == null) {
+            return null;
+        }
+        return chunk.getResult().getOutput().getText();
     }
 
     /**
@@ -116,6 +361,8 @@ public class FinancialManagementApp {
 
     /**
      * AI 理财报告功能（结构化输出）
+     * <p>
+     * 报告标题带有用户名、内容针对用户的个人情况，不使用语义缓存。
      */
     public FinancialReport doChatWithReport(String message, String chatId) {
         FinancialReport report = chatClient
@@ -131,266 +378,183 @@ public class FinancialManagementApp {
 
     // RAG 和 MCP 资源（用于智能体整合）
 
-    // RAG 功能已禁用
-    // @Resource
-    // private VectorStore appVectorStore;
+    @Resource
+    private VectorStore appVectorStore;
+
+    @Resource
+    private KnowledgeBaseIngestor knowledgeBaseIngestor;
 
     @Resource
     private ToolCallbackProvider toolCallbackProvider;
 
+    @Resource
+    private AgentRunScheduler agentRunScheduler;
+
+    @Resource
+    private AgentLatencyBudget agentLatencyBudget;
+
+    @Resource
+    private LlmResponseCache llmResponseCache;
+
+    @Resource
+    private ToolExecutorProperties toolExecutorProperties;
+
+    // 智能体对话记忆存储（会话日志文件 + 写回式内存缓存，读取时只返回最近 20 条消息）
+    @Resource
+    private WriteBackChatMemory agentMemory;
+
+    // 长对话的滚动摘要（较早的消息合并为摘要，放入系统提示词）
+    @Resource
+    private ConversationSummarizer conversationSummarizer;
+
+    // 本轮消息的后台压缩和持久化
+    @Resource
+    private AsyncChatMemoryWriter memoryWriter;
+
+    @Value("${agent.polish-mode:template}")
+    private PolishMode polishMode;
+
+    @Value("${agent.context.token-budget:12000}")
+    private int contextTokenBudget;
+
+    @Value("${agent.context.compressed-response-chars:500}")
+    private int compressedResponseChars;
+
+    @Value("${agent.sse.result-merge-chars:0}")
+    private int resultMergeChars;
+
+    // 启动时构建一次的 Agent 原型，所有请求共享
+    private AgentPrototype agentPrototype;
+
+    // 持久化前的消息压缩：去掉 nextStepPrompt 和 doTerminate，截断过长的工具参数和响应，替换失败页面
+    private MessageCompactionPipeline memoryCompactionPipeline;
+
     /**
-     * 创建超级智能体模式实例（ReAct 模式，整合记忆、RAG、工具调用、MCP）
-     *
-     * @param chatId 会话ID，用于持久化对话记忆
+     * 构建 Agent 原型：合并工具、初始化 ChatClient 和模型选项，只执行一次
      */
-    public ToolCallAgent createAgentInstance(String chatId) {
-        // 1. 合并所有工具（本地工具 + MCP 工具）
+    @PostConstruct
+    public void initAgentPrototype() {
+        // 合并所有工具（本地工具 + MCP 工具），之后不再变化
         ToolCallback[] mcpTools = toolCallbackProvider.getToolCallbacks();
         ToolCallback[] combinedTools = new ToolCallback[allTools.length + mcpTools.length];
         System.arraycopy(allTools, 0, combinedTools, 0, allTools.length);
         System.arraycopy(mcpTools, 0, combinedTools, allTools.length, mcpTools.length);
 
-        ToolCallAgent agent = new ToolCallAgent(combinedTools) {};
-        agent.setName("FinancialAgent");
-
-        String agentSystemPrompt = """
-                你是一个专业的AI理财管理智能体，具备以下能力：
-
-                核心能力：
-                1. 理财知识问答 - 基于专业理财知识库回答用户问题
-                2. 网络搜索 (searchWeb) - 搜索最新的财经资讯和市场动态
-                3. 网页内容提取 (scrapeWebPage) - 从金融网站提取详细内容
-                4. 文件操作 (readFile/writeFile) - 读写理财报告和分析文档
-                5. 资源下载 (downloadResource) - 下载金融研究报告
-                6. 终端命令 (executeTerminalCommand) - 执行系统命令
-                7. Markdown报告 (generateMarkdown/readMarkdown) - 生成专业理财报告
-                8. 任务终止 (doTerminate) - 完成任务后结束对话
-
-                【最重要原则 - 如何处理用户消息】：
-                1. 如果用户提出了具体问题或需求（如投资建议、股票推荐、理财规划、市场分析等），
-                   你必须【直接回答问题或执行任务】，不要先打招呼或自我介绍！
-                2. 只有当用户发送的是纯粹的简单问候（如只说"你好"、"Hi"、"Hello"、"在吗"且没有其他内容）时，
-                   才简短打招呼并询问需求。
-                3. 【关键】判断用户意图的方法：
-                   - "你好" → 简单问候，打招呼
-                   - "你好，我想投资" → 有具体需求，直接帮助投资
-                   - "我有5000元想投资" → 有具体需求，直接给建议
-                   - "推荐几只股票" → 有具体需求，直接推荐
-
-                其他重要原则：
-                1. 只有当用户明确提出具体问题或需求时，才使用知识库和工具
-                2. 如果知识库没有相关信息，使用搜索工具获取最新资讯
-                3. 高效完成任务，减少不必要的步骤
-                4. 始终包含风险提示
-
-                工具使用指南：
-                - 简单问候 (你好、Hi) → 直接回答
-                - 基础理财知识 (预算、储蓄、投资基础) → 使用知识库回答
-                - 需要最新市场信息 → 使用 searchWeb
-                - 生成报告 → 使用文件工具
-                - 下载文件 → 先用 scrapeWebPage 提取直接下载链接，再用 downloadResource
-                - 复杂分析任务 → 组合使用多个工具
-
-                【下载文件注意事项】：
-                - downloadResource 只能下载直接文件链接（如 .pdf、.xlsx、.zip）
-                - 如果URL是网页，需要先用 scrapeWebPage 提取真实下载链接
-                - 收到 "URL points to an HTML page" 错误时，说明需要提取链接
-
-                【重要】最终结果返回规则：
-                1. 无论任务成功还是失败，必须返回最终结果给用户
-                2. 如果生成了文件或下载了文件，必须在最终结果中包含下载链接
-                3. 如果任务失败，必须说明失败原因和已完成的部分
-                4. 你最多只有6步来完成任务，如果接近步数限制仍未完成，必须：
-                   - 总结已完成的工作
-                   - 说明未能完成的原因
-                   - 给出部分结果或建议
-                5. 使用 terminate 工具时，必须提供完整的最终答案
-
-                如果无法完成任务：
-                - 明确告知用户无法完成
-                - 解释缺少哪些能力
-                - 建议替代方案
-
-                记住：投资有风险，建议仅供参考。
-                """;
-        agent.setSystemPrompt(agentSystemPrompt);
-
-        String nextStepPrompt = """
-                根据用户需求，主动选择最合适的工具或工具组合。
-                对于复杂任务，可以分解问题并逐步使用不同工具解决。
-                每次使用工具后，评估是否已有足够信息回答用户问题。
-
-                【严格步数限制】你最多只有6步，必须严格遵守以下规划：
-                - 第1-3步：收集核心信息（不要过度探索）
-                - 第4步：处理和生成内容（如生成报告）
-                - 第5步：【最后机会】检查是否完成，如果完成必须调用 terminate，如果未完成则快速总结已有信息
-                - 第6步：【强制结束】系统会强制结束，必须在第5步就调用 terminate
-
-                【关键原则 - 避免超时】
-                1. 简单任务（问答、咨询）：第1-2步就应该调用 terminate
-                2. 中等任务（搜索+分析）：不超过3步，第4步必须 terminate
-                3. 复杂任务（生成报告）：第4步生成，第5步必须 terminate
-                4. 【禁止】在第6步才调用 terminate - 必须在第5步或之前完成
-
-                【必须遵守】
-                1. 如果信息足够，立即提供完整答案并使用 terminate 工具
-                2. 如果生成了文件，最终结果必须包含下载链接
-                3. 【关键】第4步后必须评估：如果接近完成，下一步必须 terminate
-                4. 使用 terminate 工具时，reason 参数必须包含：
-                   - 任务完成情况总结
-                   - 生成的文件链接（如有）
-                   - 关键信息或建议
-                5. 不要浪费步骤在不必要的探索上
-                6. 理财建议中包含风险提示
-                """;
-        agent.setNextStepPrompt(nextStepPrompt);
-        agent.setMaxSteps(6);
-
-        // 初始化 AI 对话客户端
+        // 知识库在后台导入，导入完成前跳过检索，按无 RAG 模式回答
+        ReadinessGatedAdvisor knowledgeBaseAdvisor = new ReadinessGatedAdvisor(
+                new QuestionAnswerAdvisor(appVectorStore), knowledgeBaseIngestor::isReady);
+
+        // 初始化 AI 对话客户端（无状态，所有 Agent 共享）
         ChatClient agentChatClient = ChatClient.builder(chatModel)
                 .defaultAdvisors(
                         new LoggerAdvisor(),
-                        new QuestionAnswerAdvisor(appVectorStore)
+                        knowledgeBaseAdvisor
                 )
                 .build();
-        agent.setChatClient(agentChatClient);
+        // 润色和总结的输出只取决于输入，开启响应缓存
+        ChatClient polishChatClient = ChatClient.builder(llmResponseCache.wrap(chatModel, "agentPolish"))
+                .defaultAdvisors(
+                        new LoggerAdvisor(),
+                        knowledgeBaseAdvisor
+                )
+                .build();
+        ChatClient summaryChatClient = ChatClient.builder(llmResponseCache.wrap(chatModel, "agentSummary"))
+                .defaultAdvisors(
+                        new LoggerAdvisor(),
+                        knowledgeBaseAdvisor
+                )
+                .build();
+
+        agentPrototype = AgentPrototype.builder()
+                .name("FinancialAgent")
+                .systemPrompt(AGENT_SYSTEM_PROMPT)
+                .nextStepPrompt(AGENT_NEXT_STEP_PROMPT)
+                .maxSteps(6)
+                .chatClient(agentChatClient)
+                .polishChatClient(polishChatClient)
+                .summaryChatClient(summaryChatClient)
+                .tools(combinedTools)
+                .toolsByName(AgentPrototype.indexTools(combinedTools))
+                .chatOptions(AgentPrototype.toolCallingOptions(combinedTools))
+                .toolExecutor(new ParallelToolExecutor(toolExecutorProperties.getMaxConcurrency(),
+                        toolExecutorProperties.getCallTimeout(), toolExecutorProperties.getParallelSafeTools()))
+                .runScheduler(agentRunScheduler)
+                .latencyBudget(agentLatencyBudget)
+                .modelRouter(modelRouter)
+                .polishMode(polishMode)
+                .contextTokenBudget(contextTokenBudget)
+                .compressedResponseChars(compressedResponseChars)
+                .resultMergeChars(resultMergeChars)
+                .build();
+        memoryCompactionPipeline = MessageCompactionPipeline.of(
+                MessageCompactionRules.dropUserMessage(AGENT_NEXT_STEP_PROMPT),
+                MessageCompactionRules.dropTool("doTerminate"),
+                // 过长的参数如 generateMarkdown 的 content
+                MessageCompactionRules.truncateToolArguments(200),
+                // 反爬验证页、网络错误页没有保留价值
+                MessageCompactionRules.redactToolResponses(List.of("百度安全验证", "网络不给力"), "[请求失败]"),
+                MessageCompactionRules.truncateToolResponses(500));
+        log.info("Agent 原型初始化完成，共 {} 个工具", combinedTools.length);
+    }
 
+    /**
+     * 持久化前消息压缩的统计
+     */
+    public MessageCompactionPipeline.Stats getMemoryCompactionStats() {
+        return memoryCompactionPipeline.getStats();
+    }
 
-        // 2. 加载历史对话记忆
+    /**
+     * 创建超级智能体模式实例（ReAct 模式，整合记忆、RAG、工具调用、MCP）
+     * <p>
+     * 基于启动时构建的原型，每次请求只创建本次运行的状态。
+     *
+     * @param chatId 会话ID，用于持久化对话记忆
+     */
+    public ToolCallAgent createAgentInstance(String chatId) {
+        // 1. 加载历史对话记忆，已被摘要覆盖的较早消息由摘要代替
+        List<Message> history = List.of();
+        String summary = null;
         if (chatId != null) {
-            List<Message> history = agentMemory.get(chatId);
-            if (!history.isEmpty()) {
-                agent.getMessageList().addAll(history);
-                log.info("已加载 {} 条历史消息，chatId: {}", history.size(), chatId);
-            }
+            // 上一轮的消息可能还在后台写入
+            memoryWriter.awaitPending(chatId);
+            ConversationSummarizer.SummarizedHistory summarized =
+                    conversationSummarizer.apply(chatId, agentMemory.get(chatId));
+            history = summarized.messages();
+            summary = summarized.summary();
         }
 
-        // 3. 设置清理回调，保存对话记忆
+        // 2. 设置清理回调，保存对话记忆
         final String finalChatId = chatId;
-        final FileBasedChatMemory memory = this.agentMemory;
-
-        return new ToolCallAgent(combinedTools) {
-            {
-                // 复制配置
-                setName(agent.getName());
-                setSystemPrompt(agent.getSystemPrompt());
-                setNextStepPrompt(agent.getNextStepPrompt());
-                setMaxSteps(agent.getMaxSteps());
-                setChatClient(agentChatClient);
-                setMessageList(agent.getMessageList());
-            }
+        final ChatMemory memory = this.agentMemory;
+        // 历史消息已经持久化，只需追加本次运行新增的消息
+        final int historySize = history.size();
 
+        ToolCallAgent agent = new ToolCallAgent(agentPrototype) {
             @Override
             protected void cleanup() {
-                // 保存消息到文件
+                // 本轮新增的消息交给后台压缩并追加到会话日志，对话较长时随后更新摘要
                 if (finalChatId != null) {
-                    List<Message> messages = getMessageList();
-                    String nextStepPromptContent = getNextStepPrompt();
-                    List<Message> filteredMessages = new ArrayList<>();
-
-                    for (int i = 0; i < messages.size(); i++) {
-                        Message msg = messages.get(i);
-
-                        // 1. 过滤 nextStepPrompt UserMessage
-                        if (msg instanceof UserMessage) {
-                            String content = msg.getText();
-                            if (content != null && nextStepPromptContent != null
-                                && content.trim().equals(nextStepPromptContent.trim())) {
-                                continue;
-                            }
-                            filteredMessages.add(msg);
-                            continue;
-                        }
-
-                        // 2. 处理 AssistantMessage - 过滤只调用 doTerminate 的消息
-                        if (msg instanceof AssistantMessage assistantMsg) {
-                            List<AssistantMessage.ToolCall> toolCalls = assistantMsg.getToolCalls();
-                            // 如果只调用了 doTerminate，跳过
-                            if (toolCalls != null && toolCalls.size() == 1
-                                && "doTerminate".equals(toolCalls.get(0).name())) {
-                                continue;
-                            }
-                            // 截断工具参数（保留简要信息）
-                            if (toolCalls != null && !toolCalls.isEmpty()) {
-                                List<AssistantMessage.ToolCall> truncatedCalls = new ArrayList<>();
-                                for (AssistantMessage.ToolCall call : toolCalls) {
-                                    String args = call.arguments();
-                                    // 截断过长的参数（如 generateMarkdown 的 content）
-                                    if (args != null && args.length() > 200) {
-                                        // 提取关键信息
-                                        String truncated = args.length() > 200
-                                            ? args.substring(0, 200) + "...[已截断]"
-                                            : args;
-                                        truncatedCalls.add(new AssistantMessage.ToolCall(
-                                            call.id(), call.type(), call.name(), truncated));
-                                    } else {
-                                        truncatedCalls.add(call);
-                                    }
-                                }
-                                // 创建新的 AssistantMessage（截断后）
-                                AssistantMessage truncatedMsg = new AssistantMessage(
-                                    assistantMsg.getText(), assistantMsg.getMetadata(), truncatedCalls);
-                                filteredMessages.add(truncatedMsg);
-                            } else {
-                                filteredMessages.add(msg);
-                            }
-                            continue;
-                        }
-
-                        // 3. 处理 ToolResponseMessage - 过滤和截断
-                        if (msg instanceof ToolResponseMessage toolMsg) {
-                            List<ToolResponseMessage.ToolResponse> responses = toolMsg.getResponses();
-                            // 过滤 doTerminate 响应
-                            boolean isTerminateOnly = responses.stream()
-                                .allMatch(r -> "doTerminate".equals(r.name()));
-                            if (isTerminateOnly) {
-                                continue;
-                            }
-
-                            // 截断响应数据
-                            List<ToolResponseMessage.ToolResponse> truncatedResponses = new ArrayList<>();
-                            for (ToolResponseMessage.ToolResponse resp : responses) {
-                                if ("doTerminate".equals(resp.name())) {
-                                    continue; // 跳过 terminate 响应
-                                }
-                                String data = resp.responseData();
-                                // 过滤失败的响应（如百度安全验证）
-                                if (data != null && (data.contains("百度安全验证")
-                                    || data.contains("网络不给力"))) {
-                                    data = "[请求失败]";
-                                }
-                                // 截断过长的响应
-                                if (data != null && data.length() > 500) {
-                                    data = data.substring(0, 500) + "...[已截断]";
-                                }
-                                truncatedResponses.add(new ToolResponseMessage.ToolResponse(
-                                    resp.id(), resp.name(), data));
-                            }
-
-                            if (!truncatedResponses.isEmpty()) {
-                                filteredMessages.add(new ToolResponseMessage(truncatedResponses, toolMsg.getMetadata()));
-                            }
-                            continue;
-                        }
-
-                        // 其他类型消息直接保留
-                        filteredMessages.add(msg);
-                    }
-
-                    // 只保留最近的 20 条消息
-                    int maxMessages = 20;
-                    if (filteredMessages.size() > maxMessages) {
-                        filteredMessages = new ArrayList<>(filteredMessages.subList(
-                            filteredMessages.size() - maxMessages, filteredMessages.size()));
-                    }
-
-                    // 清除旧记录后添加新记录
-                    memory.clear(finalChatId);
-                    memory.add(finalChatId, filteredMessages);
-                    log.info("已保存 {} 条消息到文件（已优化压缩），chatId: {}", filteredMessages.size(), finalChatId);
+                    List<Message> allMessages = getMessageList();
+                    List<Message> messages = new ArrayList<>(
+                            allMessages.subList(Math.min(historySize, allMessages.size()), allMessages.size()));
+                    memoryWriter.submit(memory, finalChatId, messages, memoryCompactionPipeline,
+                            () -> conversationSummarizer.onTurnPersisted(finalChatId));
                 }
                 super.cleanup();
             }
         };
+
+        // 3. 放入历史对话记忆
+        if (summary != null) {
+            agent.setSystemPrompt(AGENT_SYSTEM_PROMPT + "\n\n【此前对话摘要】\n" + summary);
+            log.info("已加载对话摘要（{} 字），chatId: {}", summary.length(), chatId);
+        }
+        if (!history.isEmpty()) {
+            agent.getMessageList().addAll(history);
+            log.info("已加载 {} 条历史消息，chatId: {}", history.size(), chatId);
+        }
+
+        return agent;
     }
 }
@@ -0,0 +1,147 @@
+package com.ai.agent.chatmemory;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对话记忆的异步写入
+ * <p>
+ * 智能体运行结束（SSE 已完成）后，本轮新增消息的压缩和持久化交给后台线程，不再占用智能体的运行线程。
+ * 写入在单线程上按提交顺序执行，同一会话的多轮不会乱序；同一会话的下一轮加载历史前调用 {@link #awaitPending}，
+ * 保证读到上一轮的消息。适用于任意 {@link ChatMemory} 实现。
+ */
+@Component
+@DependsOn("agentMemory")
+@Slf4j
+public class AsyncChatMemoryWriter {
+
+    private final Duration awaitTimeout;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chat-memory-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 每个会话最近一次提交的写入，完成后移除
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+
+    public AsyncChatMemoryWriter(@Value("${agent.memory.writer.await-timeout:5s}") Duration awaitTimeout) {
+        this.awaitTimeout = awaitTimeout;
+    }
+
+    /**
+     * 提交一轮新增消息：在后台压缩后追加到对话记忆，成功后执行 afterPersist
+     *
+     * @param memory         对话记忆
+     * @param conversationId 会话ID
+     * @param messages       本轮新增的消息（调用方不再修改）
+     * @param pipeline       压缩管道
+     * @param afterPersist   持久化完成后的回调（如更新摘要），可以为 null
+     */
+    public CompletableFuture<Void> submit(ChatMemory memory, String conversationId, List<Message> messages,
+                                          MessageCompactionPipeline pipeline, Runnable afterPersist) {
+        submitted.incrementAndGet();
+        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                List<Message> compacted = pipeline.compact(messages);
+                memory.add(conversationId, compacted);
+                log.info("已追加 {} 条消息到对话记忆（压缩前 {} 条），chatId: {}",
+                        compacted.size(), messages.size(), conversationId);
+                if (afterPersist != null) {
+                    afterPersist.run();
+                }
+                completed.incrementAndGet();
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+                log.error("对话记忆写入失败，chatId: {}", conversationId, e);
+            } finally {
+                writeNanos.addAndGet(System.nanoTime() - start);
+            }
+        }, executor);
+        pending.put(conversationId, future);
+        future.whenComplete((ignored, e) -> pending.remove(conversationId, future));
+        return future;
+    }
+
+    /**
+     * 等待会话尚未完成的写入（最多等待 await-timeout），在加载历史前调用
+     */
+    public void awaitPending(String conversationId) {
+        CompletableFuture<Void> future = pending.get(conversationId);
+        if (future == null) {
+            return;
+        }
+        waits.incrementAndGet();
+        try {
+            future.get(awaitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeouts.incrementAndGet();
+            log.warn("等待对话记忆写入超时，按已有历史继续，chatId: {}", conversationId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // 写入任务内部已记录错误
+        }
+    }
+
+    /**
+     * 关闭时写完已提交的消息（在对话记忆关闭之前）
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("对话记忆写入未在关闭前完成，剩余 {} 个会话", pending.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 异步写入统计
+     *
+     * @param submitted 提交的写入数
+     * @param completed 完成的写入数
+     * @param failures  失败的写入数
+     * @param pending   尚未完成的会话数
+     * @param waits     下一轮加载历史时等待写入的次数
+     * @param timeouts  等待超时的次数
+     * @param avgMicros 平均每次写入耗时（微秒，含压缩）
+     */
+    public record Stats(long submitted, long completed, long failures, int pending, long waits, long timeouts,
+                        double avgMicros) {
+    }
+
+    public Stats getStats() {
+        long done = completed.get() + failures.get();
+        return new Stats(submitted.get(), completed.get(), failures.get(), pending.size(), waits.get(), timeouts.get(),
+                done == 0 ? 0 : writeNanos.get() / 1e3 / done);
+    }
+}
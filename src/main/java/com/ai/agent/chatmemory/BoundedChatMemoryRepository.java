@@ -0,0 +1,447 @@
+package com.ai.agent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 有容量上限的内存对话记忆存储（基础对话 doChat 使用）
+ * <p>
+ * 替代 Spring AI 默认的 InMemoryChatMemoryRepository：后者保留进程见过的每个会话，长期运行时堆内存只增不减。
+ * 这里按估算的内容大小限制总占用，超出时淘汰最久未使用的会话；空闲超过 idle-ttl 的会话由后台线程淘汰。
+ * 开启溢出时，被淘汰的会话用 {@link MessageCodec} 写入溢出目录，再次访问时读回内存；
+ * 溢出文件超过 spill-ttl 后删除。溢出只是内存的延伸，启动时删除上次留下的溢出文件，重启后与内存存储一样从空白开始；
+ * 溢出目录中有溢出文件以外的内容时（例如误配置为其他数据目录）拒绝启动，不做任何删除。
+ * <p>
+ * 同一会话的读写由分段锁串行化；淘汰在调用方释放自己的锁之后进行，不会嵌套加锁。
+ */
+@Slf4j
+public class BoundedChatMemoryRepository implements ChatMemoryRepository, AutoCloseable {
+
+    // 每个会话的固定开销估算（会话 ID、列表、缓存节点）
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private static final int LOCK_STRIPES = 64;
+
+    // 溢出目录的分片子目录名（见 FileBasedChatMemory.shardDir）
+    private static final Pattern SHARD_DIR = Pattern.compile("[0-9a-f]{2}");
+
+    private static final String SPILL_SUFFIX = ".kryo";
+
+    private final long maxBytes;
+
+    private final Duration idleTtl;
+
+    // 溢出目录，为 null 时淘汰即丢弃
+    private final Path spillDir;
+
+    private final Duration spillTtl;
+
+    // 访问顺序的 LinkedHashMap，实现 LRU 淘汰（由自身加锁保护）
+    private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    // 已溢出到磁盘的会话及溢出时间
+    private final Map<String, Long> spilled = new ConcurrentHashMap<>();
+
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    private final ScheduledExecutorService evictor;
+
+    private long cachedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong spillHits = new AtomicLong();
+    private final AtomicLong spillWrites = new AtomicLong();
+    private final AtomicLong spillFailures = new AtomicLong();
+    private final AtomicLong sizeEvictions = new AtomicLong();
+    private final AtomicLong idleEvictions = new AtomicLong();
+    private final AtomicLong spillExpirations = new AtomicLong();
+
+    /**
+     * @param maxBytes      内存占用上限（估算）
+     * @param idleTtl       空闲多久后淘汰
+     * @param spillDir      溢出目录，为 null 时不溢出
+     * @param spillTtl      溢出文件的保留时长
+     * @param evictInterval 后台淘汰的间隔
+     */
+    public BoundedChatMemoryRepository(long maxBytes, Duration idleTtl, String spillDir, Duration spillTtl,
+                                       Duration evictInterval) {
+        this.maxBytes = maxBytes;
+        this.idleTtl = idleTtl;
+        this.spillTtl = spillTtl;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        if (spillDir == null) {
+            this.spillDir = null;
+        } else {
+            this.spillDir = Paths.get(spillDir);
+            // 上次运行留下的溢出文件不再有对应的会话
+            clearSpillDir(this.spillDir);
+        }
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-memory-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = evictInterval.toMillis();
+        evictor.scheduleWithFixedDelay(this::evictIdleQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<String> findConversationIds() {
+        Set<String> ids;
+        synchronized (cache) {
+            ids = new LinkedHashSet<>(cache.keySet());
+        }
+        ids.addAll(spilled.keySet());
+        return new ArrayList<>(ids);
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        ReentrantLock lock = lockFor(conversationId);
+        List<Message> messages;
+        lock.lock();
+        try {
+            Entry entry = load(conversationId);
+            messages = entry == null ? List.of() : new ArrayList<>(entry.messages);
+        } finally {
+            lock.unlock();
+        }
+        // 从溢出文件读回后可能超出上限
+        evictIfNeeded();
+        return messages;
+    }
+
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            Entry entry = new Entry(new ArrayList<>(messages));
+            removeSpill(conversationId);
+            synchronized (cache) {
+                Entry previous = cache.put(conversationId, entry);
+                if (previous != null) {
+                    cachedBytes -= previous.bytes;
+                }
+                cachedBytes += entry.bytes;
+            }
+        } finally {
+            lock.unlock();
+        }
+        evictIfNeeded();
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            synchronized (cache) {
+                Entry entry = cache.remove(conversationId);
+                if (entry != null) {
+                    cachedBytes -= entry.bytes;
+                }
+            }
+            removeSpill(conversationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取内存中的会话，不在内存时从溢出文件读回；调用方持有会话锁
+     */
+    private Entry load(String conversationId) {
+        synchronized (cache) {
+            Entry entry = cache.get(conversationId);
+            if (entry != null) {
+                hits.incrementAndGet();
+                entry.lastAccess = System.currentTimeMillis();
+                return entry;
+            }
+        }
+        misses.incrementAndGet();
+        if (!spilled.containsKey(conversationId)) {
+            return null;
+        }
+        Path file = spillFile(conversationId);
+        Entry entry;
+        try {
+            entry = new Entry(MessageCodec.decode(Files.readAllBytes(file)));
+        } catch (IOException | RuntimeException e) {
+            spillFailures.incrementAndGet();
+            log.warn("读取溢出的对话记忆失败，chatId: {}: {}", conversationId, e.getMessage());
+            removeSpill(conversationId);
+            return null;
+        }
+        spillHits.incrementAndGet();
+        removeSpill(conversationId);
+        synchronized (cache) {
+            cache.put(conversationId, entry);
+            cachedBytes += entry.bytes;
+        }
+        return entry;
+    }
+
+    /**
+     * 超出大小上限时淘汰最久未使用的会话（至少保留一个）
+     */
+    private void evictIfNeeded() {
+        while (true) {
+            Map.Entry<String, Entry> victim;
+            synchronized (cache) {
+                if (cachedBytes <= maxBytes || cache.size() <= 1) {
+                    return;
+                }
+                victim = cache.entrySet().iterator().next();
+            }
+            if (evict(victim.getKey(), victim.getValue(), 0)) {
+                sizeEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 淘汰一个会话：从内存移除，开启溢出时写入溢出文件
+     *
+     * @param entry      选中淘汰时看到的会话内容，期间被重新写入（替换）时不淘汰
+     * @param idleBefore 大于 0 时只淘汰最近访问早于该时间的会话
+     */
+    private boolean evict(String conversationId, Entry entry, long idleBefore) {
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            synchronized (cache) {
+                // 先检查再移除，不使用 get、也不重新放入，避免改变访问顺序
+                if (idleBefore > 0 && entry.lastAccess >= idleBefore) {
+                    return false;
+                }
+                if (!cache.remove(conversationId, entry)) {
+                    return false;
+                }
+                cachedBytes -= entry.bytes;
+            }
+            spill(conversationId, entry);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void spill(String conversationId, Entry entry) {
+        if (spillDir == null || entry.messages.isEmpty()) {
+            return;
+        }
+        Path file = spillFile(conversationId);
+        try {
+            Files.createDirectories(file.getParent());
+            Files.write(file, MessageCodec.encode(entry.messages));
+            spilled.put(conversationId, System.currentTimeMillis());
+            spillWrites.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            spillFailures.incrementAndGet();
+            log.warn("对话记忆溢出到磁盘失败，直接丢弃，chatId: {}: {}", conversationId, e.getMessage());
+        }
+    }
+
+    private void removeSpill(String conversationId) {
+        if (spilled.remove(conversationId) != null) {
+            try {
+                Files.deleteIfExists(spillFile(conversationId));
+            } catch (IOException e) {
+                log.warn("删除溢出文件失败，chatId: {}: {}", conversationId, e.getMessage());
+            }
+        }
+    }
+
+    private Path spillFile(String conversationId) {
+        String key = FileBasedChatMemory.storageKey(conversationId);
+        return FileBasedChatMemory.shardDir(spillDir, key).resolve(key + SPILL_SUFFIX);
+    }
+
+    /**
+     * 删除上次运行留下的溢出文件：只删除分片子目录（{@code ab/cd}）下的 .kryo 文件和随之变空的分片目录。
+     * 目录中有其他内容时抛出异常，避免误删配置错误的目录
+     */
+    static void clearSpillDir(Path dir) {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        if (!Files.isDirectory(dir)) {
+            throw new IllegalStateException("对话记忆溢出目录不是目录: " + dir.toAbsolutePath());
+        }
+        List<Path> spillFiles = new ArrayList<>();
+        List<Path> shardDirs = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(dir, 3)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (path.equals(dir)) {
+                    continue;
+                }
+                Path relative = dir.relativize(path);
+                String name = path.getFileName().toString();
+                boolean isShardDir = relative.getNameCount() < 3 && Files.isDirectory(path)
+                        && SHARD_DIR.matcher(name).matches();
+                boolean isSpillFile = relative.getNameCount() == 3 && Files.isRegularFile(path)
+                        && name.endsWith(SPILL_SUFFIX);
+                if (isShardDir) {
+                    shardDirs.add(path);
+                } else if (isSpillFile) {
+                    spillFiles.add(path);
+                } else {
+                    throw new IllegalStateException("对话记忆溢出目录包含非溢出文件，拒绝清理: " + path.toAbsolutePath()
+                            + "，请为 agent.chat-memory.in-memory.spill-dir 配置专用目录");
+                }
+            }
+            for (Path file : spillFiles) {
+                Files.delete(file);
+            }
+            // 先删除深层目录
+            shardDirs.sort((a, b) -> b.getNameCount() - a.getNameCount());
+            for (Path shardDir : shardDirs) {
+                try (Stream<Path> children = Files.list(shardDir)) {
+                    if (children.findAny().isEmpty()) {
+                        Files.delete(shardDir);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("清理对话记忆溢出目录失败 {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private ReentrantLock lockFor(String conversationId) {
+        return locks[(conversationId.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    private void evictIdleQuietly() {
+        try {
+            evictIdle();
+        } catch (Exception e) {
+            log.error("对话记忆后台淘汰失败", e);
+        }
+    }
+
+    /**
+     * 淘汰空闲超过 idle-ttl 的会话，删除超过 spill-ttl 的溢出文件
+     */
+    void evictIdle() {
+        long now = System.currentTimeMillis();
+        long idleBefore = now - idleTtl.toMillis();
+        List<Map.Entry<String, Entry>> idle = new ArrayList<>();
+        synchronized (cache) {
+            // 访问顺序遍历，遇到第一个未空闲的会话即可停止
+            Iterator<Map.Entry<String, Entry>> iterator = cache.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Entry> entry = iterator.next();
+                if (entry.getValue().lastAccess >= idleBefore) {
+                    break;
+                }
+                idle.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        for (Map.Entry<String, Entry> entry : idle) {
+            if (evict(entry.getKey(), entry.getValue(), idleBefore)) {
+                idleEvictions.incrementAndGet();
+            }
+        }
+        long spillBefore = now - spillTtl.toMillis();
+        for (Map.Entry<String, Long> entry : spilled.entrySet()) {
+            if (entry.getValue() < spillBefore) {
+                ReentrantLock lock = lockFor(entry.getKey());
+                lock.lock();
+                try {
+                    Long spilledAt = spilled.get(entry.getKey());
+                    if (spilledAt != null && spilledAt < spillBefore) {
+                        removeSpill(entry.getKey());
+                        spillExpirations.incrementAndGet();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+    }
+
+    /**
+     * 内存中的会话
+     */
+    private static final class Entry {
+
+        private final List<Message> messages;
+
+        private final long bytes;
+
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        private Entry(List<Message> messages) {
+            this.messages = messages;
+            long size = ENTRY_OVERHEAD_BYTES;
+            for (Message message : messages) {
+                size += WriteBackChatMemory.estimateBytes(message);
+            }
+            this.bytes = size;
+        }
+    }
+
+    /**
+     * 内存对话记忆统计
+     *
+     * @param entries          内存中的会话数
+     * @param cachedBytes      内存占用（估算）
+     * @param maxBytes         内存占用上限
+     * @param spilledEntries   溢出到磁盘的会话数
+     * @param hits             命中内存的读取次数
+     * @param misses           未命中内存的读取次数
+     * @param spillHits        未命中内存、从溢出文件读回的次数
+     * @param spillHitRate     溢出命中率（spillHits / misses）
+     * @param spillWrites      写入溢出文件的次数
+     * @param spillFailures    溢出文件读写失败的次数
+     * @param sizeEvictions    因超出上限淘汰的会话数
+     * @param idleEvictions    因空闲淘汰的会话数
+     * @param spillExpirations 因超过保留时长删除的溢出文件数
+     */
+    public record Stats(int entries, long cachedBytes, long maxBytes, int spilledEntries, long hits, long misses,
+                        long spillHits, double spillHitRate, long spillWrites, long spillFailures,
+                        long sizeEvictions, long idleEvictions, long spillExpirations) {
+    }
+
+    public Stats getStats() {
+        long missCount = misses.get();
+        synchronized (cache) {
+            return new Stats(cache.size(), cachedBytes, maxBytes, spilled.size(), hits.get(), missCount,
+                    spillHits.get(), missCount == 0 ? 0 : (double) spillHits.get() / missCount,
+                    spillWrites.get(), spillFailures.get(), sizeEvictions.get(), idleEvictions.get(),
+                    spillExpirations.get());
+        }
+    }
+}
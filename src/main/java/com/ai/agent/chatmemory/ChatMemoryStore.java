@@ -0,0 +1,17 @@
+package com.ai.agent.chatmemory;
+
+/**
+ * 基础对话（doChat）的对话记忆存储
+ */
+public enum ChatMemoryStore {
+
+    /**
+     * 进程内存，有容量上限，淘汰的会话可溢出到磁盘（单副本，重启丢失）
+     */
+    IN_MEMORY,
+
+    /**
+     * PostgreSQL（多副本共享）
+     */
+    JDBC
+}
@@ -0,0 +1,360 @@
+package com.ai.agent.chatmemory;
+
+import cn.hutool.core.util.StrUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对话记忆的滚动摘要
+ * <p>
+ * 会话日志只保留最近若干条消息，更早的内容（用户的风险承受能力、投资目标等）会被直接丢弃，每轮还要重发整个窗口。
+ * 这里在每轮结束后检查未摘要部分的 token 数，超过阈值时在后台线程上把较早的消息和已有摘要合并为新的摘要，
+ * 只保留最近几条原始消息。窗口按消息数截断，短消息较多时 token 数达到阈值前最早的消息就会滑出窗口，
+ * 因此未摘要的消息数接近窗口大小（差距不超过保留的消息数）时也会触发摘要。摘要按会话缓存，并作为附属文件（{@value FileBasedChatMemory#SUMMARY_SUFFIX}）与会话日志放在一起；
+ * 会话被清空或被后台清理时同时丢弃缓存的摘要。摘要直接调用主模型生成，不经过对冲（备用的小模型摘要质量不够）。
+ * <p>
+ * 摘要记录它覆盖到的最后两条消息的指纹；构建提示词时在窗口中找到这个位置，之前的消息由摘要代替，
+ * 提示词大小因此保持在"摘要 + 最近几条消息"左右。摘要不在请求线程上生成，请求只读取已有的摘要。
+ */
+@Component
+@Slf4j
+public class ConversationSummarizer {
+
+    private static final String SUMMARY_PROMPT = """
+            你是对话记忆整理助手。请把【已有摘要】和【新增对话】合并为一份新的摘要，作为后续对话的背景信息。
+            要求：
+            1. 保留用户的关键信息：风险承受能力、投资目标、投资期限、资金规模、收入与负债、已持有的产品、偏好和明确拒绝的建议
+            2. 保留已经给出的主要结论、建议和生成的文件链接
+            3. 去掉寒暄、重复内容和工具调用的过程细节
+            4. 使用简洁的条目，不超过 %d 字，只输出摘要本身
+
+            【已有摘要】
+            %s
+
+            【新增对话】
+            %s
+            """;
+
+    // jtokkit 编码表加载较重，所有实例共用一个
+    private static final TokenCountEstimator TOKEN_COUNT_ESTIMATOR = new JTokkitTokenCountEstimator();
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final WriteBackChatMemory agentMemory;
+
+    private final ChatModel chatModel;
+
+    private final boolean enabled;
+
+    private final int triggerTokens;
+
+    private final int keepRecentMessages;
+
+    private final int maxSummaryChars;
+
+    private final int toolResponseChars;
+
+    private final int cacheSize;
+
+    // 单线程后台生成摘要，同一会话排队中的任务只保留一个
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "memory-summarizer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    // 存储键 -> 摘要。访问顺序的 LinkedHashMap，实现 LRU 淘汰（没有摘要的会话缓存为空值，避免每轮读盘）
+    private final LinkedHashMap<String, Optional<Summary>> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong summarizedTurns = new AtomicLong();
+    private final AtomicLong summarizations = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong foldedMessages = new AtomicLong();
+    private final AtomicLong windowTokens = new AtomicLong();
+    private final AtomicLong promptTokens = new AtomicLong();
+
+    // 会话被清空或清理的次数：生成摘要期间发生过时不写入，避免已删除的会话留下摘要
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public ConversationSummarizer(WriteBackChatMemory agentMemory, ChatModel dashscopeChatModel,
+                                  @Value("${agent.memory.summary.enabled:true}") boolean enabled,
+                                  @Value("${agent.memory.summary.trigger-tokens:2000}") int triggerTokens,
+                                  @Value("${agent.memory.summary.keep-recent-messages:6}") int keepRecentMessages,
+                                  @Value("${agent.memory.summary.max-summary-chars:600}") int maxSummaryChars,
+                                  @Value("${agent.memory.summary.tool-response-chars:300}") int toolResponseChars,
+                                  @Value("${agent.memory.summary.cache-size:10000}") int cacheSize) {
+        this.agentMemory = agentMemory;
+        this.chatModel = dashscopeChatModel;
+        this.enabled = enabled;
+        this.triggerTokens = triggerTokens;
+        this.keepRecentMessages = keepRecentMessages;
+        this.maxSummaryChars = maxSummaryChars;
+        this.toolResponseChars = toolResponseChars;
+        this.cacheSize = cacheSize;
+        agentMemory.addForgetListener(this::invalidate);
+    }
+
+    /**
+     * 持久化的摘要
+     *
+     * @param text                摘要文本
+     * @param lastFingerprint     摘要覆盖的最后一条消息的指纹
+     * @param previousFingerprint 其前一条消息的指纹（0 表示没有）
+     * @param folded              累计合并进摘要的消息数
+     * @param updatedAt           更新时间（毫秒）
+     */
+    public record Summary(String text, int lastFingerprint, int previousFingerprint, long folded, long updatedAt) {
+    }
+
+    /**
+     * 应用摘要后的历史
+     *
+     * @param summary  摘要文本，没有摘要时为 null
+     * @param messages 摘要之后的原始消息
+     */
+    public record SummarizedHistory(String summary, List<Message> messages) {
+    }
+
+    /**
+     * 用摘要代替窗口中已被摘要覆盖的消息（请求线程调用，只读取已有的摘要）
+     *
+     * @param chatId 会话 ID
+     * @param window 会话日志中的最近消息
+     */
+    public SummarizedHistory apply(String chatId, List<Message> window) {
+        Summary summary = enabled ? getSummary(chatId) : null;
+        if (summary == null) {
+            return new SummarizedHistory(null, window);
+        }
+        List<Message> tail = window.subList(coveredUntil(window, summary), window.size());
+        int before = countTokens(window);
+        int after = estimateTokens(summary.text()) + countTokens(tail);
+        summarizedTurns.incrementAndGet();
+        windowTokens.addAndGet(before);
+        promptTokens.addAndGet(after);
+        return new SummarizedHistory(summary.text(), new ArrayList<>(tail));
+    }
+
+    /**
+     * 一轮对话持久化后调用：在后台检查是否需要更新摘要
+     */
+    public void onTurnPersisted(String chatId) {
+        if (!enabled || chatId == null || !pending.add(chatId)) {
+            return;
+        }
+        executor.execute(() -> {
+            pending.remove(chatId);
+            try {
+                summarize(chatId);
+            } catch (Exception e) {
+                failures.incrementAndGet();
+                log.warn("生成对话摘要失败，chatId: {}: {}", chatId, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 未摘要部分超过 token 阈值、或即将有未摘要的消息滑出窗口时，把除最近几条以外的消息合并进摘要
+     */
+    void summarize(String chatId) {
+        long generation = invalidations.get();
+        List<Message> window = agentMemory.get(chatId);
+        Summary existing = getSummary(chatId);
+        int start = existing == null ? 0 : coveredUntil(window, existing);
+        List<Message> unsummarized = window.subList(start, window.size());
+        if (countTokens(unsummarized) < triggerTokens && !nearWindowLimit(unsummarized.size())) {
+            return;
+        }
+        // 保留的原始消息从用户提问开始，避免工具响应与对应的调用被拆开
+        int cut = Math.max(0, unsummarized.size() - keepRecentMessages);
+        while (cut < unsummarized.size() && !(unsummarized.get(cut) instanceof UserMessage)) {
+            cut++;
+        }
+        if (cut == 0) {
+            return;
+        }
+        List<Message> fold = unsummarized.subList(0, cut);
+        String existingText = existing == null ? "（无）" : existing.text();
+        String prompt = SUMMARY_PROMPT.formatted(maxSummaryChars, existingText, render(fold));
+        String text = chatModel.call(new Prompt(new UserMessage(prompt))).getResult().getOutput().getText();
+        if (StrUtil.isBlank(text)) {
+            throw new IllegalStateException("模型返回的摘要为空");
+        }
+        Summary summary = new Summary(text.trim(),
+                MessageCodec.fingerprint(fold.get(fold.size() - 1)),
+                fold.size() > 1 ? MessageCodec.fingerprint(fold.get(fold.size() - 2)) : 0,
+                (existing == null ? 0 : existing.folded()) + fold.size(),
+                System.currentTimeMillis());
+        if (invalidations.get() != generation) {
+            log.debug("生成摘要期间有会话被清空，丢弃本次摘要，chatId: {}", chatId);
+            return;
+        }
+        try {
+            agentMemory.writeSidecar(chatId, FileBasedChatMemory.SUMMARY_SUFFIX, OBJECT_MAPPER.writeValueAsString(summary));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+        putCache(chatId, Optional.of(summary));
+        summarizations.incrementAndGet();
+        foldedMessages.addAndGet(fold.size());
+        log.info("对话摘要已更新：合并 {} 条消息（{} tokens）为 {} tokens，chatId: {}",
+                fold.size(), countTokens(fold), estimateTokens(summary.text()), chatId);
+    }
+
+    /**
+     * 未摘要的消息数是否已接近窗口大小：再来一轮对话（按保留的消息数估计，至少一问一答），最早的未摘要消息就会被挤出窗口
+     */
+    private boolean nearWindowLimit(int unsummarized) {
+        int margin = Math.max(2, keepRecentMessages);
+        return unsummarized > margin && unsummarized >= (long) agentMemory.getWindowSize() - margin;
+    }
+
+    /**
+     * 摘要覆盖到的位置（之后的消息不在摘要中）；窗口中已找不到覆盖的消息时，窗口中的消息都比摘要新
+     */
+    private static int coveredUntil(List<Message> window, Summary summary) {
+        for (int i = window.size() - 1; i >= 0; i--) {
+            if (MessageCodec.fingerprint(window.get(i)) == summary.lastFingerprint()
+                    && (summary.previousFingerprint() == 0
+                    || (i > 0 && MessageCodec.fingerprint(window.get(i - 1)) == summary.previousFingerprint()))) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private String render(List<Message> messages) {
+        StringBuilder text = new StringBuilder();
+        for (Message message : messages) {
+            if (message instanceof UserMessage) {
+                text.append("用户：").append(message.getText()).append('\n');
+            } else if (message instanceof AssistantMessage assistantMessage) {
+                if (StrUtil.isNotBlank(assistantMessage.getText())) {
+                    text.append("助手：").append(assistantMessage.getText()).append('\n');
+                }
+                for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                    text.append("助手调用工具 ").append(toolCall.name()).append('：')
+                            .append(StrUtil.maxLength(toolCall.arguments(), 200)).append('\n');
+                }
+            } else if (message instanceof ToolResponseMessage toolResponseMessage) {
+                for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                    text.append("工具 ").append(response.name()).append(" 返回：")
+                            .append(StrUtil.maxLength(response.responseData(), toolResponseChars)).append('\n');
+                }
+            } else if (!(message instanceof SystemMessage)) {
+                text.append(message.getText()).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    private Summary getSummary(String chatId) {
+        synchronized (cache) {
+            Optional<Summary> cached = cache.get(FileBasedChatMemory.storageKey(chatId));
+            if (cached != null) {
+                return cached.orElse(null);
+            }
+        }
+        long generation = invalidations.get();
+        Summary summary = null;
+        String json = agentMemory.readSidecar(chatId, FileBasedChatMemory.SUMMARY_SUFFIX);
+        if (json != null) {
+            try {
+                summary = OBJECT_MAPPER.readValue(json, Summary.class);
+            } catch (JsonProcessingException e) {
+                log.warn("对话摘要文件损坏，忽略，chatId: {}: {}", chatId, e.getMessage());
+            }
+        }
+        // 读取期间会话被清空时不缓存，下次重新读取
+        if (invalidations.get() == generation) {
+            putCache(chatId, Optional.ofNullable(summary));
+        }
+        return summary;
+    }
+
+    private void putCache(String chatId, Optional<Summary> summary) {
+        synchronized (cache) {
+            cache.put(FileBasedChatMemory.storageKey(chatId), summary);
+            while (cache.size() > cacheSize) {
+                cache.remove(cache.keySet().iterator().next());
+            }
+        }
+    }
+
+    /**
+     * 会话被清空或清理后丢弃缓存的摘要
+     *
+     * @param storageKey 会话的存储键
+     */
+    private void invalidate(String storageKey) {
+        invalidations.incrementAndGet();
+        synchronized (cache) {
+            cache.remove(storageKey);
+        }
+    }
+
+    private static int countTokens(List<Message> messages) {
+        int total = 0;
+        for (Message message : messages) {
+            total += estimateTokens(message.getText());
+            if (message instanceof AssistantMessage assistantMessage) {
+                for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                    total += estimateTokens(toolCall.arguments());
+                }
+            } else if (message instanceof ToolResponseMessage toolResponseMessage) {
+                for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                    total += estimateTokens(response.responseData());
+                }
+            }
+        }
+        return total;
+    }
+
+    private static int estimateTokens(String text) {
+        return StrUtil.isBlank(text) ? 0 : TOKEN_COUNT_ESTIMATOR.estimate(text);
+    }
+
+    /**
+     * 对话摘要统计（只有汇总数据，不含会话 ID：会话 ID 即访问对话记忆的凭据，不能通过统计接口暴露）
+     *
+     * @param summarizedTurns 使用摘要的轮数
+     * @param summarizations  生成摘要的次数
+     * @param failures        生成失败的次数
+     * @param foldedMessages  合并进摘要的消息数
+     * @param windowTokens    使用摘要的轮次中，历史消息原本的 token 数
+     * @param promptTokens    使用摘要后的 token 数
+     * @param savedTokens     节省的 token 数
+     */
+    public record Stats(long summarizedTurns, long summarizations, long failures, long foldedMessages,
+                        long windowTokens, long promptTokens, long savedTokens) {
+    }
+
+    public Stats getStats() {
+        return new Stats(summarizedTurns.get(), summarizations.get(), failures.get(), foldedMessages.get(),
+                windowTokens.get(), promptTokens.get(), windowTokens.get() - promptTokens.get());
+    }
+}
@@ -0,0 +1,328 @@
+package com.ai.agent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * 会话日志的后台清理
+ * <p>
+ * 定期扫描分片目录：空闲时间（最近访问时间与文件修改时间取较晚者）超过 TTL 的会话被清理；
+ * 清理后总大小仍超出配额时，从最久未访问的会话开始继续清理。清理是归档（移动到 {@code <dir>/archive} 下的同一路径）
+ * 或直接删除，附属文件（如对话摘要）随日志一起处理。访问时间索引在每次扫描后保存到 {@code <dir>/access-index}，重启后继续生效。
+ * <p>
+ * 清理在单独的线程上运行，对会话加锁使用 tryLock：正在读写的会话直接跳过、留到下一轮，不会阻塞请求线程。
+ */
+@Slf4j
+public final class ConversationSweeper {
+
+    private static final String ARCHIVE_DIR = "archive";
+
+    private static final String INDEX_FILE = "access-index";
+
+    private static final Pattern SHARD = Pattern.compile("[0-9a-f]{2}");
+
+    private final FileBasedChatMemory memory;
+
+    private final Path baseDir;
+
+    private final Duration ttl;
+
+    private final long maxTotalBytes;
+
+    private final boolean archive;
+
+    private final ScheduledExecutorService executor;
+
+    private volatile int conversations;
+    private volatile long totalBytes;
+    private volatile long lastSweepMillis;
+    private volatile Instant lastSweepAt;
+
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong quotaRemovals = new AtomicLong();
+    private final AtomicLong skippedBusy = new AtomicLong();
+
+    ConversationSweeper(FileBasedChatMemory memory, Duration ttl, long maxTotalBytes, Duration interval,
+                        boolean archive) {
+        this.memory = memory;
+        this.baseDir = memory.getBaseDir();
+        this.ttl = ttl;
+        this.maxTotalBytes = maxTotalBytes;
+        this.archive = archive;
+        loadIndex();
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-memory-sweeper");
+            thread.setDaemon(true);
+            // 让出 CPU 给请求线程
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        long intervalMillis = interval.toMillis();
+        // 启动后先做一次扫描，得到初始的存储统计
+        executor.scheduleWithFixedDelay(this::sweepQuietly, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 一个会话日志文件
+     *
+     * @param key        存储键
+     * @param file       文件路径
+     * @param bytes      文件大小
+     * @param lastAccess 最近访问时间（毫秒）
+     */
+    private record Entry(String key, Path file, long bytes, long lastAccess) {
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (Exception e) {
+            log.error("会话日志清理失败", e);
+        }
+    }
+
+    /**
+     * 扫描一轮：先按 TTL 清理，再按总大小配额清理，最后保存访问时间索引
+     */
+    void sweep() throws IOException {
+        long start = System.currentTimeMillis();
+        List<Entry> entries = scan();
+        Set<String> pinned = memory.getPinnedKeys();
+        long expireBefore = start - ttl.toMillis();
+        long bytes = 0;
+        List<Entry> live = new ArrayList<>(entries.size());
+        int expiredNow = 0;
+        for (Entry entry : entries) {
+            if (entry.lastAccess() < expireBefore && !pinned.contains(entry.key()) && remove(entry)) {
+                expired.incrementAndGet();
+                expiredNow++;
+            } else {
+                live.add(entry);
+                bytes += entry.bytes();
+            }
+        }
+        int quotaNow = 0;
+        if (bytes > maxTotalBytes) {
+            live.sort(Comparator.comparingLong(Entry::lastAccess));
+            List<Entry> kept = new ArrayList<>(live.size());
+            for (Entry entry : live) {
+                if (bytes > maxTotalBytes && !pinned.contains(entry.key()) && remove(entry)) {
+                    quotaRemovals.incrementAndGet();
+                    quotaNow++;
+                    bytes -= entry.bytes();
+                } else {
+                    kept.add(entry);
+                }
+            }
+            live = kept;
+        }
+        pruneIndex(live, start);
+        saveIndex();
+        conversations = live.size();
+        totalBytes = bytes;
+        lastSweepAt = Instant.ofEpochMilli(start);
+        lastSweepMillis = System.currentTimeMillis() - start;
+        if (expiredNow > 0 || quotaNow > 0) {
+            log.info("会话日志清理完成：过期 {} 个，超出配额 {} 个，剩余 {} 个（{} 字节），耗时 {} ms",
+                    expiredNow, quotaNow, live.size(), bytes, lastSweepMillis);
+        }
+    }
+
+    /**
+     * 遍历分片目录和根目录下的旧版文件
+     */
+    private List<Entry> scan() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!Files.isDirectory(baseDir)) {
+            return entries;
+        }
+        Map<String, Long> lastAccess = memory.getLastAccess();
+        try (DirectoryStream<Path> level1 = Files.newDirectoryStream(baseDir)) {
+            for (Path dir1 : level1) {
+                String name = dir1.getFileName().toString();
+                if (Files.isRegularFile(dir1)) {
+                    // 尚未迁移的旧版文件
+                    if (name.endsWith(".log") || name.endsWith(".kryo")) {
+                        addEntry(entries, dir1, lastAccess);
+                    }
+                    continue;
+                }
+                if (!SHARD.matcher(name).matches()) {
+                    continue;
+                }
+                try (DirectoryStream<Path> level2 = Files.newDirectoryStream(dir1)) {
+                    for (Path dir2 : level2) {
+                        if (!Files.isDirectory(dir2)) {
+                            continue;
+                        }
+                        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir2, "*.log")) {
+                            for (Path file : files) {
+                                addEntry(entries, file, lastAccess);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static void addEntry(List<Entry> entries, Path file, Map<String, Long> lastAccess) {
+        String name = file.getFileName().toString();
+        String key = name.substring(0, name.lastIndexOf('.'));
+        try {
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            long accessed = Math.max(modified, lastAccess.getOrDefault(key, 0L));
+            entries.add(new Entry(key, file, Files.size(file), accessed));
+        } catch (IOException e) {
+            // 扫描期间被删除或压缩替换，下一轮再处理
+        }
+    }
+
+    /**
+     * 归档或删除一个会话；会话正在被读写或扫描后被访问过时跳过
+     */
+    private boolean remove(Entry entry) {
+        ReentrantLock lock = memory.lockFor(entry.key());
+        if (!lock.tryLock()) {
+            skippedBusy.incrementAndGet();
+            return false;
+        }
+        try {
+            Long accessed = memory.getLastAccess().get(entry.key());
+            if (accessed != null && accessed > entry.lastAccess()) {
+                return false;
+            }
+            List<Path> files = new ArrayList<>();
+            files.add(entry.file());
+            for (String suffix : FileBasedChatMemory.SIDECAR_SUFFIXES) {
+                Path sidecar = entry.file().resolveSibling(entry.key() + suffix);
+                if (Files.exists(sidecar)) {
+                    files.add(sidecar);
+                }
+            }
+            for (Path file : files) {
+                if (archive) {
+                    Path target = baseDir.resolve(ARCHIVE_DIR).resolve(baseDir.relativize(file));
+                    Files.createDirectories(target.getParent());
+                    Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    Files.deleteIfExists(file);
+                }
+            }
+            memory.forget(entry.key());
+            return true;
+        } catch (IOException e) {
+            log.warn("清理会话日志失败 {}: {}", entry.file(), e.getMessage());
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 从索引中去掉已没有文件的会话（扫描开始后才访问的会话可能还没写入文件，保留）
+     */
+    private void pruneIndex(List<Entry> live, long scanStart) {
+        Set<String> liveKeys = new HashSet<>(live.size() * 2);
+        for (Entry entry : live) {
+            liveKeys.add(entry.key());
+        }
+        memory.getLastAccess().entrySet()
+                .removeIf(e -> e.getValue() < scanStart && !liveKeys.contains(e.getKey()));
+    }
+
+    private void loadIndex() {
+        Path index = baseDir.resolve(INDEX_FILE);
+        if (!Files.exists(index)) {
+            return;
+        }
+        try {
+            Map<String, Long> lastAccess = memory.getLastAccess();
+            for (String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                if (tab <= 0) {
+                    continue;
+                }
+                long accessed = Long.parseLong(line.substring(tab + 1));
+                lastAccess.merge(line.substring(0, tab), accessed, Math::max);
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.warn("读取会话访问时间索引失败，按文件修改时间清理: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 保存访问时间索引，先写临时文件再原子替换
+     */
+    private void saveIndex() {
+        StringBuilder content = new StringBuilder();
+        memory.getLastAccess().forEach((key, accessed) -> content.append(key).append('\t').append(accessed).append('\n'));
+        Path index = baseDir.resolve(INDEX_FILE);
+        Path temp = baseDir.resolve(INDEX_FILE + ".tmp");
+        try {
+            Files.writeString(temp, content, StandardCharsets.UTF_8);
+            Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("保存会话访问时间索引失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 停止清理线程并保存索引
+     */
+    void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        saveIndex();
+    }
+
+    /**
+     * 会话存储统计
+     *
+     * @param conversations   会话数（最近一次扫描时）
+     * @param totalBytes      会话日志总大小（最近一次扫描时）
+     * @param maxTotalBytes   总大小配额
+     * @param ttl             空闲会话的保留时长
+     * @param archive         清理时是否归档
+     * @param indexedKeys     访问时间索引中的会话数
+     * @param expired         累计按 TTL 清理的会话数
+     * @param quotaRemovals   累计因超出配额清理的会话数
+     * @param skippedBusy     累计因正在读写而跳过的次数
+     * @param lastSweepMillis 最近一次扫描耗时
+     * @param lastSweepAt     最近一次扫描开始时间
+     */
+    public record StorageStats(int conversations, long totalBytes, long maxTotalBytes, Duration ttl, boolean archive,
+                               int indexedKeys, long expired, long quotaRemovals, long skippedBusy,
+                               long lastSweepMillis, Instant lastSweepAt) {
+    }
+
+    StorageStats getStats() {
+        return new StorageStats(conversations, totalBytes, maxTotalBytes, ttl, archive, memory.getLastAccess().size(),
+                expired.get(), quotaRemovals.get(), skippedBusy.get(), lastSweepMillis, lastSweepAt);
+    }
+}
@@ -1,85 +1,593 @@
 package com.ai.agent.chatmemory;
 
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.Input;
-import com.esotericsoftware.kryo.io.Output;
-import org.objenesis.strategy.StdInstantiatorStrategy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.Message;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * 基于文件持久化的对话记忆
+ * <p>
+ * 每个会话一个追加写日志文件（{@link MessageLog}）：新增消息只在末尾追加一条记录，写入成本与会话长度无关。
+ * 读取时只返回最近 windowSize 条消息；日志中的消息数超过窗口的 {@value #COMPACT_RATIO} 倍时，
+ * 在后台把日志重写为只包含窗口内消息的一条记录。旧版整文件序列化的 .kryo 文件在首次访问时迁移，
+ * 也可以用 {@link #migrateAll()} 一次性迁移（同时把旧编码的日志重写为 {@link MessageCodec} 的紧凑格式）。
+ * <p>
+ * 目录布局：日志按存储键的哈希分到两级子目录（{@code <dir>/ab/cd/<key>.log}），单个目录内的文件数不会随会话数线性增长。
+ * 存储键即会话 ID；会话 ID 含有文件名不允许的字符或过长时改用其 SHA-256（同时避免路径穿越）。
+ * 旧版直接放在根目录下的文件在首次访问时移动到分片目录。
+ * <p>
+ * 内存中记录各会话的最近访问时间，由 {@link ConversationSweeper} 在后台按 TTL 和总大小配额清理空闲会话。
+ * 线程安全：同一会话的读写按会话 ID 分段加锁串行执行，不同会话（落在不同分段时）互不阻塞。
  */
+@Slf4j
 public class FileBasedChatMemory implements ChatMemory {
 
+    // 日志中的消息数超过窗口的该倍数时压缩
+    private static final int COMPACT_RATIO = 2;
+
+    // 分段锁数量（2 的幂）
+    private static final int LOCK_STRIPES = 64;
+
+    // 可以直接作为文件名的会话 ID
+    private static final Pattern PLAIN_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    // 哈希存储键的前缀（不在 PLAIN_ID 的字符集中，不会与原样使用的会话 ID 冲突）
+    private static final String HASHED_PREFIX = "~";
+
+    /**
+     * 会话的附属文件后缀（与日志放在同一目录，随会话一起清理）
+     */
+    public static final String SUMMARY_SUFFIX = ".summary";
+
+    static final List<String> SIDECAR_SUFFIXES = List.of(SUMMARY_SUFFIX);
+
     private final String BASE_DIR;
-    private static final Kryo kryo = new Kryo();
 
-    static {
-        kryo.setRegistrationRequired(false);
-        // 设置实例化策略
-        kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
-    }
+    // 后台压缩线程，close() 时等待排队中的压缩完成
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chat-memory-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 读取时返回的最近消息数
+    private final int windowSize;
+
+    // 各会话日志中的消息数（读取或写入过的会话）
+    private final Map<String, Integer> logMessageCounts = new ConcurrentHashMap<>();
+
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    // 写入日志记录的方式（测试时替换以模拟写入失败）
+    private volatile MessageLog.FrameWriter frameWriter = MessageLog.DEFAULT_WRITER;
+
+    // 存储键 -> 最近访问时间（毫秒）
+    private final Map<String, Long> lastAccess = new ConcurrentHashMap<>();
+
+    // 不能被清理的存储键（例如上层缓存中的会话）
+    private volatile Supplier<Set<String>> pinnedKeys = Set::of;
+
+    private volatile ConversationSweeper sweeper;
+
+    // 会话被清空或清理后的回调（参数为存储键）
+    private final List<Consumer<String>> forgetListeners = new CopyOnWriteArrayList<>();
 
     // 构造对象时，指定文件保存目录
     public FileBasedChatMemory(String dir) {
+        this(dir, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param dir        文件保存目录
+     * @param windowSize 读取时返回的最近消息数，更早的消息在压缩时丢弃
+     */
+    public FileBasedChatMemory(String dir, int windowSize) {
         this.BASE_DIR = dir;
+        this.windowSize = windowSize;
         File baseDir = new File(dir);
         if (!baseDir.exists()) {
             baseDir.mkdirs();
         }
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
     }
 
     @Override
     public void add(String conversationId, List<Message> messages) {
-        List<Message> conversationMessages = getOrCreateConversation(conversationId);
-        conversationMessages.addAll(messages);
-        saveConversation(conversationId, conversationMessages);
+        add(conversationId, messages, false);
+    }
+
+    /**
+     * 追加消息
+     *
+     * @param fsync 是否在返回前把数据刷到磁盘
+     * @return 是否写入成功；失败（包括刷盘失败）时已写入的部分被回滚、日志不变，调用方可以保留消息稍后重试
+     */
+    public boolean add(String conversationId, List<Message> messages, boolean fsync) {
+        if (messages.isEmpty()) {
+            return true;
+        }
+        // 序列化不需要持有锁
+        byte[] payload = MessageCodec.encode(messages);
+        String key = storageKey(conversationId);
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            touchKey(key);
+            return append(conversationId, key, messages.size(), payload, fsync);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean append(String conversationId, String key, int messageCount, byte[] payload, boolean fsync) {
+        Integer count = logMessageCounts.get(key);
+        if (count == null) {
+            count = readLog(conversationId, key).total();
+        }
+        try {
+            Path logFile = getLogFile(key);
+            if (count == 0) {
+                Files.createDirectories(logFile.getParent());
+            }
+            MessageLog.append(logFile, MessageLog.APPEND, messageCount, payload, fsync, frameWriter);
+        } catch (IOException e) {
+            // 失败的记录已回滚；丢弃缓存的消息数，下次写入前重新读取（同时截断回滚失败时残留的半条记录）
+            logMessageCounts.remove(key);
+            log.error("追加会话日志失败，chatId: {}", conversationId, e);
+            return false;
+        }
+        count += messageCount;
+        logMessageCounts.put(key, count);
+        if (windowSize < Integer.MAX_VALUE && count > (long) windowSize * COMPACT_RATIO) {
+            submitCompaction(() -> compact(conversationId, key));
+        }
+        return true;
     }
 
     @Override
     public List<Message> get(String conversationId) {
-        return getOrCreateConversation(conversationId);
+        String key = storageKey(conversationId);
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            touchKey(key);
+            LogContent content = readLog(conversationId, key);
+            logMessageCounts.put(key, content.total());
+            return content.window();
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void clear(String conversationId) {
-        File file = getConversationFile(conversationId);
-        if (file.exists()) {
-            file.delete();
+        String key = storageKey(conversationId);
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            forget(key);
+            Files.deleteIfExists(getLogFile(key));
+            for (String suffix : SIDECAR_SUFFIXES) {
+                Files.deleteIfExists(getSidecarFile(key, suffix));
+            }
+            if (key.equals(conversationId)) {
+                Files.deleteIfExists(getFlatLogFile(key));
+                Files.deleteIfExists(getLegacyFile(key).toPath());
+            }
+        } catch (IOException e) {
+            log.error("删除会话日志失败，chatId: {}", conversationId, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 读取会话的附属文件（如对话摘要）
+     *
+     * @return 文件内容，不存在时为 null
+     */
+    public String readSidecar(String conversationId, String suffix) {
+        Path file = getSidecarFile(storageKey(conversationId), suffix);
+        try {
+            return Files.exists(file) ? Files.readString(file, StandardCharsets.UTF_8) : null;
+        } catch (IOException e) {
+            log.warn("读取会话附属文件失败 {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 写入会话的附属文件，先写临时文件再原子替换
+     */
+    public void writeSidecar(String conversationId, String suffix, String content) {
+        String key = storageKey(conversationId);
+        Path file = getSidecarFile(key, suffix);
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(temp, content, StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("写入会话附属文件失败 {}: {}", file, e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 记录一次访问（上层缓存命中、不经过本类读写时调用），避免活跃会话被当作空闲会话清理
+     */
+    public void touch(String conversationId) {
+        touchKey(storageKey(conversationId));
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * 启动后台清理线程
+     *
+     * @param ttl           空闲超过该时长的会话被清理
+     * @param maxTotalBytes 会话日志的总大小上限，超出时从最久未访问的会话开始清理
+     * @param interval      清理间隔
+     * @param archive       清理时移动到归档目录（true）还是直接删除（false）
+     */
+    public synchronized void startSweeper(Duration ttl, long maxTotalBytes, Duration interval, boolean archive) {
+        if (sweeper == null) {
+            sweeper = new ConversationSweeper(this, ttl, maxTotalBytes, interval, archive);
         }
     }
 
-    private List<Message> getOrCreateConversation(String conversationId) {
-        File file = getConversationFile(conversationId);
-        List<Message> messages = new ArrayList<>();
-        if (file.exists()) {
-            try (Input input = new Input(new FileInputStream(file))) {
-                messages = kryo.readObject(input, ArrayList.class);
+    /**
+     * 设置不能被清理的存储键（上层缓存中的会话，磁盘上的文件被清理后缓存内容会与磁盘不一致）
+     */
+    public void setPinnedKeys(Supplier<Set<String>> pinnedKeys) {
+        this.pinnedKeys = pinnedKeys;
+    }
+
+    /**
+     * 注册会话被清空（{@link #clear}）或被后台清理后的回调，用于丢弃上层按会话缓存的派生数据（如摘要）。
+     * 回调参数为存储键（{@link #storageKey}），在持有该会话的分段锁时调用，不能阻塞
+     */
+    public void addForgetListener(Consumer<String> listener) {
+        forgetListeners.add(listener);
+    }
+
+    /**
+     * 存储统计；未启动清理线程时为空
+     */
+    public ConversationSweeper.StorageStats getStorageStats() {
+        ConversationSweeper current = sweeper;
+        return current == null ? null : current.getStats();
+    }
+
+    /**
+     * 迁移结果
+     *
+     * @param scanned     检查的会话数
+     * @param migrated    迁移的会话数
+     * @param failed      迁移失败的会话数
+     * @param bytesBefore 迁移前的文件大小
+     * @param bytesAfter  迁移后的文件大小
+     * @param millis      耗时
+     */
+    public record MigrationReport(int scanned, int migrated, int failed, long bytesBefore, long bytesAfter,
+                                  long millis) {
+    }
+
+    /**
+     * 在后台压缩线程上执行 {@link #migrateAll()}
+     */
+    public void migrateAllInBackground() {
+        submitCompaction(() -> {
+            MigrationReport report = migrateAll();
+            if (report.migrated() > 0 || report.failed() > 0) {
+                log.info("会话文件迁移完成：检查 {} 个，迁移 {} 个，失败 {} 个，{} 字节 -> {} 字节，耗时 {} ms",
+                        report.scanned(), report.migrated(), report.failed(), report.bytesBefore(),
+                        report.bytesAfter(), report.millis());
+            }
+        });
+    }
+
+    /**
+     * 一次性迁移全部旧数据：根目录下的 .kryo 和日志文件移动到分片目录，
+     * 含旧编码记录的日志重写为只包含窗口内消息的一条紧凑格式记录
+     */
+    public MigrationReport migrateAll() {
+        long start = System.currentTimeMillis();
+        int scanned = 0;
+        int migrated = 0;
+        int failed = 0;
+        long bytesBefore = 0;
+        long bytesAfter = 0;
+        List<String> keys = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(getBaseDir(), 3)) {
+            files.filter(file -> !file.startsWith(getBaseDir().resolve("archive")))
+                    .map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(".log") || name.endsWith(".kryo"))
+                    .map(name -> name.substring(0, name.lastIndexOf('.')))
+                    .distinct()
+                    .forEach(keys::add);
+        } catch (IOException e) {
+            log.error("扫描会话目录失败", e);
+        }
+        for (String key : keys) {
+            scanned++;
+            ReentrantLock lock = lockFor(key);
+            lock.lock();
+            try {
+                long before = sizeOf(getLogFile(key)) + sizeOf(getFlatLogFile(key)) + getLegacyFile(key).length();
+                migrateLegacy(key, key);
+                Path logFile = getLogFile(key);
+                boolean legacyRecords = false;
+                for (MessageLog.Record record : MessageLog.read(logFile)) {
+                    legacyRecords |= !MessageCodec.isCompact(record.payload());
+                }
+                if (legacyRecords) {
+                    List<Message> live = readLog(key, key).window();
+                    MessageLog.rewrite(logFile, live.size(), MessageCodec.encode(live));
+                    logMessageCounts.put(key, live.size());
+                }
+                long after = sizeOf(logFile);
+                if (before != after) {
+                    migrated++;
+                    bytesBefore += before;
+                    bytesAfter += after;
+                }
             } catch (IOException e) {
-                e.printStackTrace();
+                failed++;
+                log.error("迁移会话文件失败，key: {}", key, e);
+            } finally {
+                lock.unlock();
             }
         }
-        return messages;
+        return new MigrationReport(scanned, migrated, failed, bytesBefore, bytesAfter,
+                System.currentTimeMillis() - start);
+    }
+
+    private static long sizeOf(Path file) throws IOException {
+        return Files.exists(file) ? Files.size(file) : 0;
+    }
+
+    /**
+     * 提交后台压缩任务；已关闭时跳过（日志仍然完整，下次打开后写入时再压缩）
+     */
+    private void submitCompaction(Runnable task) {
+        try {
+            compactor.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.debug("会话记忆已关闭，跳过后台压缩");
+        }
+    }
+
+    /**
+     * 停止清理线程并保存访问时间索引，等待排队中的压缩任务完成
+     */
+    public void close() {
+        ConversationSweeper current = sweeper;
+        if (current != null) {
+            current.close();
+        }
+        compactor.shutdown();
+        try {
+            if (!compactor.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("等待会话日志压缩超时，剩余任务将被丢弃");
+                compactor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            compactor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 会话 ID 对应的存储键：可以直接作为文件名时原样使用，否则使用 SHA-256
+     */
+    public static String storageKey(String conversationId) {
+        if (PLAIN_ID.matcher(conversationId).matches()) {
+            return conversationId;
+        }
+        return HASHED_PREFIX + sha256(conversationId);
+    }
+
+    Path getBaseDir() {
+        return new File(BASE_DIR).toPath();
+    }
+
+    Set<String> getPinnedKeys() {
+        return pinnedKeys.get();
+    }
+
+    Map<String, Long> getLastAccess() {
+        return lastAccess;
+    }
+
+    void setFrameWriter(MessageLog.FrameWriter frameWriter) {
+        this.frameWriter = frameWriter;
+    }
+
+    ReentrantLock lockFor(String key) {
+        int hash = key.hashCode();
+        return locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * 文件已被清理，丢弃该会话的内存状态（调用方持有分段锁）
+     */
+    void forget(String key) {
+        logMessageCounts.remove(key);
+        lastAccess.remove(key);
+        for (Consumer<String> listener : forgetListeners) {
+            listener.accept(key);
+        }
     }
 
-    private void saveConversation(String conversationId, List<Message> messages) {
-        File file = getConversationFile(conversationId);
-        try (Output output = new Output(new FileOutputStream(file))) {
-            kryo.writeObject(output, messages);
+    private void touchKey(String key) {
+        lastAccess.put(key, System.currentTimeMillis());
+    }
+
+    /**
+     * 把日志重写为只包含窗口内消息的一条记录
+     */
+    private void compact(String conversationId, String key) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            Integer count = logMessageCounts.get(key);
+            if (count == null || count <= (long) windowSize * COMPACT_RATIO) {
+                return;
+            }
+            List<Message> live = readLog(conversationId, key).window();
+            int bytes = MessageLog.rewrite(getLogFile(key), live.size(), MessageCodec.encode(live));
+            logMessageCounts.put(key, live.size());
+            log.info("会话日志已压缩：{} 条消息 -> {} 条（{} 字节），chatId: {}", count, live.size(), bytes, conversationId);
         } catch (IOException e) {
-            e.printStackTrace();
+            log.error("压缩会话日志失败，chatId: {}", conversationId, e);
+        } finally {
+            lock.unlock();
         }
     }
 
-    private File getConversationFile(String conversationId) {
-        return new File(BASE_DIR, conversationId + ".kryo");
+    /**
+     * 日志内容
+     *
+     * @param total  日志中的消息总数
+     * @param window 最近 windowSize 条消息
+     */
+    private record LogContent(int total, List<Message> window) {
+    }
+
+    /**
+     * 读取日志（必要时先迁移旧版文件），只反序列化包含最近 windowSize 条消息的记录
+     */
+    private LogContent readLog(String conversationId, String key) {
+        migrateLegacy(conversationId, key);
+        List<MessageLog.Record> records;
+        try {
+            records = MessageLog.read(getLogFile(key));
+        } catch (IOException e) {
+            log.error("读取会话日志失败，chatId: {}", conversationId, e);
+            return new LogContent(0, new ArrayList<>());
+        }
+        int total = 0;
+        int first = records.size();
+        int needed = 0;
+        for (int i = records.size() - 1; i >= 0; i--) {
+            int count = records.get(i).messageCount();
+            total += count;
+            if (needed < windowSize) {
+                needed += count;
+                first = i;
+            }
+        }
+        List<Message> messages = new ArrayList<>(needed);
+        for (int i = first; i < records.size(); i++) {
+            messages.addAll(MessageCodec.decode(records.get(i).payload()));
+        }
+        if (messages.size() > windowSize) {
+            messages = new ArrayList<>(messages.subList(messages.size() - windowSize, messages.size()));
+        }
+        return new LogContent(total, messages);
+    }
+
+    /**
+     * 旧版文件迁移到分片目录：根目录下的日志直接移动；旧版格式（整个消息列表序列化为一个 .kryo 文件）转换为日志
+     */
+    private void migrateLegacy(String conversationId, String key) {
+        Path logFile = getLogFile(key);
+        // 旧版文件名就是会话 ID，只有原样使用的会话 ID 可能有旧版文件
+        if (!key.equals(conversationId) || Files.exists(logFile)) {
+            return;
+        }
+        Path flatLog = getFlatLogFile(key);
+        if (Files.exists(flatLog)) {
+            try {
+                Files.createDirectories(logFile.getParent());
+                Files.move(flatLog, logFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                log.error("迁移会话日志到分片目录失败，chatId: {}", conversationId, e);
+            }
+            return;
+        }
+        File legacy = getLegacyFile(key);
+        if (!legacy.exists()) {
+            return;
+        }
+        try (FileInputStream input = new FileInputStream(legacy)) {
+            List<Message> messages = MessageCodec.decodeLegacy(input);
+            Files.createDirectories(logFile.getParent());
+            MessageLog.rewrite(logFile, messages.size(), MessageCodec.encode(messages));
+        } catch (Exception e) {
+            log.error("迁移旧版会话文件失败，chatId: {}", conversationId, e);
+            return;
+        }
+        legacy.delete();
+    }
+
+    /**
+     * 分片目录下的日志文件：{@code <dir>/<2 位十六进制>/<2 位十六进制>/<key>.log}
+     */
+    Path getLogFile(String key) {
+        return shardDir(getBaseDir(), key).resolve(key + ".log");
+    }
+
+    Path getSidecarFile(String key, String suffix) {
+        return shardDir(getBaseDir(), key).resolve(key + suffix);
+    }
+
+    static Path shardDir(Path root, String key) {
+        // 混合 hashCode 的各位，使相近的会话 ID 也能均匀分布
+        int hash = key.hashCode() * 0x9E3779B9;
+        String shard = HexFormat.of().toHexDigits((short) (hash >>> 16));
+        return root.resolve(shard.substring(0, 2)).resolve(shard.substring(2));
+    }
+
+    private Path getFlatLogFile(String key) {
+        return new File(BASE_DIR, key + ".log").toPath();
+    }
+
+    private File getLegacyFile(String key) {
+        return new File(BASE_DIR, key + ".kryo");
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
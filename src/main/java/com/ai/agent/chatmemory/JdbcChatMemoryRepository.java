@@ -0,0 +1,290 @@
+package com.ai.agent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于 PostgreSQL 的对话记忆存储（多副本共享）
+ * <p>
+ * 每条消息一行（{@code chat_memory_message}，主键 {@code (conversation_id, seq)}），内容为 {@link MessageCodec} 编码的二进制；
+ * 每个会话一行元数据（{@code chat_memory_conversation}），记录当前窗口的起始序号和最新序号。
+ * <ul>
+ *   <li>写入：{@link org.springframework.ai.chat.memory.MessageWindowChatMemory} 每次传入完整窗口，
+ *   这里按消息指纹找出已保存的部分，只用 {@link JdbcTemplate#batchUpdate} 批量插入新增的消息，再移动窗口起点</li>
+ *   <li>读取：按主键索引做 {@code seq >= 窗口起点} 的范围查询</li>
+ *   <li>清理：窗口之外的旧行在后台线程上批量删除，不占用请求线程</li>
+ * </ul>
+ * 同一会话的并发写入（包括不同副本）通过锁定会话元数据行串行执行。
+ */
+@Slf4j
+public class JdbcChatMemoryRepository implements ChatMemoryRepository {
+
+    private static final String CREATE_MESSAGE_TABLE = """
+            CREATE TABLE IF NOT EXISTS chat_memory_message (
+                conversation_id VARCHAR(255) NOT NULL,
+                seq             BIGINT       NOT NULL,
+                message_type    VARCHAR(16)  NOT NULL,
+                fingerprint     INTEGER      NOT NULL,
+                payload         BYTEA        NOT NULL,
+                created_at      TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                PRIMARY KEY (conversation_id, seq)
+            )""";
+
+    private static final String CREATE_CONVERSATION_TABLE = """
+            CREATE TABLE IF NOT EXISTS chat_memory_conversation (
+                conversation_id VARCHAR(255) PRIMARY KEY,
+                first_seq       BIGINT       NOT NULL,
+                last_seq        BIGINT       NOT NULL,
+                pruned_seq      BIGINT       NOT NULL,
+                updated_at      TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP
+            )""";
+
+    private static final String INSERT_CONVERSATION = """
+            INSERT INTO chat_memory_conversation (conversation_id, first_seq, last_seq, pruned_seq)
+            VALUES (?, 1, 0, 1) ON CONFLICT (conversation_id) DO NOTHING""";
+
+    private static final String LOCK_CONVERSATION =
+            "SELECT first_seq, last_seq, pruned_seq FROM chat_memory_conversation WHERE conversation_id = ? FOR UPDATE";
+
+    private static final String SELECT_TAIL_FINGERPRINTS = """
+            SELECT fingerprint FROM chat_memory_message
+            WHERE conversation_id = ? AND seq >= ? ORDER BY seq DESC LIMIT ?""";
+
+    private static final String INSERT_MESSAGE = """
+            INSERT INTO chat_memory_message (conversation_id, seq, message_type, fingerprint, payload)
+            VALUES (?, ?, ?, ?, ?)""";
+
+    private static final String UPDATE_CONVERSATION = """
+            UPDATE chat_memory_conversation SET first_seq = ?, last_seq = ?, updated_at = CURRENT_TIMESTAMP
+            WHERE conversation_id = ?""";
+
+    private static final String SELECT_WINDOW = """
+            SELECT m.payload FROM chat_memory_message m
+            JOIN chat_memory_conversation c ON c.conversation_id = m.conversation_id
+            WHERE m.conversation_id = ? AND m.seq >= c.first_seq ORDER BY m.seq""";
+
+    private static final String CLEAR_CONVERSATION = """
+            UPDATE chat_memory_conversation SET first_seq = last_seq + 1, pruned_seq = last_seq + 1,
+            updated_at = CURRENT_TIMESTAMP WHERE conversation_id = ?""";
+
+    private static final String PRUNE_MESSAGES =
+            "DELETE FROM chat_memory_message WHERE conversation_id = ? AND seq < ?";
+
+    private static final String UPDATE_PRUNED_SEQ =
+            "UPDATE chat_memory_conversation SET pruned_seq = GREATEST(pruned_seq, ?) WHERE conversation_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    // 窗口之外累积多少行后触发清理
+    private final int pruneThreshold;
+
+    // 单线程后台清理，同一会话排队中的清理任务只保留一个
+    private final ExecutorService pruner = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chat-memory-pruner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Set<String> pendingPrunes = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong insertedRows = new AtomicLong();
+    private final AtomicLong reusedRows = new AtomicLong();
+    private final AtomicLong prunedRows = new AtomicLong();
+    private final AtomicLong readNanos = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+
+    /**
+     * @param initializeSchema 启动时是否建表
+     * @param pruneThreshold   窗口之外累积多少行后触发后台清理
+     */
+    public JdbcChatMemoryRepository(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                    boolean initializeSchema, int pruneThreshold) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.pruneThreshold = pruneThreshold;
+        if (initializeSchema) {
+            jdbcTemplate.execute(CREATE_MESSAGE_TABLE);
+            jdbcTemplate.execute(CREATE_CONVERSATION_TABLE);
+        }
+    }
+
+    @Override
+    public List<String> findConversationIds() {
+        return jdbcTemplate.queryForList(
+                "SELECT conversation_id FROM chat_memory_conversation WHERE last_seq >= first_seq", String.class);
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        long start = System.nanoTime();
+        List<Message> messages = new ArrayList<>();
+        jdbcTemplate.query(SELECT_WINDOW, rs -> {
+            messages.addAll(MessageCodec.decode(rs.getBytes(1)));
+        }, conversationId);
+        reads.incrementAndGet();
+        readNanos.addAndGet(System.nanoTime() - start);
+        return messages;
+    }
+
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        if (messages.isEmpty()) {
+            deleteByConversationId(conversationId);
+            return;
+        }
+        long start = System.nanoTime();
+        // 指纹计算不需要占用连接
+        int[] fingerprints = new int[messages.size()];
+        for (int i = 0; i < messages.size(); i++) {
+            fingerprints[i] = MessageCodec.fingerprint(messages.get(i));
+        }
+        long[] prune = transactionTemplate.execute(status -> write(conversationId, messages, fingerprints));
+        writes.incrementAndGet();
+        writeNanos.addAndGet(System.nanoTime() - start);
+        if (prune != null && prune[0] - prune[1] >= pruneThreshold) {
+            schedulePrune(conversationId, prune[0]);
+        }
+    }
+
+    /**
+     * 在事务中写入窗口：锁定会话行，找出已保存的前缀，批量插入其余消息，移动窗口起点
+     *
+     * @return {新的窗口起点, 已清理到的序号}
+     */
+    private long[] write(String conversationId, List<Message> messages, int[] fingerprints) {
+        List<long[]> locked = lockConversation(conversationId);
+        if (locked.isEmpty()) {
+            jdbcTemplate.update(INSERT_CONVERSATION, conversationId);
+            locked = lockConversation(conversationId);
+        }
+        long[] state = locked.get(0);
+        long firstSeq = state[0];
+        long lastSeq = state[1];
+
+        List<Integer> tail = jdbcTemplate.queryForList(SELECT_TAIL_FINGERPRINTS, Integer.class,
+                conversationId, firstSeq, messages.size());
+        Collections.reverse(tail);
+        int overlap = overlap(tail, fingerprints);
+
+        List<Object[]> rows = new ArrayList<>(messages.size() - overlap);
+        for (int i = overlap; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            rows.add(new Object[]{conversationId, lastSeq + 1 + (i - overlap), message.getMessageType().name(),
+                    fingerprints[i], MessageCodec.encode(List.of(message))});
+        }
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_MESSAGE, rows);
+        }
+        long newLastSeq = lastSeq + rows.size();
+        long newFirstSeq = newLastSeq - messages.size() + 1;
+        jdbcTemplate.update(UPDATE_CONVERSATION, newFirstSeq, newLastSeq, conversationId);
+        insertedRows.addAndGet(rows.size());
+        reusedRows.addAndGet(overlap);
+        return new long[]{newFirstSeq, state[2]};
+    }
+
+    private List<long[]> lockConversation(String conversationId) {
+        return jdbcTemplate.query(LOCK_CONVERSATION,
+                (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2), rs.getLong(3)}, conversationId);
+    }
+
+    /**
+     * 已保存窗口的末尾与新窗口开头重合的最大长度
+     */
+    static int overlap(List<Integer> tail, int[] fingerprints) {
+        for (int length = Math.min(tail.size(), fingerprints.length); length > 0; length--) {
+            int offset = tail.size() - length;
+            boolean matches = true;
+            for (int i = 0; i < length && matches; i++) {
+                matches = tail.get(offset + i) == fingerprints[i];
+            }
+            if (matches) {
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 清空会话：删除全部消息，会话行保留并把窗口移到末尾，序号不重新开始（避免排队中的清理任务误删新消息）
+     */
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(CLEAR_CONVERSATION, conversationId);
+            jdbcTemplate.update("DELETE FROM chat_memory_message WHERE conversation_id = ?", conversationId);
+        });
+    }
+
+    /**
+     * 后台删除窗口之外的旧行
+     */
+    private void schedulePrune(String conversationId, long beforeSeq) {
+        if (!pendingPrunes.add(conversationId)) {
+            return;
+        }
+        pruner.execute(() -> {
+            pendingPrunes.remove(conversationId);
+            try {
+                int deleted = jdbcTemplate.update(PRUNE_MESSAGES, conversationId, beforeSeq);
+                jdbcTemplate.update(UPDATE_PRUNED_SEQ, beforeSeq, conversationId);
+                prunedRows.addAndGet(deleted);
+            } catch (Exception e) {
+                log.warn("清理对话记忆旧消息失败，chatId: {}: {}", conversationId, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 关闭时等待排队中的清理任务
+     */
+    public void close() {
+        pruner.shutdown();
+        try {
+            pruner.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 数据库对话记忆统计
+     *
+     * @param reads           窗口读取次数
+     * @param writes          窗口写入次数
+     * @param insertedRows    批量插入的消息行数
+     * @param reusedRows      已保存、无需重写的消息数
+     * @param prunedRows      后台清理的旧行数
+     * @param avgReadMillis   平均读取耗时
+     * @param avgWriteMillis  平均写入耗时
+     */
+    public record Stats(long reads, long writes, long insertedRows, long reusedRows, long prunedRows,
+                        double avgReadMillis, double avgWriteMillis) {
+    }
+
+    public Stats getStats() {
+        long readCount = reads.get();
+        long writeCount = writes.get();
+        return new Stats(readCount, writeCount, insertedRows.get(), reusedRows.get(), prunedRows.get(),
+                readCount == 0 ? 0 : readNanos.get() / 1e6 / readCount,
+                writeCount == 0 ? 0 : writeNanos.get() / 1e6 / writeCount);
+    }
+}
@@ -0,0 +1,21 @@
+package com.ai.agent.chatmemory;
+
+/**
+ * 对话记忆写入的持久化模式
+ */
+public enum MemoryDurability {
+    /**
+     * 每次写入都立即追加到日志并刷盘，返回时已持久化
+     */
+    SYNC,
+
+    /**
+     * 写入先进入内存缓存，后台定期批量追加到日志，不主动刷盘（进程崩溃可能丢失最近一个刷新周期的消息）
+     */
+    ASYNC,
+
+    /**
+     * 与 ASYNC 相同，但每个刷新周期内每个会话只刷盘一次（机器掉电最多丢失一个刷新周期的消息）
+     */
+    BATCHED_FSYNC
+}
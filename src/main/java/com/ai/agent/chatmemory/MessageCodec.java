@@ -0,0 +1,359 @@
+package com.ai.agent.chatmemory;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.Pool;
+import lombok.extern.slf4j.Slf4j;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 消息列表的二进制编解码（会话日志和数据库共用）
+ * <p>
+ * 紧凑格式：
+ * <pre>
+ * | 魔数 1B | 版本 1B | 标志 1B | 消息数 varint | (类 ID varint | 消息字段)... |
+ * </pre>
+ * UserMessage、AssistantMessage（含工具调用）、ToolResponseMessage、SystemMessage 使用专用序列化器和固定的类 ID，
+ * 只写入文本、工具调用和工具响应，不写类名、反射字段和元数据，Spring AI 内部字段变化也不影响已保存的数据。
+ * 消息体超过 {@value #COMPRESS_THRESHOLD} 字节时尝试 Deflater 压缩，变小才使用（标志位记录）。
+ * <p>
+ * 含附件（Media）或其他类型的消息无法用紧凑格式表示，整个列表退回旧格式（通用 Kryo 序列化，无头部）；
+ * 解码时按头部识别格式，旧格式的数据仍然可以读取。Kryo 实例不是线程安全的，编解码时从对象池借用。
+ */
+@Slf4j
+final class MessageCodec {
+
+    static final byte MAGIC = (byte) 0xCB;
+
+    static final byte VERSION = 1;
+
+    static final int HEADER_BYTES = 3;
+
+    private static final byte FLAG_DEFLATED = 1;
+
+    // 消息体超过该大小时尝试压缩
+    static final int COMPRESS_THRESHOLD = 512;
+
+    // 类 ID（写入数据，不能修改）
+    private static final int USER_ID = 10;
+    private static final int ASSISTANT_ID = 11;
+    private static final int TOOL_RESPONSE_ID = 12;
+    private static final int SYSTEM_ID = 13;
+
+    // 紧凑格式：只接受注册过的类
+    private static final Pool<Kryo> COMPACT_POOL = new Pool<>(true, true, 64) {
+        @Override
+        protected Kryo create() {
+            Kryo kryo = new Kryo();
+            kryo.setRegistrationRequired(true);
+            kryo.register(UserMessage.class, new UserMessageSerializer(), USER_ID);
+            kryo.register(AssistantMessage.class, new AssistantMessageSerializer(), ASSISTANT_ID);
+            kryo.register(ToolResponseMessage.class, new ToolResponseMessageSerializer(), TOOL_RESPONSE_ID);
+            kryo.register(SystemMessage.class, new SystemMessageSerializer(), SYSTEM_ID);
+            return kryo;
+        }
+    };
+
+    // 旧格式：通用序列化（读取旧数据，以及紧凑格式无法表示的消息）
+    private static final Pool<Kryo> LEGACY_POOL = new Pool<>(true, true, 64) {
+        @Override
+        protected Kryo create() {
+            Kryo kryo = new Kryo();
+            kryo.setRegistrationRequired(false);
+            // 设置实例化策略
+            kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+            return kryo;
+        }
+    };
+
+    private MessageCodec() {
+    }
+
+    static byte[] encode(List<?> messages) {
+        if (!isCompactable(messages)) {
+            return encodeLegacy(messages);
+        }
+        byte[] body;
+        Kryo kryo = COMPACT_POOL.obtain();
+        try (Output output = new Output(1024, -1)) {
+            output.writeVarInt(messages.size(), true);
+            for (Object message : messages) {
+                kryo.writeClass(output, message.getClass());
+                kryo.writeObject(output, message);
+            }
+            body = output.toBytes();
+        } finally {
+            COMPACT_POOL.free(kryo);
+        }
+        byte flags = 0;
+        if (body.length > COMPRESS_THRESHOLD) {
+            byte[] deflated = deflate(body);
+            if (deflated.length < body.length) {
+                body = deflated;
+                flags |= FLAG_DEFLATED;
+            }
+        }
+        byte[] payload = new byte[HEADER_BYTES + body.length];
+        payload[0] = MAGIC;
+        payload[1] = VERSION;
+        payload[2] = flags;
+        System.arraycopy(body, 0, payload, HEADER_BYTES, body.length);
+        return payload;
+    }
+
+    static List<Message> decode(byte[] payload) {
+        if (isCompact(payload)) {
+            try {
+                return decodeCompact(payload);
+            } catch (RuntimeException | DataFormatException e) {
+                // 旧格式数据碰巧以魔数开头
+                log.debug("按紧凑格式解码失败，按旧格式重试: {}", e.getMessage());
+            }
+        }
+        return decodeLegacy(payload);
+    }
+
+    /**
+     * 是否为紧凑格式（头部的魔数和版本）
+     */
+    static boolean isCompact(byte[] payload) {
+        return payload.length >= HEADER_BYTES && payload[0] == MAGIC && payload[1] == VERSION;
+    }
+
+    /**
+     * 读取旧版 .kryo 文件（整个消息列表序列化为一个对象）
+     */
+    @SuppressWarnings("unchecked")
+    static List<Message> decodeLegacy(InputStream stream) throws IOException {
+        Kryo kryo = LEGACY_POOL.obtain();
+        try (Input input = new Input(stream)) {
+            return kryo.readObject(input, ArrayList.class);
+        } finally {
+            LEGACY_POOL.free(kryo);
+        }
+    }
+
+    private static List<Message> decodeCompact(byte[] payload) throws DataFormatException {
+        Input input;
+        if ((payload[2] & FLAG_DEFLATED) != 0) {
+            input = new Input(inflate(payload, HEADER_BYTES));
+        } else {
+            input = new Input(payload, HEADER_BYTES, payload.length - HEADER_BYTES);
+        }
+        Kryo kryo = COMPACT_POOL.obtain();
+        try (input) {
+            int count = input.readVarInt(true);
+            List<Message> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Class<?> type = kryo.readClass(input).getType();
+                messages.add((Message) kryo.readObject(input, type));
+            }
+            return messages;
+        } finally {
+            COMPACT_POOL.free(kryo);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Message> decodeLegacy(byte[] payload) {
+        Kryo kryo = LEGACY_POOL.obtain();
+        try (Input input = new Input(payload)) {
+            return kryo.readObject(input, ArrayList.class);
+        } finally {
+            LEGACY_POOL.free(kryo);
+        }
+    }
+
+    private static byte[] encodeLegacy(List<?> messages) {
+        Kryo kryo = LEGACY_POOL.obtain();
+        try (Output output = new Output(1024, -1)) {
+            kryo.writeObject(output, messages instanceof ArrayList<?> list ? list : new ArrayList<>(messages));
+            return output.toBytes();
+        } finally {
+            LEGACY_POOL.free(kryo);
+        }
+    }
+
+    /**
+     * 只包含四种注册类型、且消息不带附件时可以用紧凑格式
+     */
+    private static boolean isCompactable(List<?> messages) {
+        for (Object message : messages) {
+            Class<?> type = message.getClass();
+            if (type == UserMessage.class) {
+                if (!((UserMessage) message).getMedia().isEmpty()) {
+                    return false;
+                }
+            } else if (type == AssistantMessage.class) {
+                if (!((AssistantMessage) message).getMedia().isEmpty()) {
+                    return false;
+                }
+            } else if (type != ToolResponseMessage.class && type != SystemMessage.class) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 消息指纹：类型、文本、工具调用和工具响应的 CRC32
+     */
+    static int fingerprint(Message message) {
+        CRC32 crc = new CRC32();
+        update(crc, message.getMessageType().name());
+        update(crc, message.getText());
+        if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                update(crc, toolCall.id());
+                update(crc, toolCall.arguments());
+            }
+        }
+        if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                update(crc, response.id());
+                update(crc, response.responseData());
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    private static void update(CRC32 crc, String text) {
+        if (text != null) {
+            crc.update(text.getBytes(StandardCharsets.UTF_8));
+        }
+        crc.update(0);
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 2);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int offset) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, data.length - offset);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 3);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("压缩数据不完整");
+                }
+                output.write(buffer, 0, length);
+            }
+            return output.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static final class UserMessageSerializer extends Serializer<UserMessage> {
+
+        @Override
+        public void write(Kryo kryo, Output output, UserMessage message) {
+            output.writeString(message.getText());
+        }
+
+        @Override
+        public UserMessage read(Kryo kryo, Input input, Class<? extends UserMessage> type) {
+            return new UserMessage(input.readString());
+        }
+    }
+
+    private static final class SystemMessageSerializer extends Serializer<SystemMessage> {
+
+        @Override
+        public void write(Kryo kryo, Output output, SystemMessage message) {
+            output.writeString(message.getText());
+        }
+
+        @Override
+        public SystemMessage read(Kryo kryo, Input input, Class<? extends SystemMessage> type) {
+            return new SystemMessage(input.readString());
+        }
+    }
+
+    private static final class AssistantMessageSerializer extends Serializer<AssistantMessage> {
+
+        @Override
+        public void write(Kryo kryo, Output output, AssistantMessage message) {
+            output.writeString(message.getText());
+            List<AssistantMessage.ToolCall> toolCalls = message.getToolCalls();
+            output.writeVarInt(toolCalls.size(), true);
+            for (AssistantMessage.ToolCall toolCall : toolCalls) {
+                output.writeString(toolCall.id());
+                output.writeString(toolCall.type());
+                output.writeString(toolCall.name());
+                output.writeString(toolCall.arguments());
+            }
+        }
+
+        @Override
+        public AssistantMessage read(Kryo kryo, Input input, Class<? extends AssistantMessage> type) {
+            String text = input.readString();
+            int count = input.readVarInt(true);
+            List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                toolCalls.add(new AssistantMessage.ToolCall(input.readString(), input.readString(),
+                        input.readString(), input.readString()));
+            }
+            return new AssistantMessage(text, Map.of(), toolCalls);
+        }
+    }
+
+    private static final class ToolResponseMessageSerializer extends Serializer<ToolResponseMessage> {
+
+        @Override
+        public void write(Kryo kryo, Output output, ToolResponseMessage message) {
+            List<ToolResponseMessage.ToolResponse> responses = message.getResponses();
+            output.writeVarInt(responses.size(), true);
+            for (ToolResponseMessage.ToolResponse response : responses) {
+                output.writeString(response.id());
+                output.writeString(response.name());
+                output.writeString(response.responseData());
+            }
+        }
+
+        @Override
+        public ToolResponseMessage read(Kryo kryo, Input input, Class<? extends ToolResponseMessage> type) {
+            int count = input.readVarInt(true);
+            List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                responses.add(new ToolResponseMessage.ToolResponse(input.readString(), input.readString(),
+                        input.readString()));
+            }
+            return new ToolResponseMessage(responses);
+        }
+    }
+}
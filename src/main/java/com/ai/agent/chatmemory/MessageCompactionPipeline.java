@@ -0,0 +1,191 @@
+package com.ai.agent.chatmemory;
+
+import cn.hutool.core.util.StrUtil;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 消息压缩管道：持久化前按规则在一次遍历中过滤、截断消息
+ * <p>
+ * 每条消息依次经过全部规则；只有内容确实变化时才创建新的工具调用、工具响应和消息对象。
+ * 管道本身无状态（统计除外），可以在多个线程间共享。
+ */
+public final class MessageCompactionPipeline {
+
+    private final List<MessageCompactionRule> rules;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong messagesIn = new AtomicLong();
+    private final AtomicLong messagesOut = new AtomicLong();
+    private final AtomicLong charsIn = new AtomicLong();
+    private final AtomicLong charsOut = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+
+    private MessageCompactionPipeline(List<MessageCompactionRule> rules) {
+        this.rules = List.copyOf(rules);
+    }
+
+    public static MessageCompactionPipeline of(MessageCompactionRule... rules) {
+        return new MessageCompactionPipeline(List.of(rules));
+    }
+
+    /**
+     * 压缩消息列表
+     *
+     * @return 新列表（输入不会被修改）
+     */
+    public List<Message> compact(List<Message> messages) {
+        long start = System.nanoTime();
+        long before = 0;
+        long after = 0;
+        List<Message> compacted = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            before += sizeOf(message);
+            Message result = compactMessage(message);
+            if (result != null) {
+                compacted.add(result);
+                after += result == message ? sizeOf(message) : sizeOf(result);
+            }
+        }
+        runs.incrementAndGet();
+        messagesIn.addAndGet(messages.size());
+        messagesOut.addAndGet(compacted.size());
+        charsIn.addAndGet(before);
+        charsOut.addAndGet(after);
+        nanos.addAndGet(System.nanoTime() - start);
+        return compacted;
+    }
+
+    /**
+     * @return 压缩后的消息，丢弃时为 null
+     */
+    private Message compactMessage(Message message) {
+        for (MessageCompactionRule rule : rules) {
+            if (rule.dropMessage(message)) {
+                return null;
+            }
+        }
+        if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+            return compactToolCalls(assistantMessage);
+        }
+        if (message instanceof ToolResponseMessage toolResponseMessage) {
+            return compactToolResponses(toolResponseMessage);
+        }
+        return message;
+    }
+
+    private Message compactToolCalls(AssistantMessage message) {
+        List<AssistantMessage.ToolCall> toolCalls = message.getToolCalls();
+        List<AssistantMessage.ToolCall> kept = new ArrayList<>(toolCalls.size());
+        boolean changed = false;
+        for (AssistantMessage.ToolCall toolCall : toolCalls) {
+            if (dropToolCall(toolCall)) {
+                changed = true;
+                continue;
+            }
+            String arguments = toolCall.arguments();
+            for (MessageCompactionRule rule : rules) {
+                arguments = rule.rewriteToolArguments(toolCall, arguments);
+            }
+            if (arguments != toolCall.arguments()) {
+                changed = true;
+                kept.add(new AssistantMessage.ToolCall(toolCall.id(), toolCall.type(), toolCall.name(), arguments));
+            } else {
+                kept.add(toolCall);
+            }
+        }
+        if (!changed) {
+            return message;
+        }
+        if (kept.isEmpty() && StrUtil.isBlank(message.getText())) {
+            return null;
+        }
+        return new AssistantMessage(message.getText(), message.getMetadata(), kept);
+    }
+
+    private Message compactToolResponses(ToolResponseMessage message) {
+        List<ToolResponseMessage.ToolResponse> responses = message.getResponses();
+        List<ToolResponseMessage.ToolResponse> kept = new ArrayList<>(responses.size());
+        boolean changed = false;
+        for (ToolResponseMessage.ToolResponse response : responses) {
+            if (dropToolResponse(response)) {
+                changed = true;
+                continue;
+            }
+            String data = response.responseData();
+            for (MessageCompactionRule rule : rules) {
+                data = rule.rewriteToolResponse(response, data);
+            }
+            if (data != response.responseData()) {
+                changed = true;
+                kept.add(new ToolResponseMessage.ToolResponse(response.id(), response.name(), data));
+            } else {
+                kept.add(response);
+            }
+        }
+        if (!changed) {
+            return message;
+        }
+        return kept.isEmpty() ? null : new ToolResponseMessage(kept, message.getMetadata());
+    }
+
+    private boolean dropToolCall(AssistantMessage.ToolCall toolCall) {
+        for (MessageCompactionRule rule : rules) {
+            if (rule.dropToolCall(toolCall)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean dropToolResponse(ToolResponseMessage.ToolResponse response) {
+        for (MessageCompactionRule rule : rules) {
+            if (rule.dropToolResponse(response)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long sizeOf(Message message) {
+        long size = lengthOf(message.getText());
+        if (message instanceof AssistantMessage assistantMessage) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                size += lengthOf(toolCall.arguments());
+            }
+        } else if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                size += lengthOf(response.responseData());
+            }
+        }
+        return size;
+    }
+
+    private static int lengthOf(String text) {
+        return text == null ? 0 : text.length();
+    }
+
+    /**
+     * 压缩统计
+     *
+     * @param runs        压缩次数
+     * @param messagesIn  输入的消息数
+     * @param messagesOut 输出的消息数
+     * @param charsIn     输入的字符数（文本、工具参数、工具响应）
+     * @param charsOut    输出的字符数
+     * @param avgMicros   平均每次压缩耗时（微秒）
+     */
+    public record Stats(long runs, long messagesIn, long messagesOut, long charsIn, long charsOut, double avgMicros) {
+    }
+
+    public Stats getStats() {
+        long count = runs.get();
+        return new Stats(count, messagesIn.get(), messagesOut.get(), charsIn.get(), charsOut.get(),
+                count == 0 ? 0 : nanos.get() / 1e3 / count);
+    }
+}
@@ -0,0 +1,49 @@
+package com.ai.agent.chatmemory;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+/**
+ * 消息压缩规则（由 {@link MessageCompactionPipeline} 在一次遍历中依次应用）
+ * <p>
+ * 规则只声明对消息、工具调用、工具响应的处理，不自己构造消息；未改变的内容原样保留，不产生新对象。
+ * 常用规则见 {@link MessageCompactionRules}。
+ */
+public interface MessageCompactionRule {
+
+    /**
+     * 是否丢弃整条消息
+     */
+    default boolean dropMessage(Message message) {
+        return false;
+    }
+
+    /**
+     * 是否丢弃一个工具调用（调用全部被丢弃、且没有文本的 AssistantMessage 会被丢弃）
+     */
+    default boolean dropToolCall(AssistantMessage.ToolCall toolCall) {
+        return false;
+    }
+
+    /**
+     * 改写工具调用的参数
+     */
+    default String rewriteToolArguments(AssistantMessage.ToolCall toolCall, String arguments) {
+        return arguments;
+    }
+
+    /**
+     * 是否丢弃一个工具响应（响应全部被丢弃的 ToolResponseMessage 会被丢弃）
+     */
+    default boolean dropToolResponse(ToolResponseMessage.ToolResponse response) {
+        return false;
+    }
+
+    /**
+     * 改写工具响应的内容
+     */
+    default String rewriteToolResponse(ToolResponseMessage.ToolResponse response, String data) {
+        return data;
+    }
+}
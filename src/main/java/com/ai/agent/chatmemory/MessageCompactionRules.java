@@ -0,0 +1,105 @@
+package com.ai.agent.chatmemory;
+
+import cn.hutool.core.util.StrUtil;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.List;
+
+/**
+ * 常用的消息压缩规则
+ */
+public final class MessageCompactionRules {
+
+    /**
+     * 截断后追加的标记
+     */
+    public static final String TRUNCATED_MARK = "...[已截断]";
+
+    private MessageCompactionRules() {
+    }
+
+    /**
+     * 丢弃内容（去掉首尾空白后）等于指定文本的用户消息，如每步注入的 nextStepPrompt
+     */
+    public static MessageCompactionRule dropUserMessage(String text) {
+        String trimmed = StrUtil.trim(text);
+        return new MessageCompactionRule() {
+            @Override
+            public boolean dropMessage(Message message) {
+                return trimmed != null && message instanceof UserMessage
+                        && trimmed.equals(StrUtil.trim(message.getText()));
+            }
+        };
+    }
+
+    /**
+     * 丢弃指定工具的调用和响应（如 doTerminate），调用和响应成对去掉
+     */
+    public static MessageCompactionRule dropTool(String toolName) {
+        return new MessageCompactionRule() {
+            @Override
+            public boolean dropToolCall(AssistantMessage.ToolCall toolCall) {
+                return toolName.equals(toolCall.name());
+            }
+
+            @Override
+            public boolean dropToolResponse(ToolResponseMessage.ToolResponse response) {
+                return toolName.equals(response.name());
+            }
+        };
+    }
+
+    /**
+     * 截断过长的工具调用参数（如 generateMarkdown 的 content）
+     */
+    public static MessageCompactionRule truncateToolArguments(int maxChars) {
+        return new MessageCompactionRule() {
+            @Override
+            public String rewriteToolArguments(AssistantMessage.ToolCall toolCall, String arguments) {
+                return truncate(arguments, maxChars);
+            }
+        };
+    }
+
+    /**
+     * 包含任一标记（如反爬验证页）的工具响应替换为固定文本
+     */
+    public static MessageCompactionRule redactToolResponses(List<String> markers, String replacement) {
+        return new MessageCompactionRule() {
+            @Override
+            public String rewriteToolResponse(ToolResponseMessage.ToolResponse response, String data) {
+                if (data == null) {
+                    return null;
+                }
+                for (String marker : markers) {
+                    if (data.contains(marker)) {
+                        return replacement;
+                    }
+                }
+                return data;
+            }
+        };
+    }
+
+    /**
+     * 截断过长的工具响应
+     */
+    public static MessageCompactionRule truncateToolResponses(int maxChars) {
+        return new MessageCompactionRule() {
+            @Override
+            public String rewriteToolResponse(ToolResponseMessage.ToolResponse response, String data) {
+                return truncate(data, maxChars);
+            }
+        };
+    }
+
+    private static String truncate(String text, int maxChars) {
+        if (text == null || text.length() <= maxChars) {
+            return text;
+        }
+        return text.substring(0, maxChars) + TRUNCATED_MARK;
+    }
+}
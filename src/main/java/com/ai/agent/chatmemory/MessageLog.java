@@ -0,0 +1,160 @@
+package com.ai.agent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 单个会话的追加写日志文件
+ * <p>
+ * 文件由若干条记录组成，每条记录的格式为：
+ * <pre>
+ * | 类型 1B | 消息数 4B | 负载长度 4B | CRC32 4B | 负载 |
+ * </pre>
+ * 追加消息只在文件末尾写一条 APPEND 记录，不再重写整个文件。CRC 覆盖消息数和负载。
+ * 读取时逐条校验长度和 CRC，遇到写了一半的记录（进程崩溃导致）时截断到最后一条完整记录。
+ * 头部带有消息数，读取最近的消息时不需要反序列化更早的记录。
+ */
+@Slf4j
+final class MessageLog {
+
+    static final byte APPEND = 1;
+
+    static final int HEADER_BYTES = 13;
+
+    private MessageLog() {
+    }
+
+    /**
+     * 一条完整的记录
+     *
+     * @param type         记录类型
+     * @param messageCount 记录中的消息数
+     * @param payload      负载（序列化后的消息列表）
+     */
+    record Record(byte type, int messageCount, byte[] payload) {
+    }
+
+    /**
+     * 读取全部完整记录，末尾不完整或校验失败的部分会被截断
+     */
+    static List<Record> read(Path file) throws IOException {
+        List<Record> records = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return records;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        int validLength = 0;
+        while (buffer.remaining() >= HEADER_BYTES) {
+            byte type = buffer.get();
+            int messageCount = buffer.getInt();
+            int length = buffer.getInt();
+            int crc = buffer.getInt();
+            if (type != APPEND || length < 0 || length > buffer.remaining()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            if (crc32(messageCount, payload) != crc) {
+                break;
+            }
+            records.add(new Record(type, messageCount, payload));
+            validLength = buffer.position();
+        }
+        if (validLength < buffer.limit()) {
+            log.warn("会话日志 {} 末尾有 {} 字节不完整的记录，已截断", file.getFileName(), buffer.limit() - validLength);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 把一条完整记录写入通道（通道位置已在文件末尾）
+     */
+    @FunctionalInterface
+    interface FrameWriter {
+
+        void write(FileChannel channel, ByteBuffer frame, boolean fsync) throws IOException;
+    }
+
+    static final FrameWriter DEFAULT_WRITER = (channel, frame, fsync) -> {
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+    };
+
+    /**
+     * 在文件末尾追加一条记录
+     *
+     * @param fsync 是否在返回前把数据刷到磁盘
+     * @return 写入的字节数
+     */
+    static int append(Path file, byte type, int messageCount, byte[] payload, boolean fsync) throws IOException {
+        return append(file, type, messageCount, payload, fsync, DEFAULT_WRITER);
+    }
+
+    /**
+     * 在文件末尾追加一条记录。写入或刷盘失败时把文件截断回写入前的长度再抛出异常，
+     * 失败的追加不会在文件中留下任何内容（半条记录或未确认落盘的完整记录），调用方可以安全地重试
+     */
+    static int append(Path file, byte type, int messageCount, byte[] payload, boolean fsync, FrameWriter writer)
+            throws IOException {
+        byte[] frame = frame(type, messageCount, payload);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long start = channel.size();
+            channel.position(start);
+            try {
+                writer.write(channel, ByteBuffer.wrap(frame), fsync);
+            } catch (IOException e) {
+                try {
+                    channel.truncate(start);
+                } catch (IOException rollback) {
+                    // 截断也失败时文件末尾可能留有半条记录，下次读取时按不完整记录截断
+                    e.addSuppressed(rollback);
+                }
+                throw e;
+            }
+        }
+        return frame.length;
+    }
+
+    /**
+     * 用一条 APPEND 记录重写整个文件（压缩），先写临时文件再原子替换
+     *
+     * @return 新文件的字节数
+     */
+    static int rewrite(Path file, int messageCount, byte[] payload) throws IOException {
+        byte[] frame = frame(APPEND, messageCount, payload);
+        Path temp = file.resolveSibling(file.getFileName() + ".compact");
+        Files.write(temp, frame);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return frame.length;
+    }
+
+    private static byte[] frame(byte type, int messageCount, byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        buffer.put(type).putInt(messageCount).putInt(payload.length).putInt(crc32(messageCount, payload)).put(payload);
+        return buffer.array();
+    }
+
+    private static int crc32(int messageCount, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(4).putInt(messageCount).array());
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,416 @@
+package com.ai.agent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 写回式对话记忆缓存（位于 {@link FileBasedChatMemory} 之前）
+ * <p>
+ * 按 LRU 缓存反序列化后的会话窗口，活跃会话的读取不再访问磁盘。写入先更新缓存，
+ * 再按持久化模式处理：SYNC 立即追加并刷盘；ASYNC、BATCHED_FSYNC 把新消息合并起来，由后台线程定期批量追加。
+ * 缓存按估算的内容大小淘汰，淘汰前先写回未持久化的消息；关闭时强制写回全部缓存。
+ * 写盘失败时消息保留在待写回列表中，下次写回时重试，写回成功前会话不会被淘汰。
+ * 缓存中的会话不会被后台清理，缓存命中时同步更新磁盘层的访问时间。
+ */
+@Slf4j
+public class WriteBackChatMemory implements ChatMemory, AutoCloseable {
+
+    // 每条消息的固定开销估算（对象头、元数据、列表槽位）
+    private static final int MESSAGE_OVERHEAD_BYTES = 128;
+
+    private final FileBasedChatMemory delegate;
+
+    private final long maxBytes;
+
+    private final MemoryDurability durability;
+
+    // 访问顺序的 LinkedHashMap，实现 LRU 淘汰
+    private final LinkedHashMap<String, CachedConversation> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final ScheduledExecutorService flusher;
+
+    private long cachedBytes;
+
+    // 清空会话的次数（由缓存锁保护）：从磁盘读取期间发生过清空时丢弃读到的内容，避免旧数据回到缓存
+    private long clearGeneration;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong diskReads = new AtomicLong();
+    private final AtomicLong diskWrites = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private final AtomicLong coalescedWrites = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public WriteBackChatMemory(FileBasedChatMemory delegate, long maxBytes, MemoryDurability durability,
+                               Duration flushInterval) {
+        this.delegate = delegate;
+        this.maxBytes = maxBytes;
+        this.durability = durability;
+        delegate.setPinnedKeys(this::cachedStorageKeys);
+        if (durability == MemoryDurability.SYNC) {
+            this.flusher = null;
+        } else {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "chat-memory-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = flushInterval.toMillis();
+            flusher.scheduleWithFixedDelay(this::flushAllQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        while (true) {
+            CachedConversation conversation = load(conversationId);
+            synchronized (conversation) {
+                // 刚被淘汰或清空时重新加载后再写入
+                if (conversation.removed) {
+                    continue;
+                }
+                conversation.append(messages, delegate.getWindowSize());
+                if (durability != MemoryDurability.SYNC && !conversation.pending.isEmpty()) {
+                    coalescedWrites.incrementAndGet();
+                }
+                conversation.pending.addAll(messages);
+                if (durability == MemoryDurability.SYNC) {
+                    // 连同之前写入失败的消息一起按顺序追加
+                    flush(conversation);
+                }
+            }
+            resize(conversation);
+            return;
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        CachedConversation conversation = load(conversationId);
+        synchronized (conversation) {
+            return new ArrayList<>(conversation.window);
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        discard(conversationId);
+        delegate.clear(conversationId);
+        synchronized (cache) {
+            clearGeneration++;
+        }
+        // 删除文件前读到旧内容、且已放入缓存的会话
+        discard(conversationId);
+    }
+
+    private void discard(String conversationId) {
+        CachedConversation conversation;
+        synchronized (cache) {
+            conversation = cache.remove(conversationId);
+            if (conversation != null) {
+                cachedBytes -= conversation.accountedBytes;
+            }
+        }
+        if (conversation != null) {
+            synchronized (conversation) {
+                conversation.pending.clear();
+                conversation.window.clear();
+                conversation.removed = true;
+            }
+        }
+    }
+
+    /**
+     * 获取缓存的会话，未缓存时从磁盘读取
+     */
+    private CachedConversation load(String conversationId) {
+        while (true) {
+            long generation;
+            synchronized (cache) {
+                CachedConversation conversation = cache.get(conversationId);
+                if (conversation != null && !conversation.removed) {
+                    hits.incrementAndGet();
+                    delegate.touch(conversationId);
+                    return conversation;
+                }
+                generation = clearGeneration;
+            }
+            misses.incrementAndGet();
+            diskReads.incrementAndGet();
+            CachedConversation loaded = new CachedConversation(conversationId, delegate.get(conversationId));
+            CachedConversation conversation;
+            synchronized (cache) {
+                // 读取期间有会话被清空，读到的可能是删除前的内容，重新读取
+                if (generation != clearGeneration) {
+                    continue;
+                }
+                // 并发读取同一会话时以先放入的为准
+                conversation = cache.putIfAbsent(conversationId, loaded);
+                if (conversation == null) {
+                    conversation = loaded;
+                    cachedBytes += loaded.bytes;
+                }
+            }
+            evictIfNeeded();
+            return conversation;
+        }
+    }
+
+    /**
+     * 会话内容变化后更新缓存的总大小
+     */
+    private void resize(CachedConversation conversation) {
+        synchronized (cache) {
+            if (cache.get(conversation.conversationId) == conversation) {
+                long bytes;
+                synchronized (conversation) {
+                    bytes = conversation.bytes;
+                }
+                cachedBytes += bytes - conversation.accountedBytes;
+                conversation.accountedBytes = bytes;
+            }
+        }
+        evictIfNeeded();
+    }
+
+    /**
+     * 超出大小上限时淘汰最久未使用的会话：先写回未持久化的消息，再从缓存移除
+     */
+    private void evictIfNeeded() {
+        while (true) {
+            CachedConversation victim;
+            synchronized (cache) {
+                if (cachedBytes <= maxBytes || cache.size() <= 1) {
+                    return;
+                }
+                Iterator<CachedConversation> iterator = cache.values().iterator();
+                victim = iterator.next();
+            }
+            // 写回后再移除，避免移除后、写回前的读取拿到磁盘上的旧数据；写回失败时暂不淘汰，等下次写回重试
+            if (!flush(victim)) {
+                return;
+            }
+            synchronized (cache) {
+                synchronized (victim) {
+                    if (victim.pending.isEmpty() && cache.remove(victim.conversationId, victim)) {
+                        victim.removed = true;
+                        cachedBytes -= victim.accountedBytes;
+                        evictions.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 写回一个会话未持久化的消息，失败时保留待写回的消息。
+     * 磁盘层在追加失败（包括刷盘失败）时回滚已写入的部分，重试不会重复写入或落在半条记录之后
+     *
+     * @return 是否已没有待写回的消息
+     */
+    private boolean flush(CachedConversation conversation) {
+        synchronized (conversation) {
+            if (conversation.pending.isEmpty() || conversation.removed) {
+                return true;
+            }
+            if (!delegate.add(conversation.conversationId, conversation.pending,
+                    durability != MemoryDurability.ASYNC)) {
+                failedWrites.incrementAndGet();
+                return false;
+            }
+            diskWrites.incrementAndGet();
+            conversation.pending = new ArrayList<>();
+            return true;
+        }
+    }
+
+    /**
+     * 写回全部缓存的会话
+     */
+    public void flushAll() {
+        List<CachedConversation> conversations;
+        synchronized (cache) {
+            conversations = new ArrayList<>(cache.values());
+        }
+        for (CachedConversation conversation : conversations) {
+            flush(conversation);
+        }
+    }
+
+    private void flushAllQuietly() {
+        try {
+            flushAll();
+        } catch (Exception e) {
+            log.error("对话记忆批量写回失败", e);
+        }
+    }
+
+    /**
+     * 关闭时停止后台线程并强制写回
+     */
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flushAll();
+        log.info("对话记忆缓存已写回，共 {} 个会话", getStats().entries());
+        delegate.close();
+    }
+
+    private Set<String> cachedStorageKeys() {
+        List<String> conversationIds;
+        synchronized (cache) {
+            conversationIds = new ArrayList<>(cache.keySet());
+        }
+        Set<String> keys = new HashSet<>(conversationIds.size() * 2);
+        for (String conversationId : conversationIds) {
+            keys.add(FileBasedChatMemory.storageKey(conversationId));
+        }
+        return keys;
+    }
+
+    static long estimateBytes(Message message) {
+        long bytes = MESSAGE_OVERHEAD_BYTES + 2L * lengthOf(message.getText());
+        if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                bytes += 2L * (lengthOf(toolCall.name()) + lengthOf(toolCall.arguments()));
+            }
+        }
+        if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                bytes += 2L * (lengthOf(response.name()) + lengthOf(response.responseData()));
+            }
+        }
+        return bytes;
+    }
+
+    private static int lengthOf(String text) {
+        return text == null ? 0 : text.length();
+    }
+
+    /**
+     * 缓存的会话：最近的消息窗口和尚未写回磁盘的消息
+     */
+    private static final class CachedConversation {
+
+        private final String conversationId;
+
+        private final List<Message> window;
+
+        private List<Message> pending = new ArrayList<>();
+
+        // 窗口的估算大小
+        private long bytes;
+
+        // 已计入缓存总大小的部分（由缓存锁保护）
+        private long accountedBytes;
+
+        // 已被淘汰或清空，不再接受写入
+        private boolean removed;
+
+        private CachedConversation(String conversationId, List<Message> window) {
+            this.conversationId = conversationId;
+            this.window = new ArrayList<>(window);
+            for (Message message : window) {
+                bytes += estimateBytes(message);
+            }
+            this.accountedBytes = bytes;
+        }
+
+        private void append(List<Message> messages, int windowSize) {
+            for (Message message : messages) {
+                window.add(message);
+                bytes += estimateBytes(message);
+            }
+            while (window.size() > windowSize) {
+                bytes -= estimateBytes(window.remove(0));
+            }
+        }
+    }
+
+    /**
+     * 对话记忆缓存统计
+     *
+     * @param durability      持久化模式
+     * @param entries         缓存的会话数
+     * @param cachedBytes     缓存占用（估算）
+     * @param hits            读取命中缓存的次数
+     * @param misses          未命中、从磁盘读取的次数
+     * @param diskReads       磁盘读取次数
+     * @param diskWrites      磁盘写入次数
+     * @param failedWrites    写盘失败（消息保留待重试）的次数
+     * @param coalescedWrites 被合并到同一次批量写入的写入次数
+     * @param evictions       淘汰的会话数
+     */
+    public record Stats(MemoryDurability durability, int entries, long cachedBytes, long hits, long misses,
+                        long diskReads, long diskWrites, long failedWrites, long coalescedWrites, long evictions) {
+    }
+
+    /**
+     * 读取会话时返回的最近消息条数（与磁盘层相同）
+     */
+    public int getWindowSize() {
+        return delegate.getWindowSize();
+    }
+
+    /**
+     * 读取会话的附属文件（不经过缓存）
+     */
+    public String readSidecar(String conversationId, String suffix) {
+        return delegate.readSidecar(conversationId, suffix);
+    }
+
+    /**
+     * 写入会话的附属文件（不经过缓存，直接写盘）
+     */
+    public void writeSidecar(String conversationId, String suffix, String content) {
+        delegate.writeSidecar(conversationId, suffix, content);
+    }
+
+    /**
+     * 注册会话被清空或被后台清理后的回调，参数为存储键（见 {@link FileBasedChatMemory#addForgetListener}）
+     */
+    public void addForgetListener(Consumer<String> listener) {
+        delegate.addForgetListener(listener);
+    }
+
+    /**
+     * 磁盘存储统计（会话数、总大小、清理情况）
+     */
+    public ConversationSweeper.StorageStats getStorageStats() {
+        return delegate.getStorageStats();
+    }
+
+    public Stats getStats() {
+        synchronized (cache) {
+            return new Stats(durability, cache.size(), cachedBytes, hits.get(), misses.get(), diskReads.get(),
+                    diskWrites.get(), failedWrites.get(), coalescedWrites.get(), evictions.get());
+        }
+    }
+}
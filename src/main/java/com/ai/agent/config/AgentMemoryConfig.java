@@ -0,0 +1,28 @@
+package com.ai.agent.config;
+
+import com.ai.agent.chatmemory.FileBasedChatMemory;
+import com.ai.agent.chatmemory.WriteBackChatMemory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 智能体对话记忆配置：会话日志文件（带后台清理） + 写回式内存缓存
+ */
+@Configuration
+public class AgentMemoryConfig {
+
+    /**
+     * 应用关闭时强制写回缓存中尚未持久化的消息
+     */
+    @Bean(destroyMethod = "close")
+    public WriteBackChatMemory agentMemory(AgentMemoryProperties properties) {
+        FileBasedChatMemory fileMemory = new FileBasedChatMemory(properties.getDir(), properties.getWindowSize());
+        fileMemory.startSweeper(properties.getTtl(), properties.getMaxTotalSize().toBytes(),
+                properties.getSweepInterval(), properties.isArchive());
+        if (properties.isMigrateOnStartup()) {
+            fileMemory.migrateAllInBackground();
+        }
+        return new WriteBackChatMemory(fileMemory, properties.getCacheMaxSize().toBytes(),
+                properties.getDurability(), properties.getFlushInterval());
+    }
+}
@@ -0,0 +1,68 @@
+package com.ai.agent.config;
+
+import com.ai.agent.chatmemory.MemoryDurability;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * 智能体对话记忆配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "agent.memory")
+public class AgentMemoryProperties {
+
+    /**
+     * 会话日志目录
+     */
+    private String dir = "./agent-memory";
+
+    /**
+     * 每个会话保留（读取时返回）的最近消息数
+     */
+    private int windowSize = 20;
+
+    /**
+     * 内存缓存占用上限（按消息内容估算），超出后淘汰最久未使用的会话
+     */
+    private DataSize cacheMaxSize = DataSize.ofMegabytes(64);
+
+    /**
+     * 写入的持久化模式
+     */
+    private MemoryDurability durability = MemoryDurability.ASYNC;
+
+    /**
+     * ASYNC、BATCHED_FSYNC 模式下后台批量写入的间隔
+     */
+    private Duration flushInterval = Duration.ofSeconds(1);
+
+    /**
+     * 空闲会话的保留时长，超过后由后台清理
+     */
+    private Duration ttl = Duration.ofDays(30);
+
+    /**
+     * 会话日志的总大小配额，超出时从最久未访问的会话开始清理
+     */
+    private DataSize maxTotalSize = DataSize.ofGigabytes(1);
+
+    /**
+     * 后台清理的间隔
+     */
+    private Duration sweepInterval = Duration.ofMinutes(10);
+
+    /**
+     * 清理时移动到归档目录（true）还是直接删除（false）
+     */
+    private boolean archive = false;
+
+    /**
+     * 启动后在后台把旧格式的会话文件迁移为紧凑格式
+     */
+    private boolean migrateOnStartup = true;
+}
@@ -0,0 +1,36 @@
+package com.ai.agent.config;
+
+import com.ai.agent.chatmemory.BoundedChatMemoryRepository;
+import com.ai.agent.chatmemory.JdbcChatMemoryRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * 基础对话（doChat）的对话记忆存储配置
+ * <p>
+ * 默认使用有容量上限的内存存储，代替 Spring AI 自动配置的无上限内存存储。
+ */
+@Configuration
+public class ChatMemoryConfig {
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "agent.chat-memory", name = "store", havingValue = "in_memory", matchIfMissing = true)
+    public BoundedChatMemoryRepository boundedChatMemoryRepository(ChatMemoryProperties properties) {
+        ChatMemoryProperties.InMemory inMemory = properties.getInMemory();
+        return new BoundedChatMemoryRepository(inMemory.getMaxSize().toBytes(), inMemory.getIdleTtl(),
+                inMemory.isSpill() ? inMemory.getSpillDir() : null, inMemory.getSpillTtl(),
+                inMemory.getEvictInterval());
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "agent.chat-memory", name = "store", havingValue = "jdbc")
+    public JdbcChatMemoryRepository jdbcChatMemoryRepository(JdbcTemplate jdbcTemplate,
+                                                             PlatformTransactionManager transactionManager,
+                                                             ChatMemoryProperties properties) {
+        return new JdbcChatMemoryRepository(jdbcTemplate, transactionManager,
+                properties.getJdbc().isInitializeSchema(), properties.getJdbc().getPruneThreshold());
+    }
+}
@@ -0,0 +1,75 @@
+package com.ai.agent.config;
+
+import com.ai.agent.chatmemory.ChatMemoryStore;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * 基础对话（doChat）的对话记忆配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "agent.chat-memory")
+public class ChatMemoryProperties {
+
+    /**
+     * 存储方式
+     */
+    private ChatMemoryStore store = ChatMemoryStore.IN_MEMORY;
+
+    private InMemory inMemory = new InMemory();
+
+    private Jdbc jdbc = new Jdbc();
+
+    @Data
+    public static class InMemory {
+
+        /**
+         * 内存占用上限（按消息内容估算），超出后淘汰最久未使用的会话
+         */
+        private DataSize maxSize = DataSize.ofMegabytes(32);
+
+        /**
+         * 空闲多久后淘汰
+         */
+        private Duration idleTtl = Duration.ofHours(2);
+
+        /**
+         * 淘汰的会话是否溢出到磁盘（再次访问时读回）
+         */
+        private boolean spill = true;
+
+        /**
+         * 溢出目录（启动时清空）
+         */
+        private String spillDir = "./chat-memory-spill";
+
+        /**
+         * 溢出文件的保留时长
+         */
+        private Duration spillTtl = Duration.ofDays(1);
+
+        /**
+         * 后台淘汰的间隔
+         */
+        private Duration evictInterval = Duration.ofMinutes(1);
+    }
+
+    @Data
+    public static class Jdbc {
+
+        /**
+         * 启动时是否建表
+         */
+        private boolean initializeSchema = true;
+
+        /**
+         * 窗口之外累积多少行后触发后台清理
+         */
+        private int pruneThreshold = 20;
+    }
+}
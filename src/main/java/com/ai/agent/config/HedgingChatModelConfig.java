@@ -0,0 +1,43 @@
+package com.ai.agent.config;
+
+import com.ai.agent.llm.HedgingChatModel;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 对冲请求配置：主模型为 DashScope，备用模型为本地 Ollama
+ */
+@Configuration
+public class HedgingChatModelConfig {
+
+    @Value("${agent.hedging.enabled:true}")
+    private boolean enabled;
+
+    @Value("${agent.hedging.percentile:0.95}")
+    private double percentile;
+
+    @Value("${agent.hedging.hedge-ratio:0.1}")
+    private double hedgeRatio;
+
+    @Value("${agent.hedging.min-delay:500ms}")
+    private Duration minDelay;
+
+    @Value("${agent.hedging.initial-delay:3s}")
+    private Duration initialDelay;
+
+    @Value("${agent.hedging.window-size:200}")
+    private int windowSize;
+
+    @Value("${agent.hedging.hedge-tool-calls:false}")
+    private boolean hedgeToolCalls;
+
+    @Bean
+    public HedgingChatModel hedgedChatModel(ChatModel dashscopeChatModel, ChatModel ollamaChatModel) {
+        return new HedgingChatModel(dashscopeChatModel, ollamaChatModel, percentile, hedgeRatio,
+                minDelay, initialDelay, windowSize, hedgeToolCalls, enabled);
+    }
+}
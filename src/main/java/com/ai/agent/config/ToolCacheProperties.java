@@ -0,0 +1,52 @@
+package com.ai.agent.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 工具结果缓存配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "agent.tool-cache")
+public class ToolCacheProperties {
+
+    /**
+     * 是否启用工具结果缓存
+     */
+    private boolean enabled = true;
+
+    /**
+     * 缓存的最大条目数，超出后淘汰最久未使用的结果
+     */
+    private int maxEntries = 500;
+
+    /**
+     * 所有缓存结果的总字符数上限，超出后淘汰最久未使用的结果
+     */
+    private long maxChars = 5_000_000;
+
+    /**
+     * 单条结果的字符数上限，超过的结果不缓存
+     */
+    private int maxEntryChars = 200_000;
+
+    /**
+     * 等待正在执行的相同调用的最长时间，超时后本次调用失败
+     */
+    private Duration awaitTimeout = Duration.ofSeconds(60);
+
+    /**
+     * 各工具结果的有效期，只有配置了有效期的工具才会被缓存。
+     * 有副作用的工具（writeFile、executeTerminalCommand、downloadResource 等）默认不缓存。
+     */
+    private Map<String, Duration> ttl = new HashMap<>(Map.of(
+            "searchWeb", Duration.ofMinutes(10),
+            "scrapeWebPage", Duration.ofMinutes(30)
+    ));
+}
@@ -0,0 +1,35 @@
+package com.ai.agent.config;
+
+import com.ai.agent.agent.ParallelToolExecutor;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 并行工具执行配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "agent.tool-executor")
+public class ToolExecutorProperties {
+
+    /**
+     * 单步最大并发数
+     */
+    private int maxConcurrency = ParallelToolExecutor.DEFAULT_MAX_CONCURRENCY;
+
+    /**
+     * 单次工具调用超时时间
+     */
+    private Duration callTimeout = ParallelToolExecutor.DEFAULT_CALL_TIMEOUT;
+
+    /**
+     * 可以并发执行的工具，其余工具按调用顺序单独执行。
+     * 有副作用的工具（writeFile、executeTerminalCommand、downloadResource、generateMarkdown 等）不要配置。
+     */
+    private Set<String> parallelSafeTools = new HashSet<>(ParallelToolExecutor.DEFAULT_PARALLEL_SAFE_TOOLS);
+}
@@ -1,25 +1,39 @@
 package com.ai.agent.controller;
 
+import com.ai.agent.agent.AgentRunScheduler;
+import com.ai.agent.agent.ReactiveAgentEngine;
+import com.ai.agent.agent.SseEventEncoder;
 import com.ai.agent.agent.ToolCallAgent;
+import com.ai.agent.agent.model.AgentEvent;
+import com.ai.agent.agent.model.AgentRunPriority;
 import com.ai.agent.app.FinancialManagementApp;
 import jakarta.annotation.Resource;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import reactor.core.publisher.Flux;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/ai")
 public class AiController {
 
+    // 响应式智能体接口的心跳间隔，与 SseEmitter 方式一致
+    private static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(5);
+
     @Resource
     private FinancialManagementApp financialManagementApp;
 
+    @Resource
+    private AgentRunScheduler agentRunScheduler;
+
     /**
      * 同步调用 AI 理财管理应用
      */
@@ -74,10 +88,37 @@ public class AiController {
 
     /**
      * 流式调用超级智能体（ReAct 模式，整合记忆、RAG、工具调用、MCP）
+     * <p>
+     * 后台任务（如定时生成报告）传 priority=BATCH，排队时让位于用户的交互式请求
      */
     @GetMapping("/financial/agent")
-    public SseEmitter doChatWithAgent(String message, String chatId) {
+    public SseEmitter doChatWithAgent(String message, String chatId,
+                                      @RequestParam(defaultValue = "INTERACTIVE") AgentRunPriority priority) {
         ToolCallAgent agent = financialManagementApp.createAgentInstance(chatId);
+        agent.setRunPriority(priority);
         return agent.runStream(message);
     }
+
+    /**
+     * 流式调用超级智能体（响应式引擎，等待模型响应时不占用线程，事件格式与 SseEmitter 方式一致）
+     * <p>
+     * 与 SseEmitter 方式共用调度器的并发上限、等待队列和优先级，队列已满时返回 busy 事件；
+     * 运行期间定期发送心跳注释，客户端断开后心跳写入失败即取消运行
+     */
+    @GetMapping(value = "/financial/agent/reactive", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> doChatWithReactiveAgent(String message, String chatId,
+                                                                 @RequestParam(defaultValue = "INTERACTIVE") AgentRunPriority priority) {
+        SseEventEncoder encoder = new SseEventEncoder();
+        // 创建智能体会读取对话记忆（可能等待未完成的写入、读磁盘），获得调度槽位后在 boundedElastic 上完成，不阻塞请求线程
+        Flux<ServerSentEvent<String>> events = agentRunScheduler.submitReactive(priority,
+                        () -> new ReactiveAgentEngine(financialManagementApp.createAgentInstance(chatId)).run(message))
+                .onErrorResume(RejectedExecutionException.class,
+                        e -> Flux.just(AgentEvent.busy("当前请求过多，请稍后重试"), AgentEvent.done()))
+                .map(event -> ServerSentEvent.<String>builder()
+                        .data(encoder.encode(event))
+                        .build());
+        Flux<ServerSentEvent<String>> heartbeats = Flux.interval(HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL)
+                .map(tick -> ServerSentEvent.<String>builder().comment("heartbeat").build());
+        return events.publish(shared -> shared.mergeWith(heartbeats.takeUntilOther(shared.then())));
+    }
 }
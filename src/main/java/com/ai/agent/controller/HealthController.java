@@ -1,5 +1,9 @@
 package com.ai.agent.controller;
 
+import com.ai.agent.rag.KnowledgeBaseIngestor;
+import jakarta.annotation.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -8,8 +12,21 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/health")
 public class HealthController {
 
+    @Resource
+    private KnowledgeBaseIngestor knowledgeBaseIngestor;
+
     @GetMapping
     public String healthCheck() {
         return "ok";
     }
+
+    /**
+     * 就绪检查：知识库导入完成、可以检索后返回 200，之前返回 503
+     */
+    @GetMapping("/readiness")
+    public ResponseEntity<KnowledgeBaseIngestor.Status> readiness() {
+        KnowledgeBaseIngestor.Status status = knowledgeBaseIngestor.getStatus();
+        HttpStatus httpStatus = knowledgeBaseIngestor.isReady() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(httpStatus).body(status);
+    }
 }
@@ -0,0 +1,42 @@
+package com.ai.agent.controller;
+
+import com.ai.agent.llm.SemanticResponseCache;
+import jakarta.annotation.Resource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * 语义缓存审计接口（运维排查误命中用）
+ * <p>
+ * 接口没有鉴权，默认不注册；只在内网排查时通过 agent.semantic-cache.audit-endpoints-enabled=true 开启。
+ */
+@RestController
+@RequestMapping("/stats/semantic-cache/audit")
+@ConditionalOnProperty(prefix = "agent.semantic-cache", name = "audit-endpoints-enabled", havingValue = "true")
+public class SemanticCacheAuditController {
+
+    @Resource
+    private SemanticResponseCache semanticResponseCache;
+
+    /**
+     * 语义缓存命中审计日志（最新的在前），问题原文已替换为摘要值
+     */
+    @GetMapping
+    public List<SemanticResponseCache.AuditRecord> semanticCacheAudit() {
+        return semanticResponseCache.getAuditLog();
+    }
+
+    /**
+     * 标记一次误命中，删除对应的缓存条目
+     */
+    @PostMapping("/{auditId}/false-hit")
+    public boolean reportSemanticCacheFalseHit(@PathVariable long auditId) {
+        return semanticResponseCache.reportFalseHit(auditId);
+    }
+}
@@ -0,0 +1,188 @@
+package com.ai.agent.controller;
+
+import com.ai.agent.agent.AgentLatencyBudget;
+import com.ai.agent.agent.AgentRunScheduler;
+import com.ai.agent.app.FinancialManagementApp;
+import com.ai.agent.chatmemory.AsyncChatMemoryWriter;
+import com.ai.agent.chatmemory.BoundedChatMemoryRepository;
+import com.ai.agent.chatmemory.ConversationSummarizer;
+import com.ai.agent.chatmemory.ConversationSweeper;
+import com.ai.agent.chatmemory.JdbcChatMemoryRepository;
+import com.ai.agent.chatmemory.MessageCompactionPipeline;
+import com.ai.agent.chatmemory.WriteBackChatMemory;
+import com.ai.agent.llm.HedgingChatModel;
+import com.ai.agent.llm.LlmResponseCache;
+import com.ai.agent.llm.ModelRouter;
+import com.ai.agent.llm.SemanticResponseCache;
+import com.ai.agent.rag.KnowledgeBaseIngestor;
+import com.ai.agent.tools.ToolResultCache;
+import jakarta.annotation.Resource;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * 运行统计接口（调度队列、缓存命中率等运行指标）
+ */
+@RestController
+@RequestMapping("/stats")
+public class StatsController {
+
+    @Resource
+    private AgentRunScheduler agentRunScheduler;
+
+    @Resource
+    private ChatMemoryRepository chatMemoryRepository;
+
+    @Resource
+    private ConversationSummarizer conversationSummarizer;
+
+    @Resource
+    private AsyncChatMemoryWriter asyncChatMemoryWriter;
+
+    @Resource
+    private FinancialManagementApp financialManagementApp;
+
+    @Resource
+    private AgentLatencyBudget agentLatencyBudget;
+
+    @Resource
+    private ToolResultCache toolResultCache;
+
+    @Resource
+    private HedgingChatModel hedgedChatModel;
+
+    @Resource
+    private ModelRouter modelRouter;
+
+    @Resource
+    private WriteBackChatMemory agentMemory;
+
+    @Resource
+    private LlmResponseCache llmResponseCache;
+
+    @Resource
+    private SemanticResponseCache semanticResponseCache;
+
+    @Resource
+    private KnowledgeBaseIngestor knowledgeBaseIngestor;
+
+    /**
+     * Agent 调度器统计：并发数、队列深度、排队等待时间
+     */
+    @GetMapping("/agent-scheduler")
+    public AgentRunScheduler.Stats agentScheduler() {
+        return agentRunScheduler.getStats();
+    }
+
+    /**
+     * 延迟预算统计：运行耗时、各级预算超支次数和提前总结次数
+     */
+    @GetMapping("/agent-deadline")
+    public AgentLatencyBudget.Stats agentDeadline() {
+        return agentLatencyBudget.getStats();
+    }
+
+    /**
+     * 工具结果缓存统计：各工具的命中率、共享调用次数和淘汰数
+     */
+    @GetMapping("/tool-cache")
+    public List<ToolResultCache.Stats> toolCache() {
+        return toolResultCache.getStats();
+    }
+
+    /**
+     * 对冲请求统计：对冲次数、备用模型胜出次数和当前的对冲等待时间
+     */
+    @GetMapping("/llm-hedging")
+    public HedgingChatModel.Stats llmHedging() {
+        return hedgedChatModel.getStats();
+    }
+
+    /**
+     * 模型路由统计：各路由的请求数、平均耗时和节省的大模型 token 数
+     */
+    @GetMapping("/model-router")
+    public List<ModelRouter.Stats> modelRouter() {
+        return modelRouter.getStats();
+    }
+
+    /**
+     * 智能体对话记忆缓存统计：命中率、磁盘读写次数、合并的写入和淘汰数
+     */
+    @GetMapping("/agent-memory")
+    public WriteBackChatMemory.Stats agentMemory() {
+        return agentMemory.getStats();
+    }
+
+    /**
+     * 智能体对话记忆存储统计：会话数、总大小、按 TTL 和配额清理的会话数
+     */
+    @GetMapping("/agent-memory/storage")
+    public ConversationSweeper.StorageStats agentMemoryStorage() {
+        return agentMemory.getStorageStats();
+    }
+
+    /**
+     * 对话摘要统计：生成次数、合并的消息数、使用摘要前后的 token 数和节省的 token 数（只有汇总数据）
+     */
+    @GetMapping("/agent-memory/summary")
+    public ConversationSummarizer.Stats agentMemorySummary() {
+        return conversationSummarizer.getStats();
+    }
+
+    /**
+     * 对话记忆异步写入统计：提交、完成和失败的写入数，下一轮等待写入的次数和平均写入耗时
+     */
+    @GetMapping("/agent-memory/writer")
+    public AsyncChatMemoryWriter.Stats agentMemoryWriter() {
+        return asyncChatMemoryWriter.getStats();
+    }
+
+    /**
+     * 持久化前消息压缩统计：压缩前后的消息数和字符数、平均耗时
+     */
+    @GetMapping("/agent-memory/compaction")
+    public MessageCompactionPipeline.Stats agentMemoryCompaction() {
+        return financialManagementApp.getMemoryCompactionStats();
+    }
+
+    /**
+     * 基础对话的对话记忆统计：内存存储为会话数、占用、淘汰数和溢出命中率；
+     * 数据库存储为读写次数、批量插入和复用的行数、后台清理的行数
+     */
+    @GetMapping("/chat-memory")
+    public Object chatMemory() {
+        if (chatMemoryRepository instanceof BoundedChatMemoryRepository boundedRepository) {
+            return boundedRepository.getStats();
+        }
+        return chatMemoryRepository instanceof JdbcChatMemoryRepository jdbcRepository ? jdbcRepository.getStats() : null;
+    }
+
+    /**
+     * 模型响应缓存统计：各调用处的内存命中、磁盘命中和未命中次数
+     */
+    @GetMapping("/llm-cache")
+    public List<LlmResponseCache.Stats> llmCache() {
+        return llmResponseCache.getStats();
+    }
+
+    /**
+     * 语义缓存统计：各命名空间的命中率、节省的时间、淘汰数和误命中数
+     */
+    @GetMapping("/semantic-cache")
+    public SemanticResponseCache.Stats semanticCache() {
+        return semanticResponseCache.getStats();
+    }
+
+    /**
+     * 知识库导入进度：状态、文档和片段数、已完成和失败的批次
+     */
+    @GetMapping("/knowledge-base")
+    public KnowledgeBaseIngestor.Status knowledgeBase() {
+        return knowledgeBaseIngestor.getStatus();
+    }
+}
@@ -0,0 +1,88 @@
+package com.ai.agent.llm;
+
+import cn.hutool.core.util.StrUtil;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * 请求复杂度分类器（规则 + 词表，不调用模型，微秒级）
+ * <p>
+ * 1. 去掉标点和空白后完全由寒暄词组成的 → TRIVIAL
+ * 2. 出现工具、实时信息、个性化规划等关键词，或包含金额、百分比，或较长、包含多个问题 → COMPLEX
+ * 3. 其余简短问题 → SIMPLE
+ */
+public final class ComplexityClassifier {
+
+    // 超过该长度的请求一律视为复杂请求
+    private static final int MAX_SIMPLE_CHARS = 40;
+
+    private static final Pattern PUNCTUATION = Pattern.compile("[\\p{P}\\p{S}\\s]+");
+
+    private static final Pattern AMOUNT = Pattern.compile("\\d+(\\.\\d+)?\\s*(万|千|元|块|%|％|w|k)", Pattern.CASE_INSENSITIVE);
+
+    private static final List<String> GREETINGS = List.of(
+            "你好", "您好", "你好啊", "嗨", "哈喽", "在吗", "在不在", "早上好", "下午好", "晚上好", "早安", "晚安",
+            "hi", "hello", "hey", "谢谢", "多谢", "谢啦", "感谢", "thanks", "thankyou", "好的", "好", "ok", "嗯",
+            "再见", "拜拜", "bye");
+
+    private static final List<String> COMPLEX_KEYWORDS = List.of(
+            // 需要工具或实时信息
+            "搜索", "查一下", "查询", "最新", "今天", "今日", "现在", "实时", "新闻", "行情", "走势", "股价", "净值",
+            "网页", "网站", "链接", "http", "下载", "文件", "报告", "生成", "pdf", "markdown", "命令",
+            // 个性化分析、规划
+            "分析", "对比", "比较", "推荐", "规划", "计划", "方案", "配置", "组合", "计算", "测算", "我的", "我有", "我想");
+
+    private ComplexityClassifier() {
+    }
+
+    public static RequestComplexity classify(String message) {
+        if (StrUtil.isBlank(message)) {
+            return RequestComplexity.TRIVIAL;
+        }
+        String lower = message.trim().toLowerCase(Locale.ROOT);
+        String normalized = PUNCTUATION.matcher(lower).replaceAll("");
+        if (normalized.isEmpty() || isGreeting(normalized)) {
+            return RequestComplexity.TRIVIAL;
+        }
+        if (normalized.length() > MAX_SIMPLE_CHARS
+                || countQuestions(lower) > 1
+                || AMOUNT.matcher(lower).find()
+                || COMPLEX_KEYWORDS.stream().anyMatch(lower::contains)) {
+            return RequestComplexity.COMPLEX;
+        }
+        return RequestComplexity.SIMPLE;
+    }
+
+    /**
+     * 由一个或多个寒暄词拼成（如"你好在吗"、"好的谢谢"）
+     */
+    private static boolean isGreeting(String normalized) {
+        int index = 0;
+        while (index < normalized.length()) {
+            int matched = 0;
+            for (String greeting : GREETINGS) {
+                if (greeting.length() > matched && normalized.startsWith(greeting, index)) {
+                    matched = greeting.length();
+                }
+            }
+            if (matched == 0) {
+                return false;
+            }
+            index += matched;
+        }
+        return true;
+    }
+
+    private static int countQuestions(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '?' || c == '？') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
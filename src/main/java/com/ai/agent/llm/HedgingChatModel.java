@@ -0,0 +1,443 @@
+package com.ai.agent.llm;
+
+import cn.hutool.core.collection.CollUtil;
+import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.ollama.api.OllamaOptions;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 对冲请求的 ChatModel 装饰器（降低长尾延迟）
+ * <p>
+ * 先把请求发给主模型；主模型在"近期延迟的指定分位数"内还没有响应时，把同一个提示词发给备用模型，
+ * 采用先返回的结果并取消另一个请求。流式调用按首个片段的延迟对冲。
+ * 对冲次数受预算限制：每次可对冲的主模型调用积累 hedgeRatio 个额度，每次对冲消耗 1 个，
+ * 例如 hedgeRatio 为 0.1 时，额外调用最多占可对冲调用的 10%。
+ * <p>
+ * 以下请求不对冲，直接调用主模型，也不积累额度、不计入延迟样本：
+ * 要求结构化输出的请求（提示词带有 ChatClient.entity() 追加的格式说明，或选项中设置了响应格式），
+ * 备用的小模型很难按格式输出，胜出后解析会失败；不对冲工具调用时带工具定义的请求。
+ * 关闭对冲时所有请求都直接调用主模型。
+ * <p>
+ * 备用模型胜出的响应在元数据中带有 {@link #HEDGE_WIN_METADATA_KEY} 标记（见 {@link #isHedgeWin}），
+ * 缓存回答的调用方据此跳过写入，避免把小模型的回答当作主模型的回答缓存。
+ */
+@Slf4j
+public class HedgingChatModel implements ChatModel {
+
+    // 同步调用在虚拟线程上执行，便于等待和中断
+    private static final ExecutorService HEDGE_EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("llm-hedge-", 0).factory());
+
+    // 对冲额度上限（允许短时间内连续对冲的次数）
+    private static final double MAX_HEDGE_CREDITS = 5;
+
+    // 结构化输出转换器（BeanOutputConverter、MapOutputConverter、ListOutputConverter）追加到用户消息的格式说明
+    private static final List<String> FORMAT_INSTRUCTION_MARKERS = List.of(
+            "Your response should be in JSON format",
+            "Respond with only a list of comma-separated values");
+
+    /**
+     * 备用模型胜出时响应元数据中的标记
+     */
+    public static final String HEDGE_WIN_METADATA_KEY = "hedge-win";
+
+    private final boolean enabled;
+
+    private final ChatModel primary;
+
+    private final ChatModel secondary;
+
+    private final double percentile;
+
+    private final double hedgeRatio;
+
+    private final Duration minDelay;
+
+    private final Duration initialDelay;
+
+    private final boolean hedgeToolCalls;
+
+    // 同步调用的总延迟、流式调用的首片段延迟分别统计
+    private final LatencyWindow callLatencies;
+
+    private final LatencyWindow firstChunkLatencies;
+
+    private double hedgeCredits;
+
+    private final AtomicLong primaryCalls = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong budgetDenied = new AtomicLong();
+    private final AtomicLong structuredBypassed = new AtomicLong();
+    private final AtomicLong toolCallsBypassed = new AtomicLong();
+
+    /**
+     * @param primary        主模型
+     * @param secondary      备用模型
+     * @param percentile     触发对冲的延迟分位数，如 0.95
+     * @param hedgeRatio     对冲预算：额外调用占主模型调用的最大比例，如 0.1
+     * @param minDelay       最短对冲等待时间
+     * @param initialDelay   延迟样本不足时的对冲等待时间
+     * @param windowSize     保留的近期延迟样本数
+     * @param hedgeToolCalls 带工具定义的请求是否对冲（备用模型不支持工具调用时应关闭）
+     * @param enabled        是否开启对冲，关闭时直接调用主模型
+     */
+    public HedgingChatModel(ChatModel primary, ChatModel secondary, double percentile, double hedgeRatio,
+                            Duration minDelay, Duration initialDelay, int windowSize, boolean hedgeToolCalls,
+                            boolean enabled) {
+        if (percentile <= 0 || percentile >= 1 || hedgeRatio < 0) {
+            throw new IllegalArgumentException("percentile must be in (0, 1) and hedgeRatio must not be negative");
+        }
+        this.primary = primary;
+        this.secondary = secondary;
+        this.percentile = percentile;
+        this.hedgeRatio = hedgeRatio;
+        this.minDelay = minDelay;
+        this.initialDelay = initialDelay;
+        this.hedgeToolCalls = hedgeToolCalls;
+        this.enabled = enabled;
+        this.callLatencies = new LatencyWindow(windowSize);
+        this.firstChunkLatencies = new LatencyWindow(windowSize);
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        if (bypass(prompt)) {
+            return primary.call(prompt);
+        }
+        primaryCalls.incrementAndGet();
+        earnCredit();
+        CompletionService<ChatResponse> completion = new ExecutorCompletionService<>(HEDGE_EXECUTOR);
+        long start = System.nanoTime();
+        Future<ChatResponse> secondaryFuture = null;
+        Future<ChatResponse> primaryFuture = completion.submit(() -> {
+            ChatResponse response = primary.call(prompt);
+            callLatencies.record(System.nanoTime() - start);
+            return response;
+        });
+        try {
+            Duration delay = hedgeDelay(callLatencies);
+            Future<ChatResponse> first = completion.poll(delay.toNanos(), TimeUnit.NANOSECONDS);
+            if (first != null) {
+                return result(first);
+            }
+            if (!canHedge()) {
+                return result(primaryFuture);
+            }
+            hedges.incrementAndGet();
+            log.info("主模型 {}ms 内未响应，向备用模型发起对冲请求", delay.toMillis());
+            Prompt secondaryPrompt = secondaryPrompt(prompt);
+            secondaryFuture = completion.submit(() -> secondary.call(secondaryPrompt));
+            return awaitFirstSuccess(completion, primaryFuture, secondaryFuture, start);
+        } catch (InterruptedException e) {
+            primaryFuture.cancel(true);
+            if (secondaryFuture != null) {
+                secondaryFuture.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the chat model", e);
+        }
+    }
+
+    /**
+     * 等待两个请求中先成功的一个，取消另一个；都失败时抛出主模型的异常
+     */
+    private ChatResponse awaitFirstSuccess(CompletionService<ChatResponse> completion,
+                                           Future<ChatResponse> primaryFuture, Future<ChatResponse> secondaryFuture,
+                                           long start) throws InterruptedException {
+        RuntimeException primaryError = null;
+        RuntimeException secondaryError = null;
+        for (int i = 0; i < 2; i++) {
+            Future<ChatResponse> done = completion.take();
+            try {
+                ChatResponse response = result(done);
+                if (done == secondaryFuture) {
+                    hedgeWins.incrementAndGet();
+                    // 主模型被取消，按已等待时间记录样本，保留长尾信息
+                    callLatencies.record(System.nanoTime() - start);
+                    primaryFuture.cancel(true);
+                    return markHedgeWin(response);
+                } else {
+                    secondaryFuture.cancel(true);
+                }
+                return response;
+            } catch (RuntimeException e) {
+                if (done == primaryFuture) {
+                    primaryError = e;
+                } else {
+                    secondaryError = e;
+                    log.warn("备用模型对冲请求失败: {}", e.getMessage());
+                }
+            }
+        }
+        throw primaryError != null ? primaryError : secondaryError;
+    }
+
+    private static ChatResponse result(Future<ChatResponse> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            if (bypass(prompt)) {
+                return primary.stream(prompt);
+            }
+            primaryCalls.incrementAndGet();
+            earnCredit();
+            long start = System.nanoTime();
+            Flux<ChatResponse> primaryFlux = primary.stream(prompt)
+                    .doOnNext(new FirstChunkRecorder(start));
+            Duration delay = hedgeDelay(firstChunkLatencies);
+            // 到达对冲时间时才决定是否向备用模型发起请求；主模型先出结果时备用请求不会被订阅
+            Flux<ChatResponse> secondaryFlux = Flux.defer(() -> {
+                        if (!canHedge()) {
+                            return Flux.<ChatResponse>empty();
+                        }
+                        hedges.incrementAndGet();
+                        log.info("主模型 {}ms 内未输出，向备用模型发起对冲请求", delay.toMillis());
+                        return secondary.stream(secondaryPrompt(prompt))
+                                .doOnNext(new HedgeWinRecorder(start))
+                                .map(HedgingChatModel::markHedgeWin);
+                    })
+                    .delaySubscription(delay);
+            // 先输出数据的一方胜出，另一方被取消
+            return Flux.firstWithValue(primaryFlux, secondaryFlux);
+        });
+    }
+
+    /**
+     * 响应是否来自胜出的备用模型
+     */
+    public static boolean isHedgeWin(ChatResponse response) {
+        return response != null && response.getMetadata() != null
+                && Boolean.TRUE.equals(response.getMetadata().get(HEDGE_WIN_METADATA_KEY));
+    }
+
+    private static ChatResponse markHedgeWin(ChatResponse response) {
+        return ChatResponse.builder()
+                .from(response)
+                .metadata(response.getMetadata())
+                .metadata(HEDGE_WIN_METADATA_KEY, true)
+                .build();
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return primary.getDefaultOptions();
+    }
+
+    /**
+     * 对冲等待时间：近期延迟的指定分位数，样本不足时使用初始值
+     */
+    private Duration hedgeDelay(LatencyWindow latencies) {
+        long nanos = latencies.percentile(percentile);
+        if (nanos < 0) {
+            return initialDelay;
+        }
+        return Duration.ofNanos(Math.max(minDelay.toNanos(), nanos));
+    }
+
+    /**
+     * 不对冲、直接调用主模型的请求：关闭对冲、要求结构化输出，或不对冲工具调用时带工具定义。
+     * 这些请求在积累额度之前排除，不会为其他请求攒下对冲额度
+     */
+    private boolean bypass(Prompt prompt) {
+        if (!enabled) {
+            return true;
+        }
+        if (requiresStructuredOutput(prompt)) {
+            structuredBypassed.incrementAndGet();
+            return true;
+        }
+        if (!hedgeToolCalls && hasTools(prompt)) {
+            toolCallsBypassed.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    static boolean requiresStructuredOutput(Prompt prompt) {
+        if (prompt.getOptions() instanceof DashScopeChatOptions options && options.getResponseFormat() != null) {
+            return true;
+        }
+        if (prompt.getOptions() instanceof OllamaOptions options && options.getFormat() != null) {
+            return true;
+        }
+        UserMessage userMessage = prompt.getUserMessage();
+        String text = userMessage == null ? null : userMessage.getText();
+        return text != null && FORMAT_INSTRUCTION_MARKERS.stream().anyMatch(text::contains);
+    }
+
+    private synchronized void earnCredit() {
+        hedgeCredits = Math.min(MAX_HEDGE_CREDITS, hedgeCredits + hedgeRatio);
+    }
+
+    private boolean canHedge() {
+        synchronized (this) {
+            if (hedgeCredits >= 1) {
+                hedgeCredits -= 1;
+                return true;
+            }
+        }
+        budgetDenied.incrementAndGet();
+        return false;
+    }
+
+    private static boolean hasTools(Prompt prompt) {
+        return prompt.getOptions() instanceof ToolCallingChatOptions options
+                && (CollUtil.isNotEmpty(options.getToolCallbacks()) || CollUtil.isNotEmpty(options.getToolNames()));
+    }
+
+    /**
+     * 备用模型的提示词：保留消息和工具设置，去掉主模型的模型名等专有选项
+     */
+    private static Prompt secondaryPrompt(Prompt prompt) {
+        if (prompt.getOptions() instanceof ToolCallingChatOptions options) {
+            ToolCallingChatOptions neutral = ToolCallingChatOptions.builder()
+                    .toolCallbacks(options.getToolCallbacks())
+                    .toolNames(options.getToolNames())
+                    .internalToolExecutionEnabled(options.getInternalToolExecutionEnabled())
+                    .toolContext(options.getToolContext())
+                    .temperature(options.getTemperature())
+                    .build();
+            return new Prompt(prompt.getInstructions(), neutral);
+        }
+        return new Prompt(prompt.getInstructions());
+    }
+
+    /**
+     * 对冲统计
+     *
+     * @param enabled               是否开启对冲
+     * @param primaryCalls          可对冲的主模型调用次数（不含直接调用主模型的请求）
+     * @param hedges                发起的对冲请求数
+     * @param hedgeWins             备用模型先返回的次数
+     * @param budgetDenied          到达对冲时间但预算不足、未发起对冲的次数
+     * @param structuredBypassed    要求结构化输出、直接调用主模型的次数
+     * @param toolCallsBypassed     带工具定义且不对冲工具调用、直接调用主模型的次数
+     * @param hedgeRate             对冲请求占可对冲调用的比例
+     * @param callDelayMillis       当前同步调用的对冲等待时间
+     * @param firstChunkDelayMillis 当前流式调用的对冲等待时间
+     */
+    public record Stats(boolean enabled, long primaryCalls, long hedges, long hedgeWins, long budgetDenied,
+                        long structuredBypassed, long toolCallsBypassed, double hedgeRate, long callDelayMillis,
+                        long firstChunkDelayMillis) {
+    }
+
+    public Stats getStats() {
+        long calls = primaryCalls.get();
+        return new Stats(enabled, calls, hedges.get(), hedgeWins.get(), budgetDenied.get(), structuredBypassed.get(),
+                toolCallsBypassed.get(), calls == 0 ? 0 : (double) hedges.get() / calls,
+                hedgeDelay(callLatencies).toMillis(), hedgeDelay(firstChunkLatencies).toMillis());
+    }
+
+    /**
+     * 记录主模型首个片段的延迟（只记录一次）
+     */
+    private final class FirstChunkRecorder implements Consumer<ChatResponse> {
+
+        private final long start;
+
+        private boolean recorded;
+
+        private FirstChunkRecorder(long start) {
+            this.start = start;
+        }
+
+        @Override
+        public void accept(ChatResponse response) {
+            if (!recorded) {
+                recorded = true;
+                firstChunkLatencies.record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * 备用模型先输出时计入胜出次数，并按已等待时间为主模型记录样本
+     */
+    private final class HedgeWinRecorder implements Consumer<ChatResponse> {
+
+        private final long start;
+
+        private boolean recorded;
+
+        private HedgeWinRecorder(long start) {
+            this.start = start;
+        }
+
+        @Override
+        public void accept(ChatResponse response) {
+            if (!recorded) {
+                recorded = true;
+                hedgeWins.incrementAndGet();
+                firstChunkLatencies.record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * 固定大小的近期延迟样本（环形缓冲区）
+     */
+    static final class LatencyWindow {
+
+        // 样本数少于该值时不计算分位数
+        private static final int MIN_SAMPLES = 20;
+
+        private final long[] samples;
+
+        private int count;
+
+        private int next;
+
+        LatencyWindow(int size) {
+            this.samples = new long[size];
+        }
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        /**
+         * @return 指定分位数的延迟（纳秒），样本不足时返回 -1
+         */
+        synchronized long percentile(double percentile) {
+            if (count < Math.min(MIN_SAMPLES, samples.length)) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return sorted[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+        }
+    }
+}
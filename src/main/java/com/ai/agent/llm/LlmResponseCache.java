@@ -0,0 +1,256 @@
+package com.ai.agent.llm;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 模型响应精确匹配缓存
+ * <p>
+ * 适用于输出只取决于输入的内部调用（查询重写、关键词提取、工具结果润色、最终总结）：
+ * 以"模型 + 选项 + 全部消息"的 SHA-256 为键缓存响应文本。内存层按 LRU 淘汰，
+ * 磁盘层每个键一个文件（按键的前两位分目录），重复导入文档或重启后不必重新调用模型。
+ * 两层使用同一个过期时间（{@code agent.llm-cache.ttl}），按写入时间计算，命中不会续期。
+ * <p>
+ * 缓存需要在调用处显式开启：通过 {@link #wrap(ChatModel, String)} 得到带缓存的 ChatModel，
+ * 其他调用不受影响。带工具调用的响应不缓存。
+ */
+@Component
+@Slf4j
+public class LlmResponseCache {
+
+    private final boolean enabled;
+
+    private final int maxEntries;
+
+    private final Path diskDir;
+
+    private final Duration ttl;
+
+    // 访问顺序的 LinkedHashMap，实现 LRU 淘汰
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<String, CallSiteStats> statsByCallSite = new ConcurrentHashMap<>();
+
+    public LlmResponseCache(@Value("${agent.llm-cache.enabled:true}") boolean enabled,
+                            @Value("${agent.llm-cache.max-entries:2000}") int maxEntries,
+                            @Value("${agent.llm-cache.disk-dir:./llm-cache}") String diskDir,
+                            @Value("${agent.llm-cache.ttl:7d}") Duration ttl) {
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.diskDir = StrUtil.isBlank(diskDir) ? null : Paths.get(diskDir);
+        this.ttl = ttl;
+    }
+
+    /**
+     * 为某个调用处套上缓存
+     *
+     * @param delegate 实际调用的模型
+     * @param callSite 调用处名称（用于统计）
+     * @return 带缓存的模型；缓存关闭时原样返回
+     */
+    public ChatModel wrap(ChatModel delegate, String callSite) {
+        if (!enabled) {
+            return delegate;
+        }
+        statsByCallSite.computeIfAbsent(callSite, key -> new CallSiteStats());
+        return new ResponseCachingChatModel(delegate, this, callSite);
+    }
+
+    /**
+     * 计算缓存键：模型名、影响输出的选项和全部消息（类型、文本、工具调用、工具响应）
+     */
+    String key(Prompt prompt, ChatOptions defaultOptions) {
+        ChatOptions options = prompt.getOptions() != null ? prompt.getOptions() : defaultOptions;
+        StringBuilder material = new StringBuilder();
+        if (options != null) {
+            material.append(StrUtil.blankToDefault(options.getModel(),
+                            defaultOptions != null ? defaultOptions.getModel() : null))
+                    .append('|').append(options.getTemperature())
+                    .append('|').append(options.getTopP())
+                    .append('|').append(options.getTopK())
+                    .append('|').append(options.getMaxTokens())
+                    .append('|').append(options.getFrequencyPenalty())
+                    .append('|').append(options.getPresencePenalty())
+                    .append('|').append(options.getStopSequences());
+        }
+        for (Message message : prompt.getInstructions()) {
+            material.append('\u0000').append(message.getMessageType()).append('\u0000').append(message.getText());
+            if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+                for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                    material.append('\u0000').append(toolCall.name()).append('\u0000').append(toolCall.arguments());
+                }
+            }
+            if (message instanceof ToolResponseMessage toolResponseMessage) {
+                for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                    material.append('\u0000').append(response.name()).append('\u0000').append(response.responseData());
+                }
+            }
+        }
+        return sha256(material.toString());
+    }
+
+    /**
+     * 查找缓存的响应文本：先查内存，再查磁盘（磁盘命中后放回内存）
+     */
+    String get(String callSite, String key) {
+        CallSiteStats stats = statsByCallSite.computeIfAbsent(callSite, k -> new CallSiteStats());
+        Entry cached;
+        synchronized (memory) {
+            cached = memory.get(key);
+            if (cached != null && isExpired(cached.storedAt())) {
+                memory.remove(key);
+                cached = null;
+            }
+        }
+        if (cached != null) {
+            stats.memoryHits.incrementAndGet();
+            return cached.text();
+        }
+        cached = readDisk(key);
+        if (cached != null) {
+            stats.diskHits.incrementAndGet();
+            // 沿用文件的写入时间，放回内存不延长有效期
+            putMemory(key, cached);
+            return cached.text();
+        }
+        stats.misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 缓存响应文本（同时写入内存和磁盘）
+     */
+    void put(String key, String text) {
+        if (StrUtil.isBlank(text)) {
+            return;
+        }
+        putMemory(key, new Entry(text, System.currentTimeMillis()));
+        writeDisk(key, text);
+    }
+
+    private void putMemory(String key, Entry entry) {
+        synchronized (memory) {
+            memory.put(key, entry);
+            while (memory.size() > maxEntries) {
+                memory.remove(memory.keySet().iterator().next());
+            }
+        }
+    }
+
+    private boolean isExpired(long storedAt) {
+        return System.currentTimeMillis() - storedAt > ttl.toMillis();
+    }
+
+    private Entry readDisk(String key) {
+        if (diskDir == null) {
+            return null;
+        }
+        Path file = diskFile(key);
+        try {
+            if (!Files.exists(file)) {
+                return null;
+            }
+            long storedAt = Files.getLastModifiedTime(file).toMillis();
+            if (isExpired(storedAt)) {
+                Files.deleteIfExists(file);
+                return null;
+            }
+            return new Entry(Files.readString(file, StandardCharsets.UTF_8), storedAt);
+        } catch (IOException e) {
+            log.warn("读取模型响应缓存失败 {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, String text) {
+        if (diskDir == null) {
+            return;
+        }
+        Path file = diskFile(key);
+        try {
+            Files.createDirectories(file.getParent());
+            // 先写临时文件再原子替换，避免并发读到半个文件
+            Path temp = Files.createTempFile(file.getParent(), key, ".tmp");
+            Files.writeString(temp, text, StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("写入模型响应缓存失败 {}: {}", file, e.getMessage());
+        }
+    }
+
+    private Path diskFile(String key) {
+        return diskDir.resolve(key.substring(0, 2)).resolve(key + ".txt");
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 内存层的缓存项
+     *
+     * @param text     响应文本
+     * @param storedAt 写入时间（毫秒）
+     */
+    private record Entry(String text, long storedAt) {
+    }
+
+    private static final class CallSiteStats {
+        private final AtomicLong memoryHits = new AtomicLong();
+        private final AtomicLong diskHits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+    }
+
+    /**
+     * 单个调用处的统计
+     *
+     * @param callSite   调用处
+     * @param memoryHits 内存命中次数
+     * @param diskHits   磁盘命中次数
+     * @param misses     未命中次数
+     * @param hitRatio   命中率
+     */
+    public record Stats(String callSite, long memoryHits, long diskHits, long misses, double hitRatio) {
+    }
+
+    public List<Stats> getStats() {
+        List<Stats> result = new ArrayList<>();
+        statsByCallSite.forEach((callSite, stats) -> {
+            long hits = stats.memoryHits.get() + stats.diskHits.get();
+            long total = hits + stats.misses.get();
+            result.add(new Stats(callSite, stats.memoryHits.get(), stats.diskHits.get(), stats.misses.get(),
+                    total == 0 ? 0 : (double) hits / total));
+        });
+        return result;
+    }
+}
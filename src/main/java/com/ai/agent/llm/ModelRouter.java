@@ -0,0 +1,193 @@
+package com.ai.agent.llm;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按请求复杂度选择模型
+ * <p>
+ * 寒暄直接使用固定回复，简短的概念性问题交给本地 Ollama 小模型，
+ * 只有复杂请求才交给大模型（Agent 会带上全部工具定义）。
+ * 记录每条路由的请求数、耗时，以及相对于全部走大模型节省的 token 数（估算）。
+ */
+@Component
+@Slf4j
+public class ModelRouter {
+
+    /**
+     * 路由目标
+     */
+    public enum Route {
+        /**
+         * 固定回复，不调用模型
+         */
+        CANNED,
+        /**
+         * 本地小模型
+         */
+        LOCAL,
+        /**
+         * 大模型
+         */
+        LARGE
+    }
+
+    /**
+     * 本地小模型使用的简短系统提示词
+     */
+    public static final String LOCAL_SYSTEM_PROMPT = """
+            你是一个专业的AI理财管理助手，请用简洁、易懂的中文回答用户的问题。
+            回答控制在200字以内，涉及投资时提醒用户投资有风险，建议仅供参考。
+            """;
+
+    private static final TokenCountEstimator TOKEN_COUNT_ESTIMATOR = new JTokkitTokenCountEstimator();
+
+    private final ChatModel localChatModel;
+
+    // 不带任何 advisor 的本地模型客户端（Agent 使用）
+    private final ChatClient localChatClient;
+
+    private final boolean enabled;
+
+    private final boolean localModelEnabled;
+
+    private final Map<Route, RouteStats> statsByRoute = new EnumMap<>(Route.class);
+
+    // 工具定义的 token 数（工具数组在原型中冻结，按数组身份缓存）
+    private final Map<ToolCallback[], Integer> toolSchemaTokens = new IdentityHashMap<>();
+
+    public ModelRouter(ChatModel ollamaChatModel,
+                       @Value("${agent.router.enabled:true}") boolean enabled,
+                       @Value("${agent.router.local-model-enabled:true}") boolean localModelEnabled) {
+        this.localChatModel = ollamaChatModel;
+        this.localChatClient = ChatClient.create(ollamaChatModel);
+        this.enabled = enabled;
+        this.localModelEnabled = localModelEnabled;
+        for (Route route : Route.values()) {
+            statsByRoute.put(route, new RouteStats());
+        }
+    }
+
+    /**
+     * 为一条用户消息选择路由
+     * <p>
+     * 固定回复只用于会话的第一句话：对话中途的"好的"、"嗯"往往是在回应上一轮的提问（如"要我生成报告吗？"），
+     * 必须结合上下文回答，交给大模型。
+     *
+     * @param message    用户消息
+     * @param hasHistory 会话是否已有历史消息
+     */
+    public Route route(String message, boolean hasHistory) {
+        if (!enabled) {
+            return Route.LARGE;
+        }
+        RequestComplexity complexity = ComplexityClassifier.classify(message);
+        Route route = switch (complexity) {
+            case TRIVIAL -> hasHistory ? Route.LARGE : Route.CANNED;
+            case SIMPLE -> localModelEnabled ? Route.LOCAL : Route.LARGE;
+            case COMPLEX -> Route.LARGE;
+        };
+        log.info("请求复杂度 {}，路由到 {}", complexity, route);
+        return route;
+    }
+
+    /**
+     * 寒暄的固定回复
+     */
+    public String cannedReply(String message) {
+        String text = StrUtil.nullToEmpty(message).toLowerCase(Locale.ROOT);
+        if (StrUtil.containsAny(text, "谢", "thank")) {
+            return "不客气！如果还有其他理财方面的问题，随时可以问我。";
+        }
+        if (StrUtil.containsAny(text, "再见", "拜拜", "bye", "晚安")) {
+            return "再见！祝您理财顺利，有需要随时来找我。";
+        }
+        return "您好！我是您的AI理财管理助手，可以为您解答理财问题、分析市场动态、制定投资和储蓄计划、生成理财报告。"
+                + "请告诉我您的理财目标或遇到的问题吧。";
+    }
+
+    /**
+     * 记录一次路由的处理结果
+     *
+     * @param route         路由
+     * @param elapsedMillis 处理耗时
+     * @param savedTokens   相对于走大模型节省的 token 数（大模型路由为 0）
+     */
+    public void record(Route route, long elapsedMillis, long savedTokens) {
+        RouteStats stats = statsByRoute.get(route);
+        stats.requests.incrementAndGet();
+        stats.totalMillis.addAndGet(elapsedMillis);
+        stats.savedTokens.addAndGet(savedTokens);
+    }
+
+    public int estimateTokens(String text) {
+        return StrUtil.isBlank(text) ? 0 : TOKEN_COUNT_ESTIMATOR.estimate(text);
+    }
+
+    /**
+     * 工具定义（名称、描述、参数 schema）的 token 数，大模型每次调用都要携带
+     */
+    public int estimateToolSchemaTokens(ToolCallback[] tools) {
+        synchronized (toolSchemaTokens) {
+            return toolSchemaTokens.computeIfAbsent(tools, key -> {
+                int total = 0;
+                for (ToolCallback tool : key) {
+                    total += estimateTokens(tool.getToolDefinition().name()
+                            + tool.getToolDefinition().description()
+                            + tool.getToolDefinition().inputSchema());
+                }
+                return total;
+            });
+        }
+    }
+
+    public ChatModel getLocalChatModel() {
+        return localChatModel;
+    }
+
+    public ChatClient getLocalChatClient() {
+        return localChatClient;
+    }
+
+    private static final class RouteStats {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong totalMillis = new AtomicLong();
+        private final AtomicLong savedTokens = new AtomicLong();
+    }
+
+    /**
+     * 单条路由的统计
+     *
+     * @param route       路由
+     * @param requests    请求数
+     * @param avgMillis   平均处理耗时
+     * @param savedTokens 累计节省的大模型 token 数（估算）
+     */
+    public record Stats(Route route, long requests, long avgMillis, long savedTokens) {
+    }
+
+    public List<Stats> getStats() {
+        List<Stats> result = new ArrayList<>();
+        statsByRoute.forEach((route, stats) -> {
+            long requests = stats.requests.get();
+            result.add(new Stats(route, requests, requests == 0 ? 0 : stats.totalMillis.get() / requests,
+                    stats.savedTokens.get()));
+        });
+        return result;
+    }
+}
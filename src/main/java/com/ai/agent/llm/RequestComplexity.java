@@ -0,0 +1,21 @@
+package com.ai.agent.llm;
+
+/**
+ * 请求复杂度
+ */
+public enum RequestComplexity {
+    /**
+     * 问候、感谢、告别等寒暄，直接使用固定回复
+     */
+    TRIVIAL,
+
+    /**
+     * 简短的概念性问题，不需要工具和实时信息，交给本地小模型
+     */
+    SIMPLE,
+
+    /**
+     * 需要工具、实时信息或个性化分析的请求，交给大模型
+     */
+    COMPLEX
+}
@@ -0,0 +1,96 @@
+package com.ai.agent.llm;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * 带精确匹配缓存的 ChatModel 装饰器（由 {@link LlmResponseCache#wrap} 创建）
+ * <p>
+ * 命中时直接返回缓存的文本；流式调用命中时一次输出全部文本，未命中时在流正常结束后缓存拼接的文本。
+ * 被装饰的是对冲模型时，备用模型胜出的响应（{@link HedgingChatModel#isHedgeWin}）不缓存：
+ * 缓存键按主模型的选项计算，缓存小模型的回答会在之后被当作主模型的回答重放。
+ */
+class ResponseCachingChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+
+    private final LlmResponseCache cache;
+
+    private final String callSite;
+
+    ResponseCachingChatModel(ChatModel delegate, LlmResponseCache cache, String callSite) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.callSite = callSite;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        String key = cache.key(prompt, delegate.getDefaultOptions());
+        String cached = cache.get(callSite, key);
+        if (cached != null) {
+            return textResponse(cached);
+        }
+        ChatResponse response = delegate.call(prompt);
+        if (isCacheable(response)) {
+            cache.put(key, response.getResult().getOutput().getText());
+        }
+        return response;
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            String key = cache.key(prompt, delegate.getDefaultOptions());
+            String cached = cache.get(callSite, key);
+            if (cached != null) {
+                return Flux.just(textResponse(cached));
+            }
+            StringBuilder text = new StringBuilder();
+            boolean[] cacheable = {true};
+            return delegate.stream(prompt)
+                    .doOnNext(chunk -> {
+                        if (HedgingChatModel.isHedgeWin(chunk)) {
+                            cacheable[0] = false;
+                        }
+                        if (chunk == null || chunk.getResult() == null || chunk.getResult().getOutput() == null) {
+                            return;
+                        }
+                        AssistantMessage output = chunk.getResult().getOutput();
+                        if (output.hasToolCalls()) {
+                            cacheable[0] = false;
+                        }
+                        if (output.getText() != null) {
+                            text.append(output.getText());
+                        }
+                    })
+                    // 只缓存完整结束的流，取消或出错时丢弃
+                    .doOnComplete(() -> {
+                        if (cacheable[0]) {
+                            cache.put(key, text.toString());
+                        }
+                    });
+        });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+
+    private static boolean isCacheable(ChatResponse response) {
+        return response != null && response.getResult() != null && response.getResult().getOutput() != null
+                && !response.getResult().getOutput().hasToolCalls() && !HedgingChatModel.isHedgeWin(response);
+    }
+
+    private static ChatResponse textResponse(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+}
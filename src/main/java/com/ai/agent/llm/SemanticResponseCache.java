@@ -0,0 +1,378 @@
+package com.ai.agent.llm;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * 语义响应缓存
+ * <p>
+ * 用 Embedding 模型把首轮问题向量化，在内存中查找语义相近的历史问题（余弦相似度不低于阈值）并直接返回其回答。
+ * 条目按命名空间隔离，超过有效期失效，总数超出上限时按 LRU 淘汰。
+ * <p>
+ * 缓存在所有用户之间共享，只用于不含个人信息的通用问题：问题中带有数字（金额、年龄、期限）、姓名或个人资产持仓等描述时，
+ * 回答是针对提问者的（"我月薪1万怎么理财"与"我月薪5万怎么理财"相似度很高，回答却不同），既不查找也不写入。
+ * 条目最多一千个左右，直接线性扫描（向量已归一化，相似度即点积），不需要额外的近似索引。
+ * <p>
+ * 每次命中都写入审计日志（新问题、命中的问题、相似度），便于排查误命中；确认误命中后可按审计编号删除对应条目。
+ * 对外返回的审计记录不含问题原文，只有问题的摘要值和长度（相同的问题摘要值相同，可以据此归并）。
+ */
+@Component
+@Slf4j
+public class SemanticResponseCache {
+
+    // 阿拉伯数字（含全角）：金额、年龄、期限、持仓数量等
+    private static final Pattern DIGITS = Pattern.compile("[0-9０-９]");
+
+    // 中文数字加单位：一万、三十岁、五年、两千块
+    private static final Pattern CHINESE_QUANTITY = Pattern.compile(
+            "[零一二两三四五六七八九十][零一二两三四五六七八九十百千万亿]*(?:万|千|百|元|块|岁|年|个月|股|手|份|%|％)");
+
+    // 姓名和个人财务状况的描述
+    private static final Pattern PERSONAL_DESCRIPTION = Pattern.compile(
+            "我叫|我的名字|我姓|本人姓|名叫|我(?:的|家|们|目前|现在)?(?:持有|买了|买入|手里|手上|名下|持仓|仓位|账户"
+                    + "|工资|月薪|年薪|薪水|收入|存款|存了|积蓄|负债|房贷|车贷|贷款|资产|本金)");
+
+    private final EmbeddingModel embeddingModel;
+
+    private final boolean enabled;
+
+    private final double similarityThreshold;
+
+    private final int maxEntries;
+
+    private final Duration ttl;
+
+    private final int auditLogSize;
+
+    // 访问顺序的 LinkedHashMap，实现 LRU 淘汰
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Deque<AuditRecord> auditLog = new ArrayDeque<>();
+
+    private final Map<String, NamespaceStats> statsByNamespace = new LinkedHashMap<>();
+
+    private final AtomicLong entryIds = new AtomicLong();
+
+    private final AtomicLong auditIds = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong falseHits = new AtomicLong();
+
+    public SemanticResponseCache(EmbeddingModel dashscopeEmbeddingModel,
+                                 @Value("${agent.semantic-cache.enabled:true}") boolean enabled,
+                                 @Value("${agent.semantic-cache.similarity-threshold:0.92}") double similarityThreshold,
+                                 @Value("${agent.semantic-cache.max-entries:1000}") int maxEntries,
+                                 @Value("${agent.semantic-cache.ttl:6h}") Duration ttl,
+                                 @Value("${agent.semantic-cache.audit-log-size:200}") int auditLogSize) {
+        this.embeddingModel = dashscopeEmbeddingModel;
+        this.enabled = enabled;
+        this.similarityThreshold = similarityThreshold;
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.auditLogSize = auditLogSize;
+    }
+
+    /**
+     * 查找语义相近的问题的回答
+     *
+     * @param namespace 命名空间（不同的提示词、输出格式使用不同的命名空间）
+     * @param question  用户问题
+     * @return 查找结果，{@link Lookup#hit()} 为 null 表示未命中；向量化失败或问题含个人信息时同样视为未命中，且不会写入缓存
+     */
+    public Lookup lookup(String namespace, String question) {
+        if (!enabled || StrUtil.isBlank(question)) {
+            return new Lookup(namespace, question, null, null, System.nanoTime());
+        }
+        long start = System.nanoTime();
+        NamespaceStats stats = stats(namespace);
+        if (containsPersonalFacts(question)) {
+            stats.personalSkipped.incrementAndGet();
+            return new Lookup(namespace, question, null, null, start);
+        }
+        stats.lookups.incrementAndGet();
+        float[] embedding;
+        try {
+            embedding = normalize(embeddingModel.embed(question));
+        } catch (Exception e) {
+            log.warn("问题向量化失败，跳过语义缓存: {}", e.getMessage());
+            return new Lookup(namespace, question, null, null, start);
+        }
+
+        Entry best = null;
+        double bestSimilarity = -1;
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.expiresAt <= now) {
+                    iterator.remove();
+                    continue;
+                }
+                if (!entry.namespace.equals(namespace)) {
+                    continue;
+                }
+                double similarity = dot(embedding, entry.embedding);
+                if (similarity > bestSimilarity) {
+                    bestSimilarity = similarity;
+                    best = entry;
+                }
+            }
+            if (best == null || bestSimilarity < similarityThreshold) {
+                return new Lookup(namespace, question, embedding, null, start);
+            }
+            // 命中时刷新 LRU 顺序
+            entries.get(best.id);
+        }
+
+        long hitMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+        stats.hits.incrementAndGet();
+        stats.savedMillis.addAndGet(Math.max(0, stats.avgMissMillis() - hitMillis));
+        AuditRecord record = new AuditRecord(auditIds.incrementAndGet(), namespace, question, best.question,
+                bestSimilarity, best.id, now);
+        synchronized (auditLog) {
+            auditLog.addFirst(record);
+            while (auditLog.size() > auditLogSize) {
+                auditLog.removeLast();
+            }
+        }
+        log.info("语义缓存命中（审计编号 {}，相似度 {}）：{} -> {}", record.id(),
+                String.format("%.4f", bestSimilarity), question, best.question);
+        return new Lookup(namespace, question, embedding, new Hit(best.answer, bestSimilarity, best.question), start);
+    }
+
+    /**
+     * 问题是否包含个人信息（数字、姓名、个人资产持仓），这类问题的回答因人而异，不能在用户之间共享
+     */
+    static boolean containsPersonalFacts(String question) {
+        return DIGITS.matcher(question).find()
+                || CHINESE_QUANTITY.matcher(question).find()
+                || PERSONAL_DESCRIPTION.matcher(question).find();
+    }
+
+    /**
+     * 缓存未命中后得到的回答
+     *
+     * @param lookup 未命中的查找结果
+     * @param answer 模型的回答，为空时不缓存（只记录未命中耗时）
+     */
+    public void put(Lookup lookup, Object answer) {
+        if (lookup.embedding() == null || lookup.hit() != null) {
+            return;
+        }
+        // 未命中时的完整耗时（向量化 + 模型调用），用于估算命中节省的时间
+        stats(lookup.namespace()).recordMiss(Duration.ofNanos(System.nanoTime() - lookup.startNanos()).toMillis());
+        if (answer == null || answer instanceof CharSequence text && StrUtil.isBlank(text)) {
+            return;
+        }
+        long id = entryIds.incrementAndGet();
+        Entry entry = new Entry(id, lookup.namespace(), lookup.question(), lookup.embedding(), answer,
+                System.currentTimeMillis() + ttl.toMillis());
+        synchronized (entries) {
+            entries.put(id, entry);
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (entries.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 标记一次误命中：删除审计记录对应的缓存条目
+     *
+     * @param auditId 审计编号
+     * @return 是否找到对应的审计记录
+     */
+    public boolean reportFalseHit(long auditId) {
+        AuditRecord record;
+        synchronized (auditLog) {
+            record = auditLog.stream().filter(r -> r.id() == auditId).findFirst().orElse(null);
+        }
+        if (record == null) {
+            return false;
+        }
+        synchronized (entries) {
+            entries.remove(record.entryId());
+        }
+        falseHits.incrementAndGet();
+        log.warn("语义缓存误命中（审计编号 {}，相似度 {}），已删除条目：{} -> {}", auditId,
+                String.format("%.4f", record.similarity()), record.question(), record.cachedQuestion());
+        return true;
+    }
+
+    private NamespaceStats stats(String namespace) {
+        synchronized (statsByNamespace) {
+            return statsByNamespace.computeIfAbsent(namespace, key -> new NamespaceStats());
+        }
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        if (norm == 0) {
+            return vector;
+        }
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return -1;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private record Entry(long id, String namespace, String question, float[] embedding, Object answer,
+                         long expiresAt) {
+    }
+
+    private static final class NamespaceStats {
+        private final AtomicLong lookups = new AtomicLong();
+        private final AtomicLong personalSkipped = new AtomicLong();
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong totalMissMillis = new AtomicLong();
+        private final AtomicLong savedMillis = new AtomicLong();
+
+        private void recordMiss(long elapsedMillis) {
+            misses.incrementAndGet();
+            totalMissMillis.addAndGet(elapsedMillis);
+        }
+
+        private long avgMissMillis() {
+            long count = misses.get();
+            return count == 0 ? 0 : totalMissMillis.get() / count;
+        }
+    }
+
+    /**
+     * 一次查找的结果（未命中时用于写入缓存，避免重复向量化）
+     *
+     * @param namespace  命名空间
+     * @param question   用户问题
+     * @param embedding  归一化后的问题向量，向量化失败或缓存关闭时为 null
+     * @param hit        命中结果，未命中时为 null
+     * @param startNanos 查找开始时间
+     */
+    public record Lookup(String namespace, String question, float[] embedding, Hit hit, long startNanos) {
+    }
+
+    /**
+     * 命中结果
+     *
+     * @param answer         缓存的回答
+     * @param similarity     相似度
+     * @param cachedQuestion 命中的历史问题
+     */
+    public record Hit(Object answer, double similarity, String cachedQuestion) {
+    }
+
+    /**
+     * 命中审计记录
+     *
+     * @param id             审计编号
+     * @param namespace      命名空间
+     * @param question       新问题
+     * @param cachedQuestion 命中的历史问题
+     * @param similarity     相似度
+     * @param entryId        命中的缓存条目
+     * @param timestamp      命中时间
+     */
+    public record AuditRecord(long id, String namespace, String question, String cachedQuestion,
+                              double similarity, long entryId, long timestamp) {
+    }
+
+    /**
+     * 单个命名空间的统计
+     *
+     * @param namespace       命名空间
+     * @param lookups         查找次数
+     * @param personalSkipped 含个人信息、跳过缓存的问题数
+     * @param hits            命中次数
+     * @param hitRatio        命中率
+     * @param avgMissMillis   未命中时的平均耗时
+     * @param savedMillis     命中累计节省的时间（估算）
+     */
+    public record NamespaceStatsView(String namespace, long lookups, long personalSkipped, long hits,
+                                     double hitRatio, long avgMissMillis, long savedMillis) {
+    }
+
+    /**
+     * 语义缓存统计
+     *
+     * @param similarityThreshold 相似度阈值
+     * @param entries             当前条目数
+     * @param evictions           LRU 淘汰数
+     * @param falseHits           被标记为误命中的次数
+     * @param namespaces          各命名空间的统计
+     */
+    public record Stats(double similarityThreshold, int entries, long evictions, long falseHits,
+                        List<NamespaceStatsView> namespaces) {
+    }
+
+    public Stats getStats() {
+        List<NamespaceStatsView> namespaces = new ArrayList<>();
+        synchronized (statsByNamespace) {
+            statsByNamespace.forEach((namespace, stats) -> {
+                long lookups = stats.lookups.get();
+                long hits = stats.hits.get();
+                namespaces.add(new NamespaceStatsView(namespace, lookups, stats.personalSkipped.get(), hits,
+                        lookups == 0 ? 0 : (double) hits / lookups, stats.avgMissMillis(), stats.savedMillis.get()));
+            });
+        }
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(similarityThreshold, size, evictions.get(), falseHits.get(), namespaces);
+    }
+
+    /**
+     * 最近的命中审计记录（最新的在前），问题原文替换为摘要值
+     */
+    public List<AuditRecord> getAuditLog() {
+        List<AuditRecord> records;
+        synchronized (auditLog) {
+            records = new ArrayList<>(auditLog);
+        }
+        records.replaceAll(record -> new AuditRecord(record.id(), record.namespace(), redact(record.question()),
+                redact(record.cachedQuestion()), record.similarity(), record.entryId(), record.timestamp()));
+        return records;
+    }
+
+    /**
+     * 用户问题的脱敏形式：SHA-256 的前 16 位和字符数
+     */
+    private static String redact(String question) {
+        return "sha256:" + DigestUtil.sha256Hex(question).substring(0, 16) + " (" + question.length() + " 字)";
+    }
+}
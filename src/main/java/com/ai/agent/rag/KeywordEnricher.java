@@ -1,5 +1,6 @@
 package com.ai.agent.rag;
 
+import com.ai.agent.llm.LlmResponseCache;
 import jakarta.annotation.Resource;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.document.Document;
@@ -17,8 +18,15 @@ public class KeywordEnricher {
     @Resource
     private ChatModel dashscopeChatModel;
 
+    @Resource
+    private LlmResponseCache llmResponseCache;
+
+    /**
+     * 为文档提取关键词（每个文档一次模型调用，重复导入时复用缓存的响应）
+     */
     public List<Document> enrichDocuments(List<Document> documents) {
-        KeywordMetadataEnricher keywordMetadataEnricher = new KeywordMetadataEnricher(dashscopeChatModel, 5);
+        KeywordMetadataEnricher keywordMetadataEnricher = new KeywordMetadataEnricher(
+                llmResponseCache.wrap(dashscopeChatModel, "keywordEnrich"), 5);
         return  keywordMetadataEnricher.apply(documents);
     }
 }
@@ -0,0 +1,375 @@
+package com.ai.agent.rag;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 知识库后台导入
+ * <p>
+ * 应用启动完成后在后台线程上解析 Markdown 文档、切分过长的片段，再按批并行写入向量库（每批一次向量化调用，
+ * 同时进行的批次数受 parallelism 限制）。失败的批次按次数重试。导入完成前 {@link #isReady()} 为 false：
+ * 健康检查报告未就绪，对话跳过知识库检索、按无 RAG 模式回答。
+ * <p>
+ * 一轮导入结束后仍有失败的批次（或整轮失败，例如向量化服务暂时不可用）时，按指数退避安排下一轮，只重新导入失败的批次，
+ * 直到全部成功；已经可检索的知识库在补充导入期间保持就绪。使用 PgVectorStore 时，库中片段数与切分结果一致的文件不再重复导入，
+ * 片段不全的文件（上次导入中途失败）先删除已有片段再整体重新导入。
+ */
+@Component
+@Slf4j
+public class KnowledgeBaseIngestor {
+
+    /**
+     * 导入状态
+     */
+    public enum State {
+        /**
+         * 等待应用启动完成
+         */
+        PENDING,
+        /**
+         * 解析、切分文档
+         */
+        LOADING,
+        /**
+         * 向量化并写入向量库
+         */
+        INDEXING,
+        /**
+         * 已可检索（可能有部分批次失败，稍后重试）
+         */
+        READY,
+        /**
+         * 还没有任何批次成功，知识库不可用，稍后重试
+         */
+        FAILED
+    }
+
+    private final VectorStore appVectorStore;
+
+    private final DocumentLoader documentLoader;
+
+    private final TokenTextSplitter tokenTextSplitter;
+
+    private final ObjectProvider<JdbcTemplate> jdbcTemplateProvider;
+
+    private final int batchSize;
+
+    private final int parallelism;
+
+    private final int maxAttempts;
+
+    private final Duration retryInitialDelay;
+
+    private final Duration retryMaxDelay;
+
+    private final ExecutorService executor;
+
+    // 单线程执行各轮导入，轮与轮之间不会重叠
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "kb-ingest");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 上一轮失败、下一轮需要重新导入的批次（null 表示需要重新解析文档），只在 scheduler 线程上访问
+    private List<List<Document>> pendingBatches;
+
+    // 连续失败的轮数，只在 scheduler 线程上访问
+    private int consecutiveFailures;
+
+    private volatile State state = State.PENDING;
+    private volatile boolean searchable;
+    private volatile int runs;
+    private volatile int documents;
+    private volatile int skippedDocuments;
+    private volatile int chunks;
+    private volatile int totalBatches;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile Instant nextRetryAt;
+    private volatile String lastError;
+
+    private final AtomicInteger completedBatches = new AtomicInteger();
+    private final AtomicInteger failedBatches = new AtomicInteger();
+    private final AtomicLong retries = new AtomicLong();
+
+    public KnowledgeBaseIngestor(VectorStore appVectorStore, DocumentLoader documentLoader,
+                                 TokenTextSplitter tokenTextSplitter, ObjectProvider<JdbcTemplate> jdbcTemplateProvider,
+                                 // DashScope Embedding API 限制每次最多 25 个文本，留点余量
+                                 @Value("${agent.rag.ingest.batch-size:20}") int batchSize,
+                                 @Value("${agent.rag.ingest.parallelism:4}") int parallelism,
+                                 @Value("${agent.rag.ingest.max-attempts:3}") int maxAttempts,
+                                 @Value("${agent.rag.ingest.retry-initial-delay:30s}") Duration retryInitialDelay,
+                                 @Value("${agent.rag.ingest.retry-max-delay:10m}") Duration retryMaxDelay) {
+        this.appVectorStore = appVectorStore;
+        this.documentLoader = documentLoader;
+        this.tokenTextSplitter = tokenTextSplitter;
+        this.jdbcTemplateProvider = jdbcTemplateProvider;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.maxAttempts = maxAttempts;
+        this.retryInitialDelay = retryInitialDelay;
+        this.retryMaxDelay = retryMaxDelay;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "kb-ingest-batch-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 应用启动完成后开始导入，不阻塞启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startIngestion() {
+        scheduler.execute(this::ingest);
+    }
+
+    private void ingest() {
+        runs++;
+        startedAt = Instant.now();
+        finishedAt = null;
+        nextRetryAt = null;
+        completedBatches.set(0);
+        failedBatches.set(0);
+        try {
+            List<List<Document>> batches = pendingBatches != null ? pendingBatches : planBatches();
+            if (batches.isEmpty()) {
+                finish(true);
+                consecutiveFailures = 0;
+                log.info("知识库无需导入：共 {} 个文档，库中已有 {} 个", documents, skippedDocuments);
+                return;
+            }
+            totalBatches = batches.size();
+            state = State.INDEXING;
+            log.info("开始导入知识库（第 {} 轮）：{} 个片段，共 {} 批，并行 {} 批", runs,
+                    batches.stream().mapToInt(List::size).sum(), totalBatches, parallelism);
+
+            // 线程池大小即为同时向量化的批次数
+            List<CompletableFuture<Boolean>> futures = new ArrayList<>(batches.size());
+            for (int i = 0; i < batches.size(); i++) {
+                int batchNumber = i + 1;
+                List<Document> batch = batches.get(i);
+                futures.add(CompletableFuture.supplyAsync(() -> addBatch(batchNumber, batch), executor));
+            }
+            List<List<Document>> failed = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                if (!futures.get(i).join()) {
+                    failed.add(batches.get(i));
+                }
+            }
+
+            pendingBatches = failed.isEmpty() ? null : failed;
+            finish(completedBatches.get() > 0);
+            log.info("知识库导入结束：状态 {}，成功 {} 批，失败 {} 批，耗时 {} ms", state, completedBatches.get(),
+                    failedBatches.get(), finishedAt.toEpochMilli() - startedAt.toEpochMilli());
+            if (failed.isEmpty()) {
+                consecutiveFailures = 0;
+            } else {
+                scheduleRetry();
+            }
+        } catch (Exception e) {
+            lastError = e.getMessage();
+            finish(false);
+            log.error("知识库导入失败，{}", searchable ? "已导入的部分仍可检索" : "对话将不使用知识库检索", e);
+            scheduleRetry();
+        }
+    }
+
+    /**
+     * 解析并切分文档，跳过库中已完整导入的文件，按 batchSize 分批
+     */
+    private List<List<Document>> planBatches() {
+        state = State.LOADING;
+        List<Document> documentList = documentLoader.loadMarkdowns();
+        documents = documentList.size();
+        // 过长的片段超出向量化接口的长度限制，会让整批失败
+        List<Document> chunkList = tokenTextSplitter.splitDocuments(documentList);
+        Set<String> completeFiles = completeFiles(chunkList);
+        skippedDocuments = (int) documentList.stream().filter(doc -> completeFiles.contains(filenameOf(doc))).count();
+        List<Document> chunksToLoad = chunkList.stream()
+                .filter(chunk -> !completeFiles.contains(filenameOf(chunk)))
+                .toList();
+        chunks = chunksToLoad.size();
+        List<List<Document>> batches = new ArrayList<>();
+        for (int i = 0; i < chunksToLoad.size(); i += batchSize) {
+            batches.add(chunksToLoad.subList(i, Math.min(i + batchSize, chunksToLoad.size())));
+        }
+        return batches;
+    }
+
+    /**
+     * 按指数退避安排下一轮导入
+     */
+    private void scheduleRetry() {
+        consecutiveFailures++;
+        long delayMillis = retryInitialDelay.toMillis() << Math.min(consecutiveFailures - 1, 20);
+        delayMillis = Math.min(Math.max(delayMillis, 0), retryMaxDelay.toMillis());
+        nextRetryAt = Instant.now().plusMillis(delayMillis);
+        try {
+            scheduler.schedule(this::ingest, delayMillis, TimeUnit.MILLISECONDS);
+            log.info("知识库将在 {} ms 后重新导入{}", delayMillis,
+                    pendingBatches == null ? "" : "失败的 " + pendingBatches.size() + " 批");
+        } catch (RejectedExecutionException e) {
+            log.debug("应用正在关闭，不再重新导入知识库");
+        }
+    }
+
+    /**
+     * @return 是否导入成功
+     */
+    private boolean addBatch(int batchNumber, List<Document> batch) {
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            try {
+                appVectorStore.add(batch);
+                completedBatches.incrementAndGet();
+                log.debug("已导入第 {} 批文档（{} 个片段）", batchNumber, batch.size());
+                return true;
+            } catch (Exception e) {
+                lastError = e.getMessage();
+                if (attempt == maxAttempts) {
+                    failedBatches.incrementAndGet();
+                    log.warn("第 {} 批文档导入失败（已尝试 {} 次）: {}", batchNumber, attempt, e.getMessage());
+                    return false;
+                }
+                retries.incrementAndGet();
+                try {
+                    // 简单退避，避开限流
+                    Thread.sleep(1000L * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    failedBatches.incrementAndGet();
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 使用 PgVectorStore 时，找出库中片段数与切分结果一致（已完整导入）的文件；
+     * 片段不全或多出的文件删除已有片段，由本轮整体重新导入
+     */
+    private Set<String> completeFiles(List<Document> chunkList) {
+        JdbcTemplate jdbcTemplate = jdbcTemplateProvider.getIfAvailable();
+        if (!(appVectorStore instanceof PgVectorStore) || jdbcTemplate == null) {
+            return Set.of();
+        }
+        Map<String, Integer> expected = new HashMap<>();
+        for (Document chunk : chunkList) {
+            String filename = filenameOf(chunk);
+            // 没有 filename 元数据，视为新文档
+            if (filename != null) {
+                expected.merge(filename, 1, Integer::sum);
+            }
+        }
+        Map<String, Integer> stored = new HashMap<>();
+        try {
+            for (Map<String, Object> row : jdbcTemplate.queryForList(
+                    "SELECT metadata->>'filename' AS filename, COUNT(*) AS chunks FROM vector_store "
+                            + "WHERE metadata->>'filename' IS NOT NULL GROUP BY metadata->>'filename'")) {
+                stored.put(String.valueOf(row.get("filename")), ((Number) row.get("chunks")).intValue());
+            }
+        } catch (Exception e) {
+            // 查询失败（表可能不存在），加载所有文档
+            log.warn("无法检查已有文档，将导入所有文档: {}", e.getMessage());
+            return Set.of();
+        }
+        Set<String> complete = new HashSet<>();
+        for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+            Integer storedChunks = stored.get(entry.getKey());
+            if (storedChunks == null) {
+                continue;
+            }
+            if (storedChunks.equals(entry.getValue())) {
+                complete.add(entry.getKey());
+            } else {
+                // 删除失败时抛出异常，整轮失败后重试，避免重复导入
+                jdbcTemplate.update("DELETE FROM vector_store WHERE metadata->>'filename' = ?", entry.getKey());
+                log.info("文件 {} 在库中有 {} 个片段，应为 {} 个，重新导入", entry.getKey(), storedChunks, entry.getValue());
+            }
+        }
+        return complete;
+    }
+
+    private static String filenameOf(Document document) {
+        Object filename = document.getMetadata().get("filename");
+        return filename == null ? null : filename.toString();
+    }
+
+    /**
+     * 结束一轮导入：有批次成功过（本轮或之前的轮次）即可检索
+     */
+    private void finish(boolean succeeded) {
+        finishedAt = Instant.now();
+        searchable |= succeeded;
+        state = searchable ? State.READY : State.FAILED;
+    }
+
+    /**
+     * 知识库是否可检索
+     */
+    public boolean isReady() {
+        return searchable;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * 知识库导入进度
+     *
+     * @param state            导入状态
+     * @param runs             已进行的导入轮数
+     * @param documents        解析出的文档数
+     * @param skippedDocuments 库中已完整导入、跳过的文档数
+     * @param chunks           切分后待导入的片段数
+     * @param totalBatches     本轮的批次数
+     * @param completedBatches 本轮成功的批次数
+     * @param failedBatches    本轮重试后仍失败的批次数
+     * @param retries          批次内的重试次数
+     * @param startedAt        本轮开始时间
+     * @param finishedAt       本轮结束时间
+     * @param nextRetryAt      下一轮导入的时间，没有安排时为 null
+     * @param lastError        最近一次错误
+     */
+    public record Status(State state, int runs, int documents, int skippedDocuments, int chunks, int totalBatches,
+                         int completedBatches, int failedBatches, long retries, Instant startedAt,
+                         Instant finishedAt, Instant nextRetryAt, String lastError) {
+    }
+
+    public Status getStatus() {
+        return new Status(state, runs, documents, skippedDocuments, chunks, totalBatches, completedBatches.get(),
+                failedBatches.get(), retries.get(), startedAt, finishedAt, nextRetryAt, lastError);
+    }
+}
@@ -1,5 +1,6 @@
 package com.ai.agent.rag;
 
+import com.ai.agent.llm.LlmResponseCache;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.rag.Query;
@@ -15,8 +16,9 @@ public class QueryRewriter {
 
     private final QueryTransformer queryTransformer;
 
-    public QueryRewriter(ChatModel dashscopeChatModel) {
-        ChatClient.Builder builder = ChatClient.builder(dashscopeChatModel);
+    public QueryRewriter(ChatModel dashscopeChatModel, LlmResponseCache llmResponseCache) {
+        // 相同的查询总是重写为相同的结果，复用缓存的响应
+        ChatClient.Builder builder = ChatClient.builder(llmResponseCache.wrap(dashscopeChatModel, "queryRewrite"));
         // 创建查询重写转换器
         queryTransformer = RewriteQueryTransformer.builder()
                 .chatClientBuilder(builder)
@@ -0,0 +1,41 @@
+package com.ai.agent.tools;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+/**
+ * 带结果缓存的工具回调（装饰原始工具，工具定义保持不变）
+ */
+public class CachingToolCallback implements ToolCallback {
+
+    private final ToolCallback delegate;
+
+    private final ToolResultCache cache;
+
+    public CachingToolCallback(ToolCallback delegate, ToolResultCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return cache.get(delegate.getToolDefinition().name(), toolInput, () -> delegate.call(toolInput));
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        return cache.get(delegate.getToolDefinition().name(), toolInput, () -> delegate.call(toolInput, toolContext));
+    }
+}
@@ -0,0 +1,47 @@
+package com.ai.agent.tools;
+
+import java.util.List;
+
+/**
+ * 识别工具返回的失败结果
+ * <p>
+ * 工具以文本形式返回失败信息（如 "Error reading file: ..."、"File not found: ..."），
+ * 这里集中维护各工具使用的失败前缀，供结果缓存和结果摘要统一判断。
+ */
+public final class ToolFailures {
+
+    private static final List<String> FAILURE_PREFIXES = List.of("Error", "File not found");
+
+    // TerminalOperationTool 在命令输出之后追加的失败说明
+    private static final String COMMAND_FAILURE = "Command execution failed with exit code";
+
+    private ToolFailures() {
+    }
+
+    /**
+     * 结果是否表示工具执行失败（兼容被序列化为 JSON 字符串的结果）
+     */
+    public static boolean isFailure(String result) {
+        if (result == null) {
+            return true;
+        }
+        String text = result.startsWith("\"") ? result.substring(1) : result;
+        return FAILURE_PREFIXES.stream().anyMatch(text::startsWith) || text.contains(COMMAND_FAILURE);
+    }
+
+    /**
+     * 返回描述失败原因的那一行，结果不是失败时返回 null
+     */
+    public static String failureLine(String result) {
+        if (result == null || !isFailure(result)) {
+            return null;
+        }
+        if (FAILURE_PREFIXES.stream().noneMatch(result::startsWith)) {
+            return result.lines()
+                    .filter(line -> line.startsWith(COMMAND_FAILURE))
+                    .findFirst()
+                    .orElse(COMMAND_FAILURE);
+        }
+        return result.lines().findFirst().orElse(result);
+    }
+}
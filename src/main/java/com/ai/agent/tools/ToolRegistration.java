@@ -15,8 +15,11 @@ public class ToolRegistration {
     @Value("${search-api.api-key}")
     private String searchApiKey;
 
+    /**
+     * 所有本地工具（可缓存的只读工具外层套上结果缓存）
+     */
     @Bean
-    public ToolCallback[] allTools() {
+    public ToolCallback[] allTools(ToolResultCache toolResultCache) {
         FileOperationTool fileOperationTool = new FileOperationTool();
         WebSearchTool webSearchTool = new WebSearchTool(searchApiKey);
         WebScrapingTool webScrapingTool = new WebScrapingTool();
@@ -24,7 +27,7 @@ public class ToolRegistration {
         TerminalOperationTool terminalOperationTool = new TerminalOperationTool();
         MarkdownGenerationTool markdownGenerationTool = new MarkdownGenerationTool();
         TerminateTool terminateTool = new TerminateTool();
-        return ToolCallbacks.from(
+        return toolResultCache.wrap(ToolCallbacks.from(
                 fileOperationTool,
                 webSearchTool,
                 webScrapingTool,
@@ -32,6 +35,6 @@ public class ToolRegistration {
                 terminalOperationTool,
                 markdownGenerationTool,
                 terminateTool
-        );
+        ));
     }
 }
@@ -0,0 +1,257 @@
+package com.ai.agent.tools;
+
+import com.ai.agent.config.ToolCacheProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 工具结果缓存
+ * <p>
+ * 以"工具名 + 规范化参数"为键缓存工具结果：每个工具单独配置有效期，总条目数或结果总字符数超出上限时按 LRU 淘汰，
+ * 超过单条上限的结果（如整页抓取的网页）不缓存。
+ * 相同的调用同时进行时只发起一次请求，其余调用等待并共享结果（single-flight）。
+ * 只缓存配置了有效期的工具，执行失败的结果不缓存。
+ */
+@Component
+public class ToolResultCache {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final ToolCacheProperties properties;
+
+    // 访问顺序的 LinkedHashMap，实现 LRU 淘汰
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // 所有条目结果的总字符数，由 entries 的锁保护
+    private long totalChars;
+
+    // 正在执行的调用（single-flight）
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final Map<String, ToolStats> statsByTool = new ConcurrentHashMap<>();
+
+    public ToolResultCache(ToolCacheProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * 为可缓存的工具套上缓存，其他工具原样返回
+     */
+    public ToolCallback[] wrap(ToolCallback[] tools) {
+        if (!properties.isEnabled()) {
+            return tools;
+        }
+        ToolCallback[] wrapped = new ToolCallback[tools.length];
+        for (int i = 0; i < tools.length; i++) {
+            String toolName = tools[i].getToolDefinition().name();
+            wrapped[i] = properties.getTtl().containsKey(toolName)
+                    ? new CachingToolCallback(tools[i], this)
+                    : tools[i];
+        }
+        return wrapped;
+    }
+
+    /**
+     * 获取工具结果：缓存命中直接返回，相同调用正在执行时等待其结果，否则执行并缓存
+     *
+     * @param toolName  工具名
+     * @param arguments 工具参数（JSON）
+     * @param loader    实际执行工具的逻辑
+     * @return 工具结果
+     */
+    String get(String toolName, String arguments, Supplier<String> loader) {
+        String key = toolName + ":" + normalize(arguments);
+        ToolStats stats = statsByTool.computeIfAbsent(toolName, name -> new ToolStats());
+        String cached = getIfPresent(key);
+        if (cached != null) {
+            stats.hits.incrementAndGet();
+            return cached;
+        }
+
+        CompletableFuture<String> flight = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            // 相同调用正在执行，共享其结果
+            stats.sharedFlights.incrementAndGet();
+            return await(existing);
+        }
+        stats.misses.incrementAndGet();
+        try {
+            String result = loader.get();
+            if (!ToolFailures.isFailure(result)) {
+                put(key, result, properties.getTtl().get(toolName));
+            }
+            flight.complete(result);
+            return result;
+        } catch (Throwable e) {
+            // Error 或被偷偷抛出的受检异常也要结束 flight，否则等待的调用会一直阻塞
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private String await(CompletableFuture<String> flight) {
+        try {
+            return flight.get(properties.getAwaitTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a shared tool call", e);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Timed out waiting for a shared tool call", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private synchronized String getIfPresent(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt < System.nanoTime()) {
+            entries.remove(key);
+            totalChars -= entry.value.length();
+            return null;
+        }
+        return entry.value;
+    }
+
+    private synchronized void put(String key, String value, Duration ttl) {
+        if (value.length() > properties.getMaxEntryChars()) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(value, System.nanoTime() + ttl.toNanos()));
+        totalChars += value.length() - (previous == null ? 0 : previous.value.length());
+        // 先清理过期条目，再按 LRU 淘汰到上限以内
+        if (overCapacity()) {
+            long now = System.nanoTime();
+            Iterator<Entry> expired = entries.values().iterator();
+            while (expired.hasNext()) {
+                Entry entry = expired.next();
+                if (entry.expiresAt < now) {
+                    expired.remove();
+                    totalChars -= entry.value.length();
+                }
+            }
+        }
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (overCapacity() && iterator.hasNext()) {
+            Map.Entry<String, Entry> evicted = iterator.next();
+            String evictedKey = evicted.getKey();
+            iterator.remove();
+            totalChars -= evicted.getValue().value.length();
+            String toolName = evictedKey.substring(0, evictedKey.indexOf(':'));
+            statsByTool.computeIfAbsent(toolName, name -> new ToolStats()).evictions.incrementAndGet();
+        }
+    }
+
+    private boolean overCapacity() {
+        return entries.size() > properties.getMaxEntries() || totalChars > properties.getMaxChars();
+    }
+
+    /**
+     * 规范化参数：按键排序、去掉字符串首尾空白，使等价的参数得到相同的键
+     */
+    static String normalize(String arguments) {
+        if (arguments == null || arguments.isBlank()) {
+            return "{}";
+        }
+        try {
+            JsonNode node = OBJECT_MAPPER.readTree(arguments);
+            return OBJECT_MAPPER.writeValueAsString(canonical(node));
+        } catch (Exception e) {
+            return arguments.trim();
+        }
+    }
+
+    private static Object canonical(JsonNode node) {
+        if (node instanceof ObjectNode objectNode) {
+            Map<String, Object> sorted = new TreeMap<>();
+            objectNode.fields().forEachRemaining(field -> sorted.put(field.getKey(), canonical(field.getValue())));
+            return sorted;
+        }
+        if (node instanceof TextNode textNode) {
+            return textNode.asText().trim();
+        }
+        return node;
+    }
+
+    private record Entry(String value, long expiresAt) {
+    }
+
+    private static final class ToolStats {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong sharedFlights = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+    }
+
+    /**
+     * 单个工具的缓存统计
+     *
+     * @param tool          工具名
+     * @param hits          缓存命中次数
+     * @param misses        实际执行次数
+     * @param sharedFlights 共享正在执行的相同调用的次数
+     * @param evictions     被 LRU 淘汰的条目数（条目数或总字符数超出上限）
+     * @param hitRate       命中率（命中和共享都计为命中）
+     */
+    public record Stats(String tool, long hits, long misses, long sharedFlights, long evictions, double hitRate) {
+    }
+
+    public List<Stats> getStats() {
+        List<Stats> result = new ArrayList<>();
+        statsByTool.forEach((tool, stats) -> {
+            long hits = stats.hits.get() + stats.sharedFlights.get();
+            long total = hits + stats.misses.get();
+            result.add(new Stats(tool, stats.hits.get(), stats.misses.get(), stats.sharedFlights.get(),
+                    stats.evictions.get(), total == 0 ? 0 : (double) hits / total));
+        });
+        return result;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 当前缓存结果的总字符数
+     */
+    public synchronized long totalChars() {
+        return totalChars;
+    }
+
+    /**
+     * 正在等待进行中调用的请求数（测试用）
+     */
+    int inFlightWaiters() {
+        return inFlight.values().stream().mapToInt(CompletableFuture::getNumberOfDependents).sum();
+    }
+}
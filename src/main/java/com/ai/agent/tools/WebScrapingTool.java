@@ -13,7 +13,7 @@ public class WebScrapingTool {
     @Tool(description = "Scrape the content of a web page")
     public String scrapeWebPage(@ToolParam(description = "URL of the web page to scrape") String url) {
         try {
-            Document document = Jsoup.connect(url).get();
+            Document document = Jsoup.connect(url).timeout(20000).get();
             return document.html();
         } catch (Exception e) {
             return "Error scraping web page: " + e.getMessage();
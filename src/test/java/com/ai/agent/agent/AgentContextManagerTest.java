@@ -0,0 +1,144 @@
+package com.ai.agent.agent;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AgentContextManagerTest {
+
+    private static final TokenCountEstimator ESTIMATOR = new JTokkitTokenCountEstimator();
+
+    private static final String SYSTEM_PROMPT = "你是理财助手";
+
+    private static final String NEXT_STEP_PROMPT = "请选择下一步要使用的工具";
+
+    private static final String LARGE_RESPONSE = "沪深300指数今日上涨，成交额放大。".repeat(250);
+
+    private static AssistantMessage toolCall(String id) {
+        AssistantMessage.ToolCall call = new AssistantMessage.ToolCall(id, "function", "searchWeb", "{\"query\":\"" + id + "\"}");
+        return new AssistantMessage("", Map.of(), List.of(call));
+    }
+
+    private static ToolResponseMessage toolResponse(String id, String data) {
+        return new ToolResponseMessage(List.of(new ToolResponseMessage.ToolResponse(id, "searchWeb", data)));
+    }
+
+    /**
+     * 一次提问后调用三次工具，前两次返回大段内容，最后一次返回短结果
+     */
+    private static List<Message> conversation(UserMessage question, SystemMessage system) {
+        List<Message> messages = new ArrayList<>();
+        messages.add(system);
+        messages.add(question);
+        messages.add(toolCall("call-1"));
+        messages.add(toolResponse("call-1", LARGE_RESPONSE));
+        messages.add(new UserMessage(NEXT_STEP_PROMPT));
+        messages.add(toolCall("call-2"));
+        messages.add(toolResponse("call-2", LARGE_RESPONSE));
+        messages.add(new UserMessage(NEXT_STEP_PROMPT));
+        messages.add(toolCall("call-3"));
+        messages.add(toolResponse("call-3", "最新净值 1.23"));
+        return messages;
+    }
+
+    private static int promptTokens(List<Message> messages) {
+        int total = ESTIMATOR.estimate(SYSTEM_PROMPT);
+        for (Message message : messages) {
+            StringBuilder text = new StringBuilder(message.getText() == null ? "" : message.getText());
+            if (message instanceof AssistantMessage assistantMessage) {
+                for (AssistantMessage.ToolCall call : assistantMessage.getToolCalls()) {
+                    text.append(call.name()).append(call.arguments());
+                }
+            } else if (message instanceof ToolResponseMessage toolMessage) {
+                for (ToolResponseMessage.ToolResponse response : toolMessage.getResponses()) {
+                    text.append(response.name()).append(response.responseData());
+                }
+            }
+            total += ESTIMATOR.estimate(text.toString());
+        }
+        return total;
+    }
+
+    private static List<String> responseData(List<Message> messages) {
+        return messages.stream()
+                .filter(ToolResponseMessage.class::isInstance)
+                .map(message -> ((ToolResponseMessage) message).getResponses().get(0).responseData())
+                .toList();
+    }
+
+    @Test
+    void underBudgetOnlyMovesTheNextStepPromptToTheEnd() {
+        AgentContextManager manager = new AgentContextManager(100_000, 200);
+        List<Message> messages = conversation(new UserMessage("帮我看看指数基金"), new SystemMessage("背景"));
+
+        List<Message> prepared = manager.prepare(messages, SYSTEM_PROMPT, NEXT_STEP_PROMPT, 3);
+
+        List<Message> expected = new ArrayList<>(messages);
+        expected.removeIf(message -> NEXT_STEP_PROMPT.equals(message.getText()));
+        assertThat(prepared.subList(0, prepared.size() - 1)).containsExactlyElementsOf(expected);
+        assertThat(prepared.get(prepared.size() - 1).getText()).isEqualTo(NEXT_STEP_PROMPT);
+    }
+
+    @Test
+    void compressionBringsThePromptWithinBudget() {
+        AgentContextManager manager = new AgentContextManager(1500, 200);
+        List<Message> messages = conversation(new UserMessage("帮我看看指数基金"), new SystemMessage("背景"));
+        assertThat(promptTokens(messages)).isGreaterThan(1500);
+
+        List<Message> prepared = manager.prepare(messages, SYSTEM_PROMPT, NEXT_STEP_PROMPT, 3);
+
+        assertThat(promptTokens(prepared)).isLessThanOrEqualTo(1500);
+        assertThat(responseData(prepared)).hasSize(3);
+        assertThat(responseData(prepared).get(0)).endsWith("...[已压缩]").hasSize(200 + "...[已压缩]".length());
+        // 最新的工具响应保持原样
+        assertThat(responseData(prepared).get(2)).isEqualTo("最新净值 1.23");
+    }
+
+    @Test
+    void systemAndLatestUserMessagesAreKept() {
+        AgentContextManager manager = new AgentContextManager(300, 200);
+        SystemMessage system = new SystemMessage("背景：用户风险偏好稳健");
+        UserMessage question = new UserMessage("帮我看看指数基金");
+        List<Message> messages = conversation(question, system);
+
+        List<Message> prepared = manager.prepare(messages, SYSTEM_PROMPT, NEXT_STEP_PROMPT, 3);
+
+        assertThat(prepared).contains(system, question);
+        assertThat(prepared.indexOf(system)).isLessThan(prepared.indexOf(question));
+        assertThat(prepared.get(prepared.size() - 1).getText()).isEqualTo(NEXT_STEP_PROMPT);
+        assertThat(prepared).filteredOn(message -> NEXT_STEP_PROMPT.equals(message.getText())).hasSize(1);
+    }
+
+    @Test
+    void evictionKeepsToolCallsPairedWithTheirResponses() {
+        AgentContextManager manager = new AgentContextManager(300, 200);
+        List<Message> messages = conversation(new UserMessage("帮我看看指数基金"), new SystemMessage("背景"));
+
+        List<Message> prepared = manager.prepare(messages, SYSTEM_PROMPT, NEXT_STEP_PROMPT, 3);
+
+        assertThat(promptTokens(prepared)).isLessThanOrEqualTo(300);
+        // 较早的工具响应只剩占位符，但消息本身和调用 ID 都保留
+        assertThat(responseData(prepared).subList(0, 2)).allMatch(data -> data.startsWith("[已省略"));
+        for (int i = 0; i < prepared.size(); i++) {
+            if (prepared.get(i) instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+                assertThat(prepared.get(i + 1)).isInstanceOf(ToolResponseMessage.class);
+                ToolResponseMessage response = (ToolResponseMessage) prepared.get(i + 1);
+                assertThat(response.getResponses()).extracting(ToolResponseMessage.ToolResponse::id)
+                        .containsExactlyElementsOf(assistantMessage.getToolCalls().stream()
+                                .map(AssistantMessage.ToolCall::id).toList());
+            }
+        }
+        assertThat(prepared).filteredOn(ToolResponseMessage.class::isInstance).hasSize(3);
+    }
+}
@@ -0,0 +1,87 @@
+package com.ai.agent.agent;
+
+import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class AgentPrototypeTest {
+
+    private static ToolCallback tool(String name) {
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return ToolDefinition.builder().name(name).description(name).inputSchema("{}").build();
+            }
+
+            @Override
+            public String call(String toolInput) {
+                return name;
+            }
+        };
+    }
+
+    private static AgentPrototype prototype(ToolCallback[] tools) {
+        return AgentPrototype.builder()
+                .name("TestAgent")
+                .systemPrompt("system")
+                .nextStepPrompt("NEXT")
+                .maxSteps(7)
+                .chatClient(ChatClient.create(mock(ChatModel.class)))
+                .tools(tools)
+                .toolsByName(AgentPrototype.indexTools(tools))
+                .chatOptions(AgentPrototype.toolCallingOptions(tools))
+                .toolExecutor(new ParallelToolExecutor())
+                .contextTokenBudget(4000)
+                .compressedResponseChars(200)
+                .build();
+    }
+
+    @Test
+    void toolIndexKeepsRegistrationOrderAndIsFrozen() {
+        ToolCallback[] tools = {tool("b"), tool("a"), tool("c")};
+
+        Map<String, ToolCallback> toolsByName = AgentPrototype.indexTools(tools);
+
+        assertThat(toolsByName.keySet()).containsExactly("b", "a", "c");
+        assertThatThrownBy(() -> toolsByName.put("d", tool("d"))).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void toolCallingOptionsCarryToolsWithInternalExecutionDisabled() {
+        ToolCallback[] tools = {tool("a"), tool("b")};
+
+        DashScopeChatOptions options = (DashScopeChatOptions) AgentPrototype.toolCallingOptions(tools);
+
+        assertThat(options.getInternalToolExecutionEnabled()).isFalse();
+        assertThat(options.getToolCallbacks()).containsExactly(tools);
+    }
+
+    @Test
+    void agentsShareThePrototypeButNotRunState() {
+        AgentPrototype prototype = prototype(new ToolCallback[]{tool("a")});
+
+        ToolCallAgent first = new ToolCallAgent(prototype);
+        ToolCallAgent second = new ToolCallAgent(prototype);
+        first.getMessageList().add(new UserMessage("只属于第一个"));
+        first.setCurrentStep(3);
+
+        assertThat(second.getChatClient()).isSameAs(first.getChatClient()).isSameAs(prototype.chatClient());
+        assertThat(second.getToolsByName()).isSameAs(prototype.toolsByName());
+        assertThat(second.getToolExecutor()).isSameAs(prototype.toolExecutor());
+        assertThat(second.getChatOptions()).isSameAs(prototype.chatOptions());
+        assertThat(second.getMaxSteps()).isEqualTo(7);
+        assertThat(second.getMessageList()).isEmpty();
+        assertThat(second.getCurrentStep()).isZero();
+        assertThat(second.getContextManager()).isNotSameAs(first.getContextManager());
+    }
+}
@@ -0,0 +1,174 @@
+package com.ai.agent.agent;
+
+import com.ai.agent.agent.model.AgentRunPriority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class AgentRunSchedulerTest {
+
+    private final AgentRunScheduler scheduler = new AgentRunScheduler(1, 8);
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void interactiveRunJumpsAheadOfQueuedBatchRuns() throws InterruptedException {
+        // 单并发：第一个运行占住线程，后续运行进入等待队列
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        scheduler.submit(AgentRunPriority.BATCH, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        await().atMost(Duration.ofSeconds(5)).until(() -> scheduler.getStats().running() == 1);
+
+        scheduler.submit(AgentRunPriority.BATCH, () -> order.add("batch-1"));
+        scheduler.submit(AgentRunPriority.BATCH, () -> order.add("batch-2"));
+        scheduler.submit(AgentRunPriority.INTERACTIVE, () -> order.add("interactive"));
+        assertThat(scheduler.getQueueDepth()).isEqualTo(3);
+
+        release.countDown();
+        await().atMost(Duration.ofSeconds(5)).until(() -> order.size() == 3);
+        assertThat(order).containsExactly("interactive", "batch-1", "batch-2");
+    }
+
+    @Test
+    void fullQueueRejectsRegardlessOfPriority() {
+        AgentRunScheduler small = new AgentRunScheduler(1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            assertThat(small.submit(AgentRunPriority.BATCH, () -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            })).isTrue();
+
+            assertThat(small.submit(AgentRunPriority.INTERACTIVE, () -> {
+            })).isFalse();
+            assertThat(small.getStats().rejected()).isEqualTo(1);
+        } finally {
+            release.countDown();
+            small.shutdown();
+        }
+    }
+
+    @Test
+    void reactiveRunHoldsItsSlotUntilTheStreamEnds() {
+        Sinks.Many<String> events = Sinks.many().unicast().onBackpressureBuffer();
+        List<String> received = new CopyOnWriteArrayList<>();
+        Disposable subscription = scheduler.submitReactive(AgentRunPriority.INTERACTIVE, events::asFlux)
+                .subscribe(received::add);
+        await().atMost(Duration.ofSeconds(5)).until(() -> scheduler.getStats().running() == 1);
+
+        // 响应式运行占着唯一的槽位，普通运行只能排队
+        List<String> order = new CopyOnWriteArrayList<>();
+        scheduler.submit(AgentRunPriority.INTERACTIVE, () -> order.add("blocking"));
+        assertThat(scheduler.getQueueDepth()).isEqualTo(1);
+
+        events.tryEmitNext("event");
+        events.tryEmitComplete();
+        await().atMost(Duration.ofSeconds(5)).until(() -> scheduler.getStats().completed() == 2);
+        assertThat(order).containsExactly("blocking");
+        assertThat(received).containsExactly("event");
+        subscription.dispose();
+    }
+
+    @Test
+    void reactiveRunIsRejectedWhenTheQueueIsFull() {
+        AgentRunScheduler small = new AgentRunScheduler(1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            small.submit(AgentRunPriority.BATCH, () -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            small.submitReactive(AgentRunPriority.INTERACTIVE, () -> Flux.just("never"))
+                    .subscribe(event -> {
+                    }, error::set);
+
+            assertThat(error.get()).isInstanceOf(RejectedExecutionException.class);
+            assertThat(small.getStats().rejected()).isEqualTo(1);
+        } finally {
+            release.countDown();
+            small.shutdown();
+        }
+    }
+
+    @Test
+    void cancellingAQueuedReactiveRunReleasesItsSlot() {
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit(AgentRunPriority.BATCH, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        await().atMost(Duration.ofSeconds(5)).until(() -> scheduler.getStats().running() == 1);
+        List<String> started = new CopyOnWriteArrayList<>();
+        Disposable subscription = scheduler.submitReactive(AgentRunPriority.INTERACTIVE,
+                () -> Flux.<String>never().doOnSubscribe(s -> started.add("run"))).subscribe();
+
+        // 排队期间客户端断开
+        subscription.dispose();
+        release.countDown();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> scheduler.getStats().completed() == 2);
+        assertThat(started).isEmpty();
+        assertThat(scheduler.getStats().running()).isZero();
+    }
+
+    @Test
+    void openReactiveRunsDoNotOccupyPoolThreads() {
+        AgentRunScheduler pool = new AgentRunScheduler(2, 8);
+        List<Disposable> subscriptions = new ArrayList<>();
+        List<Integer> started = new CopyOnWriteArrayList<>();
+        try {
+            // 比并发上限多的响应式运行保持打开（事件流一直不结束）
+            for (int i = 0; i < 4; i++) {
+                int run = i;
+                subscriptions.add(pool.submitReactive(AgentRunPriority.INTERACTIVE,
+                        () -> Flux.<String>never().doOnSubscribe(s -> started.add(run))).subscribe());
+            }
+
+            await().atMost(Duration.ofSeconds(5)).until(() -> started.size() == 2);
+            assertThat(pool.getStats().running()).isEqualTo(2);
+            assertThat(pool.getQueueDepth()).isEqualTo(2);
+            assertThat(pool.getActiveThreads()).isZero();
+
+            // 结束一个运行后，下一个等待中的运行获得槽位
+            subscriptions.get(0).dispose();
+            await().atMost(Duration.ofSeconds(5)).until(() -> started.size() == 3);
+            assertThat(started).containsExactly(0, 1, 2);
+            assertThat(pool.getActiveThreads()).isZero();
+        } finally {
+            subscriptions.forEach(Disposable::dispose);
+            pool.shutdown();
+        }
+    }
+}
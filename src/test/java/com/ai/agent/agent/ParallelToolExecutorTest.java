@@ -0,0 +1,162 @@
+package com.ai.agent.agent;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ParallelToolExecutorTest {
+
+    private static ToolCallback tool(String name, Supplier<String> body) {
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return ToolDefinition.builder().name(name).description(name).inputSchema("{}").build();
+            }
+
+            @Override
+            public String call(String toolInput) {
+                return body.get();
+            }
+        };
+    }
+
+    private static ChatResponse toolCalls(String... names) {
+        List<AssistantMessage.ToolCall> calls = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            calls.add(new AssistantMessage.ToolCall("call-" + i, "function", names[i], "{}"));
+        }
+        return new ChatResponse(List.of(new Generation(new AssistantMessage("", Map.of(), calls))));
+    }
+
+    private static List<String> responses(ToolExecutionResult result) {
+        ToolResponseMessage message = (ToolResponseMessage) result.conversationHistory()
+                .get(result.conversationHistory().size() - 1);
+        return message.getResponses().stream().map(ToolResponseMessage.ToolResponse::responseData).toList();
+    }
+
+    private static String sleepThen(long millis, String result) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "interrupted";
+        }
+        return result;
+    }
+
+    @Test
+    void unknownToolSubmitsNothing() {
+        AtomicInteger invocations = new AtomicInteger();
+        Map<String, ToolCallback> tools = Map.of("known", tool("known", () -> {
+            invocations.incrementAndGet();
+            return "ok";
+        }));
+
+        assertThatThrownBy(() -> new ParallelToolExecutor().executeToolCalls(
+                new Prompt(new UserMessage("q")), toolCalls("known", "missing"), tools))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("missing");
+        assertThat(invocations).hasValue(0);
+    }
+
+    @Test
+    void resultsKeepCallOrder() {
+        Map<String, ToolCallback> tools = Map.of(
+                "slow", tool("slow", () -> sleepThen(150, "slow")),
+                "fast", tool("fast", () -> "fast"));
+
+        ToolExecutionResult result = new ParallelToolExecutor().executeToolCalls(
+                new Prompt(new UserMessage("q")), toolCalls("slow", "fast"), tools);
+
+        assertThat(responses(result)).containsExactly("slow", "fast");
+    }
+
+    @Test
+    void queuedCallIsTimedFromItsOwnStart() {
+        // 单并发：挂起的调用到自身超时即被取消，排在后面的调用仍有完整的超时时间
+        Map<String, ToolCallback> tools = Map.of(
+                "hang", tool("hang", () -> sleepThen(10_000, "late")),
+                "work", tool("work", () -> sleepThen(150, "done")));
+        ParallelToolExecutor executor = new ParallelToolExecutor(1, Duration.ofMillis(300), Set.of("hang", "work"));
+
+        long start = System.nanoTime();
+        ToolExecutionResult result = executor.executeToolCalls(
+                new Prompt(new UserMessage("q")), toolCalls("hang", "work"), tools);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        List<String> responses = responses(result);
+        assertThat(responses.get(0)).contains("timed out");
+        assertThat(responses.get(1)).isEqualTo("done");
+        assertThat(elapsedMillis).isLessThan(2_000);
+    }
+
+    @Test
+    void parallelSafeToolsOverlap() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Supplier<String> body = () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            String result = sleepThen(150, "ok");
+            running.decrementAndGet();
+            return result;
+        };
+        Map<String, ToolCallback> tools = Map.of("searchWeb", tool("searchWeb", body));
+
+        new ParallelToolExecutor().executeToolCalls(
+                new Prompt(new UserMessage("q")), toolCalls("searchWeb", "searchWeb", "searchWeb"), tools);
+
+        assertThat(maxRunning.get()).isGreaterThan(1);
+    }
+
+    @Test
+    void sideEffectingToolsRunAloneInCallOrder() {
+        // writeFile 不在白名单中：等前面的读取结束后才开始，后面的读取等它结束后才开始
+        List<String> events = new CopyOnWriteArrayList<>();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlapped = new AtomicInteger();
+        Map<String, ToolCallback> tools = Map.of(
+                "readFile", tool("readFile", () -> {
+                    running.incrementAndGet();
+                    events.add("read");
+                    String result = sleepThen(100, "read");
+                    running.decrementAndGet();
+                    return result;
+                }),
+                "writeFile", tool("writeFile", () -> {
+                    if (running.incrementAndGet() > 1) {
+                        overlapped.incrementAndGet();
+                    }
+                    events.add("write-start");
+                    String result = sleepThen(100, "written");
+                    events.add("write-end");
+                    running.decrementAndGet();
+                    return result;
+                }));
+
+        ToolExecutionResult result = new ParallelToolExecutor().executeToolCalls(new Prompt(new UserMessage("q")),
+                toolCalls("readFile", "writeFile", "writeFile", "readFile"), tools);
+
+        assertThat(responses(result)).containsExactly("read", "written", "written", "read");
+        assertThat(events).containsExactly("read", "write-start", "write-end", "write-start", "write-end", "read");
+        assertThat(overlapped).hasValue(0);
+    }
+}
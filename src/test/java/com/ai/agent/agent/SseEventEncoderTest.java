@@ -0,0 +1,76 @@
+package com.ai.agent.agent;
+
+import com.ai.agent.agent.model.AgentEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SseEventEncoderTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final SseEventEncoder encoder = new SseEventEncoder();
+
+    private static JsonNode parse(String json) throws Exception {
+        return OBJECT_MAPPER.readTree(json);
+    }
+
+    @Test
+    void specialCharactersRoundTripThroughJson() throws Exception {
+        String content = "引号\"、反斜杠\\、换行\n回车\r制表\t退格\b换页\f、NUL\u0000、\u001f 和 emoji 😀";
+
+        JsonNode event = parse(encoder.resultChunk(content));
+
+        assertThat(event.get("type").asText()).isEqualTo("result_chunk");
+        assertThat(event.get("content").asText()).isEqualTo(content);
+    }
+
+    @Test
+    void controlCharactersAndLoneSurrogatesAreEscaped() {
+        StringBuilder out = new StringBuilder();
+        SseEventEncoder.escape("a\u0001b\uD800c\uDC00", out);
+
+        assertThat(out.toString()).isEqualTo("a\\u0001b\\ud800c\\udc00");
+    }
+
+    @Test
+    void surrogatePairIsKeptAsIs() {
+        StringBuilder out = new StringBuilder();
+        SseEventEncoder.escape("😀", out);
+
+        assertThat(out.toString()).isEqualTo("😀");
+    }
+
+    @Test
+    void nullContentEncodesAsEmptyString() throws Exception {
+        JsonNode event = parse(encoder.terminate(null));
+
+        assertThat(event.get("type").asText()).isEqualTo("terminate");
+        assertThat(event.get("reason").asText()).isEmpty();
+    }
+
+    @Test
+    void reusedBufferDoesNotLeakPreviousEvent() throws Exception {
+        String large = "x".repeat(40_000);
+        assertThat(parse(encoder.resultChunk(large)).get("content").asText()).isEqualTo(large);
+
+        JsonNode event = parse(encoder.thinking(3, "短"));
+
+        assertThat(event.get("type").asText()).isEqualTo("thinking");
+        assertThat(event.get("step").asInt()).isEqualTo(3);
+        assertThat(event.get("content").asText()).isEqualTo("短");
+    }
+
+    @Test
+    void encodesReactiveEngineEvents() throws Exception {
+        assertThat(parse(encoder.encode(AgentEvent.thinking(1, "思考"))).get("content").asText()).isEqualTo("思考");
+        assertThat(parse(encoder.encode(AgentEvent.terminate("完成"))).get("reason").asText()).isEqualTo("完成");
+        assertThat(encoder.encode(AgentEvent.resultStart())).isEqualTo("{\"type\":\"result_start\"}");
+        assertThat(parse(encoder.encode(AgentEvent.resultChunk("答案"))).get("content").asText()).isEqualTo("答案");
+        assertThat(encoder.encode(AgentEvent.resultEnd())).isEqualTo("{\"type\":\"result_end\"}");
+        assertThat(encoder.encode(AgentEvent.resultRetract())).isEqualTo("{\"type\":\"result_retract\"}");
+        assertThat(encoder.encode(AgentEvent.done())).isEqualTo("[DONE]");
+    }
+}
@@ -0,0 +1,263 @@
+package com.ai.agent.agent;
+
+import com.ai.agent.agent.model.AgentEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+/**
+ * 流式思考：最终回答边生成边输出；工具调用前的说明文字即使已经输出，也会被撤回并改作思考内容
+ */
+class StreamingThinkTest {
+
+    private static final String PREAMBLE = "我先帮您查询一下相关的基金信息和最新的市场行情数据，请稍候片刻，"
+            + "查询完成后我会结合您的风险偏好、投资期限和流动性需求，给出一份完整的分析和配置建议。";
+
+    private static final String SHORT_PREAMBLE = "我先查询一下。";
+
+    private static final String ANSWER = "根据查询结果，建议您采用稳健型配置。";
+
+    // 超过暂存长度的回答片段
+    private static final String LONG_CHUNK = "建议您将六成资金配置在债券基金和银行理财等低风险产品上，"
+            + "三成配置在宽基指数基金上并坚持定投，剩余一成作为应急资金存放在货币基金中，每半年根据市场情况再平衡一次。";
+
+    /**
+     * 按调用顺序返回预设响应流的模型
+     */
+    private static final class ScriptedChatModel implements ChatModel {
+
+        private final Deque<Flux<ChatResponse>> script = new ArrayDeque<>();
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return script.removeFirst();
+        }
+
+        private void add(List<ChatResponse> responses) {
+            script.add(Flux.fromIterable(responses));
+        }
+    }
+
+    /**
+     * 记录发送内容的 SseEmitter
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+
+        private final List<String> sent = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void send(Object object) {
+            sent.add(object.toString());
+        }
+
+        private long count(String type) {
+            return sent.stream().filter(event -> event.contains("\"type\":\"" + type + "\"")).count();
+        }
+    }
+
+    private static ChatResponse text(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    private static ChatResponse toolCall() {
+        AssistantMessage.ToolCall call = new AssistantMessage.ToolCall("call-1", "function", "lookup", "{}");
+        return new ChatResponse(List.of(new Generation(new AssistantMessage("", Map.of(), List.of(call)))));
+    }
+
+    private static List<ChatResponse> preambleThenToolCall() {
+        // 说明文字分多个片段到达，超过暂存长度、已经开始输出后才出现工具调用
+        return List.of(text(PREAMBLE.substring(0, 20)), text(PREAMBLE.substring(20)), toolCall());
+    }
+
+    private static ToolCallAgent newAgent(ChatModel chatModel) {
+        ToolCallback lookup = new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return ToolDefinition.builder().name("lookup").description("查询").inputSchema("{}").build();
+            }
+
+            @Override
+            public String call(String toolInput) {
+                return "基金数据";
+            }
+        };
+        ToolCallback[] tools = {lookup};
+        AgentPrototype prototype = AgentPrototype.builder()
+                .name("TestAgent")
+                .systemPrompt("system")
+                .nextStepPrompt("NEXT")
+                .maxSteps(5)
+                .chatClient(ChatClient.create(chatModel))
+                .tools(tools)
+                .toolsByName(AgentPrototype.indexTools(tools))
+                .chatOptions(AgentPrototype.toolCallingOptions(tools))
+                .toolExecutor(new ParallelToolExecutor())
+                .contextTokenBudget(100_000)
+                .compressedResponseChars(500)
+                .build();
+        return new ToolCallAgent(prototype);
+    }
+
+    private static ToolCallAgent streamingAgent(ChatModel chatModel, SseEmitter emitter) {
+        ToolCallAgent agent = newAgent(chatModel);
+        agent.setResultStreamer(new FinalResultStreamer(emitter));
+        agent.getMessageList().add(new UserMessage("帮我看看基金"));
+        agent.setCurrentStep(1);
+        return agent;
+    }
+
+    @Test
+    void reactiveEngineRetractsPreambleStreamedBeforeToolCall() {
+        assertThat(PREAMBLE.length()).isGreaterThan(ToolCallAgent.RESULT_HOLD_BACK_CHARS);
+        ScriptedChatModel chatModel = new ScriptedChatModel();
+        chatModel.add(preambleThenToolCall());
+        chatModel.add(List.of(text(ANSWER.substring(0, 6)), text(ANSWER.substring(6))));
+
+        List<AgentEvent> events = new ReactiveAgentEngine(newAgent(chatModel)).run("帮我看看基金")
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        int retract = events.indexOf(AgentEvent.resultRetract());
+        assertThat(retract).isPositive();
+        assertThat(events.get(retract + 1)).isEqualTo(AgentEvent.thinking(1, PREAMBLE));
+        // 撤回之后重新开始的结果只包含最终回答，且之后不再出现思考事件
+        List<AgentEvent> afterRetract = events.subList(retract + 1, events.size());
+        int resultStart = afterRetract.indexOf(AgentEvent.resultStart());
+        assertThat(resultStart).isPositive();
+        String result = afterRetract.stream()
+                .filter(event -> event.type() == AgentEvent.Type.RESULT_CHUNK)
+                .map(AgentEvent::content)
+                .collect(Collectors.joining());
+        assertThat(result).isEqualTo(ANSWER);
+        assertThat(afterRetract.subList(resultStart, afterRetract.size()))
+                .noneMatch(event -> event.type() == AgentEvent.Type.THINKING);
+    }
+
+    @Test
+    void reactiveEngineStreamsAnswerBeforeModelCompletes() {
+        Sinks.Many<ChatResponse> stream = Sinks.many().unicast().onBackpressureBuffer();
+        ScriptedChatModel chatModel = new ScriptedChatModel();
+        chatModel.script.add(stream.asFlux());
+        List<AgentEvent> events = new CopyOnWriteArrayList<>();
+
+        Disposable run = new ReactiveAgentEngine(newAgent(chatModel)).run("帮我看看基金").subscribe(events::add);
+        try {
+            stream.tryEmitNext(text(LONG_CHUNK));
+            stream.tryEmitNext(text("风险提示："));
+            stream.tryEmitNext(text("基金有风险，投资需谨慎。"));
+            // 模型尚未结束，已经收到多个结果片段
+            await().atMost(Duration.ofSeconds(5)).until(() -> events.stream()
+                    .filter(event -> event.type() == AgentEvent.Type.RESULT_CHUNK).count() > 1);
+            assertThat(events).doesNotContain(AgentEvent.resultEnd());
+
+            stream.tryEmitComplete();
+            await().atMost(Duration.ofSeconds(5)).until(() -> events.contains(AgentEvent.done()));
+            assertThat(events).contains(AgentEvent.resultEnd());
+        } finally {
+            run.dispose();
+        }
+    }
+
+    @Test
+    void blockingThinkRetractsPreambleStreamedBeforeToolCall() {
+        ScriptedChatModel chatModel = new ScriptedChatModel();
+        chatModel.add(preambleThenToolCall());
+        RecordingEmitter emitter = new RecordingEmitter();
+        ToolCallAgent agent = streamingAgent(chatModel, emitter);
+
+        assertThat(agent.think()).isTrue();
+        assertThat(emitter.count("result_chunk")).isPositive();
+        assertThat(emitter.sent.get(emitter.sent.size() - 1)).contains("result_retract");
+        // 撤回后不算已开始输出，最终结果会重新从 result_start 开始
+        assertThat(agent.getResultStreamer().isStarted()).isFalse();
+    }
+
+    @Test
+    void blockingThinkRetractsStreamedTextWhenStreamFails() {
+        ScriptedChatModel chatModel = new ScriptedChatModel();
+        chatModel.script.add(Flux.concat(Flux.just(text(LONG_CHUNK)),
+                Flux.error(new IllegalStateException("连接中断"))));
+        RecordingEmitter emitter = new RecordingEmitter();
+        ToolCallAgent agent = streamingAgent(chatModel, emitter);
+
+        assertThat(agent.think()).isFalse();
+        assertThat(emitter.count("result_chunk")).isPositive();
+        assertThat(emitter.sent.get(emitter.sent.size() - 1)).contains("result_retract");
+        // 半截回答已撤回，错误信息会作为新的结果输出
+        assertThat(agent.getResultStreamer().isStarted()).isFalse();
+    }
+
+    @Test
+    void blockingThinkHoldsBackShortPreambleBeforeToolCall() {
+        ScriptedChatModel chatModel = new ScriptedChatModel();
+        chatModel.add(List.of(text(SHORT_PREAMBLE), toolCall()));
+        SseEmitter emitter = mock(SseEmitter.class);
+        ToolCallAgent agent = streamingAgent(chatModel, emitter);
+
+        assertThat(agent.think()).isTrue();
+        verifyNoInteractions(emitter);
+        assertThat(agent.getResultStreamer().isStarted()).isFalse();
+    }
+
+    @Test
+    void blockingThinkStreamsAnswerBeforeModelCompletes() throws Exception {
+        Sinks.Many<ChatResponse> stream = Sinks.many().unicast().onBackpressureBuffer();
+        ScriptedChatModel chatModel = new ScriptedChatModel();
+        chatModel.script.add(stream.asFlux());
+        RecordingEmitter emitter = new RecordingEmitter();
+        ToolCallAgent agent = streamingAgent(chatModel, emitter);
+
+        CompletableFuture<Boolean> think = CompletableFuture.supplyAsync(agent::think);
+        stream.tryEmitNext(text(LONG_CHUNK));
+        stream.tryEmitNext(text("风险提示："));
+        stream.tryEmitNext(text("基金有风险，投资需谨慎。"));
+        // 模型尚未结束，已经发送了多个结果片段
+        await().atMost(Duration.ofSeconds(5)).until(() -> emitter.count("result_chunk") > 1);
+        assertThat(think).isNotDone();
+
+        stream.tryEmitComplete();
+        assertThat(think.get(5, TimeUnit.SECONDS)).isFalse();
+        assertThat(emitter.count("result_chunk")).isEqualTo(3);
+    }
+
+    @Test
+    void blockingThinkStreamsAnswerWithoutToolCall() {
+        ScriptedChatModel chatModel = new ScriptedChatModel();
+        chatModel.add(List.of(text(ANSWER)));
+        ToolCallAgent agent = streamingAgent(chatModel, mock(SseEmitter.class));
+
+        assertThat(agent.think()).isFalse();
+        assertThat(agent.getResultStreamer().isStarted()).isTrue();
+    }
+}
@@ -0,0 +1,48 @@
+package com.ai.agent.agent;
+
+import com.ai.agent.llm.ModelRouter;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.tool.ToolCallback;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class ToolCallAgentRoutingTest {
+
+    private static final ToolCallback[] NO_TOOLS = new ToolCallback[0];
+
+    private ToolCallAgent newAgent() {
+        AgentPrototype prototype = AgentPrototype.builder()
+                .name("TestAgent")
+                .nextStepPrompt("NEXT")
+                .maxSteps(3)
+                .tools(NO_TOOLS)
+                .toolsByName(AgentPrototype.indexTools(NO_TOOLS))
+                .chatOptions(AgentPrototype.toolCallingOptions(NO_TOOLS))
+                .toolExecutor(new ParallelToolExecutor())
+                .modelRouter(new ModelRouter(mock(ChatModel.class), true, true))
+                .build();
+        ToolCallAgent agent = new ToolCallAgent(prototype);
+        agent.setCurrentStep(1);
+        return agent;
+    }
+
+    @Test
+    void firstMessageGreetingIsCanned() {
+        ToolCallAgent agent = newAgent();
+        agent.getMessageList().add(new UserMessage("好的"));
+        assertThat(agent.routeFirstStep()).isEqualTo(ModelRouter.Route.CANNED);
+    }
+
+    @Test
+    void acknowledgementAfterHistoryGoesToLargeModel() {
+        ToolCallAgent agent = newAgent();
+        agent.getMessageList().add(new UserMessage("帮我看看适合的理财方式"));
+        agent.getMessageList().add(new AssistantMessage("……要我为您生成一份理财报告吗？"));
+        agent.getMessageList().add(new UserMessage("好的"));
+        assertThat(agent.routeFirstStep()).isEqualTo(ModelRouter.Route.LARGE);
+    }
+}
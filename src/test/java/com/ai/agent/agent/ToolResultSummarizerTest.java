@@ -0,0 +1,45 @@
+package com.ai.agent.agent;
+
+import com.ai.agent.tools.MarkdownGenerationTool;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ToolResultSummarizerTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Test
+    void missingFileIsReportedAsFailure() throws Exception {
+        String result = new MarkdownGenerationTool().readMarkdown("missing-" + UUID.randomUUID());
+        // 方法工具的返回值会被序列化为 JSON 字符串
+        String summary = ToolResultSummarizer.summarize("readMarkdown", OBJECT_MAPPER.writeValueAsString(result));
+
+        assertThat(summary).startsWith("我调用 readMarkdown 工具时遇到问题：File not found");
+        assertThat(summary).doesNotContain("个字符");
+    }
+
+    @Test
+    void errorResultIsReportedAsFailure() {
+        String summary = ToolResultSummarizer.summarize("scrapeWebPage", "Error scraping web page: timeout\nat line 2");
+
+        assertThat(summary).isEqualTo("我调用 scrapeWebPage 工具时遇到问题：Error scraping web page: timeout");
+    }
+
+    @Test
+    void failedCommandIsReportedAsFailure() {
+        String summary = ToolResultSummarizer.summarize("executeTerminalCommand",
+                "'foo' is not recognized\nCommand execution failed with exit code: 1");
+
+        assertThat(summary).isEqualTo("我调用 executeTerminalCommand 工具时遇到问题：Command execution failed with exit code: 1");
+    }
+
+    @Test
+    void successfulReadIsSummarized() {
+        assertThat(ToolResultSummarizer.summarize("readFile", "hello"))
+                .isEqualTo("我读取了文件内容（5 个字符）");
+    }
+}
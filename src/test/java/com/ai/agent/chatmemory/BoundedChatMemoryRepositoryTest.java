@@ -0,0 +1,81 @@
+package com.ai.agent.chatmemory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BoundedChatMemoryRepositoryTest {
+
+    @TempDir
+    Path dir;
+
+    private BoundedChatMemoryRepository newRepository(long maxBytes, Duration idleTtl) {
+        return new BoundedChatMemoryRepository(maxBytes, idleTtl, dir.toString(), Duration.ofDays(1),
+                Duration.ofHours(1));
+    }
+
+    private static List<Message> messages(String text) {
+        return List.of(new UserMessage(text));
+    }
+
+    @Test
+    void startupRemovesOnlyLeftoverSpillFiles() throws Exception {
+        Path shard = Files.createDirectories(dir.resolve("ab").resolve("cd"));
+        Files.writeString(shard.resolve("old.kryo"), "stale");
+
+        newRepository(Long.MAX_VALUE, Duration.ofHours(1)).close();
+
+        assertThat(dir).exists().isEmptyDirectory();
+    }
+
+    @Test
+    void refusesToStartWhenSpillDirHoldsOtherFiles() throws Exception {
+        Path shard = Files.createDirectories(dir.resolve("ab").resolve("cd"));
+        Files.writeString(shard.resolve("old.kryo"), "stale");
+        Path foreign = Files.writeString(dir.resolve("application.yml"), "keep me");
+
+        assertThatThrownBy(() -> newRepository(Long.MAX_VALUE, Duration.ofHours(1)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("application.yml");
+        assertThat(foreign).exists();
+        assertThat(shard.resolve("old.kryo")).exists();
+    }
+
+    @Test
+    void evictedConversationIsReadBackFromSpill() {
+        try (BoundedChatMemoryRepository repository = newRepository(1, Duration.ofHours(1))) {
+            repository.saveAll("c1", messages("first"));
+            repository.saveAll("c2", messages("second"));
+
+            assertThat(repository.getStats().entries()).isEqualTo(1);
+            assertThat(repository.findByConversationId("c1")).extracting(Message::getText).containsExactly("first");
+            assertThat(repository.getStats().spillHits()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void idleEvictionKeepsRecentConversations() throws Exception {
+        try (BoundedChatMemoryRepository repository = newRepository(Long.MAX_VALUE, Duration.ofMillis(200))) {
+            repository.saveAll("idle", messages("old"));
+            Thread.sleep(300);
+            repository.saveAll("active", messages("new"));
+
+            repository.evictIdle();
+
+            BoundedChatMemoryRepository.Stats stats = repository.getStats();
+            assertThat(stats.idleEvictions()).isEqualTo(1);
+            assertThat(stats.entries()).isEqualTo(1);
+            assertThat(stats.spilledEntries()).isEqualTo(1);
+            assertThat(repository.findByConversationId("active")).extracting(Message::getText).containsExactly("new");
+        }
+    }
+}
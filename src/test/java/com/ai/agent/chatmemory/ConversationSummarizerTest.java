@@ -0,0 +1,105 @@
+package com.ai.agent.chatmemory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ConversationSummarizerTest {
+
+    private static final String SUMMARY_JSON =
+            "{\"text\":\"用户风险偏好稳健\",\"lastFingerprint\":1,\"previousFingerprint\":0,\"folded\":4,\"updatedAt\":0}";
+
+    @TempDir
+    Path dir;
+
+    private FileBasedChatMemory disk;
+
+    private ChatModel chatModel;
+
+    private WriteBackChatMemory memory;
+
+    private ConversationSummarizer summarizer;
+
+    @BeforeEach
+    void setUp() {
+        disk = new FileBasedChatMemory(dir.toString(), 20);
+        memory = new WriteBackChatMemory(disk, Long.MAX_VALUE, MemoryDurability.SYNC, Duration.ofHours(1));
+        chatModel = mock(ChatModel.class);
+        summarizer = new ConversationSummarizer(memory, chatModel, true, 2000, 6, 600, 300, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        memory.close();
+    }
+
+    private String summaryOf(String chatId) {
+        List<Message> window = memory.get(chatId);
+        return summarizer.apply(chatId, window).summary();
+    }
+
+    @Test
+    void clearDropsCachedSummary() {
+        memory.add("c1", List.of(new UserMessage("我想买基金")));
+        memory.writeSidecar("c1", FileBasedChatMemory.SUMMARY_SUFFIX, SUMMARY_JSON);
+        assertThat(summaryOf("c1")).isEqualTo("用户风险偏好稳健");
+
+        memory.clear("c1");
+
+        assertThat(summaryOf("c1")).isNull();
+    }
+
+    @Test
+    void sweptConversationDropsCachedSummary() {
+        // 会话 ID 需要哈希成存储键时也能按存储键失效
+        String chatId = "会话/1";
+        memory.add(chatId, List.of(new UserMessage("我想买基金")));
+        memory.writeSidecar(chatId, FileBasedChatMemory.SUMMARY_SUFFIX, SUMMARY_JSON);
+        assertThat(summaryOf(chatId)).isEqualTo("用户风险偏好稳健");
+
+        // 绕过缓存层直接删除磁盘上的会话，与后台清理一样经过 forget
+        disk.clear(chatId);
+
+        assertThat(summaryOf(chatId)).isNull();
+    }
+
+    @Test
+    void shortTurnsAreSummarizedBeforeLeavingTheWindow() {
+        // 摘要原样返回提示词中的已有摘要和新增对话，检查最早的用户信息是否一路保留下来
+        when(chatModel.call(any(Prompt.class))).thenAnswer(invocation -> {
+            String prompt = invocation.<Prompt>getArgument(0).getContents();
+            String merged = prompt.substring(prompt.indexOf("【已有摘要】"));
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(merged))));
+        });
+        memory.add("c1", List.of(new UserMessage("我的风险承受能力是保守型"), new AssistantMessage("好的")));
+        summarizer.summarize("c1");
+
+        // 每轮只有几个 token，远达不到 token 阈值，但窗口只有 20 条
+        for (int turn = 1; turn <= 30; turn++) {
+            memory.add("c1", List.of(new UserMessage("第 " + turn + " 个问题"), new AssistantMessage("好的")));
+            summarizer.summarize("c1");
+        }
+
+        List<Message> window = memory.get("c1");
+        assertThat(window).noneMatch(message -> message.getText().contains("保守型"));
+        assertThat(summaryOf("c1")).contains("保守型");
+        assertThat(summarizer.getStats().summarizations()).isPositive();
+    }
+}
@@ -0,0 +1,151 @@
+package com.ai.agent.chatmemory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 并发压力测试：多线程对少量会话混合读写，检查消息数量、各线程写入顺序，且日志无损坏
+ */
+class FileBasedChatMemoryConcurrencyTest {
+
+    private static final int THREADS = 16;
+
+    private static final int CONVERSATIONS = 8;
+
+    private static final int OPERATIONS_PER_THREAD = 400;
+
+    @TempDir
+    Path dir;
+
+    /**
+     * 每个线程向随机会话追加"线程号-序号"的一问一答，间隔读取；返回每个会话写入的消息数
+     */
+    private int[] runWorkload(FileBasedChatMemory memory, AtomicInteger inconsistentReads) throws Exception {
+        AtomicInteger[] written = new AtomicInteger[CONVERSATIONS];
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            written[i] = new AtomicInteger();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int seq = 0; seq < OPERATIONS_PER_THREAD; seq++) {
+                        int conversation = random.nextInt(CONVERSATIONS);
+                        if (random.nextInt(4) == 0) {
+                            if (!isOrdered(memory.get(chatId(conversation)))) {
+                                inconsistentReads.incrementAndGet();
+                            }
+                        } else {
+                            String tag = thread + "-" + seq;
+                            memory.add(chatId(conversation), List.of(new UserMessage(tag), new AssistantMessage(tag)));
+                            written[conversation].addAndGet(2);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        int[] counts = new int[CONVERSATIONS];
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            counts[i] = written[i].get();
+        }
+        return counts;
+    }
+
+    private static String chatId(int conversation) {
+        return "stress-" + conversation;
+    }
+
+    /**
+     * 一问一答相邻且成对，同一线程的消息按序号递增
+     */
+    private static boolean isOrdered(List<Message> messages) {
+        Map<Integer, Integer> lastSeq = new HashMap<>();
+        for (int i = 0; i + 1 < messages.size(); i += 2) {
+            Message question = messages.get(i);
+            Message answer = messages.get(i + 1);
+            if (!(question instanceof UserMessage) || !(answer instanceof AssistantMessage)
+                    || !question.getText().equals(answer.getText())) {
+                return false;
+            }
+            String[] parts = question.getText().split("-");
+            int thread = Integer.parseInt(parts[0]);
+            int seq = Integer.parseInt(parts[1]);
+            Integer previous = lastSeq.put(thread, seq);
+            if (previous != null && previous >= seq) {
+                return false;
+            }
+        }
+        return messages.size() % 2 == 0;
+    }
+
+    @Test
+    void concurrentReadsAndWritesKeepEveryMessageInOrder() throws Exception {
+        FileBasedChatMemory memory = new FileBasedChatMemory(dir.toString());
+        AtomicInteger inconsistentReads = new AtomicInteger();
+
+        int[] written = runWorkload(memory, inconsistentReads);
+
+        assertThat(inconsistentReads).hasValue(0);
+        memory.close();
+        // 新实例从磁盘重新读取，确认日志完整
+        FileBasedChatMemory reopened = new FileBasedChatMemory(dir.toString());
+        try {
+            for (int i = 0; i < CONVERSATIONS; i++) {
+                List<Message> messages = reopened.get(chatId(i));
+                assertThat(messages).hasSize(written[i]);
+                assertThat(isOrdered(messages)).isTrue();
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void concurrentWritesWithBackgroundCompactionKeepTheWindow() throws Exception {
+        int windowSize = 40;
+        FileBasedChatMemory memory = new FileBasedChatMemory(dir.toString(), windowSize);
+        AtomicInteger inconsistentReads = new AtomicInteger();
+
+        int[] written = runWorkload(memory, inconsistentReads);
+
+        assertThat(inconsistentReads).hasValue(0);
+        // 等待排队中的压缩写完，之后磁盘上的日志不再变化
+        memory.close();
+        FileBasedChatMemory reopened = new FileBasedChatMemory(dir.toString(), windowSize);
+        try {
+            for (int i = 0; i < CONVERSATIONS; i++) {
+                List<Message> messages = reopened.get(chatId(i));
+                assertThat(messages).hasSize(Math.min(windowSize, written[i]));
+                assertThat(messages).isEqualTo(memory.get(chatId(i)));
+                assertThat(isOrdered(messages)).isTrue();
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+}
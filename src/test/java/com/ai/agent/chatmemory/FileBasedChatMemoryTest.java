@@ -0,0 +1,64 @@
+package com.ai.agent.chatmemory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileBasedChatMemoryTest {
+
+    @TempDir
+    Path dir;
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+
+    @Test
+    void appendsAfterATornAppendSurviveReload() {
+        FileBasedChatMemory memory = new FileBasedChatMemory(dir.toString(), 20);
+        memory.add("c1", List.of(new UserMessage("first")));
+
+        memory.setFrameWriter((channel, frame, fsync) -> {
+            frame.limit(frame.limit() / 2);
+            channel.write(frame);
+            throw new IOException("disk full");
+        });
+        assertThat(memory.add("c1", List.of(new UserMessage("lost")), false)).isFalse();
+
+        memory.setFrameWriter(MessageLog.DEFAULT_WRITER);
+        assertThat(memory.add("c1", List.of(new UserMessage("second")), false)).isTrue();
+        memory.add("c1", List.of(new UserMessage("third")));
+        memory.close();
+
+        FileBasedChatMemory reopened = new FileBasedChatMemory(dir.toString(), 20);
+        assertThat(texts(reopened.get("c1"))).containsExactly("first", "second", "third");
+        reopened.close();
+    }
+
+    @Test
+    void failedSyncIsReportedAndLeavesNothingBehind() {
+        FileBasedChatMemory memory = new FileBasedChatMemory(dir.toString(), 20);
+        memory.add("c1", List.of(new UserMessage("first")));
+
+        memory.setFrameWriter((channel, frame, fsync) -> {
+            MessageLog.DEFAULT_WRITER.write(channel, frame, false);
+            throw new IOException("fsync failed");
+        });
+        assertThat(memory.add("c1", List.of(new UserMessage("second")), true)).isFalse();
+
+        memory.setFrameWriter(MessageLog.DEFAULT_WRITER);
+        assertThat(memory.add("c1", List.of(new UserMessage("second")), true)).isTrue();
+        memory.close();
+
+        FileBasedChatMemory reopened = new FileBasedChatMemory(dir.toString(), 20);
+        assertThat(texts(reopened.get("c1"))).containsExactly("first", "second");
+        reopened.close();
+    }
+}
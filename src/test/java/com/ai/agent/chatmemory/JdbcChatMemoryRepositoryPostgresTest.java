@@ -0,0 +1,152 @@
+package com.ai.agent.chatmemory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 在真实的 PostgreSQL 上验证 SQL（ON CONFLICT、FOR UPDATE、GREATEST）；没有 Docker 时跳过
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class JdbcChatMemoryRepositoryPostgresTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private JdbcTemplate jdbcTemplate;
+
+    private DataSourceTransactionManager transactionManager;
+
+    private JdbcChatMemoryRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(POSTGRES.getJdbcUrl(),
+                POSTGRES.getUsername(), POSTGRES.getPassword());
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        repository = newRepository(1_000);
+        jdbcTemplate.execute("TRUNCATE chat_memory_message, chat_memory_conversation");
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.close();
+    }
+
+    private JdbcChatMemoryRepository newRepository(int pruneThreshold) {
+        return new JdbcChatMemoryRepository(jdbcTemplate, transactionManager, true, pruneThreshold);
+    }
+
+    private static List<Message> turns(int from, int to) {
+        List<Message> messages = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            messages.add(new UserMessage("问题 " + i));
+            messages.add(new AssistantMessage("回答 " + i));
+        }
+        return messages;
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+
+    private long rows(String conversationId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM chat_memory_message WHERE conversation_id = ?",
+                Long.class, conversationId);
+    }
+
+    @Test
+    void slidingWindowInsertsOnlyNewMessages() {
+        repository.saveAll("c1", turns(0, 3));
+        repository.saveAll("c1", turns(1, 4));
+
+        assertThat(texts(repository.findByConversationId("c1"))).isEqualTo(texts(turns(1, 4)));
+        assertThat(repository.getStats().insertedRows()).isEqualTo(8);
+        assertThat(repository.getStats().reusedRows()).isEqualTo(4);
+        assertThat(repository.findConversationIds()).containsExactly("c1");
+    }
+
+    @Test
+    void deleteKeepsSequenceAndStartsAnEmptyWindow() {
+        repository.saveAll("c1", turns(0, 2));
+        repository.deleteByConversationId("c1");
+
+        assertThat(repository.findByConversationId("c1")).isEmpty();
+        assertThat(repository.findConversationIds()).isEmpty();
+
+        repository.saveAll("c1", turns(5, 6));
+        assertThat(texts(repository.findByConversationId("c1"))).isEqualTo(texts(turns(5, 6)));
+        Long firstSeq = jdbcTemplate.queryForObject(
+                "SELECT first_seq FROM chat_memory_conversation WHERE conversation_id = ?", Long.class, "c1");
+        assertThat(firstSeq).isEqualTo(5);
+    }
+
+    @Test
+    void concurrentWritersOnTheSameConversationAreSerialized() throws Exception {
+        // 两个实例模拟两个副本，首次写入同时插入会话行（ON CONFLICT DO NOTHING），之后靠 FOR UPDATE 串行
+        JdbcChatMemoryRepository other = newRepository(1_000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                JdbcChatMemoryRepository target = i % 2 == 0 ? repository : other;
+                int turn = i;
+                futures.add(executor.submit(() -> target.saveAll("shared", turns(turn, turn + 1))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            other.close();
+        }
+
+        Long distinctSeq = jdbcTemplate.queryForObject(
+                "SELECT COUNT(DISTINCT seq) FROM chat_memory_message WHERE conversation_id = ?", Long.class, "shared");
+        assertThat(distinctSeq).isEqualTo(rows("shared")).isEqualTo(32);
+        assertThat(repository.findByConversationId("shared")).hasSize(2);
+    }
+
+    @Test
+    void rowsOutsideTheWindowArePrunedInTheBackground() {
+        JdbcChatMemoryRepository pruning = newRepository(2);
+        try {
+            for (int turn = 0; turn < 10; turn++) {
+                pruning.saveAll("c1", turns(Math.max(0, turn - 1), turn + 1));
+            }
+        } finally {
+            // 等待排队中的清理任务
+            pruning.close();
+        }
+
+        assertThat(texts(repository.findByConversationId("c1"))).isEqualTo(texts(turns(8, 10)));
+        assertThat(rows("c1")).isLessThan(20);
+        Long prunedSeq = jdbcTemplate.queryForObject(
+                "SELECT pruned_seq FROM chat_memory_conversation WHERE conversation_id = ?", Long.class, "c1");
+        Long firstSeq = jdbcTemplate.queryForObject(
+                "SELECT first_seq FROM chat_memory_conversation WHERE conversation_id = ?", Long.class, "c1");
+        assertThat(prunedSeq).isGreaterThan(1).isLessThanOrEqualTo(firstSeq);
+        Long belowPruned = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM chat_memory_message WHERE conversation_id = ? AND seq < ?",
+                Long.class, "c1", prunedSeq);
+        assertThat(belowPruned).isZero();
+    }
+}
@@ -0,0 +1,39 @@
+package com.ai.agent.chatmemory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JdbcChatMemoryRepositoryTest {
+
+    @Test
+    void overlapFindsLongestSavedSuffixThatPrefixesTheNewWindow() {
+        // 已保存 [1,2,3,4]，新窗口滑动两条后为 [3,4,5,6]
+        assertThat(JdbcChatMemoryRepository.overlap(List.of(1, 2, 3, 4), new int[]{3, 4, 5, 6})).isEqualTo(2);
+    }
+
+    @Test
+    void overlapOfIdenticalWindowIsItsLength() {
+        assertThat(JdbcChatMemoryRepository.overlap(List.of(1, 2, 3), new int[]{1, 2, 3})).isEqualTo(3);
+    }
+
+    @Test
+    void overlapIsZeroWhenNothingMatches() {
+        assertThat(JdbcChatMemoryRepository.overlap(List.of(1, 2, 3), new int[]{4, 5})).isZero();
+        assertThat(JdbcChatMemoryRepository.overlap(List.of(), new int[]{1})).isZero();
+    }
+
+    @Test
+    void overlapPrefersTheLongestMatch() {
+        // 重复的指纹：末尾 [7] 与 [7,7] 都能对上，取最长
+        assertThat(JdbcChatMemoryRepository.overlap(List.of(5, 7, 7), new int[]{7, 7, 8})).isEqualTo(2);
+    }
+
+    @Test
+    void overlapRequiresTheSavedTailToLineUp() {
+        // 新窗口的开头出现在已保存部分的中间，不是末尾，不算重合
+        assertThat(JdbcChatMemoryRepository.overlap(List.of(1, 2, 3), new int[]{2, 9})).isZero();
+    }
+}
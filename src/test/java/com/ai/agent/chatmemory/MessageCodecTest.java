@@ -0,0 +1,101 @@
+package com.ai.agent.chatmemory;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+import org.junit.jupiter.api.Test;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageCodecTest {
+
+    private static List<Message> conversation(String answer) {
+        return List.of(
+                new SystemMessage("你是理财顾问"),
+                new UserMessage("帮我查一下基金 \"000001\""),
+                new AssistantMessage("", Map.of("finishReason", "TOOL_CALLS"), List.of(
+                        new AssistantMessage.ToolCall("call-1", "function", "searchFund", "{\"code\":\"000001\"}"))),
+                new ToolResponseMessage(List.of(
+                        new ToolResponseMessage.ToolResponse("call-1", "searchFund", "净值 1.23"))),
+                new AssistantMessage(answer));
+    }
+
+    /**
+     * 旧版 FileBasedChatMemory 的写法：通用 Kryo 序列化整个 ArrayList
+     */
+    private static byte[] legacyEncode(List<Message> messages) {
+        Kryo kryo = new Kryo();
+        kryo.setRegistrationRequired(false);
+        kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+        try (Output output = new Output(1024, -1)) {
+            kryo.writeObject(output, new ArrayList<>(messages));
+            return output.toBytes();
+        }
+    }
+
+    private static void assertSameConversation(List<Message> actual, List<Message> expected) {
+        assertThat(actual).hasSameSizeAs(expected);
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.get(i)).isInstanceOf(expected.get(i).getClass());
+            assertThat(actual.get(i).getText()).isEqualTo(expected.get(i).getText());
+            assertThat(MessageCodec.fingerprint(actual.get(i))).isEqualTo(MessageCodec.fingerprint(expected.get(i)));
+        }
+    }
+
+    @Test
+    void compactFormatRoundTripsAllMessageTypes() {
+        List<Message> messages = conversation("建议稳健配置");
+
+        byte[] payload = MessageCodec.encode(messages);
+
+        assertThat(MessageCodec.isCompact(payload)).isTrue();
+        List<Message> decoded = MessageCodec.decode(payload);
+        assertSameConversation(decoded, messages);
+        AssistantMessage.ToolCall toolCall = ((AssistantMessage) decoded.get(2)).getToolCalls().get(0);
+        assertThat(toolCall).isEqualTo(((AssistantMessage) messages.get(2)).getToolCalls().get(0));
+        assertThat(((ToolResponseMessage) decoded.get(3)).getResponses())
+                .isEqualTo(((ToolResponseMessage) messages.get(3)).getResponses());
+    }
+
+    @Test
+    void largePayloadIsDeflatedAndRoundTrips() {
+        List<Message> messages = conversation("分析".repeat(2_000));
+
+        byte[] payload = MessageCodec.encode(messages);
+
+        assertThat(payload[2] & 1).isEqualTo(1);
+        assertSameConversation(MessageCodec.decode(payload), messages);
+    }
+
+    @Test
+    void compactFormatIsMuchSmallerThanLegacy() {
+        List<Message> messages = conversation("建议稳健配置");
+
+        assertThat(MessageCodec.encode(messages).length).isLessThan(legacyEncode(messages).length / 2);
+    }
+
+    @Test
+    void legacyPayloadStillDecodes() throws Exception {
+        List<Message> messages = conversation("建议稳健配置");
+        byte[] legacy = legacyEncode(messages);
+
+        assertThat(MessageCodec.isCompact(legacy)).isFalse();
+        assertSameConversation(MessageCodec.decode(legacy), messages);
+        assertSameConversation(MessageCodec.decodeLegacy(new ByteArrayInputStream(legacy)), messages);
+    }
+
+    @Test
+    void emptyListRoundTrips() {
+        assertThat(MessageCodec.decode(MessageCodec.encode(List.of()))).isEmpty();
+    }
+}
@@ -0,0 +1,118 @@
+package com.ai.agent.chatmemory;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageCompactionPipelineTest {
+
+    private static final String NEXT_STEP_PROMPT = "请决定下一步";
+
+    private static AssistantMessage toolCalls(AssistantMessage.ToolCall... calls) {
+        return new AssistantMessage("", Map.of(), List.of(calls));
+    }
+
+    private static AssistantMessage.ToolCall call(String id, String name, String arguments) {
+        return new AssistantMessage.ToolCall(id, "function", name, arguments);
+    }
+
+    private static ToolResponseMessage responses(ToolResponseMessage.ToolResponse... responses) {
+        return new ToolResponseMessage(List.of(responses), Map.of());
+    }
+
+    private static ToolResponseMessage.ToolResponse response(String id, String name, String data) {
+        return new ToolResponseMessage.ToolResponse(id, name, data);
+    }
+
+    private static MessageCompactionPipeline agentPipeline() {
+        return MessageCompactionPipeline.of(
+                MessageCompactionRules.dropUserMessage(NEXT_STEP_PROMPT),
+                MessageCompactionRules.dropTool("doTerminate"),
+                MessageCompactionRules.truncateToolArguments(10),
+                MessageCompactionRules.redactToolResponses(List.of("captcha"), "[验证页已省略]"),
+                MessageCompactionRules.truncateToolResponses(20));
+    }
+
+    @Test
+    void dropsNextStepPromptsAndTerminateCallsInOnePass() {
+        List<Message> messages = List.of(
+                new SystemMessage("system"),
+                new UserMessage("帮我看看基金"),
+                new UserMessage("  " + NEXT_STEP_PROMPT + "\n"),
+                toolCalls(call("1", "doTerminate", "{}")),
+                responses(response("1", "doTerminate", "done")),
+                new AssistantMessage("最终回答"));
+
+        List<Message> compacted = agentPipeline().compact(messages);
+
+        assertThat(compacted).containsExactly(messages.get(0), messages.get(1), messages.get(5));
+    }
+
+    @Test
+    void keepsPairedCallsWhenOnlySomeAreDropped() {
+        List<Message> messages = List.of(
+                toolCalls(call("1", "search", "{}"), call("2", "doTerminate", "{}")),
+                responses(response("1", "search", "ok"), response("2", "doTerminate", "done")));
+
+        List<Message> compacted = agentPipeline().compact(messages);
+
+        assertThat(compacted).hasSize(2);
+        assertThat(((AssistantMessage) compacted.get(0)).getToolCalls()).extracting(AssistantMessage.ToolCall::name)
+                .containsExactly("search");
+        assertThat(((ToolResponseMessage) compacted.get(1)).getResponses())
+                .extracting(ToolResponseMessage.ToolResponse::name).containsExactly("search");
+    }
+
+    @Test
+    void truncatesAndRedactsToolContent() {
+        List<Message> messages = List.of(
+                toolCalls(call("1", "generateMarkdown", "x".repeat(50))),
+                responses(response("1", "scrape", "please solve the captcha " + "y".repeat(100)),
+                        response("2", "search", "z".repeat(30))));
+
+        List<Message> compacted = agentPipeline().compact(messages);
+
+        assertThat(((AssistantMessage) compacted.get(0)).getToolCalls().get(0).arguments())
+                .isEqualTo("x".repeat(10) + MessageCompactionRules.TRUNCATED_MARK);
+        assertThat(((ToolResponseMessage) compacted.get(1)).getResponses())
+                .extracting(ToolResponseMessage.ToolResponse::responseData)
+                .containsExactly("[验证页已省略]", "z".repeat(20) + MessageCompactionRules.TRUNCATED_MARK);
+    }
+
+    @Test
+    void unchangedMessagesAreReusedAndInputIsNotModified() {
+        AssistantMessage shortCall = toolCalls(call("1", "search", "{}"));
+        ToolResponseMessage shortResponse = responses(response("1", "search", "ok"));
+        List<Message> messages = new ArrayList<>(List.of(new UserMessage("问题"), shortCall, shortResponse));
+        List<Message> copy = List.copyOf(messages);
+
+        List<Message> compacted = agentPipeline().compact(messages);
+
+        assertThat(compacted.get(1)).isSameAs(shortCall);
+        assertThat(compacted.get(2)).isSameAs(shortResponse);
+        assertThat(messages).containsExactlyElementsOf(copy);
+    }
+
+    @Test
+    void statsCountMessagesAndCharacters() {
+        MessageCompactionPipeline pipeline = agentPipeline();
+
+        pipeline.compact(List.of(new UserMessage(NEXT_STEP_PROMPT), new UserMessage("abc")));
+
+        MessageCompactionPipeline.Stats stats = pipeline.getStats();
+        assertThat(stats.runs()).isEqualTo(1);
+        assertThat(stats.messagesIn()).isEqualTo(2);
+        assertThat(stats.messagesOut()).isEqualTo(1);
+        assertThat(stats.charsIn()).isEqualTo(NEXT_STEP_PROMPT.length() + 3);
+        assertThat(stats.charsOut()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,138 @@
+package com.ai.agent.chatmemory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MessageLogTest {
+
+    @TempDir
+    Path dir;
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> payloads(List<MessageLog.Record> records) {
+        return records.stream().map(record -> new String(record.payload(), StandardCharsets.UTF_8)).toList();
+    }
+
+    @Test
+    void readsAppendedRecordsInOrder() throws Exception {
+        Path file = dir.resolve("c1.log");
+        MessageLog.append(file, MessageLog.APPEND, 2, bytes("first"), false);
+        MessageLog.append(file, MessageLog.APPEND, 1, bytes("second"), true);
+
+        List<MessageLog.Record> records = MessageLog.read(file);
+
+        assertThat(payloads(records)).containsExactly("first", "second");
+        assertThat(records).extracting(MessageLog.Record::messageCount).containsExactly(2, 1);
+    }
+
+    @Test
+    void tornTailIsTruncatedToLastCompleteRecord() throws Exception {
+        Path file = dir.resolve("c1.log");
+        MessageLog.append(file, MessageLog.APPEND, 1, bytes("first"), false);
+        long validLength = Files.size(file);
+        MessageLog.append(file, MessageLog.APPEND, 1, bytes("second-record"), false);
+        // 模拟崩溃：最后一条记录只写了一半
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length - 5));
+
+        assertThat(payloads(MessageLog.read(file))).containsExactly("first");
+        assertThat(Files.size(file)).isEqualTo(validLength);
+
+        // 截断后可以继续追加
+        MessageLog.append(file, MessageLog.APPEND, 1, bytes("third"), false);
+        assertThat(payloads(MessageLog.read(file))).containsExactly("first", "third");
+    }
+
+    @Test
+    void partialHeaderIsTruncated() throws Exception {
+        Path file = dir.resolve("c1.log");
+        MessageLog.append(file, MessageLog.APPEND, 1, bytes("first"), false);
+        long validLength = Files.size(file);
+        Files.write(file, new byte[]{MessageLog.APPEND, 0, 0}, StandardOpenOption.APPEND);
+
+        assertThat(payloads(MessageLog.read(file))).containsExactly("first");
+        assertThat(Files.size(file)).isEqualTo(validLength);
+    }
+
+    @Test
+    void corruptedRecordIsTruncatedWithEverythingAfterIt() throws Exception {
+        Path file = dir.resolve("c1.log");
+        MessageLog.append(file, MessageLog.APPEND, 1, bytes("first"), false);
+        long validLength = Files.size(file);
+        MessageLog.append(file, MessageLog.APPEND, 1, bytes("second"), false);
+        MessageLog.append(file, MessageLog.APPEND, 1, bytes("third"), false);
+        byte[] content = Files.readAllBytes(file);
+        // 破坏第二条记录负载的一个字节，CRC 校验失败
+        content[(int) validLength + MessageLog.HEADER_BYTES] ^= 0x7F;
+        Files.write(file, content);
+
+        assertThat(payloads(MessageLog.read(file))).containsExactly("first");
+        assertThat(Files.size(file)).isEqualTo(validLength);
+    }
+
+    @Test
+    void rewriteReplacesTheLogWithOneRecord() throws Exception {
+        Path file = dir.resolve("c1.log");
+        MessageLog.append(file, MessageLog.APPEND, 1, bytes("first"), false);
+        MessageLog.append(file, MessageLog.APPEND, 1, bytes("second"), false);
+
+        int written = MessageLog.rewrite(file, 2, bytes("compacted"));
+
+        assertThat(payloads(MessageLog.read(file))).containsExactly("compacted");
+        assertThat(Files.size(file)).isEqualTo(written);
+        assertThat(dir.resolve("c1.log.compact")).doesNotExist();
+    }
+
+    @Test
+    void tornAppendIsRolledBack() throws Exception {
+        Path file = dir.resolve("c1.log");
+        MessageLog.append(file, MessageLog.APPEND, 1, bytes("first"), false);
+        long validLength = Files.size(file);
+        // 只写出半条记录后失败
+        MessageLog.FrameWriter torn = (channel, frame, fsync) -> {
+            frame.limit(frame.limit() / 2);
+            channel.write(frame);
+            throw new IOException("disk full");
+        };
+
+        assertThatThrownBy(() -> MessageLog.append(file, MessageLog.APPEND, 1, bytes("lost"), false, torn))
+                .isInstanceOf(IOException.class);
+        assertThat(Files.size(file)).isEqualTo(validLength);
+
+        MessageLog.append(file, MessageLog.APPEND, 1, bytes("second"), false);
+        assertThat(payloads(MessageLog.read(file))).containsExactly("first", "second");
+    }
+
+    @Test
+    void failedSyncRollsBackTheWholeRecord() throws Exception {
+        Path file = dir.resolve("c1.log");
+        MessageLog.append(file, MessageLog.APPEND, 1, bytes("first"), false);
+        long validLength = Files.size(file);
+        // 完整写出记录，刷盘时失败
+        MessageLog.FrameWriter failingSync = (channel, frame, fsync) -> {
+            MessageLog.DEFAULT_WRITER.write(channel, frame, false);
+            throw new IOException("fsync failed");
+        };
+
+        assertThatThrownBy(() -> MessageLog.append(file, MessageLog.APPEND, 1, bytes("retry"), true, failingSync))
+                .isInstanceOf(IOException.class);
+        assertThat(Files.size(file)).isEqualTo(validLength);
+
+        MessageLog.append(file, MessageLog.APPEND, 1, bytes("retry"), true);
+        assertThat(payloads(MessageLog.read(file))).containsExactly("first", "retry");
+    }
+}
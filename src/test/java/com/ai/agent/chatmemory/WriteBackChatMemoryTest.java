@@ -0,0 +1,152 @@
+package com.ai.agent.chatmemory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WriteBackChatMemoryTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * 可以模拟写盘失败的磁盘层
+     */
+    private static final class FlakyFileMemory extends FileBasedChatMemory {
+
+        private volatile boolean failing;
+
+        private FlakyFileMemory(String dir) {
+            super(dir, 20);
+        }
+
+        @Override
+        public boolean add(String conversationId, List<Message> messages, boolean fsync) {
+            return !failing && super.add(conversationId, messages, fsync);
+        }
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+
+    @Test
+    void failedFlushKeepsPendingMessages() {
+        FlakyFileMemory disk = new FlakyFileMemory(dir.toString());
+        WriteBackChatMemory memory = new WriteBackChatMemory(disk, Long.MAX_VALUE, MemoryDurability.ASYNC,
+                Duration.ofHours(1));
+        memory.add("c1", List.of(new UserMessage("first")));
+
+        disk.failing = true;
+        memory.flushAll();
+        assertThat(memory.getStats().failedWrites()).isEqualTo(1);
+        assertThat(disk.get("c1")).isEmpty();
+
+        disk.failing = false;
+        memory.flushAll();
+        assertThat(texts(disk.get("c1"))).containsExactly("first");
+    }
+
+    @Test
+    void syncWriteRetriesFailedMessagesInOrder() {
+        FlakyFileMemory disk = new FlakyFileMemory(dir.toString());
+        WriteBackChatMemory memory = new WriteBackChatMemory(disk, Long.MAX_VALUE, MemoryDurability.SYNC,
+                Duration.ofHours(1));
+
+        disk.failing = true;
+        memory.add("c1", List.of(new UserMessage("first")));
+        disk.failing = false;
+        memory.add("c1", List.of(new UserMessage("second")));
+
+        assertThat(texts(disk.get("c1"))).containsExactly("first", "second");
+    }
+
+    @Test
+    void retryAfterFailedFsyncDoesNotDuplicateMessages() {
+        FileBasedChatMemory disk = new FileBasedChatMemory(dir.toString(), 20);
+        WriteBackChatMemory memory = new WriteBackChatMemory(disk, Long.MAX_VALUE, MemoryDurability.BATCHED_FSYNC,
+                Duration.ofHours(1));
+        memory.add("c1", List.of(new UserMessage("first"), new UserMessage("second")));
+
+        // 记录完整写出，刷盘时失败
+        disk.setFrameWriter((channel, frame, fsync) -> {
+            MessageLog.DEFAULT_WRITER.write(channel, frame, false);
+            throw new IOException("fsync failed");
+        });
+        memory.flushAll();
+        assertThat(memory.getStats().failedWrites()).isEqualTo(1);
+
+        disk.setFrameWriter(MessageLog.DEFAULT_WRITER);
+        memory.close();
+
+        FileBasedChatMemory reopened = new FileBasedChatMemory(dir.toString(), 20);
+        assertThat(texts(reopened.get("c1"))).containsExactly("first", "second");
+        reopened.close();
+    }
+
+    @Test
+    void conversationIsNotEvictedWhileItsFlushFails() {
+        FlakyFileMemory disk = new FlakyFileMemory(dir.toString());
+        // 上限极小，每次写入都会尝试淘汰最久未使用的会话
+        WriteBackChatMemory memory = new WriteBackChatMemory(disk, 1, MemoryDurability.ASYNC, Duration.ofHours(1));
+        disk.failing = true;
+        memory.add("c1", List.of(new UserMessage("unsaved")));
+        memory.add("c2", List.of(new UserMessage("other")));
+
+        assertThat(memory.getStats().entries()).isEqualTo(2);
+        assertThat(memory.getStats().evictions()).isZero();
+        assertThat(texts(memory.get("c1"))).containsExactly("unsaved");
+
+        disk.failing = false;
+        memory.add("c3", List.of(new UserMessage("third")));
+        assertThat(memory.getStats().evictions()).isPositive();
+        assertThat(texts(disk.get("c1"))).containsExactly("unsaved");
+    }
+
+    @Test
+    void clearDuringDiskReadDoesNotCacheStaleWindow() throws Exception {
+        CountDownLatch readDone = new CountDownLatch(1);
+        CountDownLatch cleared = new CountDownLatch(1);
+        AtomicBoolean blockNextRead = new AtomicBoolean();
+        FileBasedChatMemory disk = new FileBasedChatMemory(dir.toString(), 20) {
+            @Override
+            public List<Message> get(String conversationId) {
+                List<Message> messages = super.get(conversationId);
+                if (blockNextRead.compareAndSet(true, false)) {
+                    // 已读到清空前的内容，等待清空完成后再返回
+                    readDone.countDown();
+                    try {
+                        cleared.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return messages;
+            }
+        };
+        disk.add("c1", List.of(new UserMessage("old")));
+        WriteBackChatMemory memory = new WriteBackChatMemory(disk, Long.MAX_VALUE, MemoryDurability.ASYNC,
+                Duration.ofHours(1));
+
+        blockNextRead.set(true);
+        CompletableFuture<List<Message>> read = CompletableFuture.supplyAsync(() -> memory.get("c1"));
+        assertThat(readDone.await(5, TimeUnit.SECONDS)).isTrue();
+        memory.clear("c1");
+        cleared.countDown();
+
+        assertThat(read.get(5, TimeUnit.SECONDS)).isEmpty();
+        assertThat(memory.get("c1")).isEmpty();
+    }
+}
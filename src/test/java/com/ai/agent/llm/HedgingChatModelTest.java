@@ -0,0 +1,194 @@
+package com.ai.agent.llm;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class HedgingChatModelTest {
+
+    /**
+     * 可设定延迟的桩模型
+     */
+    private static final class StubChatModel implements ChatModel {
+
+        private final String answer;
+
+        private final Duration latency;
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private final AtomicInteger interrupted = new AtomicInteger();
+
+        private StubChatModel(String answer, Duration latency) {
+            this.answer = answer;
+            this.latency = latency;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(latency.toMillis());
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("cancelled", e);
+            }
+            return response(answer);
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return Flux.defer(() -> {
+                calls.incrementAndGet();
+                return Flux.just(response(answer)).delaySubscription(latency);
+            });
+        }
+    }
+
+    private record Report(String title) {
+    }
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    private static HedgingChatModel hedging(ChatModel primary, ChatModel secondary, boolean enabled) {
+        // 每次调用都有对冲额度；样本不足时 50ms 后对冲
+        return new HedgingChatModel(primary, secondary, 0.95, 1.0, Duration.ofMillis(10), Duration.ofMillis(50),
+                200, false, enabled);
+    }
+
+    private static String text(ChatResponse response) {
+        return response.getResult().getOutput().getText();
+    }
+
+    @Test
+    void slowPrimaryIsHedgedByFastSecondary() {
+        StubChatModel primary = new StubChatModel("primary", Duration.ofSeconds(2));
+        StubChatModel secondary = new StubChatModel("secondary", Duration.ofMillis(10));
+        HedgingChatModel model = hedging(primary, secondary, true);
+
+        long start = System.nanoTime();
+        ChatResponse response = model.call(new Prompt(new UserMessage("你好")));
+
+        assertThat(text(response)).isEqualTo("secondary");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+        assertThat(model.getStats().hedges()).isEqualTo(1);
+        assertThat(model.getStats().hedgeWins()).isEqualTo(1);
+        assertThat(HedgingChatModel.isHedgeWin(response)).isTrue();
+    }
+
+    @Test
+    void fastPrimaryIsNotHedged() {
+        StubChatModel primary = new StubChatModel("primary", Duration.ofMillis(5));
+        StubChatModel secondary = new StubChatModel("secondary", Duration.ofMillis(5));
+        HedgingChatModel model = hedging(primary, secondary, true);
+
+        ChatResponse response = model.call(new Prompt(new UserMessage("你好")));
+
+        assertThat(text(response)).isEqualTo("primary");
+        assertThat(HedgingChatModel.isHedgeWin(response)).isFalse();
+        assertThat(secondary.calls).hasValue(0);
+    }
+
+    @Test
+    void slowPrimaryStreamIsHedgedByFastSecondary() {
+        StubChatModel primary = new StubChatModel("primary", Duration.ofSeconds(2));
+        StubChatModel secondary = new StubChatModel("secondary", Duration.ofMillis(10));
+        HedgingChatModel model = hedging(primary, secondary, true);
+
+        ChatResponse first = model.stream(new Prompt(new UserMessage("你好"))).blockFirst(Duration.ofSeconds(1));
+
+        assertThat(text(first)).isEqualTo("secondary");
+        assertThat(HedgingChatModel.isHedgeWin(first)).isTrue();
+    }
+
+    @Test
+    void disabledHedgingCallsPrimaryOnly() {
+        StubChatModel primary = new StubChatModel("primary", Duration.ofMillis(200));
+        StubChatModel secondary = new StubChatModel("secondary", Duration.ofMillis(10));
+        HedgingChatModel model = hedging(primary, secondary, false);
+
+        assertThat(text(model.call(new Prompt(new UserMessage("你好"))))).isEqualTo("primary");
+        assertThat(secondary.calls).hasValue(0);
+        assertThat(model.getStats().enabled()).isFalse();
+    }
+
+    @Test
+    void structuredOutputPromptIsNotHedged() {
+        StubChatModel primary = new StubChatModel("{\"title\":\"primary\"}", Duration.ofMillis(200));
+        StubChatModel secondary = new StubChatModel("secondary", Duration.ofMillis(10));
+        HedgingChatModel model = hedging(primary, secondary, true);
+        // 与 ChatClient.entity() 一样，把格式说明追加到用户消息
+        String format = new BeanOutputConverter<>(Report.class).getFormat();
+        Prompt prompt = new Prompt(new UserMessage("生成理财报告\n" + format));
+
+        assertThat(HedgingChatModel.requiresStructuredOutput(prompt)).isTrue();
+        assertThat(text(model.call(prompt))).isEqualTo("{\"title\":\"primary\"}");
+        assertThat(secondary.calls).hasValue(0);
+        assertThat(model.getStats().structuredBypassed()).isEqualTo(1);
+    }
+
+    @Test
+    void toolPromptsNeitherHedgeNorEarnCredit() {
+        StubChatModel primary = new StubChatModel("primary", Duration.ofMillis(300));
+        StubChatModel secondary = new StubChatModel("secondary", Duration.ofMillis(10));
+        // 每次可对冲的调用积累 0.5 个额度，两次调用才够对冲一次
+        HedgingChatModel model = new HedgingChatModel(primary, secondary, 0.95, 0.5, Duration.ofMillis(10),
+                Duration.ofMillis(50), 200, false, true);
+        Prompt toolPrompt = new Prompt(new UserMessage("查询基金"),
+                ToolCallingChatOptions.builder().toolNames("lookup").build());
+        for (int i = 0; i < 4; i++) {
+            model.call(toolPrompt);
+        }
+
+        // 带工具的调用没有攒下额度，第一次不带工具的慢调用不能对冲
+        assertThat(text(model.call(new Prompt(new UserMessage("你好"))))).isEqualTo("primary");
+        assertThat(secondary.calls).hasValue(0);
+        HedgingChatModel.Stats stats = model.getStats();
+        assertThat(stats.toolCallsBypassed()).isEqualTo(4);
+        assertThat(stats.primaryCalls()).isEqualTo(1);
+        assertThat(stats.budgetDenied()).isEqualTo(1);
+    }
+
+    @Test
+    void interruptCancelsBothRequests() {
+        StubChatModel primary = new StubChatModel("primary", Duration.ofSeconds(5));
+        StubChatModel secondary = new StubChatModel("secondary", Duration.ofSeconds(5));
+        HedgingChatModel model = hedging(primary, secondary, true);
+        AtomicReference<Thread> caller = new AtomicReference<>();
+        CompletableFuture<Void> call = CompletableFuture.runAsync(() -> {
+            caller.set(Thread.currentThread());
+            try {
+                model.call(new Prompt(new UserMessage("你好")));
+            } catch (IllegalStateException e) {
+                // 预期的中断异常
+            }
+        });
+
+        // 对冲请求发出后中断调用线程
+        await().atMost(Duration.ofSeconds(2)).until(() -> secondary.calls.get() == 1);
+        caller.get().interrupt();
+
+        await().atMost(Duration.ofSeconds(2)).until(() -> primary.interrupted.get() == 1
+                && secondary.interrupted.get() == 1);
+        call.join();
+    }
+}
@@ -0,0 +1,120 @@
+package com.ai.agent.llm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LlmResponseCacheTest {
+
+    @Test
+    void memoryEntriesExpireAfterTtl() throws InterruptedException {
+        LlmResponseCache cache = new LlmResponseCache(true, 10, "", Duration.ofMillis(200));
+        cache.put("k1", "回答");
+        assertThat(cache.get("test", "k1")).isEqualTo("回答");
+
+        Thread.sleep(300);
+
+        assertThat(cache.get("test", "k1")).isNull();
+        LlmResponseCache.Stats stats = cache.getStats().get(0);
+        assertThat(stats.memoryHits()).isEqualTo(1);
+        assertThat(stats.misses()).isEqualTo(1);
+    }
+
+    @Test
+    void diskHitKeepsOriginalWriteTime(@TempDir Path dir) throws Exception {
+        Duration ttl = Duration.ofHours(1);
+        LlmResponseCache writer = new LlmResponseCache(true, 10, dir.toString(), ttl);
+        writer.put("ab12", "回答");
+        Path file;
+        try (Stream<Path> files = Files.walk(dir)) {
+            file = files.filter(Files::isRegularFile).findFirst().orElseThrow();
+        }
+        // 文件写入于 59 分钟前，读回内存后仍按原写入时间过期
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - Duration.ofMinutes(59).toMillis()));
+
+        LlmResponseCache reader = new LlmResponseCache(true, 10, dir.toString(), ttl);
+        assertThat(reader.get("test", "ab12")).isEqualTo("回答");
+        assertThat(reader.get("test", "ab12")).isEqualTo("回答");
+        assertThat(reader.getStats().get(0).diskHits()).isEqualTo(1);
+        assertThat(reader.getStats().get(0).memoryHits()).isEqualTo(1);
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - Duration.ofHours(2).toMillis()));
+        LlmResponseCache expired = new LlmResponseCache(true, 10, dir.toString(), ttl);
+        assertThat(expired.get("test", "ab12")).isNull();
+        assertThat(file).doesNotExist();
+    }
+
+    /**
+     * 按调用次数返回不同回答的模型；hedgeWin 为 true 时响应带有备用模型胜出的标记
+     */
+    private static final class CountingChatModel implements ChatModel {
+
+        private final boolean hedgeWin;
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private CountingChatModel(boolean hedgeWin) {
+            this.hedgeWin = hedgeWin;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            return response("回答" + calls.incrementAndGet());
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return Flux.defer(() -> Flux.just(response("回答" + calls.incrementAndGet())));
+        }
+
+        private ChatResponse response(String text) {
+            ChatResponse.Builder builder = ChatResponse.builder()
+                    .generations(List.of(new Generation(new AssistantMessage(text))));
+            if (hedgeWin) {
+                builder.metadata(HedgingChatModel.HEDGE_WIN_METADATA_KEY, true);
+            }
+            return builder.build();
+        }
+    }
+
+    @Test
+    void primaryResponsesAreCached() {
+        CountingChatModel model = new CountingChatModel(false);
+        ChatModel cached = new LlmResponseCache(true, 10, "", Duration.ofHours(1)).wrap(model, "test");
+        Prompt prompt = new Prompt(new UserMessage("润色"));
+
+        cached.call(prompt);
+        cached.stream(prompt).blockLast();
+
+        assertThat(model.calls).hasValue(1);
+    }
+
+    @Test
+    void hedgeWinResponsesAreNotCached() {
+        CountingChatModel model = new CountingChatModel(true);
+        ChatModel cached = new LlmResponseCache(true, 10, "", Duration.ofHours(1)).wrap(model, "test");
+        Prompt prompt = new Prompt(new UserMessage("润色"));
+
+        cached.call(prompt);
+        cached.stream(prompt).blockLast();
+        cached.call(prompt);
+
+        assertThat(model.calls).hasValue(3);
+    }
+}
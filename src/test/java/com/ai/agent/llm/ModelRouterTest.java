@@ -0,0 +1,38 @@
+package com.ai.agent.llm;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatModel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class ModelRouterTest {
+
+    private final ModelRouter router = new ModelRouter(mock(ChatModel.class), true, true);
+
+    @Test
+    void greetingWithoutHistoryGetsCannedReply() {
+        assertThat(router.route("你好", false)).isEqualTo(ModelRouter.Route.CANNED);
+        assertThat(router.route("好的", false)).isEqualTo(ModelRouter.Route.CANNED);
+    }
+
+    @Test
+    void acknowledgementInConversationGoesToLargeModel() {
+        // 对"要我生成报告吗？"回答"好的"，必须结合上下文处理
+        assertThat(router.route("好的", true)).isEqualTo(ModelRouter.Route.LARGE);
+        assertThat(router.route("嗯", true)).isEqualTo(ModelRouter.Route.LARGE);
+        assertThat(router.route("ok", true)).isEqualTo(ModelRouter.Route.LARGE);
+    }
+
+    @Test
+    void nonTrivialRoutesIgnoreHistory() {
+        assertThat(router.route("什么是基金定投", true)).isEqualTo(ModelRouter.Route.LOCAL);
+        assertThat(router.route("帮我分析一下我的投资组合", false)).isEqualTo(ModelRouter.Route.LARGE);
+    }
+
+    @Test
+    void disabledRouterAlwaysUsesLargeModel() {
+        ModelRouter disabled = new ModelRouter(mock(ChatModel.class), false, true);
+        assertThat(disabled.route("你好", false)).isEqualTo(ModelRouter.Route.LARGE);
+    }
+}
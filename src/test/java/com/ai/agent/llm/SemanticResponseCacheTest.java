@@ -0,0 +1,77 @@
+package com.ai.agent.llm;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class SemanticResponseCacheTest {
+
+    private static SemanticResponseCache newCache(EmbeddingModel embeddingModel) {
+        return new SemanticResponseCache(embeddingModel, true, 0.92, 100, Duration.ofHours(1), 10);
+    }
+
+    @Test
+    void questionsWithPersonalFactsAreDetected() {
+        assertThat(SemanticResponseCache.containsPersonalFacts("我月薪1万怎么理财")).isTrue();
+        assertThat(SemanticResponseCache.containsPersonalFacts("我月薪五万怎么理财")).isTrue();
+        assertThat(SemanticResponseCache.containsPersonalFacts("今年三十岁，该怎么规划养老")).isTrue();
+        assertThat(SemanticResponseCache.containsPersonalFacts("我叫张三，帮我做个理财规划")).isTrue();
+        assertThat(SemanticResponseCache.containsPersonalFacts("我持有的基金一直在亏损怎么办")).isTrue();
+        assertThat(SemanticResponseCache.containsPersonalFacts("什么是指数基金")).isFalse();
+        assertThat(SemanticResponseCache.containsPersonalFacts("新手应该如何开始理财")).isFalse();
+    }
+
+    @Test
+    void personalQuestionsAreNeitherLookedUpNorCached() {
+        EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+        SemanticResponseCache cache = newCache(embeddingModel);
+
+        SemanticResponseCache.Lookup lookup = cache.lookup("chat", "我月薪1万怎么理财");
+        cache.put(lookup, "月薪1万的理财建议");
+
+        assertThat(lookup.hit()).isNull();
+        assertThat(cache.getStats().entries()).isZero();
+        assertThat(cache.getStats().namespaces().get(0).personalSkipped()).isEqualTo(1);
+        verifyNoInteractions(embeddingModel);
+    }
+
+    @Test
+    void generalQuestionsAreCachedAndSkippedAnswersAreNot() {
+        EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+        when(embeddingModel.embed(anyString())).thenReturn(new float[]{1f, 0f});
+        SemanticResponseCache cache = newCache(embeddingModel);
+
+        // 没有回答（如备用模型胜出）时不写入
+        cache.put(cache.lookup("chat", "什么是指数基金"), null);
+        assertThat(cache.lookup("chat", "什么是指数基金").hit()).isNull();
+
+        SemanticResponseCache.Lookup miss = cache.lookup("chat", "什么是指数基金");
+        cache.put(miss, "指数基金是跟踪指数的基金");
+        SemanticResponseCache.Lookup hit = cache.lookup("chat", "指数基金是什么");
+        assertThat(hit.hit()).isNotNull();
+        assertThat(hit.hit().answer()).isEqualTo("指数基金是跟踪指数的基金");
+    }
+
+    @Test
+    void auditLogDoesNotExposeQuestionText() {
+        EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+        when(embeddingModel.embed(anyString())).thenReturn(new float[]{1f, 0f});
+        SemanticResponseCache cache = newCache(embeddingModel);
+        cache.put(cache.lookup("chat", "什么是指数基金"), "指数基金是跟踪指数的基金");
+        cache.lookup("chat", "指数基金是什么");
+
+        SemanticResponseCache.AuditRecord record = cache.getAuditLog().get(0);
+
+        assertThat(record.question()).startsWith("sha256:").doesNotContain("指数基金");
+        assertThat(record.cachedQuestion()).startsWith("sha256:").doesNotContain("指数基金");
+        assertThat(cache.reportFalseHit(record.id())).isTrue();
+        assertThat(cache.getStats().entries()).isZero();
+    }
+}
@@ -0,0 +1,134 @@
+package com.ai.agent.rag;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class KnowledgeBaseIngestorTest {
+
+    private KnowledgeBaseIngestor ingestor;
+
+    @AfterEach
+    void tearDown() {
+        if (ingestor != null) {
+            ingestor.shutdown();
+        }
+    }
+
+    private static Document chunk(String filename, String text) {
+        return new Document(text, Map.of("filename", filename));
+    }
+
+    /**
+     * 每批一个片段、批次内不重试、轮与轮之间只等几毫秒
+     */
+    @SuppressWarnings("unchecked")
+    private KnowledgeBaseIngestor newIngestor(VectorStore vectorStore, JdbcTemplate jdbcTemplate,
+                                              List<Document> chunks) {
+        DocumentLoader documentLoader = mock(DocumentLoader.class);
+        when(documentLoader.loadMarkdowns()).thenReturn(chunks);
+        TokenTextSplitter splitter = mock(TokenTextSplitter.class);
+        when(splitter.splitDocuments(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        ObjectProvider<JdbcTemplate> jdbcTemplateProvider = mock(ObjectProvider.class);
+        when(jdbcTemplateProvider.getIfAvailable()).thenReturn(jdbcTemplate);
+        return new KnowledgeBaseIngestor(vectorStore, documentLoader, splitter, jdbcTemplateProvider,
+                1, 2, 1, Duration.ofMillis(10), Duration.ofMillis(50));
+    }
+
+    @Test
+    void failedIngestionIsRetriedUntilReady() {
+        VectorStore vectorStore = mock(VectorStore.class);
+        AtomicInteger calls = new AtomicInteger();
+        // 向量化服务启动时不可用，前两轮全部失败
+        doAnswer(invocation -> {
+            if (calls.incrementAndGet() <= 2) {
+                throw new IllegalStateException("embedding unavailable");
+            }
+            return null;
+        }).when(vectorStore).add(anyList());
+        ingestor = newIngestor(vectorStore, null, List.of(chunk("a.md", "a1")));
+
+        ingestor.startIngestion();
+
+        await().atMost(Duration.ofSeconds(5)).until(ingestor::isReady);
+        KnowledgeBaseIngestor.Status status = ingestor.getStatus();
+        assertThat(status.state()).isEqualTo(KnowledgeBaseIngestor.State.READY);
+        assertThat(status.runs()).isEqualTo(3);
+        assertThat(status.nextRetryAt()).isNull();
+    }
+
+    @Test
+    void partialFailureRetriesOnlyTheFailedBatches() {
+        VectorStore vectorStore = mock(VectorStore.class);
+        List<String> added = new CopyOnWriteArrayList<>();
+        AtomicInteger failures = new AtomicInteger();
+        doAnswer(invocation -> {
+            List<Document> batch = invocation.getArgument(0);
+            String text = batch.get(0).getText();
+            if (text.equals("a2") && failures.getAndIncrement() == 0) {
+                throw new IllegalStateException("rate limited");
+            }
+            added.add(text);
+            return null;
+        }).when(vectorStore).add(anyList());
+        ingestor = newIngestor(vectorStore, null, List.of(chunk("a.md", "a1"), chunk("a.md", "a2"),
+                chunk("b.md", "b1")));
+
+        ingestor.startIngestion();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> added.size() == 3);
+        assertThat(added).containsExactlyInAnyOrder("a1", "a2", "b1");
+        await().atMost(Duration.ofSeconds(5)).until(() -> ingestor.getStatus().nextRetryAt() == null
+                && ingestor.getStatus().runs() == 2);
+        assertThat(ingestor.isReady()).isTrue();
+        assertThat(ingestor.getStatus().totalBatches()).isEqualTo(1);
+    }
+
+    @Test
+    void incompleteFilesAreReimportedAndCompleteFilesSkipped() {
+        PgVectorStore vectorStore = mock(PgVectorStore.class);
+        List<String> added = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            List<Document> batch = invocation.getArgument(0);
+            added.add(batch.get(0).getText());
+            return null;
+        }).when(vectorStore).add(anyList());
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        // a.md 已完整导入；b.md 上次只写入了 1 个片段
+        when(jdbcTemplate.queryForList(anyString())).thenReturn(List.of(
+                Map.of("filename", "a.md", "chunks", 2L),
+                Map.of("filename", "b.md", "chunks", 1L)));
+        ingestor = newIngestor(vectorStore, jdbcTemplate, List.of(chunk("a.md", "a1"), chunk("a.md", "a2"),
+                chunk("b.md", "b1"), chunk("b.md", "b2")));
+
+        ingestor.startIngestion();
+
+        await().atMost(Duration.ofSeconds(5)).until(ingestor::isReady);
+        assertThat(added).containsExactlyInAnyOrder("b1", "b2");
+        assertThat(ingestor.getStatus().skippedDocuments()).isEqualTo(2);
+        verify(jdbcTemplate).update(contains("DELETE"), eq("b.md"));
+        verify(jdbcTemplate, never()).update(contains("DELETE"), eq("a.md"));
+    }
+}
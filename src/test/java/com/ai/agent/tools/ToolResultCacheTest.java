@@ -0,0 +1,143 @@
+package com.ai.agent.tools;
+
+import com.ai.agent.config.ToolCacheProperties;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class ToolResultCacheTest {
+
+    private final ToolCacheProperties properties = new ToolCacheProperties();
+
+    private final ToolResultCache cache = new ToolResultCache(properties);
+
+    @Test
+    void concurrentIdenticalCallsShareOneExecution() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> cache.get("searchWeb", "{\"q\":\"基金\"}", () -> {
+            executions.incrementAndGet();
+            started.countDown();
+            awaitQuietly(release);
+            return "result";
+        }));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(
+                () -> cache.get("searchWeb", "{ \"q\": \" 基金 \" }", () -> "other"));
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+        assertThat(executions).hasValue(1);
+    }
+
+    @Test
+    void errorInLoaderReleasesWaiters() throws Exception {
+        assertWaiterFailsWith(() -> {
+            throw new StackOverflowError("boom");
+        }, StackOverflowError.class);
+    }
+
+    @Test
+    void sneakyCheckedExceptionInLoaderReleasesWaiters() throws Exception {
+        assertWaiterFailsWith(() -> sneakyThrow(new IOException("boom")), IllegalStateException.class);
+    }
+
+    @Test
+    void waiterGivesUpAfterAwaitTimeout() throws Exception {
+        properties.setAwaitTimeout(Duration.ofMillis(200));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> cache.get("searchWeb", "{}", () -> {
+            started.countDown();
+            awaitQuietly(release);
+            return "late";
+        }));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        try {
+            assertThatThrownBy(() -> cache.get("searchWeb", "{}", () -> "other"))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("Timed out");
+        } finally {
+            release.countDown();
+        }
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("late");
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedResultsOverCharLimit() {
+        properties.setMaxChars(25);
+        cache.get("searchWeb", "{\"q\":\"a\"}", () -> "a".repeat(10));
+        cache.get("searchWeb", "{\"q\":\"b\"}", () -> "b".repeat(10));
+        // 访问 a，使 b 成为最久未使用的结果
+        cache.get("searchWeb", "{\"q\":\"a\"}", () -> "reloaded");
+        cache.get("searchWeb", "{\"q\":\"c\"}", () -> "c".repeat(10));
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.totalChars()).isEqualTo(20);
+        assertThat(cache.get("searchWeb", "{\"q\":\"a\"}", () -> "reloaded")).isEqualTo("a".repeat(10));
+        assertThat(cache.get("searchWeb", "{\"q\":\"b\"}", () -> "reloaded")).isEqualTo("reloaded");
+    }
+
+    @Test
+    void oversizedResultIsNotCached() {
+        properties.setMaxEntryChars(10);
+        AtomicInteger executions = new AtomicInteger();
+        Supplier<String> page = () -> {
+            executions.incrementAndGet();
+            return "x".repeat(11);
+        };
+
+        cache.get("scrapeWebPage", "{\"url\":\"https://example.com\"}", page);
+        cache.get("scrapeWebPage", "{\"url\":\"https://example.com\"}", page);
+
+        assertThat(executions).hasValue(2);
+        assertThat(cache.size()).isZero();
+        assertThat(cache.totalChars()).isZero();
+    }
+
+    private void assertWaiterFailsWith(Supplier<String> failure, Class<? extends Throwable> expected) throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> cache.get("searchWeb", "{}", () -> {
+            started.countDown();
+            awaitQuietly(release);
+            return failure.get();
+        }));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> waiter = CompletableFuture.supplyAsync(() -> cache.get("searchWeb", "{}", () -> "other"));
+        // 等待者先挂到同一个 flight 上
+        await().atMost(Duration.ofSeconds(5)).until(() -> cache.inFlightWaiters() == 1);
+        release.countDown();
+
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        assertThatThrownBy(() -> waiter.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(expected);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Throwable> String sneakyThrow(Throwable e) throws T {
+        throw (T) e;
+    }
+}